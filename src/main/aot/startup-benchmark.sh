@@ -0,0 +1,52 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+# Compares the startup of the grading container with and without the AOT cache.
+# The script measures the time from starting the JVM until the first report has been parsed
+# (time-to-first-parse) and the total runtime of the grading run on the bundled sample reports.
+# Usage: src/main/aot/startup-benchmark.sh [image] [runs]
+# Optional environment variables:
+# FIRST_PARSE: log message that marks the first parsed report (default: first test result)
+
+IMAGE=${1:-uhafner/autograding-gitlab-action:5.4.0-SNAPSHOT}
+RUNS=${2:-10}
+FIRST_PARSE=${FIRST_PARSE:--> JUnit Tests Total}
+
+ROOT=$(cd "$(dirname "$0")/../../.." && pwd)
+
+run() {
+  local mode=$1
+  docker run --rm \
+    -v "${ROOT}/src/test/resources:/training/target:ro" \
+    -v "${ROOT}/src/main/aot:/training/aot:ro" \
+    -w /training \
+    --entrypoint sh "${IMAGE}" -c \
+    "export CONFIG=\"\$(cat /training/aot/training-config.json)\"; \
+     start=\$(date +%s%N); \
+     java -XX:AOTMode=${mode} -cp @/app/jib-classpath-file edu.hm.hafner.grading.gitlab.GitLabAutoGradingRunner 2>&1 \
+       | while IFS= read -r line; do \
+           case \"\$line\" in *'${FIRST_PARSE}'*) echo \"FIRST_PARSE \$(( (\$(date +%s%N) - start) / 1000000 ))\";; esac; \
+         done; \
+     echo \"TOTAL \$(( (\$(date +%s%N) - start) / 1000000 ))\"" 2>/dev/null
+}
+
+median() {
+  sort -n | awk '{ values[NR] = $1 } END { if (NR == 0) { print "n/a" } else { print values[int((NR + 1) / 2)] } }'
+}
+
+benchmark() {
+  local mode=$1
+  local first="" total=""
+  for _ in $(seq "${RUNS}"); do
+    local output
+    output=$(run "${mode}")
+    first+="$(echo "${output}" | awk '/^FIRST_PARSE/ { print $2; exit }')"$'\n'
+    total+="$(echo "${output}" | awk '/^TOTAL/ { print $2 }')"$'\n'
+  done
+  printf "%-20s time-to-first-parse: %6s ms   total: %6s ms\n" "AOTMode=${mode}" \
+    "$(echo -n "${first}" | grep -v '^$' | median)" "$(echo -n "${total}" | grep -v '^$' | median)"
+}
+
+echo "Startup benchmark for ${IMAGE} (median of ${RUNS} runs)"
+benchmark off
+benchmark auto
@@ -0,0 +1,28 @@
+#!/bin/sh
+set -eu
+
+# Training run for the AOT cache of the container image (JEP 483/514/515).
+# This script runs inside the locally built image: the JVM, the classpath and the JAR files
+# of the training run must be identical to the ones of the published image.
+# Expected mounts:
+# /app/aot: output directory for the AOT cache
+# /training/aot: this folder (training configuration)
+# /training/target: the sample reports from src/test/resources
+
+CACHE=/app/aot/autograding.aot
+
+CONFIG="$(cat /training/aot/training-config.json)"
+export CONFIG
+
+rm -f "${CACHE}"
+cd /training
+
+# The runner fails the action since there is no GitLab connection, this is expected for the training run
+java -XX:AOTCacheOutput="${CACHE}" -cp @/app/jib-classpath-file \
+  edu.hm.hafner.grading.gitlab.GitLabAutoGradingRunner || true
+
+if [ ! -s "${CACHE}" ]; then
+  echo "ERROR: training run did not create the AOT cache ${CACHE}"
+  exit 1
+fi
+echo "Created AOT cache ${CACHE} ($(du -h "${CACHE}" | cut -f1))"
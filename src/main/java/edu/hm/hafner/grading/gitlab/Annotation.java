@@ -0,0 +1,35 @@
+package edu.hm.hafner.grading.gitlab;
+
+import edu.hm.hafner.grading.CommentBuilder.CommentType;
+
+/**
+ * A line comment for a static analysis warning, for lines with missing coverage, or for lines with survived mutations
+ * that should be published in GitLab.
+ *
+ * @param commentType
+ *         the type of the comment
+ * @param relativePath
+ *         the relative path of the affected file
+ * @param lineStart
+ *         the first line of the affected range
+ * @param lineEnd
+ *         the last line of the affected range
+ * @param message
+ *         the message of the comment
+ * @param title
+ *         the title of the comment
+ * @param columnStart
+ *         the first column of the affected range
+ * @param columnEnd
+ *         the last column of the affected range
+ * @param details
+ *         the details of the comment (plain text)
+ * @param markDownDetails
+ *         the details of the comment (Markdown)
+ * @author Ullrich Hafner
+ */
+@SuppressWarnings("checkstyle:ParameterNumber")
+record Annotation(CommentType commentType, String relativePath, int lineStart, int lineEnd,
+                  String message, String title, int columnStart, int columnEnd,
+                  String details, String markDownDetails) {
+}
@@ -0,0 +1,139 @@
+package edu.hm.hafner.grading.gitlab;
+
+import edu.hm.hafner.analysis.Severity;
+import edu.hm.hafner.grading.CommentBuilder.CommentType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Selects the K most useful annotations of a stream of candidates. Each candidate is scored by its severity and by its
+ * proximity to the changes of the merge request: annotations on changed lines are preferred, then annotations near a
+ * changed line, then annotations in files that are not part of the diff. The selection uses a bounded heap, so
+ * only the best K candidates are kept in a single pass.
+ *
+ * @author Ullrich Hafner
+ */
+class AnnotationRanker {
+    private static final int ON_CHANGED_LINE = 40;
+    private static final int IN_CHANGED_FILE = 20;
+
+    private static final Comparator<Candidate> WORST_FIRST = Comparator.comparingInt(Candidate::score)
+            .thenComparing(Comparator.comparingLong(Candidate::index).reversed());
+
+    private final int limit;
+    private final Map<String, Set<Integer>> modifiedLines;
+    private final Map<String, NavigableSet<Integer>> sortedModifiedLines = new HashMap<>();
+    private final PriorityQueue<Candidate> selection = new PriorityQueue<>(WORST_FIRST);
+    private long count;
+
+    /**
+     * Creates a new ranker.
+     *
+     * @param limit
+     *         the maximum number of annotations to select
+     * @param modifiedLines
+     *         the modified lines of the merge request, mapped by the relative path of the file
+     */
+    AnnotationRanker(final int limit, final Map<String, Set<Integer>> modifiedLines) {
+        this.limit = limit;
+        this.modifiedLines = modifiedLines;
+    }
+
+    /**
+     * Adds a new candidate to the selection. If the selection is already full, then the candidate replaces the worst
+     * selected annotation if it has a higher score.
+     *
+     * @param annotation
+     *         the candidate
+     * @param severity
+     *         the severity of the candidate
+     */
+    void add(final Annotation annotation, final Severity severity) {
+        if (limit <= 0) {
+            return;
+        }
+
+        var candidate = new Candidate(annotation, score(annotation, severity), count++);
+        if (selection.size() < limit) {
+            selection.add(candidate);
+        }
+        else if (WORST_FIRST.compare(candidate, selection.peek()) > 0) {
+            selection.poll();
+            selection.add(candidate);
+        }
+    }
+
+    /**
+     * Returns the selected annotations, ordered by descending score. Annotations with the same score are returned in
+     * the order they have been added.
+     *
+     * @return the selected annotations
+     */
+    List<Annotation> getSelection() {
+        var sorted = new ArrayList<>(selection);
+        sorted.sort(WORST_FIRST.reversed());
+        return sorted.stream().map(Candidate::annotation).toList();
+    }
+
+    int score(final Annotation annotation, final Severity severity) {
+        return getImportance(annotation.commentType(), severity) + getProximity(annotation);
+    }
+
+    private int getImportance(final CommentType commentType, final Severity severity) {
+        if (commentType == CommentType.WARNING) {
+            if (Severity.ERROR.equals(severity)) {
+                return 40;
+            }
+            if (Severity.WARNING_HIGH.equals(severity)) {
+                return 30;
+            }
+            if (Severity.WARNING_NORMAL.equals(severity)) {
+                return 20;
+            }
+            return 10;
+        }
+        return switch (commentType) {
+            case NO_COVERAGE -> 30;
+            case PARTIAL_COVERAGE -> 10;
+            default -> 20;
+        };
+    }
+
+    private int getProximity(final Annotation annotation) {
+        var lines = getModifiedLines(annotation.relativePath());
+        if (lines.isEmpty()) {
+            return 0;
+        }
+        var start = annotation.lineStart();
+        var end = Math.max(start, annotation.lineEnd());
+        var ceiling = lines.ceiling(start);
+        if (ceiling != null && ceiling <= end) {
+            return ON_CHANGED_LINE;
+        }
+        var distance = Integer.MAX_VALUE;
+        if (ceiling != null) {
+            distance = ceiling - end;
+        }
+        var floor = lines.floor(start);
+        if (floor != null) {
+            distance = Math.min(distance, start - floor);
+        }
+        return IN_CHANGED_FILE - Math.min(distance, IN_CHANGED_FILE - 1);
+    }
+
+    private NavigableSet<Integer> getModifiedLines(final String relativePath) {
+        return sortedModifiedLines.computeIfAbsent(relativePath,
+                path -> new TreeSet<>(modifiedLines.getOrDefault(path, Set.of())));
+    }
+
+    private record Candidate(Annotation annotation, int score, long index) {
+    }
+}
@@ -0,0 +1,174 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.apache.commons.lang3.StringUtils;
+import org.gitlab4j.api.GitLabApiException;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.hm.hafner.util.VisibleForTesting;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipException;
+
+/**
+ * Downloads the artifacts archive of a job into a local file. The archive is spooled to the file while it is
+ * transferred: if the connection is interrupted or the server fails, then the download is resumed with an HTTP range
+ * request rather than starting over. The range request is sent with the validator (ETag) of the first response, so
+ * that bytes of a replaced archive are never appended to the partial file; without a validator, the download starts
+ * over. After the transfer, the size of the file and the central directory of the ZIP
+ * archive are verified, so that truncated or corrupted archives are detected before the reports are extracted. A
+ * corrupted archive is downloaded again.
+ *
+ * @author Ullrich Hafner
+ */
+class ArtifactDownloader {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final Duration BACKOFF = Duration.ofSeconds(2);
+    private static final int PARTIAL_CONTENT = 206;
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+    private static final Pattern TOTAL_SIZE = Pattern.compile("/(\\d+)$");
+
+    private final String apiUrl;
+    private final String token;
+    private final Duration backoff;
+    private final FilteredLog log;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    ArtifactDownloader(final String url, final String token, final FilteredLog log) {
+        this(url, token, BACKOFF, log);
+    }
+
+    @VisibleForTesting
+    ArtifactDownloader(final String url, final String token, final Duration backoff, final FilteredLog log) {
+        this.apiUrl = url.replaceAll("/+$", "") + "/api/v4";
+        this.token = token;
+        this.backoff = backoff;
+        this.log = log;
+    }
+
+    /**
+     * Downloads the artifacts archive of a job into the specified file.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param jobId
+     *         the ID of the job
+     * @param file
+     *         the file to store the archive in, an existing file will be overwritten
+     *
+     * @throws GitLabApiException
+     *         if the archive cannot be downloaded completely or is not a valid ZIP archive
+     */
+    void download(final long projectId, final long jobId, final Path file) throws GitLabApiException {
+        var url = "%s/projects/%d/jobs/%d/artifacts".formatted(apiUrl, projectId, jobId);
+        try {
+            Files.deleteIfExists(file);
+            var validator = new AtomicReference<>(StringUtils.EMPTY);
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    transfer(url, file, validator);
+                    ZipExtractor.verify(file);
+                    log.logInfo(">>> Downloaded artifacts of job %d (%d bytes)", jobId, Files.size(file));
+
+                    return;
+                }
+                catch (IOException exception) {
+                    if (attempt == MAX_ATTEMPTS) {
+                        throw exception;
+                    }
+                    if (exception instanceof ZipException) {
+                        log.logInfo(">>> Artifacts of job %d are corrupted (%s), downloading again",
+                                jobId, exception.getMessage());
+                        Files.deleteIfExists(file);
+                        validator.set(StringUtils.EMPTY);
+                    }
+                    else {
+                        log.logInfo(">>> Download of artifacts of job %d interrupted after %d bytes (%s), retrying",
+                                jobId, Files.exists(file) ? Files.size(file) : 0, exception.getMessage());
+                    }
+                    Thread.sleep(backoff.multipliedBy(attempt).toMillis());
+                }
+            }
+        }
+        catch (IOException exception) {
+            throw new GitLabApiException(exception);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new GitLabApiException(exception);
+        }
+    }
+
+    /**
+     * Transfers the (remaining) bytes of the archive and appends them to the file. The validator (ETag) of the archive
+     * is captured before the body is streamed, so that it is available for resuming even if this transfer is
+     * interrupted.
+     */
+    private void transfer(final String url, final Path file, final AtomicReference<String> validator)
+            throws IOException, InterruptedException, GitLabApiException {
+        if (validator.get().isEmpty()) {
+            Files.deleteIfExists(file); // without a validator, the partial file might belong to another archive
+        }
+        var offset = Files.exists(file) ? Files.size(file) : 0;
+        var request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMinutes(10))
+                .header("PRIVATE-TOKEN", token);
+        if (offset > 0) {
+            request.header("Range", "bytes=%d-".formatted(offset));
+            request.header("If-Range", validator.get());
+        }
+
+        var response = client.send(request.GET().build(), BodyHandlers.ofInputStream());
+        try (var body = response.body()) {
+            if (response.statusCode() == RANGE_NOT_SATISFIABLE && offset > 0) {
+                return; // the file is already complete
+            }
+            if (response.statusCode() >= 500) {
+                throw new IOException("Server error " + response.statusCode());
+            }
+            if (response.statusCode() / 100 != 2) {
+                throw new GitLabApiException("GET %s failed".formatted(url), response.statusCode());
+            }
+
+            var resumed = response.statusCode() == PARTIAL_CONTENT;
+            if (resumed) {
+                log.logInfo(">>> Resuming download of artifacts at byte %d", offset);
+            }
+            else {
+                validator.set(response.headers().firstValue("ETag").orElse(StringUtils.EMPTY));
+            }
+            try (var output = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    resumed ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+                body.transferTo(output);
+            }
+            verifySize(response, file);
+        }
+    }
+
+    private void verifySize(final HttpResponse<?> response, final Path file) throws IOException {
+        var total = response.headers().firstValue("Content-Range")
+                .map(TOTAL_SIZE::matcher)
+                .filter(Matcher::find)
+                .map(matcher -> Long.parseLong(matcher.group(1)));
+        if (total.isEmpty() && response.statusCode() != PARTIAL_CONTENT) {
+            total = response.headers().firstValueAsLong("Content-Length").stream().boxed().findFirst();
+        }
+        if (total.isPresent() && Files.size(file) != total.get()) {
+            throw new IOException("Incomplete archive: %d of %d bytes".formatted(Files.size(file), total.get()));
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.apache.commons.lang3.StringUtils;
+import org.gitlab4j.api.GitLabApiException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.errorprone.annotations.FormatMethod;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Re-grades all open merge requests of a GitLab group with a new grading configuration. Usage:
+ * {@code BulkRegrader [--scores-only] [--concurrency 4] [--job maven] [--label label] [--runner command]
+ * group-path config-file}. The connection to GitLab is configured with the same environment variables as the action
+ * ({@code CI_SERVER_URL} and {@code GITLAB_TOKEN}).
+ *
+ * <p>
+ * For each open merge request, the artifacts of the build job ({@code --job}) of the latest pipeline of the head
+ * commit are downloaded and graded with the grading configuration of the config file. The merge requests are graded
+ * concurrently ({@code --concurrency}). Each merge request is graded by a {@link RunnerProcess runner process} in a
+ * workspace of its own that republishes the summary note and the line comments. Without {@code --runner}, each
+ * runner is started with the JVM of the regrader and pays the startup and warmup of a new JVM. With
+ * {@code --scores-only} the runners perform a dry run: nothing is posted to GitLab and only the new scores are
+ * recorded. The results of all merge requests are written to the file {@code autograding-regrade.csv}.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+public class BulkRegrader {
+    private static final String SCORES_ONLY = "--scores-only";
+    private static final String RESULTS_FILE = "autograding-regrade.csv";
+    private static final String TRANSCRIPT_FILE = "regrade-transcript.jsonl";
+
+    // Column names for the CSV output
+    private static final String MERGE_REQUEST = "Merge Request";
+    private static final String STATUS = "Status";
+    private static final String URL = "URL";
+
+    /**
+     * The settings of a bulk re-grade.
+     *
+     * @param configuration
+     *         the grading configuration (JSON)
+     * @param jobName
+     *         the name of the job that contains the reports as artifacts
+     * @param concurrency
+     *         the number of merge requests that are graded concurrently
+     * @param scoresOnly
+     *         determines whether the runners should perform a dry run that only records the scores
+     * @param workspace
+     *         the directory for the workspaces of the merge requests and the delta cache
+     */
+    record Settings(String configuration, String jobName, int concurrency, boolean scoresOnly, Path workspace) {
+    }
+
+    private record Submission(long projectId, long mergeRequestIid, String sha, String reference, String webUrl) {
+    }
+
+    private record Project(String path, String webUrl, String defaultBranch) {
+    }
+
+    private final GitLabRestReader reader;
+    private final GitLabClient client;
+    private final RunnerProcess runner;
+    private final Settings settings;
+    private final Map<String, String> environment;
+    private final Map<Long, Project> projects = new ConcurrentHashMap<>();
+    private final AtomicInteger progress = new AtomicInteger();
+
+    /**
+     * Re-grades the open merge requests of a group.
+     *
+     * @param args
+     *         the command line options, followed by the path of the group and the grading configuration file
+     *
+     * @throws IOException
+     *         if the configuration cannot be read or the results cannot be written
+     */
+    @SuppressWarnings({"PMD.SystemPrintln", "SystemOut"})
+    static void main(final String... args) throws IOException {
+        var options = new HashMap<String, String>();
+        var positional = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (SCORES_ONLY.equals(args[i])) {
+                options.put(args[i], "true");
+            }
+            else if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i], args[++i]);
+            }
+            else {
+                positional.add(args[i]);
+            }
+        }
+        if (positional.size() != 2) {
+            throw new IllegalArgumentException("Usage: BulkRegrader [--scores-only] [--concurrency 4] [--job maven] "
+                    + "[--label label] [--runner command] group-path config-file");
+        }
+
+        var log = new FilteredLog("Errors while re-grading the merge requests:");
+        var configuration = RunConfiguration.load(log);
+        if (!configuration.hasGitLabConnection()) {
+            throw new IllegalArgumentException("No CI_SERVER_URL or GITLAB_TOKEN defined");
+        }
+
+        var settings = new Settings(Files.readString(Path.of(positional.get(1)), StandardCharsets.UTF_8),
+                options.getOrDefault("--job", "maven"),
+                Integer.parseInt(options.getOrDefault("--concurrency", "4")),
+                options.containsKey(SCORES_ONLY),
+                Files.createTempDirectory("autograding-regrade"));
+        var runner = options.containsKey("--runner")
+                ? new RunnerProcess(List.of(options.get("--runner").split(" ")))
+                : RunnerProcess.createJavaRunner();
+
+        System.out.println("----------------------------------------------------");
+        System.out.println("Re-grading open merge requests");
+        System.out.println("Base URL: " + configuration.getGitLabUrl());
+        System.out.println("Group Path: " + positional.get(0));
+        System.out.println("Mode: " + (settings.scoresOnly() ? "record scores only" : "publish results"));
+        System.out.println("Concurrency: " + settings.concurrency());
+        System.out.println("----------------------------------------------------");
+
+        try (var client = new GitLabApiClient(configuration.getGitLabUrl(), configuration.getToken(), log)) {
+            var regrader = new BulkRegrader(new GitLabRestReader(configuration.getGitLabUrl(),
+                    configuration.getToken(), null), client, runner, settings);
+            var results = regrader.regrade(positional.get(0), options.get("--label"));
+            writeCsvFile(results, Path.of(RESULTS_FILE));
+            System.out.printf("→ Results of %d merge requests written to %s%n", results.size(), RESULTS_FILE);
+        }
+    }
+
+    BulkRegrader(final GitLabRestReader reader, final GitLabClient client, final RunnerProcess runner,
+            final Settings settings) {
+        this.reader = reader;
+        this.client = client;
+        this.runner = runner;
+        this.settings = settings;
+
+        environment = new HashMap<>(System.getenv());
+        environment.remove(RunConfiguration.JOB_URL);
+        environment.put(RunConfiguration.GRADING_CONFIGURATION, settings.configuration());
+        environment.put(RunConfiguration.DELTA_CACHE, settings.workspace().resolve("delta-cache").toString());
+        if (settings.scoresOnly()) {
+            environment.put(RunConfiguration.DRY_RUN, "true");
+        }
+    }
+
+    /**
+     * Re-grades all open merge requests of the specified group.
+     *
+     * @param groupPath
+     *         the full path of the group
+     * @param label
+     *         the label of the merge requests to re-grade, or {@code null} to re-grade all open merge requests
+     *
+     * @return the results of the merge requests, each result maps the columns of the CSV file to its values
+     * @throws IOException
+     *         if the merge requests cannot be read
+     */
+    List<Map<String, String>> regrade(final String groupPath, @CheckForNull final String label) throws IOException {
+        var submissions = readSubmissions(groupPath, label);
+        print("→ Found %d open merge requests%n", submissions.size());
+
+        try (var executor = Executors.newFixedThreadPool(Math.max(1, settings.concurrency()))) {
+            var tasks = submissions.stream()
+                    .map(submission -> (Callable<Map<String, String>>) () -> grade(submission, submissions.size()))
+                    .toList();
+            var results = new ArrayList<Map<String, String>>();
+            for (Future<Map<String, String>> result : executor.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+            return results;
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Re-grading has been interrupted", exception);
+        }
+        catch (ExecutionException exception) {
+            throw new IOException("Re-grading failed", exception);
+        }
+    }
+
+    private List<Submission> readSubmissions(final String groupPath, @CheckForNull final String label)
+            throws IOException {
+        var query = "/groups/%s/merge_requests?state=opened".formatted(encode(groupPath));
+        if (StringUtils.isNotBlank(label)) {
+            query += "&labels=" + encode(label);
+        }
+        try {
+            var submissions = new ArrayList<Submission>();
+            for (JsonNode json : reader.getAll(query)) {
+                submissions.add(new Submission(json.path("project_id").asLong(), json.path("iid").asLong(),
+                        json.path("sha").asText(), json.path("references").path("full").asText(),
+                        json.path("web_url").asText()));
+            }
+            submissions.sort(Comparator.comparing(Submission::reference));
+            return submissions;
+        }
+        catch (GitLabApiException exception) {
+            throw new IOException("Can't read the merge requests of group " + groupPath, exception);
+        }
+    }
+
+    private Map<String, String> grade(final Submission submission, final int total) {
+        var result = new LinkedHashMap<String, String>();
+        result.put(MERGE_REQUEST, submission.reference());
+        result.put(STATUS, "-");
+        result.put(URL, submission.webUrl());
+
+        var workspace = settings.workspace().resolve(submission.projectId() + "-" + submission.mergeRequestIid());
+        try {
+            Files.createDirectories(workspace);
+            var job = findJob(submission);
+            if (job.isEmpty()) {
+                result.put(STATUS, "No job '%s' found".formatted(settings.jobName()));
+            }
+            else {
+                extractArtifacts(submission, job.get(), workspace);
+                var exitCode = runner.run(workspace, createEnvironment(submission, workspace),
+                        workspace.resolve("autograding.log"));
+                result.put(STATUS, exitCode == 0 ? "Success" : "Failed (exit code %d)".formatted(exitCode));
+                if (settings.scoresOnly()) {
+                    result.putAll(readScores(workspace.resolve(TRANSCRIPT_FILE)));
+                }
+            }
+        }
+        catch (IOException | GitLabApiException exception) {
+            result.put(STATUS, "Error: " + exception.getMessage());
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            result.put(STATUS, "Canceled");
+        }
+        finally {
+            delete(workspace);
+        }
+        print("→ [%d/%d] %s: %s%n", progress.incrementAndGet(), total, submission.reference(), result.get(STATUS));
+        return result;
+    }
+
+    // The archive is downloaded into a local file first, so that an interrupted download can be resumed
+    private void extractArtifacts(final Submission submission, final long jobId, final Path workspace)
+            throws IOException, GitLabApiException {
+        var archive = Path.of(workspace + ".zip");
+        try {
+            client.downloadArtifacts(submission.projectId(), jobId, archive);
+            try (var artifacts = Files.newInputStream(archive)) {
+                ZipExtractor.extract(artifacts, workspace);
+            }
+        }
+        finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    private Optional<Long> findJob(final Submission submission) throws GitLabApiException {
+        var pipelines = reader.getOne("/projects/%d/pipelines?sha=%s".formatted(submission.projectId(),
+                encode(submission.sha())));
+        if (pipelines.isEmpty()) {
+            return Optional.empty();
+        }
+        var pipeline = pipelines.get(0).path("id").asLong();
+        for (JsonNode job : reader.getAll("/projects/%d/pipelines/%d/jobs".formatted(submission.projectId(),
+                pipeline))) {
+            if (settings.jobName().equals(job.path("name").asText())) {
+                return Optional.of(job.path("id").asLong());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Map<String, String> createEnvironment(final Submission submission, final Path workspace)
+            throws GitLabApiException {
+        var project = getProject(submission.projectId());
+        var variables = new HashMap<>(environment);
+        variables.put(RunConfiguration.PROJECT_ID, String.valueOf(submission.projectId()));
+        variables.put(RunConfiguration.PROJECT_PATH, project.path());
+        variables.put(RunConfiguration.PROJECT_URL, project.webUrl());
+        variables.put(RunConfiguration.DEFAULT_BRANCH, project.defaultBranch());
+        variables.put(RunConfiguration.COMMIT_SHA, submission.sha());
+        variables.put(RunConfiguration.MERGE_REQUEST_IID, String.valueOf(submission.mergeRequestIid()));
+        variables.put(RunConfiguration.PROJECT_DIR, workspace.toString());
+        variables.put(RunConfiguration.TRANSCRIPT, workspace.resolve(TRANSCRIPT_FILE).toString());
+        return variables;
+    }
+
+    private Project getProject(final long projectId) throws GitLabApiException {
+        var project = projects.get(projectId);
+        if (project == null) {
+            var json = reader.getOne("/projects/" + projectId);
+            project = new Project(json.path("path_with_namespace").asText(), json.path("web_url").asText(),
+                    json.path("default_branch").asText());
+            projects.put(projectId, project);
+        }
+        return project;
+    }
+
+    private Map<String, String> readScores(final Path transcript) {
+        var log = new FilteredLog("Errors");
+        return TranscriptReplayer.readTranscripts(List.of(transcript), log).stream()
+                .filter(entry -> TranscriptClient.NOTE.equals(entry.path(TranscriptClient.OPERATION).asText()))
+                .map(entry -> entry.path(TranscriptClient.BODY).asText())
+                .reduce((first, second) -> second)
+                .map(ResultCrawler::readScores)
+                .orElse(Map.of());
+    }
+
+    private String encode(final String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private void delete(final Path workspace) {
+        try (Stream<Path> files = Files.walk(workspace)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        catch (IOException _) {
+            // ignore, the workspace is in a temporary folder
+        }
+    }
+
+    private static void writeCsvFile(final List<Map<String, String>> results, final Path file) throws IOException {
+        var columns = results.stream()
+                .map(Map::keySet)
+                .flatMap(Collection::stream)
+                .filter(key -> !URL.equals(key))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        columns.add(URL); // Ensure URL is always the last column
+
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writer.append(String.join(", ", columns)).append("\n");
+            for (Map<String, String> result : results) {
+                writer.append(columns.stream()
+                        .map(column -> result.getOrDefault(column, "-"))
+                        .collect(Collectors.joining(", ")));
+                writer.append("\n");
+            }
+        }
+    }
+
+    @FormatMethod
+    @SuppressWarnings({"PMD.SystemPrintln", "SystemOut"})
+    private void print(final String format, final Object... args) {
+        System.out.printf(format, args);
+    }
+}
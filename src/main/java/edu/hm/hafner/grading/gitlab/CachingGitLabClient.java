@@ -0,0 +1,189 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Diff;
+import org.gitlab4j.api.models.Job;
+import org.gitlab4j.api.models.MergeRequest;
+import org.gitlab4j.api.models.MergeRequestVersion;
+import org.gitlab4j.api.models.Note;
+import org.gitlab4j.api.models.Pipeline;
+import org.gitlab4j.api.models.Position;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A {@link GitLabClient} that fetches every GitLab entity at most once per run. Read requests are served from an
+ * {@link EntityCache}, write requests and downloads are passed to the wrapped client.
+ *
+ * @author Ullrich Hafner
+ */
+class CachingGitLabClient implements GitLabClient {
+    private final GitLabClient delegate;
+    private final EntityCache cache = new EntityCache();
+    private final FilteredLog log;
+
+    CachingGitLabClient(final GitLabClient delegate, final FilteredLog log) {
+        this.delegate = delegate;
+        this.log = log;
+    }
+
+    /**
+     * Stores the entities of a merge request that have been fetched with a single query.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     * @param context
+     *         the entities of the merge request
+     */
+    void prime(final long projectId, final long mergeRequestIid, final MergeRequestContext context) {
+        cache.put(versionsKey(projectId, mergeRequestIid), context.versions());
+        cache.put(mergeRequestKey(projectId, mergeRequestIid), context.mergeRequest());
+        cache.put(notesKey(projectId, mergeRequestIid), context.autogradingNotes());
+    }
+
+    @Override
+    public List<MergeRequestVersion> getDiffVersions(final long projectId, final long mergeRequestIid)
+            throws GitLabApiException {
+        return cache.get(versionsKey(projectId, mergeRequestIid),
+                () -> delegate.getDiffVersions(projectId, mergeRequestIid));
+    }
+
+    private String versionsKey(final long projectId, final long mergeRequestIid) {
+        return "versions/%d/%d".formatted(projectId, mergeRequestIid);
+    }
+
+    @Override
+    public MergeRequest getMergeRequest(final long projectId, final long mergeRequestIid)
+            throws GitLabApiException {
+        return cache.get(mergeRequestKey(projectId, mergeRequestIid),
+                () -> delegate.getMergeRequest(projectId, mergeRequestIid));
+    }
+
+    private String mergeRequestKey(final long projectId, final long mergeRequestIid) {
+        return "merge-request/%d/%d".formatted(projectId, mergeRequestIid);
+    }
+
+    @Override
+    public List<Diff> getDiffs(final long projectId, final long mergeRequestIid) throws GitLabApiException {
+        return cache.get("diffs/%d/%d".formatted(projectId, mergeRequestIid),
+                () -> delegate.getDiffs(projectId, mergeRequestIid));
+    }
+
+    @Override
+    public List<Pipeline> getPipelines(final long projectId, final String ref) throws GitLabApiException {
+        return cache.get("pipelines/%d/%s".formatted(projectId, ref),
+                () -> delegate.getPipelines(projectId, ref));
+    }
+
+    @Override
+    public List<Job> getJobs(final long projectId, final long pipelineId) throws GitLabApiException {
+        return cache.get("jobs/%d/%d".formatted(projectId, pipelineId),
+                () -> delegate.getJobs(projectId, pipelineId));
+    }
+
+    @Override
+    public InputStream downloadArtifacts(final long projectId, final long jobId) throws GitLabApiException {
+        return delegate.downloadArtifacts(projectId, jobId);
+    }
+
+    @Override
+    public void downloadArtifacts(final long projectId, final long jobId, final Path file)
+            throws GitLabApiException {
+        delegate.downloadArtifacts(projectId, jobId, file);
+    }
+
+    @Override
+    public List<Diff> compareCommits(final long projectId, final String from, final String to)
+            throws GitLabApiException {
+        return delegate.compareCommits(projectId, from, to);
+    }
+
+    @Override
+    public String getHeadCommit(final long projectId, final long mergeRequestIid) throws GitLabApiException {
+        return delegate.getHeadCommit(projectId, mergeRequestIid); // never cached, the head moves with each push
+    }
+
+    @Override
+    public List<Note> getMergeRequestNotes(final long projectId, final long mergeRequestIid, final String marker)
+            throws GitLabApiException {
+        return delegate.getMergeRequestNotes(projectId, mergeRequestIid, marker);
+    }
+
+    @Override
+    public List<Note> getAutogradingNotes(final long projectId, final long mergeRequestIid)
+            throws GitLabApiException {
+        return cache.get(notesKey(projectId, mergeRequestIid),
+                () -> delegate.getAutogradingNotes(projectId, mergeRequestIid));
+    }
+
+    private String notesKey(final long projectId, final long mergeRequestIid) {
+        return "autograding-notes/%d/%d".formatted(projectId, mergeRequestIid);
+    }
+
+    @Override
+    public void deleteMergeRequestNote(final long projectId, final long mergeRequestIid, final long noteId)
+            throws GitLabApiException {
+        delegate.deleteMergeRequestNote(projectId, mergeRequestIid, noteId);
+
+        cache.invalidate(notesKey(projectId, mergeRequestIid));
+    }
+
+    @Override
+    public void deleteAutogradingNotes(final long projectId, final long mergeRequestIid)
+            throws GitLabApiException {
+        GitLabClient.super.deleteAutogradingNotes(projectId, mergeRequestIid);
+
+        cache.invalidate(notesKey(projectId, mergeRequestIid));
+    }
+
+    @Override
+    public void createMergeRequestNote(final long projectId, final long mergeRequestIid, final String body)
+            throws GitLabApiException {
+        delegate.createMergeRequestNote(projectId, mergeRequestIid, body);
+
+        cache.invalidate(notesKey(projectId, mergeRequestIid));
+    }
+
+    @Override
+    public void updateMergeRequestNote(final long projectId, final long mergeRequestIid, final long noteId,
+            final String body) throws GitLabApiException {
+        delegate.updateMergeRequestNote(projectId, mergeRequestIid, noteId, body);
+
+        cache.invalidate(notesKey(projectId, mergeRequestIid));
+    }
+
+    @Override
+    public void createMergeRequestDiscussion(final long projectId, final long mergeRequestIid, final String body,
+            @CheckForNull final Position position) throws GitLabApiException {
+        delegate.createMergeRequestDiscussion(projectId, mergeRequestIid, body, position);
+    }
+
+    @Override
+    public void createCommitComment(final long projectId, final String sha, final String body, final String path,
+            final int line) throws GitLabApiException {
+        delegate.createCommitComment(projectId, sha, body, path, line);
+    }
+
+    @Override
+    public void createCommitComment(final long projectId, final String sha, final String body)
+            throws GitLabApiException {
+        delegate.createCommitComment(projectId, sha, body);
+    }
+
+    int getHits() {
+        return cache.getHits();
+    }
+
+    @Override
+    public void close() {
+        log.logInfo("GitLab entity cache: %d entities fetched, %d cache hits", cache.getMisses(), cache.getHits());
+        delegate.close();
+    }
+}
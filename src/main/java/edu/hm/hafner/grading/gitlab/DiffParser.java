@@ -1,7 +1,10 @@
 package edu.hm.hafner.grading.gitlab;
 
+import org.apache.commons.lang3.StringUtils;
 import org.gitlab4j.api.models.Diff;
 
+import edu.hm.hafner.grading.gitlab.PositionResolver.FileDiff;
+
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -9,9 +12,10 @@ import java.util.Map;
 import java.util.Set;
 
 /**
- * Provides changed lines for a GitLab merge request so patch coverage can be computed.
+ * Provides changed lines for a GitLab merge request so patch coverage can be computed. Additionally, provides the
+ * positions of all lines of the diff so that comments can be placed in the diff. Both are computed from a single parse
+ * of the hunks.
  */
-// TODO: extract common logic with GitHub DiffParser
 class DiffParser {
     /**
      * Parses the given list of diffs and returns a map of changed lines by file.
@@ -22,37 +26,69 @@ class DiffParser {
      * @return a map of changed lines by file
      */
     Map<String, Set<Integer>> getModifiedLines(final List<Diff> diffs) {
-        Map<String, Set<Integer>> changedLinesByFile = new HashMap<>();
+        return getPositions(diffs).getModifiedLines();
+    }
 
+    /**
+     * Parses the given list of diffs and returns a resolver for the positions of the lines in these diffs. The
+     * resolver provides the changed lines by file as well.
+     *
+     * @param diffs
+     *         the list of diffs
+     *
+     * @return the resolver for the positions
+     */
+    PositionResolver getPositions(final List<Diff> diffs) {
+        Map<String, FileDiff> files = new HashMap<>();
         for (Diff diff : diffs) {
-            Set<Integer> changedLines = new HashSet<>();
-
+            var oldPath = StringUtils.defaultIfBlank(diff.getOldPath(), diff.getNewPath());
+            var deleted = Boolean.TRUE.equals(diff.getDeletedFile());
             var diffText = diff.getDiff();
-            int lineNum = 0;
+            if (StringUtils.isBlank(diffText)) {
+                files.put(diff.getNewPath(), new FileDiff(oldPath, deleted, false, Set.of(), Map.of()));
+                continue;
+            }
+
+            Set<Integer> addedLines = new HashSet<>();
+            Map<Integer, Integer> contextLines = new HashMap<>();
+            boolean isHunk = false;
+            int oldLine = 0;
+            int newLine = 0;
             for (var line : diffText.split("\n", 0)) {
                 if (line.startsWith("@@")) {
                     var parts = line.split(" ", 0);
-                    var newRange = parts[2];
-                    var rangeParts = newRange.substring(1).split(",", 0);
+                    isHunk = parts.length > 2;
                     try {
-                        lineNum = Integer.parseInt(rangeParts[0]);
+                        if (isHunk) {
+                            oldLine = parseStart(parts[1]);
+                            newLine = parseStart(parts[2]);
+                        }
                     }
-                    catch (NumberFormatException e) {
-                        return Map.of();
+                    catch (NumberFormatException exception) {
+                        isHunk = false; // skip the hunk, its lines cannot be commented
                     }
                 }
-                else if (line.startsWith("+") && !line.startsWith("+++")) {
-                    changedLines.add(lineNum);
-                    lineNum++;
-                }
-                else if (!line.startsWith("-")) {
-                    lineNum++;
+                else if (isHunk) {
+                    if (line.startsWith("+")) {
+                        addedLines.add(newLine);
+                        newLine++;
+                    }
+                    else if (line.startsWith("-")) {
+                        oldLine++;
+                    }
+                    else if (!line.startsWith("\\")) { // skip "\ No newline at end of file"
+                        contextLines.put(newLine, oldLine);
+                        oldLine++;
+                        newLine++;
+                    }
                 }
             }
-
-            var fileName = diff.getNewPath();
-            changedLinesByFile.put(fileName, changedLines);
+            files.put(diff.getNewPath(), new FileDiff(oldPath, deleted, true, addedLines, contextLines));
         }
-        return changedLinesByFile;
+        return new PositionResolver(files);
+    }
+
+    private int parseStart(final String range) {
+        return Integer.parseInt(StringUtils.substringBefore(range.substring(1), ","));
     }
 }
@@ -0,0 +1,127 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caches the GitLab entities that are fetched during a single run of the action. Concurrent requests for the same
+ * entity are coalesced: only the first caller sends the request, all other callers wait for its result. Failed
+ * requests are not cached, so a subsequent request will try again.
+ *
+ * @author Ullrich Hafner
+ */
+class EntityCache {
+    private final Map<String, CompletableFuture<Object>> entities = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Returns the entity with the specified key. If the entity is not yet in the cache, then it will be fetched
+     * using the specified loader.
+     *
+     * @param key
+     *         the key of the entity
+     * @param loader
+     *         fetches the entity from GitLab
+     * @param <T>
+     *         the type of the entity
+     *
+     * @return the entity
+     * @throws GitLabApiException
+     *         if the entity cannot be fetched
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(final String key, final Loader<T> loader) throws GitLabApiException {
+        var request = new CompletableFuture<Object>();
+        var existing = entities.putIfAbsent(key, request);
+        if (existing != null) {
+            hits.incrementAndGet();
+
+            return (T) await(existing);
+        }
+
+        misses.incrementAndGet();
+        try {
+            var entity = loader.load();
+            request.complete(entity);
+            return entity;
+        }
+        catch (GitLabApiException | RuntimeException exception) {
+            entities.remove(key, request);
+            request.completeExceptionally(exception);
+            throw exception;
+        }
+    }
+
+    /**
+     * Stores an entity that has been fetched by other means, e.g., as part of a larger query.
+     *
+     * @param key
+     *         the key of the entity
+     * @param entity
+     *         the entity
+     */
+    void put(final String key, final Object entity) {
+        entities.put(key, CompletableFuture.completedFuture(entity));
+    }
+
+    /**
+     * Removes the entity with the specified key, so that it will be fetched again on the next request.
+     *
+     * @param key
+     *         the key of the entity
+     */
+    void invalidate(final String key) {
+        entities.remove(key);
+    }
+
+    private Object await(final CompletableFuture<Object> request) throws GitLabApiException {
+        try {
+            return request.get();
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new GitLabApiException(exception);
+        }
+        catch (ExecutionException exception) {
+            if (exception.getCause() instanceof GitLabApiException gitLabApiException) {
+                throw gitLabApiException;
+            }
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new GitLabApiException(exception);
+        }
+    }
+
+    int getHits() {
+        return hits.get();
+    }
+
+    int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Fetches an entity from GitLab.
+     *
+     * @param <T>
+     *         the type of the entity
+     */
+    @FunctionalInterface
+    interface Loader<T> {
+        /**
+         * Fetches the entity.
+         *
+         * @return the entity
+         * @throws GitLabApiException
+         *         if the entity cannot be fetched
+         */
+        T load() throws GitLabApiException;
+    }
+}
@@ -6,22 +6,26 @@ import org.apache.commons.lang3.Strings;
 import edu.hm.hafner.util.FilteredLog;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 
+import java.util.function.Function;
+
 /**
- * Simple utility to access environment variables.
+ * Simple utility to read and log the values of environment variables (or of another source with the same semantics).
  *
  * @author Ullrich Hafner
  */
 class Environment {
     private final FilteredLog log;
+    private final Function<String, String> source;
 
-    Environment(final FilteredLog log) {
+    Environment(final FilteredLog log, final Function<String, String> source) {
         this.log = log;
+        this.source = source;
     }
 
     int getInteger(final String key) {
         var value = StringUtils.defaultString(read(key));
         try {
-            var integer = Integer.parseInt(value);
+            var integer = Integer.parseInt(value.trim());
             log.logInfo(">>>> %s: %s", key, integer);
             return integer;
         }
@@ -48,15 +52,21 @@ class Environment {
         return StringUtils.defaultString(value);
     }
 
+    String getSecret(final String key) {
+        var value = read(key);
+        log.logInfo(">>>> %s: %s", key, StringUtils.isBlank(value) ? "not set" : "****");
+        return StringUtils.defaultString(value);
+    }
+
     boolean getBoolean(final String name) {
         var value = StringUtils.defaultString(read(name));
-        var defined = StringUtils.isNotBlank(value) && !Strings.CI.equals(value, "false");
+        var defined = StringUtils.isNotBlank(value) && !Strings.CI.equals(value.trim(), "false");
         log.logInfo(">>>> %s: %b", name, defined);
         return defined;
     }
 
     @CheckForNull
     private String read(final String key) {
-        return System.getenv(key);
+        return source.apply(key);
     }
 }
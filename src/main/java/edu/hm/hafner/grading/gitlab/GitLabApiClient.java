@@ -0,0 +1,187 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApi;
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Diff;
+import org.gitlab4j.api.models.Discussion;
+import org.gitlab4j.api.models.Job;
+import org.gitlab4j.api.models.MergeRequest;
+import org.gitlab4j.api.models.MergeRequestVersion;
+import org.gitlab4j.api.models.Note;
+import org.gitlab4j.api.models.Pipeline;
+import org.gitlab4j.api.models.PipelineFilter;
+import org.gitlab4j.api.models.Position;
+import org.gitlab4j.models.Constants.LineType;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link GitLabClient} that uses the REST API of GitLab.
+ *
+ * @author Ullrich Hafner
+ */
+class GitLabApiClient implements GitLabClient {
+    private final GitLabApi gitLabApi;
+    private final ArtifactDownloader artifacts;
+    private final FilteredLog log;
+
+    GitLabApiClient(final String url, final String token, final FilteredLog log) {
+        this(createGitLabApi(url, token), log);
+    }
+
+    GitLabApiClient(final GitLabApi gitLabApi, final FilteredLog log) {
+        this.gitLabApi = gitLabApi;
+        this.log = log;
+
+        artifacts = new ArtifactDownloader(gitLabApi.getGitLabServerUrl(), gitLabApi.getAuthToken(), log);
+    }
+
+    static GitLabApi createGitLabApi(final String url, final String token) {
+        var gitLabApi = new GitLabApi(url, token);
+        gitLabApi.setRequestTimeout(5000, 10_000);
+        gitLabApi.enableRequestResponseLogging(Level.FINE, 4_096);
+        return gitLabApi;
+    }
+
+    GitLabApi getGitLabApi() {
+        return gitLabApi;
+    }
+
+    @Override
+    public List<MergeRequestVersion> getDiffVersions(final long projectId, final long mergeRequestIid)
+            throws GitLabApiException {
+        return gitLabApi.getMergeRequestApi().getDiffVersions(projectId, mergeRequestIid);
+    }
+
+    @Override
+    public MergeRequest getMergeRequest(final long projectId, final long mergeRequestIid)
+            throws GitLabApiException {
+        var api = gitLabApi.getMergeRequestApi();
+        try {
+            return api.getMergeRequest(projectId, mergeRequestIid);
+        }
+        catch (GitLabApiException _) {
+            return api.getMergeRequest(projectId, mergeRequestIid); // try again
+        }
+    }
+
+    @Override
+    public List<Diff> getDiffs(final long projectId, final long mergeRequestIid) throws GitLabApiException {
+        return gitLabApi.getMergeRequestApi().getDiffs(projectId, mergeRequestIid);
+    }
+
+    @Override
+    public List<Pipeline> getPipelines(final long projectId, final String ref) throws GitLabApiException {
+        var filter = new PipelineFilter();
+        filter.setRef(ref);
+        return gitLabApi.getPipelineApi().getPipelines(projectId, filter);
+    }
+
+    @Override
+    public List<Job> getJobs(final long projectId, final long pipelineId) throws GitLabApiException {
+        return gitLabApi.getJobApi().getJobsStream(projectId, pipelineId).toList();
+    }
+
+    @Override
+    public InputStream downloadArtifacts(final long projectId, final long jobId) throws GitLabApiException {
+        return gitLabApi.getJobApi().downloadArtifactsFile(projectId, jobId);
+    }
+
+    @Override
+    public void downloadArtifacts(final long projectId, final long jobId, final Path file)
+            throws GitLabApiException {
+        artifacts.download(projectId, jobId, file);
+    }
+
+    @Override
+    public List<Diff> compareCommits(final long projectId, final String from, final String to)
+            throws GitLabApiException {
+        return gitLabApi.getRepositoryApi().compare(projectId, from, to).getDiffs();
+    }
+
+    @Override
+    public String getHeadCommit(final long projectId, final long mergeRequestIid) throws GitLabApiException {
+        return gitLabApi.getMergeRequestApi().getMergeRequest(projectId, mergeRequestIid).getSha();
+    }
+
+    @Override
+    public List<Note> getMergeRequestNotes(final long projectId, final long mergeRequestIid, final String marker)
+            throws GitLabApiException {
+        return gitLabApi.getNotesApi().getMergeRequestNotes(projectId, mergeRequestIid).stream()
+                .filter(note -> note.getBody().startsWith(marker))
+                .sorted(Comparator.comparing(Note::getId))
+                .toList();
+    }
+
+    @Override
+    public List<Note> getAutogradingNotes(final long projectId, final long mergeRequestIid)
+            throws GitLabApiException {
+        log.logInfo("Fetching old auto-grading merge request summary notes");
+        var notes = new ArrayList<>(gitLabApi.getNotesApi()
+                .getMergeRequestNotes(projectId, mergeRequestIid).stream()
+                .filter(note -> note.getBody().startsWith(GitLabAutoGradingRunner.AUTOGRADING_MARKER))
+                .toList());
+        var ids = notes.stream().map(Note::getId).collect(Collectors.toCollection(HashSet::new));
+        log.logInfo("Fetching old auto-grading merge request annotation notes");
+        gitLabApi.getDiscussionsApi()
+                .getMergeRequestDiscussions(projectId, mergeRequestIid).stream()
+                .map(Discussion::getNotes).flatMap(Collection::stream)
+                .filter(note -> note.getBody().startsWith(GitLabAutoGradingRunner.AUTOGRADING_MARKER))
+                .filter(note -> ids.add(note.getId()))
+                .forEach(notes::add);
+        return notes;
+    }
+
+    @Override
+    public void deleteMergeRequestNote(final long projectId, final long mergeRequestIid, final long noteId)
+            throws GitLabApiException {
+        gitLabApi.getNotesApi().deleteMergeRequestNote(projectId, mergeRequestIid, noteId);
+    }
+
+    @Override
+    public void createMergeRequestNote(final long projectId, final long mergeRequestIid, final String body)
+            throws GitLabApiException {
+        gitLabApi.getNotesApi().createMergeRequestNote(projectId, mergeRequestIid, body, null, false);
+    }
+
+    @Override
+    public void updateMergeRequestNote(final long projectId, final long mergeRequestIid, final long noteId,
+            final String body) throws GitLabApiException {
+        gitLabApi.getNotesApi().updateMergeRequestNote(projectId, mergeRequestIid, noteId, body);
+    }
+
+    @Override
+    public void createMergeRequestDiscussion(final long projectId, final long mergeRequestIid, final String body,
+            @CheckForNull final Position position) throws GitLabApiException {
+        gitLabApi.getDiscussionsApi().createMergeRequestDiscussion(projectId, mergeRequestIid,
+                body, null, null, position);
+    }
+
+    @Override
+    public void createCommitComment(final long projectId, final String sha, final String body, final String path,
+            final int line) throws GitLabApiException {
+        gitLabApi.getCommitsApi().addComment(projectId, sha, body, path, line, LineType.NEW);
+    }
+
+    @Override
+    public void createCommitComment(final long projectId, final String sha, final String body)
+            throws GitLabApiException {
+        gitLabApi.getCommitsApi().addComment(projectId, sha, body);
+    }
+
+    @Override
+    public void close() {
+        gitLabApi.close();
+    }
+}
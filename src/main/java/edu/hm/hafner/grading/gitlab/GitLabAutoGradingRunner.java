@@ -1,36 +1,33 @@
 package edu.hm.hafner.grading.gitlab;
 
 import org.apache.commons.lang3.StringUtils;
-import org.gitlab4j.api.CommitsApi;
-import org.gitlab4j.api.DiscussionsApi;
-import org.gitlab4j.api.GitLabApi;
 import org.gitlab4j.api.GitLabApiException;
-import org.gitlab4j.api.models.Discussion;
 import org.gitlab4j.api.models.Job;
 import org.gitlab4j.api.models.MergeRequest;
 import org.gitlab4j.api.models.MergeRequestVersion;
-import org.gitlab4j.api.models.Note;
-import org.gitlab4j.api.models.PipelineFilter;
-import org.gitlab4j.api.models.Project;
 
 import edu.hm.hafner.grading.AggregatedScore;
 import edu.hm.hafner.grading.AutoGradingRunner;
 import edu.hm.hafner.grading.GradingReport;
 import edu.hm.hafner.grading.QualityGateResult;
 import edu.hm.hafner.util.FilteredLog;
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.logging.Level;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * GitLab action entrypoint for the autograding action.
@@ -45,6 +42,27 @@ public class GitLabAutoGradingRunner extends AutoGradingRunner {
 
     static final String AUTOGRADING_MARKER = "<!-- -[autograding-gitlab-action]- -->";
 
+    @CheckForNull
+    private RunConfiguration configuration;
+    @CheckForNull
+    private CachingGitLabClient gitLabClient;
+    private PositionResolver positions = PositionResolver.unknown();
+    private PublishingDeadline deadline = PublishingDeadline.unlimited();
+
+    /**
+     * Creates a new runner that reads its configuration from the environment.
+     */
+    public GitLabAutoGradingRunner() {
+        super();
+    }
+
+    @VisibleForTesting
+    GitLabAutoGradingRunner(final RunConfiguration configuration) {
+        super();
+
+        this.configuration = configuration;
+    }
+
     /**
      * The public entry point for the action in the docker container simply calls the autograding runner.
      */
@@ -57,44 +75,92 @@ public class GitLabAutoGradingRunner extends AutoGradingRunner {
         return "GitLab Autograding";
     }
 
+    /**
+     * Returns the configuration of this run. The configuration is read and validated only once, when this method is
+     * called for the first time.
+     *
+     * @param log
+     *         the logger
+     *
+     * @return the configuration
+     */
+    RunConfiguration getConfiguration(final FilteredLog log) {
+        if (configuration == null) {
+            configuration = RunConfiguration.load(log);
+        }
+        return configuration;
+    }
+
+    /**
+     * Returns the GitLab client of this run. The client is created when this method is called for the first time and
+     * caches all fetched entities until the end of the run.
+     *
+     * @param env
+     *         the configuration of the run
+     * @param log
+     *         the logger
+     *
+     * @return the GitLab client
+     */
+    private CachingGitLabClient getGitLabClient(final RunConfiguration env, final FilteredLog log) {
+        if (gitLabClient == null) {
+            gitLabClient = new CachingGitLabClient(
+                    new GitLabApiClient(env.getGitLabUrl(), env.getToken(), log), log);
+        }
+        return gitLabClient;
+    }
+
     @Override
     protected void publishGradingResult(final AggregatedScore score, final QualityGateResult qualityGateResult,
             final FilteredLog log) {
-        var env = new Environment(log);
-        var gitlabUrl = env.getString("CI_SERVER_URL");
-        if (StringUtils.isBlank(gitlabUrl)) {
-            log.logError("No CI_SERVER_URL defined - skipping");
-
-            return;
+        try {
+            publish(score, qualityGateResult, getConfiguration(log), log);
         }
-        var oAuthToken = env.getString("GITLAB_TOKEN");
-        if (oAuthToken.isBlank()) {
-            log.logError("No valid GITLAB_TOKEN found - skipping");
-
-            return;
+        finally {
+            if (gitLabClient != null) {
+                gitLabClient.close();
+                gitLabClient = null;
+            }
         }
+    }
 
-        try (var gitLabApi = new GitLabApi(gitlabUrl, oAuthToken)) {
-            gitLabApi.setRequestTimeout(5000, 10_000);
-            gitLabApi.enableRequestResponseLogging(Level.FINE, 4_096);
-
-            var projectId = env.getString("CI_PROJECT_ID");
-            if (projectId.isBlank() || !StringUtils.isNumeric(projectId)) {
-                log.logError("No valid CI_PROJECT_ID found - skipping");
+    private void publish(final AggregatedScore score, final QualityGateResult qualityGateResult,
+            final RunConfiguration env, final FilteredLog log) {
+        if (!env.isDryRun()) {
+            if (StringUtils.isBlank(env.getGitLabUrl())) {
+                log.logError("No CI_SERVER_URL defined - skipping");
 
                 return;
             }
-
-            var sha = env.getString("CI_COMMIT_SHA");
-            if (sha.isBlank()) {
-                log.logError("No valid CI_COMMIT_SHA found - skipping");
+            if (env.getToken().isBlank()) {
+                log.logError("No valid GITLAB_TOKEN found - skipping");
 
                 return;
             }
+        }
+        if (!env.hasValidProjectId()) {
+            log.logError("No valid CI_PROJECT_ID found - skipping");
+
+            return;
+        }
 
-            var project = gitLabApi.getProjectApi().getProject(Long.parseLong(projectId));
+        var sha = env.getCommitSha();
+        if (sha.isBlank()) {
+            log.logError("No valid CI_COMMIT_SHA found - skipping");
 
-            grade(score, qualityGateResult, gitLabApi, project, sha, env, log);
+            return;
+        }
+
+        if (env.hasPublishTimeBudget() && !env.isDryRun()) {
+            log.logInfo("Publishing results within %d seconds", env.getPublishTimeBudget().toSeconds());
+            deadline = PublishingDeadline.start(env.getPublishTimeBudget());
+        }
+        try (var transcript = env.isDryRun() ? createTranscript(env, log) : null) {
+            var client = transcript == null ? getGitLabClient(env, log) : transcript;
+            grade(score, qualityGateResult, client, Long.parseLong(env.getProjectId()), sha, env, log);
+        }
+        catch (IOException exception) {
+            log.logException(exception, "Can't create transcript %s - skipping", env.getTranscript());
         }
         catch (GitLabApiException exception) {
             throw new IllegalStateException("Error while accessing GitLab API", exception);
@@ -106,80 +172,192 @@ public class GitLabAutoGradingRunner extends AutoGradingRunner {
         return true;
     }
 
+    private TranscriptClient createTranscript(final RunConfiguration env, final FilteredLog log) throws IOException {
+        log.logInfo("Dry run: recording all GitLab requests in %s", env.getTranscript());
+
+        return new TranscriptClient(env.getTranscript(),
+                env.hasGitLabConnection() ? getGitLabClient(env, log) : null, log);
+    }
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
     private void grade(final AggregatedScore score, final QualityGateResult qualityGateResult,
-            final GitLabApi gitLabApi, final Project project, final String sha,
-            final Environment env, final FilteredLog log) throws GitLabApiException {
+            final GitLabClient client, final long projectId, final String sha,
+            final RunConfiguration env, final FilteredLog log) throws GitLabApiException {
         var errors = createErrorMessageMarkdown(log);
         var qualityGateDetails = qualityGateResult.createMarkdownSummary();
         var report = new GradingReport();
-        var comment = env.getBoolean("SKIP_DETAILS")
-                ? report.getMarkdownSummary(score, getTitleName(), env.getBoolean("SHOW_HEADERS"))
-                : report.getMarkdownDetails(score, getTitleName());
-        comment = AUTOGRADING_MARKER + "\n\n"
-                + comment + errors + qualityGateDetails
-                + "\n\n<hr />\n\nCreated by " + getAutogradingVersionLink(log);
-        var mergeRequestEnvironment = env.getString("CI_MERGE_REQUEST_IID");
-        if (mergeRequestEnvironment.isBlank() || !StringUtils.isNumeric(mergeRequestEnvironment)) {
-            if (showCommentsInCommit(log)) {
-                commentCommit(score, gitLabApi, project, sha, env, log, comment);
+        Supplier<String> summary = () -> report.getMarkdownSummary(score, env.getDisplayName(), env.isShowHeaders());
+        var details = env.isSkipDetails() ? summary.get() : report.getMarkdownDetails(score, env.getDisplayName());
+        var renderer = new SummaryNoteRenderer(env.getMaxNoteSize(), env.getDetailsArtifact(),
+                env.getDetailsArtifactUrl(), log);
+        var trend = env.hasScoreHistory() ? recordScores(score, summary.get(), env, log) : StringUtils.EMPTY;
+        var footer = "\n\n<hr />\n\nCreated by " + getAutogradingVersionLink(log)
+                + (env.isIncrementalReview() ? IncrementalReview.createMarker(sha) : StringUtils.EMPTY);
+        Function<String, String> comment = notice -> renderer.render(details, summary, errors,
+                qualityGateDetails + trend + notice, footer);
+        if (!env.hasMergeRequest()) {
+            if (!env.isSkipCommitComments()) {
+                commentCommit(score, client, projectId, sha, env, log, comment);
             }
             else {
                 log.logInfo("Skipping comments on single commit");
             }
         }
         else {
-            commentMergeRequest(score, gitLabApi, project, sha, env, log, mergeRequestEnvironment, comment);
+            commentMergeRequest(score, client, projectId, sha, env, log, comment);
         }
         log.logInfo("GitLab Action has finished");
     }
 
+    /**
+     * Records the scores of this run in the score history and renders the trend of the scores.
+     *
+     * @return the trend as Markdown, or an empty string if there are no previous runs
+     */
+    private String recordScores(final AggregatedScore score, final String summary, final RunConfiguration env,
+            final FilteredLog log) {
+        var history = new ScoreHistory(env.getScoreHistory());
+        var values = new LinkedHashMap<>(ScoreHistory.extractScores(summary));
+        values.putAll(ScoreHistory.extractCoverage(log.getInfoMessages()));
+        values.put("Warnings", score.getIssues().size());
+        var current = new ScoreHistory.Entry(env.getHistoryRef(), env.getCommitSha(), env.getPipelineId(), values);
+        try {
+            var previous = history.readLatest(current.ref(), ScoreHistory.TREND_LENGTH);
+            history.append(current);
+            log.logInfo("Recorded %d metric values in score history %s", values.size(), env.getScoreHistory());
+            return ScoreHistory.renderTrend(current, previous);
+        }
+        catch (IOException exception) {
+            log.logException(exception, "Can't update score history %s", env.getScoreHistory());
+
+            return StringUtils.EMPTY;
+        }
+    }
+
+    /**
+     * Publishes the line comments and the summary note in the merge request. If the runs are coordinated, then the
+     * results are published while holding the lock of the merge request, and nothing is published if the run has
+     * been superseded by a newer commit.
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void commentMergeRequest(final AggregatedScore score, final GitLabClient client, final long projectId,
+            final String sha, final RunConfiguration env, final FilteredLog log,
+            final Function<String, String> comment) throws GitLabApiException {
+        var mergeRequestId = env.getMergeRequestIid();
+
+        if (!env.isCoordinateRuns() || env.isDryRun()) {
+            publishMergeRequest(score, client, projectId, sha, env, log, comment);
+
+            return;
+        }
+
+        var headSha = env.getSourceBranchSha();
+        var superseded = new SupersededRunCheck(client, projectId, mergeRequestId, headSha, log);
+        deadline.stopIfSuperseded(superseded);
+        try (var lock = env.isSkipLockNotes()
+                ? MergeRequestLock.none()
+                : lockMergeRequest(client, projectId, mergeRequestId, headSha, superseded, log)) {
+            if (deadline.isSuperseded()) {
+                log.logInfo("Skipping publishing of the results of superseded commit %s", sha);
+
+                return;
+            }
+            publishMergeRequest(score, client, projectId, sha, env, log, comment);
+        }
+    }
+
     @SuppressWarnings("checkstyle:ParameterNumber")
-    private void commentMergeRequest(final AggregatedScore score, final GitLabApi gitLabApi, final Project project,
-            final String sha, final Environment env, final FilteredLog log, final String mergeRequestEnvironment,
-            final String comment) throws GitLabApiException {
-        var mergeRequestId = Long.parseLong(mergeRequestEnvironment);
+    private MergeRequestLock lockMergeRequest(final GitLabClient client, final long projectId,
+            final long mergeRequestId, final String sha, final SupersededRunCheck superseded, final FilteredLog log) {
+        try {
+            return MergeRequestLock.acquire(client, projectId, mergeRequestId, sha, superseded, log);
+        }
+        catch (GitLabApiException exception) {
+            log.logException(exception, "Can't lock merge request !%d - publishing without coordination",
+                    mergeRequestId);
 
-        deleteExistingComments(gitLabApi, project, mergeRequestId, log);
+            return MergeRequestLock.none();
+        }
+    }
+
+    /**
+     * Publishes the line comments and the summary note in the merge request.
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void publishMergeRequest(final AggregatedScore score, final GitLabClient client, final long projectId,
+            final String sha, final RunConfiguration env, final FilteredLog log,
+            final Function<String, String> comment) throws GitLabApiException {
+        var mergeRequestId = env.getMergeRequestIid();
+        var review = env.isIncrementalReview()
+                ? startIncrementalReview(client, projectId, mergeRequestId, sha, log)
+                : IncrementalReview.all();
+        new SummaryNotePublisher(client, projectId, mergeRequestId, deadline, log).publish(
+                env.isUpdateNote(), review.isIncremental(), comment,
+                () -> publishLineComments(score, client, projectId, sha, env, review, log));
+    }
 
-        var versions = gitLabApi.getMergeRequestApi()
-                .getDiffVersions(project.getId(), mergeRequestId);
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void publishLineComments(final AggregatedScore score, final GitLabClient client, final long projectId,
+            final String sha, final RunConfiguration env, final IncrementalReview review, final FilteredLog log)
+            throws GitLabApiException {
+        var mergeRequestId = env.getMergeRequestIid();
+        var versions = client.getDiffVersions(projectId, mergeRequestId);
         if (versions.isEmpty()) {
             log.logInfo("Diff versions are empty, adding line comments to commit");
-            createLineCommentsOnCommit(gitLabApi, project, sha, score, env, log);
+            createLineCommentsOnCommit(client, projectId, sha, score, env, review, log);
         }
         else {
             log.logInfo("Diff versions found, adding line comments to merge request diff");
             try {
-                var mergeRequest = getMergeRequest(gitLabApi, project, mergeRequestId);
-                createLineCommentsOnDiff(gitLabApi.getCommitsApi(), gitLabApi.getDiscussionsApi(), mergeRequest,
-                        versions.getFirst(), score, env, log);
+                var mergeRequest = client.getMergeRequest(projectId, mergeRequestId);
+                createLineCommentsOnDiff(client, mergeRequest, versions.getFirst(), score, env, review, log);
             }
             catch (GitLabApiException exception) {
                 log.logException(exception, "While commenting on merge request !%d diff, an error occurred. "
                         + "Retrying to comment directly on the commit", mergeRequestId);
-                createLineCommentsOnCommit(gitLabApi, project, sha, score, env, log);
+                createLineCommentsOnCommit(client, projectId, sha, score, env, review, log);
             }
         }
-
-        createCommentOnMergeRequest(gitLabApi, project, mergeRequestEnvironment, comment, log);
     }
 
-    private MergeRequest getMergeRequest(final GitLabApi gitLabApi, final Project project, final long mergeRequestId)
-            throws GitLabApiException {
-        var api = gitLabApi.getMergeRequestApi();
+    /**
+     * Determines the lines that have been changed since the commit that has been graded by the previous run. If there
+     * is no previous run, or if the commits cannot be compared (e.g., after a force push), then all lines are reviewed.
+     */
+    private IncrementalReview startIncrementalReview(final GitLabClient client, final long projectId,
+            final long mergeRequestId, final String sha, final FilteredLog log) throws GitLabApiException {
+        var graded = IncrementalReview.readGradedCommit(client.getAutogradingNotes(projectId, mergeRequestId));
+        if (graded.isEmpty()) {
+            log.logInfo("No graded commit of a previous run found - reviewing all changes");
+
+            return IncrementalReview.all();
+        }
         try {
-            return api.getMergeRequest(project.getId(), mergeRequestId);
+            var changes = new DiffParser().getModifiedLines(client.compareCommits(projectId, graded.get(), sha));
+            log.logInfo("Reviewing only the changes since the graded commit %s (%d files)", graded.get(),
+                    changes.size());
+
+            return IncrementalReview.of(changes);
         }
-        catch (GitLabApiException _) {
-            return api.getMergeRequest(project.getId(), mergeRequestId); // try again
+        catch (GitLabApiException exception) {
+            log.logException(exception, "Can't compare graded commit %s with %s - reviewing all changes",
+                    graded.get(), sha);
+
+            return IncrementalReview.all();
         }
     }
 
-    private void commentCommit(final AggregatedScore score, final GitLabApi gitLabApi, final Project project,
-            final String sha, final Environment env, final FilteredLog log, final String comment)
-            throws GitLabApiException {
-        createLineCommentsOnCommit(gitLabApi, project, sha, score, env, log);
-        createCommentOnCommit(gitLabApi, project, sha, comment);
+    /**
+     * Publishes the line comments and the summary comment of a commit. Since commit comments cannot be updated, the
+     * summary comment is always published last: if publishing is limited by a time budget, then a part of the budget
+     * is reserved for the summary comment.
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void commentCommit(final AggregatedScore score, final GitLabClient client, final long projectId,
+            final String sha, final RunConfiguration env, final FilteredLog log,
+            final Function<String, String> comment) throws GitLabApiException {
+        createLineCommentsOnCommit(client, projectId, sha, score, env, IncrementalReview.all(), log);
+        client.createCommitComment(projectId, sha, comment.apply(deadline.createNotice()));
     }
 
     private String getAutogradingVersionLink(final FilteredLog log) {
@@ -189,120 +367,55 @@ public class GitLabAutoGradingRunner extends AutoGradingRunner {
                 .formatted(getDisplayName(), version, version, sha);
     }
 
-    private String getTitleName() {
-        return StringUtils.defaultIfBlank(System.getenv("DISPLAY_NAME"), "Autograding score");
-    }
-
-    private void createLineCommentsOnDiff(final CommitsApi commitsApi, final DiscussionsApi discussionsApi,
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void createLineCommentsOnDiff(final GitLabClient client,
             final MergeRequest mergeRequest, final MergeRequestVersion lastVersion,
-            final AggregatedScore score, final Environment env, final FilteredLog log) {
+            final AggregatedScore score, final RunConfiguration env, final IncrementalReview review,
+            final FilteredLog log) {
         if (canCreateLineComments(env)) {
-            var annotationBuilder = new GitLabDiffCommentBuilder(commitsApi, getModifiedFilesAndLines(),
-                    discussionsApi, mergeRequest, lastVersion, getWorkingDirectory(env), log);
-            annotationBuilder.createAnnotations(score);
+            var annotationBuilder = new GitLabDiffCommentBuilder(client, getModifiedFilesAndLines(),
+                    mergeRequest, lastVersion, positions, env, review, deadline, log);
+            annotationBuilder.createRankedAnnotations(score);
         }
         else {
             log.logInfo("Skipping line comments on merge request diff");
         }
     }
 
-    private void createLineCommentsOnCommit(final GitLabApi gitLabApi, final Project project, final String sha,
-            final AggregatedScore score, final Environment env, final FilteredLog log) {
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void createLineCommentsOnCommit(final GitLabClient client, final long projectId, final String sha,
+            final AggregatedScore score, final RunConfiguration env, final IncrementalReview review,
+            final FilteredLog log) {
         if (canCreateLineComments(env)) {
-            var commentBuilder = new GitLabCommitCommentBuilder(gitLabApi.getCommitsApi(), getModifiedFilesAndLines(),
-                    project.getId(), sha, getWorkingDirectory(env), log);
-            commentBuilder.createAnnotations(score);
+            var commentBuilder = new GitLabCommitCommentBuilder(client, getModifiedFilesAndLines(),
+                    projectId, sha, env, review, deadline, log);
+            commentBuilder.createRankedAnnotations(score);
         }
         else {
             log.logInfo("Skipping line comments on commit");
         }
     }
 
-    private String getWorkingDirectory(final Environment env) {
-        return env.getString("CI_PROJECT_DIR") + "/";
-    }
-
-    private boolean canCreateLineComments(final Environment env) {
-        return !env.getBoolean("SKIP_LINE_COMMENTS");
-    }
-
-    private void deleteExistingComments(final GitLabApi gitLabApi, final Project project,
-            final long mergeRequestId, final FilteredLog log) throws GitLabApiException {
-        var projectId = project.getId();
-
-        log.logInfo("Deleting old auto-grading merge request summary notes");
-        gitLabApi.getNotesApi()
-                .getMergeRequestNotes(projectId, mergeRequestId).stream()
-                .filter(note -> note.getBody().startsWith(AUTOGRADING_MARKER))
-                .forEach(note -> delete(gitLabApi, note, projectId, mergeRequestId));
-        log.logInfo("Deleting old auto-grading merge request annotation notes");
-        gitLabApi.getDiscussionsApi()
-                .getMergeRequestDiscussions(projectId, mergeRequestId).stream()
-                .map(Discussion::getNotes).flatMap(Collection::stream)
-                .filter(note -> note.getBody().startsWith(AUTOGRADING_MARKER))
-                .forEach(note -> delete(gitLabApi, note, projectId, mergeRequestId));
-    }
-
-    private void createCommentOnMergeRequest(final GitLabApi gitLabApi, final Project project,
-            final String mergeRequestId,
-            final String comment, final FilteredLog log) throws GitLabApiException {
-        var projectId = project.getId();
-        var mergeRequestIid = Long.parseLong(mergeRequestId);
-
-        log.logInfo("Creating merge request note");
-        gitLabApi.getNotesApi().createMergeRequestNote(projectId, mergeRequestIid, comment, null, false);
-    }
-
-    private void delete(final GitLabApi gitLabApi, final Note note,
-            final Long projectId, final long mergeRequestIid) {
-        try {
-            gitLabApi.getNotesApi().deleteMergeRequestNote(projectId, mergeRequestIid, note.getId());
-        }
-        catch (GitLabApiException _) {
-            // ignore exceptions
-        }
-    }
-
-    private void createCommentOnCommit(final GitLabApi gitLabApi, final Project project, final String sha,
-            final String comment)
-            throws GitLabApiException {
-        gitLabApi.getCommitsApi().addComment(project.getId(), sha, comment);
-    }
-
-    private boolean showCommentsInCommit(final FilteredLog log) {
-        var name = "SKIP_COMMIT_COMMENTS";
-        var defined = StringUtils.isNotBlank(System.getenv(name));
-        log.logInfo(">>>> %s: %b", name, defined);
-        return !defined;
+    private boolean canCreateLineComments(final RunConfiguration env) {
+        return !env.isSkipLineComments();
     }
 
     @Override
     protected Map<String, Set<Integer>> extractModifiedLinesFromDiff(final FilteredLog log) {
-        var env = new Environment(log);
-        var gitlabUrl = env.getString("CI_SERVER_URL");
-        var oAuthToken = env.getString("GITLAB_TOKEN");
-        var projectId = env.getString("CI_PROJECT_ID");
-        var mergeRequest = env.getString("CI_MERGE_REQUEST_IID");
-
-        if (gitlabUrl.isBlank() || oAuthToken.isBlank() || projectId.isBlank() || mergeRequest.isBlank()) {
+        var env = getConfiguration(log);
+        if (!env.hasGitLabConnection() || !env.hasValidProjectId() || !env.hasMergeRequest()) {
             return Map.of();
         }
 
-        long mergeRequestId;
         try {
-            mergeRequestId = Long.parseLong(mergeRequest);
-        }
-        catch (NumberFormatException e) {
-            log.logException(e, "No valid merge request ID found");
-            return Map.of();
-        }
-
-        try (GitLabApi gitLabApi = new GitLabApi(gitlabUrl, oAuthToken)) {
-            gitLabApi.setRequestTimeout(5000, 10_000);
-            gitLabApi.enableRequestResponseLogging(Level.FINE, 4_096);
-
-            var diffs = gitLabApi.getMergeRequestApi().getDiffs(projectId, mergeRequestId);
-            return new DiffParser().getModifiedLines(diffs);
+            var client = getGitLabClient(env, log);
+            var projectId = Long.parseLong(env.getProjectId());
+            if (env.isGraphQlContext()) {
+                loadContext(client, projectId, env, log);
+            }
+            var diffs = client.getDiffs(projectId, env.getMergeRequestIid());
+            positions = new DiffParser().getPositions(diffs);
+            return positions.getModifiedLines();
         }
         catch (GitLabApiException e) {
             log.logException(e, "Error while accessing GitLab API");
@@ -311,25 +424,32 @@ public class GitLabAutoGradingRunner extends AutoGradingRunner {
         return Map.of();
     }
 
+    private void loadContext(final CachingGitLabClient client, final long projectId, final RunConfiguration env,
+            final FilteredLog log) {
+        try {
+            var start = System.nanoTime();
+            var gitLab = new GitLabGraphQlReader(env.getGitLabUrl(), env.getToken());
+            var context = MergeRequestContext.load(gitLab, env.getProjectPath(), projectId, env.getMergeRequestIid());
+            client.prime(projectId, env.getMergeRequestIid(), context);
+            log.logInfo("Loaded merge request context with %d GraphQL queries in %d ms", gitLab.getRequests(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        catch (GitLabApiException exception) {
+            log.logException(exception, "Can't load merge request context with GraphQL, using REST API");
+        }
+    }
+
     @Override
     protected Optional<Path> fetchDeltaReportsFromPreviousPipeline(final FilteredLog log) {
-        var env = new Environment(log);
-        var gitlabUrl = env.getString("CI_SERVER_URL");
-        var oAuthToken = env.getString("GITLAB_TOKEN");
-        var projectId = env.getString("CI_PROJECT_ID");
-        var branch = env.getString("CI_DEFAULT_BRANCH");
-
-        if (StringUtils.isAnyBlank(gitlabUrl, oAuthToken, projectId, projectId)) {
+        var env = getConfiguration(log);
+        if (!env.hasGitLabConnection() || !env.hasValidProjectId()) {
             return NO_DELTA_AVAILABLE;
         }
 
-        try (var gitLabApi = new GitLabApi(gitlabUrl, oAuthToken)) {
-            gitLabApi.setRequestTimeout(5000, 10_000);
-            gitLabApi.enableRequestResponseLogging(Level.FINE, 4_096);
-
-            var filter = new PipelineFilter();
-            filter.setRef(branch);
-            var pipelines = gitLabApi.getPipelineApi().getPipelines(projectId, filter);
+        var projectId = Long.parseLong(env.getProjectId());
+        try {
+            var client = getGitLabClient(env, log);
+            var pipelines = client.getPipelines(projectId, env.getDefaultBranch());
             if (pipelines.isEmpty()) {
                 log.logInfo(">>> No pipeline found to download Artefacts for delta calculation.");
 
@@ -337,15 +457,23 @@ public class GitLabAutoGradingRunner extends AutoGradingRunner {
             }
 
             log.logInfo(">>> Delta Pipeline %s", pipelines.getFirst().getId());
-            var jobs = gitLabApi.getJobApi().getJobsStream(projectId, pipelines.getFirst().getId());
-            var job = jobs.filter(j -> j.getName().equals("maven")).findFirst();
+            var job = client.getJobs(projectId, pipelines.getFirst().getId()).stream()
+                    .filter(j -> j.getName().equals("maven")).findFirst();
             if (job.isEmpty()) {
                 log.logInfo(">>> No build job found");
 
                 return NO_DELTA_AVAILABLE;
             }
 
-            return readReports(log, gitLabApi, projectId, job.get());
+            if (env.hasDeltaCache()) {
+                return readCachedReports(log, client, projectId, job.get(), env.getDeltaCache());
+            }
+            return readReports(log, client, projectId, job.get(), Files.createTempDirectory("artifacts"));
+        }
+        catch (IOException e) {
+            log.logException(e, "Error while saving delta files");
+
+            return NO_DELTA_AVAILABLE;
         }
         catch (GitLabApiException e) {
             log.logException(e, "Error while accessing GitLab API");
@@ -354,28 +482,64 @@ public class GitLabAutoGradingRunner extends AutoGradingRunner {
         }
     }
 
-    @SuppressWarnings("PMD.ExceptionAsFlowControl")
-    private Optional<Path> readReports(final FilteredLog log, final GitLabApi gitLabApi, final String projectId,
-            final Job job) {
-        try (var inputStream = gitLabApi.getJobApi().downloadArtifactsFile(projectId, job.getId());
-                var zis = new ZipInputStream(inputStream)) {
-            var tempDir = Files.createTempDirectory("artifacts");
-            for (ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
-                var outPath = tempDir.resolve(entry.getName()).normalize();
-                if (!outPath.startsWith(tempDir)) {
-                    throw new IOException("Invalid ZIP entry (zip slip): " + entry.getName());
-                }
-
-                if (entry.isDirectory()) {
-                    Files.createDirectories(outPath);
-                }
-                else {
-                    Files.createDirectories(Objects.requireNonNull(outPath.getParent()));
-                    Files.copy(zis, outPath, StandardCopyOption.REPLACE_EXISTING);
-                }
-                zis.closeEntry();
+    // Reports of a job never change, so all runs that share the cache can reuse the downloaded reports
+    private Optional<Path> readCachedReports(final FilteredLog log, final GitLabClient client, final long projectId,
+            final Job job, final Path cache) throws IOException {
+        var cached = cache.resolve(String.valueOf(projectId)).resolve(String.valueOf(job.getId()));
+        if (Files.isDirectory(cached)) {
+            log.logInfo(">>> Using cached delta reports of job %d", job.getId());
+
+            return Optional.of(cached);
+        }
+
+        Files.createDirectories(Objects.requireNonNull(cached.getParent()));
+        var directory = Files.createTempDirectory(cache, "job");
+        var extracted = readReports(log, client, projectId, job, directory);
+        if (extracted.isEmpty()) {
+            deleteDirectory(directory, log);
+
+            return NO_DELTA_AVAILABLE;
+        }
+        try {
+            Files.move(directory, cached, StandardCopyOption.ATOMIC_MOVE);
+            log.logInfo(">>> Stored delta reports of job %d in %s", job.getId(), cache);
+
+            return Optional.of(cached);
+        }
+        catch (IOException exception) {
+            if (Files.isDirectory(cached)) { // another run stored the same reports in the meantime
+                deleteDirectory(directory, log);
+
+                return Optional.of(cached);
+            }
+            log.logException(exception, "Can't store delta reports of job %d in %s", job.getId(), cache);
+
+            return extracted;
+        }
+    }
+
+    private void deleteDirectory(final Path directory, final FilteredLog log) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        catch (IOException exception) {
+            log.logException(exception, "Can't delete temporary folder %s", directory);
+        }
+    }
+
+    // The archive is downloaded into a local file first, so that an interrupted download can be resumed
+    private Optional<Path> readReports(final FilteredLog log, final GitLabClient client, final long projectId,
+            final Job job, final Path directory) {
+        Path archive = null;
+        try {
+            archive = Files.createTempFile("artifacts", ".zip");
+            client.downloadArtifacts(projectId, job.getId(), archive);
+            try (var inputStream = Files.newInputStream(archive)) {
+                ZipExtractor.extract(inputStream, directory);
             }
-            return Optional.of(tempDir);
+            return Optional.of(directory);
         }
         catch (IOException e) {
             log.logException(e, "Error while saving delta files");
@@ -387,5 +551,19 @@ public class GitLabAutoGradingRunner extends AutoGradingRunner {
 
             return NO_DELTA_AVAILABLE;
         }
+        finally {
+            deleteArchive(archive, log);
+        }
+    }
+
+    private void deleteArchive(@CheckForNull final Path archive, final FilteredLog log) {
+        if (archive != null) {
+            try {
+                Files.deleteIfExists(archive);
+            }
+            catch (IOException exception) {
+                log.logException(exception, "Can't delete artifacts archive %s", archive);
+            }
+        }
     }
 }
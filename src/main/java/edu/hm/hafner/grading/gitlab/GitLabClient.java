@@ -0,0 +1,324 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Diff;
+import org.gitlab4j.api.models.Job;
+import org.gitlab4j.api.models.MergeRequest;
+import org.gitlab4j.api.models.MergeRequestVersion;
+import org.gitlab4j.api.models.Note;
+import org.gitlab4j.api.models.Pipeline;
+import org.gitlab4j.api.models.Position;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Provides all GitLab operations that are required by the action.
+ *
+ * @author Ullrich Hafner
+ */
+interface GitLabClient extends AutoCloseable {
+    /**
+     * Returns the diff versions of a merge request, the newest version first.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     *
+     * @return the diff versions
+     * @throws GitLabApiException
+     *         if the versions cannot be fetched
+     */
+    List<MergeRequestVersion> getDiffVersions(long projectId, long mergeRequestIid) throws GitLabApiException;
+
+    /**
+     * Returns the specified merge request.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     *
+     * @return the merge request
+     * @throws GitLabApiException
+     *         if the merge request cannot be fetched
+     */
+    MergeRequest getMergeRequest(long projectId, long mergeRequestIid) throws GitLabApiException;
+
+    /**
+     * Returns the diffs of the latest version of a merge request.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     *
+     * @return the diffs of all changed files
+     * @throws GitLabApiException
+     *         if the diffs cannot be fetched
+     */
+    List<Diff> getDiffs(long projectId, long mergeRequestIid) throws GitLabApiException;
+
+    /**
+     * Returns the pipelines of a branch, the newest pipeline first.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param ref
+     *         the name of the branch
+     *
+     * @return the pipelines
+     * @throws GitLabApiException
+     *         if the pipelines cannot be fetched
+     */
+    List<Pipeline> getPipelines(long projectId, String ref) throws GitLabApiException;
+
+    /**
+     * Returns the jobs of a pipeline.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param pipelineId
+     *         the ID of the pipeline
+     *
+     * @return the jobs
+     * @throws GitLabApiException
+     *         if the jobs cannot be fetched
+     */
+    List<Job> getJobs(long projectId, long pipelineId) throws GitLabApiException;
+
+    /**
+     * Downloads the artifacts archive of a job.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param jobId
+     *         the ID of the job
+     *
+     * @return the ZIP archive with the artifacts, the caller is responsible for closing the stream
+     * @throws GitLabApiException
+     *         if the artifacts cannot be downloaded
+     */
+    InputStream downloadArtifacts(long projectId, long jobId) throws GitLabApiException;
+
+    /**
+     * Downloads the artifacts archive of a job into a local file. The default implementation copies the stream of
+     * {@link #downloadArtifacts(long, long)} into the file.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param jobId
+     *         the ID of the job
+     * @param file
+     *         the file to store the ZIP archive in, an existing file will be overwritten
+     *
+     * @throws GitLabApiException
+     *         if the artifacts cannot be downloaded
+     */
+    default void downloadArtifacts(final long projectId, final long jobId, final Path file) throws GitLabApiException {
+        try (var artifacts = downloadArtifacts(projectId, jobId)) {
+            Files.copy(artifacts, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException exception) {
+            throw new GitLabApiException(exception);
+        }
+    }
+
+    /**
+     * Returns the changes between two commits of a project.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param from
+     *         the SHA of the older commit
+     * @param to
+     *         the SHA of the newer commit
+     *
+     * @return the diffs of all changed files
+     * @throws GitLabApiException
+     *         if the commits cannot be compared
+     */
+    List<Diff> compareCommits(long projectId, String from, String to) throws GitLabApiException;
+
+    /**
+     * Returns the SHA of the current head commit of a merge request. In contrast to
+     * {@link #getMergeRequest(long, long)}, the value is always fetched from GitLab, so that commits that have been
+     * pushed while the action is running are detected.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     *
+     * @return the SHA of the head commit
+     * @throws GitLabApiException
+     *         if the merge request cannot be fetched
+     */
+    String getHeadCommit(long projectId, long mergeRequestIid) throws GitLabApiException;
+
+    /**
+     * Returns all notes of a merge request that start with the specified marker, the oldest note first. The notes are
+     * always fetched from GitLab.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     * @param marker
+     *         the marker at the start of the notes
+     *
+     * @return the notes
+     * @throws GitLabApiException
+     *         if the notes cannot be fetched
+     */
+    List<Note> getMergeRequestNotes(long projectId, long mergeRequestIid, String marker) throws GitLabApiException;
+
+    /**
+     * Returns all notes and discussion notes of a merge request that have been created by a previous run of the
+     * action.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     *
+     * @return the notes of previous runs
+     * @throws GitLabApiException
+     *         if the notes cannot be fetched
+     */
+    List<Note> getAutogradingNotes(long projectId, long mergeRequestIid) throws GitLabApiException;
+
+    /**
+     * Deletes a note or discussion note of a merge request.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     * @param noteId
+     *         the ID of the note
+     *
+     * @throws GitLabApiException
+     *         if the note cannot be deleted
+     */
+    void deleteMergeRequestNote(long projectId, long mergeRequestIid, long noteId) throws GitLabApiException;
+
+    /**
+     * Deletes all notes and discussion notes of a merge request that have been created by a previous run of the
+     * action. Notes that cannot be deleted are skipped.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     *
+     * @throws GitLabApiException
+     *         if the notes cannot be fetched
+     */
+    default void deleteAutogradingNotes(final long projectId, final long mergeRequestIid) throws GitLabApiException {
+        for (Note note : getAutogradingNotes(projectId, mergeRequestIid)) {
+            try {
+                deleteMergeRequestNote(projectId, mergeRequestIid, note.getId());
+            }
+            catch (GitLabApiException _) {
+                // ignore exceptions
+            }
+        }
+    }
+
+    /**
+     * Creates a new note in a merge request.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     * @param body
+     *         the Markdown content of the note
+     *
+     * @throws GitLabApiException
+     *         if the note cannot be created
+     */
+    void createMergeRequestNote(long projectId, long mergeRequestIid, String body) throws GitLabApiException;
+
+    /**
+     * Replaces the content of an existing note in a merge request.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     * @param noteId
+     *         the ID of the note
+     * @param body
+     *         the new Markdown content of the note
+     *
+     * @throws GitLabApiException
+     *         if the note cannot be updated
+     */
+    void updateMergeRequestNote(long projectId, long mergeRequestIid, long noteId, String body)
+            throws GitLabApiException;
+
+    /**
+     * Creates a new discussion in a merge request.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     * @param body
+     *         the Markdown content of the discussion
+     * @param position
+     *         the position of the discussion in the diff, or {@code null} for a discussion without a position
+     *
+     * @throws GitLabApiException
+     *         if the discussion cannot be created
+     */
+    void createMergeRequestDiscussion(long projectId, long mergeRequestIid, String body,
+            @CheckForNull Position position) throws GitLabApiException;
+
+    /**
+     * Creates a new comment for a line of a commit.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param sha
+     *         the SHA of the commit
+     * @param body
+     *         the Markdown content of the comment
+     * @param path
+     *         the path of the file to comment
+     * @param line
+     *         the line to comment
+     *
+     * @throws GitLabApiException
+     *         if the comment cannot be created
+     */
+    void createCommitComment(long projectId, String sha, String body, String path, int line)
+            throws GitLabApiException;
+
+    /**
+     * Creates a new comment for a commit.
+     *
+     * @param projectId
+     *         the ID of the project
+     * @param sha
+     *         the SHA of the commit
+     * @param body
+     *         the Markdown content of the comment
+     *
+     * @throws GitLabApiException
+     *         if the comment cannot be created
+     */
+    void createCommitComment(long projectId, String sha, String body) throws GitLabApiException;
+
+    @Override
+    void close();
+}
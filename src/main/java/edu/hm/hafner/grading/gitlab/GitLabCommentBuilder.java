@@ -2,51 +2,218 @@ package edu.hm.hafner.grading.gitlab;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.gitlab4j.api.CommitsApi;
 
+import edu.hm.hafner.analysis.Issue;
+import edu.hm.hafner.analysis.Severity;
+import edu.hm.hafner.grading.AggregatedScore;
 import edu.hm.hafner.grading.CommentBuilder;
 import edu.hm.hafner.util.FilteredLog;
 import edu.hm.hafner.util.VisibleForTesting;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 
 /**
- * Base class for comment builders that publish comments to GitLab.
+ * Base class for comment builders that publish comments to GitLab. If the number of comments is limited, then all
+ * candidates are ranked by severity and by proximity to the changed lines before publishing, so that the limited
+ * number of comments shows the most useful annotations. If publishing is limited by a {@link PublishingDeadline}, then
+ * all candidates are ranked as well, and the comments are published in the order of their rank until the time budget
+ * has been exhausted. Publishing stops as well if the run has been superseded by a newer commit. In an
+ * {@link IncrementalReview}, only annotations of lines that have been changed since the previous run are published.
  *
  * @author Ullrich Hafner
  */
 abstract class GitLabCommentBuilder extends CommentBuilder {
     private final FilteredLog log;
-    private final CommitsApi commitsApi;
+    private final GitLabClient client;
+    private final RunConfiguration configuration;
     private final int maxCoverageComments;
     private final int maxWarningComments;
     private final boolean hideWarningDescription;
     private final boolean skipCommitComments;
+    private final Map<String, Set<Integer>> modifiedFiles;
+    private final IncrementalReview review;
+    private final PublishingDeadline deadline;
 
-    GitLabCommentBuilder(final CommitsApi commitsApi, final Map<String, Set<Integer>> modifiedFiles,
-            final FilteredLog log, final String... prefixesToRemove) {
-        super(modifiedFiles, prefixesToRemove);
+    private boolean isRanking;
+    private Map<String, List<Issue>> issues = Map.of();
+    private AnnotationRanker warnings = new AnnotationRanker(0, Map.of());
+    private AnnotationRanker coverage = new AnnotationRanker(0, Map.of());
 
-        this.commitsApi = commitsApi;
+    GitLabCommentBuilder(final GitLabClient client, final Map<String, Set<Integer>> modifiedFiles,
+            final RunConfiguration configuration, final IncrementalReview review, final PublishingDeadline deadline,
+            final FilteredLog log) {
+        super(modifiedFiles, configuration.getWorkingDirectory());
+
+        this.client = client;
         this.log = log;
+        this.modifiedFiles = modifiedFiles;
+        this.configuration = configuration;
+        this.review = review;
+        this.deadline = deadline;
+
+        maxWarningComments = configuration.getMaxWarningComments();
+        maxCoverageComments = configuration.getMaxCoverageComments();
+        hideWarningDescription = configuration.isSkipWarningDescription();
+        skipCommitComments = configuration.isSkipCommitComments();
+    }
+
+    /**
+     * Creates comments for all annotations of the specified score. If the number of comments or the publishing time
+     * is limited, then the annotations are ranked first and only the best annotations are published.
+     *
+     * @param score
+     *         the score to create the comments for
+     */
+    void createRankedAnnotations(final AggregatedScore score) {
+        if (maxWarningComments == Integer.MAX_VALUE && maxCoverageComments == Integer.MAX_VALUE
+                && !deadline.isLimited()) {
+            createAnnotations(score); // no limits, all annotations will be published in report order
+        }
+        else {
+            createSelectedAnnotations(score);
+        }
+        publishPendingComments();
+    }
+
+    private void createSelectedAnnotations(final AggregatedScore score) {
+        issues = mapIssues(score);
+        warnings = new AnnotationRanker(maxWarningComments, modifiedFiles);
+        coverage = new AnnotationRanker(maxCoverageComments, modifiedFiles);
+
+        isRanking = true;
+        try {
+            createAnnotations(score);
+        }
+        finally {
+            isRanking = false;
+        }
 
-        var env = new Environment(log);
-        maxWarningComments = env.getInteger("MAX_WARNING_COMMENTS");
-        maxCoverageComments = env.getInteger("MAX_COVERAGE_COMMENTS");
-        hideWarningDescription = env.getBoolean("SKIP_WARNING_DESCRIPTION");
-        skipCommitComments = env.getBoolean("SKIP_COMMIT_COMMENTS");
+        var selectedWarnings = warnings.getSelection();
+        var selectedCoverage = coverage.getSelection();
+        log.logInfo("Publishing %d warning and %d coverage comments ranked by severity and proximity to changes",
+                selectedWarnings.size(), selectedCoverage.size());
+        publish(selectedWarnings);
+        publish(selectedCoverage);
+    }
+
+    private void publish(final List<Annotation> annotations) {
+        for (int i = 0; i < annotations.size(); i++) {
+            if (!deadline.hasTimeLeft()) {
+                defer(annotations.size() - i);
+
+                return;
+            }
+            createComment(annotations.get(i));
+        }
+    }
+
+    /**
+     * Records comments that are not published since the publishing time budget has been exhausted.
+     *
+     * @param count
+     *         the number of deferred comments
+     */
+    protected void defer(final int count) {
+        if (deadline.isSuperseded()) {
+            log.logInfo("Run has been superseded - skipping %d comments", count);
+        }
+        else {
+            log.logInfo("Publishing time budget exhausted - deferring %d comments", count);
+        }
+        deadline.defer(count);
+    }
+
+    protected boolean hasTimeLeft() {
+        return deadline.hasTimeLeft();
+    }
+
+    /**
+     * Publishes all comments that have been collected by {@link #createComment(Annotation)} but not yet sent to
+     * GitLab. This method is called after all annotations have been created. The default implementation does nothing.
+     */
+    protected void publishPendingComments() {
+        // nothing to do by default
+    }
+
+    private Map<String, List<Issue>> mapIssues(final AggregatedScore score) {
+        var mapping = new HashMap<String, List<Issue>>();
+        for (Issue issue : score.getIssues()) {
+            mapping.computeIfAbsent(createKey(issue.getLineStart(), issue.getMessage()), _ -> new ArrayList<>())
+                    .add(issue);
+        }
+        return mapping;
+    }
+
+    private String createKey(final int line, final String message) {
+        return line + ":" + message;
+    }
+
+    // The file name of an issue might be absolute, the annotation uses the path relative to the repository
+    private Severity getSeverity(final String relativePath, final int line, final String message) {
+        var path = FilenameUtils.separatorsToUnix(relativePath);
+        return issues.getOrDefault(createKey(line, message), List.of()).stream()
+                .filter(issue -> isSameFile(FilenameUtils.separatorsToUnix(issue.getFileName()), path))
+                .map(Issue::getSeverity)
+                .findFirst()
+                .orElse(Severity.WARNING_NORMAL);
+    }
+
+    private boolean isSameFile(final String fileName, final String relativePath) {
+        return fileName.equals(relativePath) || fileName.endsWith("/" + relativePath);
     }
 
+    @Override
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    protected final boolean createComment(final CommentType commentType, final String relativePath,
+            final int lineStart, final int lineEnd,
+            final String message, final String title,
+            final int columnStart, final int columnEnd,
+            final String details, final String markDownDetails) {
+        if (!review.includes(relativePath, lineStart, lineEnd)) {
+            return false; // the lines have not been changed since the previous run
+        }
+        var annotation = new Annotation(commentType, relativePath, lineStart, lineEnd, message, title,
+                columnStart, columnEnd, details, markDownDetails);
+        if (isRanking) {
+            if (commentType == CommentType.WARNING) {
+                warnings.add(annotation, getSeverity(relativePath, lineStart, message));
+            }
+            else {
+                coverage.add(annotation, Severity.WARNING_NORMAL);
+            }
+            return true;
+        }
+        if (!deadline.hasTimeLeft()) {
+            deadline.defer(1); // unranked comments are skipped one by one, the runner logs the total
+
+            return false;
+        }
+        return createComment(annotation);
+    }
+
+    /**
+     * Publishes a comment for the specified annotation in GitLab.
+     *
+     * @param annotation
+     *         the annotation to publish
+     *
+     * @return {@code true} if the comment has been created, {@code false} otherwise
+     */
+    protected abstract boolean createComment(Annotation annotation);
+
     @Override
     protected int getMaxWarningComments() {
-        return maxWarningComments;
+        return isRanking ? Integer.MAX_VALUE : maxWarningComments;
     }
 
     @Override
     protected int getMaxCoverageComments() {
-        return maxCoverageComments;
+        return isRanking ? Integer.MAX_VALUE : maxCoverageComments;
     }
 
     @Override
@@ -80,6 +247,21 @@ abstract class GitLabCommentBuilder extends CommentBuilder {
                 + (details.isBlank() ? StringUtils.EMPTY : "\n\n" + details);
     }
 
+    /**
+     * Returns whether the specified note body is a line comment that has been created by a previous run of the action.
+     * All other notes with the autograding marker are summary notes.
+     *
+     * @param body
+     *         the Markdown content of the note
+     *
+     * @return {@code true} if the note is a line comment, {@code false} otherwise
+     */
+    static boolean isLineComment(final String body) {
+        return body.startsWith(GitLabAutoGradingRunner.AUTOGRADING_MARKER)
+                && StringUtils.removeStart(body, GitLabAutoGradingRunner.AUTOGRADING_MARKER)
+                .stripLeading().startsWith("#### :");
+    }
+
     static String getIcon(final CommentType commentType) {
         return switch (commentType) {
             case WARNING -> "warning";
@@ -112,12 +294,12 @@ abstract class GitLabCommentBuilder extends CommentBuilder {
         return log;
     }
 
-    protected CommitsApi getCommitsApi() {
-        return commitsApi;
+    protected GitLabClient getClient() {
+        return client;
     }
 
     final String getEnv(final String name) {
-        return StringUtils.defaultString(System.getenv(name));
+        return configuration.getValue(name);
     }
 
     protected int adjustLine(final int line) {
@@ -1,52 +1,158 @@
 package edu.hm.hafner.grading.gitlab;
 
-import org.gitlab4j.api.CommitsApi;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.gitlab4j.api.GitLabApiException;
-import org.gitlab4j.models.Constants.LineType;
 
 import edu.hm.hafner.util.FilteredLog;
+import edu.hm.hafner.util.VisibleForTesting;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 /**
  * Creates GitLab commit comments for static analysis warnings, for lines with missing coverage, and for lines with
- * survived mutations.
+ * survived mutations. If {@code AGGREGATE_COMMIT_COMMENTS} is enabled, then all annotations of a file are
+ * aggregated into a single digest comment that is anchored at the first annotated line of the file.
  *
  * @author Ullrich Hafner
  */
 class GitLabCommitCommentBuilder extends GitLabCommentBuilder {
+    private static final String MORE_FINDINGS = "%n_... and %d more %s_%n";
+
     private final long projectId;
     private final String sha;
+    private final boolean aggregate;
+    private final int maxCommentSize;
+    private final Map<String, List<Annotation>> annotationsPerFile = new LinkedHashMap<>();
 
-    GitLabCommitCommentBuilder(final CommitsApi commitsApi, final Map<String, Set<Integer>> modifiedFiles,
-            final long projectId, final String sha, final String workingDirectory, final FilteredLog log) {
-        super(commitsApi, modifiedFiles, log, workingDirectory);
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    GitLabCommitCommentBuilder(final GitLabClient client, final Map<String, Set<Integer>> modifiedFiles,
+            final long projectId, final String sha, final RunConfiguration configuration,
+            final IncrementalReview review, final PublishingDeadline deadline, final FilteredLog log) {
+        super(client, modifiedFiles, configuration, review, deadline, log);
 
         this.projectId = projectId;
         this.sha = sha;
+        aggregate = configuration.isAggregateCommitComments();
+        maxCommentSize = configuration.getMaxNoteSize();
     }
 
     @Override
-    @SuppressWarnings("checkstyle:ParameterNumber")
-    protected boolean createComment(final CommentType commentType, final String relativePath,
-            final int lineStart, final int lineEnd,
-            final String message, final String title,
-            final int columnStart, final int columnEnd,
-            final String details, final String markDownDetails) {
+    protected boolean createComment(final Annotation annotation) {
         if (showCommentsInCommit()) {
-            try {
-                var markdownMessage = createMarkdownMessage(commentType, relativePath, lineStart,
-                        lineEnd, columnStart, columnEnd, title, message, markDownDetails, this::getEnv);
-
-                getCommitsApi().addComment(projectId, sha, markdownMessage, relativePath, adjustLine(lineStart), LineType.NEW);
+            if (aggregate) {
+                annotationsPerFile.computeIfAbsent(annotation.relativePath(), _ -> new ArrayList<>()).add(annotation);
 
                 return true;
             }
-            catch (GitLabApiException exception) {
-                getLog().logException(exception, "Can't create commit comment for %s", relativePath);
-            }
+
+            var relativePath = annotation.relativePath();
+            var markdownMessage = createMarkdownMessage(annotation.commentType(), relativePath,
+                    annotation.lineStart(), annotation.lineEnd(), annotation.columnStart(), annotation.columnEnd(),
+                    annotation.title(), annotation.message(), annotation.markDownDetails(), this::getEnv);
+
+            return addComment(relativePath, annotation.lineStart(), markdownMessage);
         }
         return false;
     }
+
+    @Override
+    protected void publishPendingComments() {
+        if (annotationsPerFile.isEmpty()) {
+            return;
+        }
+
+        getLog().logInfo("Publishing %d digest comments for %d annotations", annotationsPerFile.size(),
+                annotationsPerFile.values().stream().mapToInt(List::size).sum());
+        annotationsPerFile.forEach((relativePath, annotations) -> {
+            if (hasTimeLeft()) {
+                addComment(relativePath, annotations.stream().mapToInt(Annotation::lineStart).min().orElse(1),
+                        createDigest(relativePath, annotations, maxCommentSize, this::getEnv));
+            }
+            else {
+                defer(annotations.size());
+            }
+        });
+        annotationsPerFile.clear();
+    }
+
+    private boolean addComment(final String relativePath, final int line, final String markdownMessage) {
+        try {
+            getClient().createCommitComment(projectId, sha, markdownMessage, relativePath, adjustLine(line));
+
+            return true;
+        }
+        catch (GitLabApiException exception) {
+            getLog().logException(exception, "Can't create commit comment for %s", relativePath);
+
+            return false;
+        }
+    }
+
+    /**
+     * Creates a digest comment that shows all annotations of a file in a compact table. The rows are sorted by line
+     * number. If the comment exceeds the specified size, then the remaining annotations are omitted.
+     *
+     * @param relativePath
+     *         the path of the file
+     * @param annotations
+     *         the annotations of the file
+     * @param maxSize
+     *         the maximum size of the comment in bytes (UTF-8)
+     * @param environment
+     *         provides the project URL and commit SHA for the links
+     *
+     * @return the Markdown of the digest comment
+     */
+    @VisibleForTesting
+    static String createDigest(final String relativePath, final List<Annotation> annotations, final int maxSize,
+            final Function<String, String> environment) {
+        var fileUrl = "%s/blob/%s/%s".formatted(environment.apply(RunConfiguration.PROJECT_URL),
+                environment.apply(RunConfiguration.COMMIT_SHA), relativePath);
+        var digest = new StringBuilder("%s%n%n#### :clipboard: &nbsp; %d %s in [%s](%s)%n%n"
+                .formatted(GitLabAutoGradingRunner.AUTOGRADING_MARKER, annotations.size(),
+                        annotations.size() == 1 ? "finding" : "findings",
+                        FilenameUtils.getName(relativePath), fileUrl));
+        digest.append("| | Line | Finding |%n|---|---|---|%n".formatted());
+        var sorted = annotations.stream().sorted(Comparator.comparingInt(Annotation::lineStart)).toList();
+        var reserved = size(createMoreFindings(sorted.size()));
+        var digestSize = size(digest);
+        for (int i = 0; i < sorted.size(); i++) {
+            var row = createRow(sorted.get(i), fileUrl);
+            var rowSize = size(row);
+            if (digestSize + rowSize + reserved > maxSize) {
+                digest.append(createMoreFindings(sorted.size() - i));
+                break;
+            }
+            digest.append(row);
+            digestSize += rowSize;
+        }
+        return digest.toString();
+    }
+
+    private static String createMoreFindings(final int count) {
+        return MORE_FINDINGS.formatted(count, count == 1 ? "finding" : "findings");
+    }
+
+    private static String createRow(final Annotation annotation, final String fileUrl) {
+        var range = createRange('L', annotation.lineStart(), annotation.lineEnd());
+        var line = range.isBlank() ? "-" : "[%s](%s#%s)".formatted(range, fileUrl, range);
+        return "| :%s: | %s | %s: %s |%n".formatted(getIcon(annotation.commentType()), line,
+                escape(annotation.title()), escape(annotation.message()));
+    }
+
+    private static String escape(final String text) {
+        return StringUtils.normalizeSpace(text).replace("|", "\\|");
+    }
+
+    private static int size(final CharSequence text) {
+        return text.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
 }
@@ -1,59 +1,69 @@
 package edu.hm.hafner.grading.gitlab;
 
-import org.gitlab4j.api.CommitsApi;
-import org.gitlab4j.api.DiscussionsApi;
 import org.gitlab4j.api.GitLabApiException;
 import org.gitlab4j.api.models.MergeRequest;
 import org.gitlab4j.api.models.MergeRequestVersion;
 import org.gitlab4j.api.models.Position;
-import org.gitlab4j.models.Constants.LineType;
 
+import edu.hm.hafner.grading.gitlab.PositionResolver.LinePosition;
 import edu.hm.hafner.util.FilteredLog;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 /**
  * Creates GitLab merge request comments for static analysis warnings, for lines with missing coverage, and for lines with
  * survived mutations. If the comment cannot be created on the merge request, then a comment is created on the commit.
+ * The position of each comment in the diff is resolved locally before sending: comments that GitLab would not accept
+ * in the diff are created on the commit right away.
  *
  * @author Ullrich Hafner
  */
 class GitLabDiffCommentBuilder extends GitLabCommentBuilder {
-    private final DiscussionsApi discussionsApi;
     private final MergeRequest mergeRequest;
     private final MergeRequestVersion lastVersion;
+    private final PositionResolver positions;
     private final boolean isLoggingEnabled;
 
-    GitLabDiffCommentBuilder(final CommitsApi commitsApi, final Map<String, Set<Integer>> modifiedFiles, final DiscussionsApi discussionsApi,
-            final MergeRequest mergeRequest, final MergeRequestVersion lastVersion,
-            final String workingDirectory, final FilteredLog log) {
-        super(commitsApi, modifiedFiles, log, workingDirectory);
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    GitLabDiffCommentBuilder(final GitLabClient client, final Map<String, Set<Integer>> modifiedFiles,
+            final MergeRequest mergeRequest, final MergeRequestVersion lastVersion, final PositionResolver positions,
+            final RunConfiguration configuration, final IncrementalReview review, final PublishingDeadline deadline,
+            final FilteredLog log) {
+        super(client, modifiedFiles, configuration, review, deadline, log);
 
-        this.discussionsApi = discussionsApi;
         this.mergeRequest = mergeRequest;
         this.lastVersion = lastVersion;
-        isLoggingEnabled = new Environment(log).getBoolean("LOG_COMMENTS");
+        this.positions = positions;
+        isLoggingEnabled = configuration.isLogComments();
     }
 
     @Override
-    @SuppressWarnings({"checkstyle:ParameterNumber", "PMD.NullAssignment"})
-    protected boolean createComment(final CommentType commentType, final String relativePath,
-            final int lineStart, final int lineEnd,
-            final String message, final String title,
-            final int columnStart, final int columnEnd,
-            final String details, final String markDownDetails) {
+    @SuppressWarnings("PMD.NullAssignment")
+    protected boolean createComment(final Annotation annotation) {
+        var commentType = annotation.commentType();
+        var relativePath = annotation.relativePath();
+        var lineStart = annotation.lineStart();
+        var message = annotation.message();
+
+        var markdownMessage = createMarkdownMessage(commentType, relativePath, lineStart, annotation.lineEnd(),
+                annotation.columnStart(), annotation.columnEnd(), annotation.title(), message,
+                annotation.markDownDetails(), this::getEnv);
+
         @CheckForNull
         Position position;
-        if (isPartOfChangedFiles(relativePath, lineStart, lineEnd)) {
-            position = new Position()
-                .withBaseSha(lastVersion.getBaseCommitSha())
-                .withHeadSha(lastVersion.getHeadCommitSha())
-                .withStartSha(lastVersion.getStartCommitSha())
-                .withNewPath(relativePath)
-                .withNewLine(adjustLine(lineStart))
-                .withPositionType(Position.PositionType.TEXT);
+        if (isPartOfChangedFiles(relativePath, lineStart, annotation.lineEnd())) {
+            var resolved = resolve(relativePath, lineStart, annotation.lineEnd());
+            if (resolved.isEmpty()) {
+                if (isLoggingEnabled) {
+                    getLog().logInfo("Lines %d-%d of %s cannot be commented in the diff of #%d",
+                            lineStart, annotation.lineEnd(), relativePath, mergeRequest.getIid());
+                }
+                return createCommitComment(relativePath, lineStart, markdownMessage);
+            }
+            position = createPosition(resolved.get());
         }
         else {
             if (commentType != CommentType.WARNING) {
@@ -64,8 +74,6 @@ class GitLabDiffCommentBuilder extends GitLabCommentBuilder {
             position = null;
         }
 
-        var markdownMessage = createMarkdownMessage(commentType, relativePath, lineStart, lineEnd, columnStart,
-                columnEnd, title, message, markDownDetails, this::getEnv);
         try {
             if (isLoggingEnabled) {
                 getLog().logInfo("Creating merge request comment for %s in #%d", relativePath, mergeRequest.getIid());
@@ -74,10 +82,10 @@ class GitLabDiffCommentBuilder extends GitLabCommentBuilder {
                 getLog().logInfo("Message is %s", message);
                 getLog().logInfo("Full Message is %s", markdownMessage);
             }
-            discussionsApi.createMergeRequestDiscussion(
+            getClient().createMergeRequestDiscussion(
                     mergeRequest.getProjectId(),
                     mergeRequest.getIid(),
-                    markdownMessage, null, null, position);
+                    markdownMessage, position);
 
             return true;
         }
@@ -85,20 +93,54 @@ class GitLabDiffCommentBuilder extends GitLabCommentBuilder {
             getLog().logException(exception, "Can't create merge request comment for %s in #%d", relativePath, mergeRequest.getIid());
             logPosition(position);
 
-            if (showCommentsInCommit()) { // Fallback: create a comment on the commit if not possible for the MR
-                try {
-                    getCommitsApi().addComment(mergeRequest.getProjectId(), lastVersion.getStartCommitSha(),
-                            markdownMessage, relativePath, lineStart, LineType.NEW);
+            return createCommitComment(relativePath, lineStart, markdownMessage);
+        }
+    }
 
-                    return true;
-                }
-                catch (GitLabApiException _) {
-                    getLog().logException(exception, "Can't create commit comment for %s", relativePath);
-                }
+    // Returns the position of the first line of the range that can be commented in the diff
+    private Optional<LinePosition> resolve(final String relativePath, final int lineStart, final int lineEnd) {
+        var first = adjustLine(lineStart);
+        for (int line = first; line <= Math.max(first, lineEnd); line++) {
+            var position = positions.resolve(relativePath, line);
+            if (position.isPresent()) {
+                return position;
             }
+        }
+        return Optional.empty();
+    }
 
-            return false;
+    private Position createPosition(final LinePosition resolved) {
+        var position = new Position()
+                .withBaseSha(lastVersion.getBaseCommitSha())
+                .withHeadSha(lastVersion.getHeadCommitSha())
+                .withStartSha(lastVersion.getStartCommitSha())
+                .withNewPath(resolved.newPath())
+                .withNewLine(resolved.newLine())
+                .withPositionType(Position.PositionType.TEXT);
+        if (resolved.oldPath() != null) {
+            position.withOldPath(resolved.oldPath());
+        }
+        if (resolved.oldLine() != null) {
+            position.withOldLine(resolved.oldLine());
         }
+        return position;
+    }
+
+    private boolean createCommitComment(final String relativePath, final int lineStart,
+            final String markdownMessage) {
+        if (showCommentsInCommit()) { // Fallback: create a comment on the commit if not possible for the MR
+            try {
+                getClient().createCommitComment(mergeRequest.getProjectId(), lastVersion.getStartCommitSha(),
+                        markdownMessage, relativePath, adjustLine(lineStart));
+
+                return true;
+            }
+            catch (GitLabApiException exception) {
+                getLog().logException(exception, "Can't create commit comment for %s", relativePath);
+            }
+        }
+
+        return false;
     }
 
     private void logPosition(@CheckForNull final Position position) {
@@ -0,0 +1,114 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.apache.commons.lang3.StringUtils;
+import org.gitlab4j.api.GitLabApiException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+
+/**
+ * Sends queries to the GraphQL API of GitLab.
+ *
+ * @author Ullrich Hafner
+ */
+class GitLabGraphQlReader {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final URI endpoint;
+    private final String token;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    private int requests;
+
+    /**
+     * Creates a new reader.
+     *
+     * @param url
+     *         the URL of the GitLab instance
+     * @param token
+     *         the access token
+     */
+    GitLabGraphQlReader(final String url, final String token) {
+        this.endpoint = URI.create(url.replaceAll("/+$", "") + "/api/graphql");
+        this.token = token;
+    }
+
+    /**
+     * Runs the specified query.
+     *
+     * @param query
+     *         the GraphQL query
+     * @param variables
+     *         the variables of the query
+     *
+     * @return the {@code data} element of the response
+     * @throws GitLabApiException
+     *         if the query cannot be sent, or GitLab reports errors
+     */
+    JsonNode query(final String query, final ObjectNode variables) throws GitLabApiException {
+        var body = MAPPER.createObjectNode().put("query", query).set("variables", variables);
+        try {
+            var request = HttpRequest.newBuilder(endpoint)
+                    .timeout(Duration.ofSeconds(60))
+                    .header("Authorization", "Bearer " + token)
+                    .header("Content-Type", "application/json")
+                    .POST(BodyPublishers.ofString(MAPPER.writeValueAsString(body)))
+                    .build();
+            var response = client.send(request, BodyHandlers.ofString());
+            requests++;
+            if (response.statusCode() / 100 != 2) {
+                throw new GitLabApiException("GraphQL query failed: " + response.body(), response.statusCode());
+            }
+            var json = MAPPER.readTree(response.body());
+            var errors = json.path("errors");
+            if (!errors.isEmpty()) {
+                throw new GitLabApiException("GraphQL query failed: " + errors.findValuesAsText("message"));
+            }
+            return json.path("data");
+        }
+        catch (IOException exception) {
+            throw new GitLabApiException(exception);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new GitLabApiException(exception);
+        }
+    }
+
+    /**
+     * Creates a new object for the variables of a query.
+     *
+     * @return the variables
+     */
+    ObjectNode createVariables() {
+        return MAPPER.createObjectNode();
+    }
+
+    /**
+     * Returns the numeric ID of a global ID, e.g. {@code 42} for {@code gid://gitlab/Note/42}.
+     *
+     * @param globalId
+     *         the global ID
+     *
+     * @return the numeric ID, or 0 if the ID is not a global ID
+     */
+    static long toId(final String globalId) {
+        var id = StringUtils.substringAfterLast(globalId, "/");
+        return StringUtils.isNumeric(id) ? Long.parseLong(id) : 0;
+    }
+
+    int getRequests() {
+        return requests;
+    }
+}
@@ -0,0 +1,188 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.hm.hafner.grading.gitlab.HttpResponseCache.Response;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Reads resources of the GitLab REST API with conditional requests. The validators of all responses are stored in an
+ * {@link HttpResponseCache}: when a resource is requested again, GitLab answers with {@code 304 Not Modified} if the
+ * resource has not been changed, and the body is read from the cache. The reader can be shared by several threads.
+ *
+ * @author Ullrich Hafner
+ */
+class GitLabRestReader {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int PER_PAGE = 100;
+    private static final int NOT_MODIFIED = 304;
+
+    private final String apiUrl;
+    private final String token;
+    @CheckForNull
+    private final HttpResponseCache cache;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    private final AtomicInteger downloaded = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    /**
+     * Creates a new reader.
+     *
+     * @param url
+     *         the URL of the GitLab instance
+     * @param token
+     *         the access token
+     * @param cache
+     *         the cache for the responses, or {@code null} to send unconditional requests only
+     */
+    GitLabRestReader(final String url, final String token, @CheckForNull final HttpResponseCache cache) {
+        this.apiUrl = url.replaceAll("/+$", "") + "/api/v4";
+        this.token = token;
+        this.cache = cache;
+    }
+
+    /**
+     * Reads all elements of a paginated list resource.
+     *
+     * @param path
+     *         the path of the resource relative to the API URL, including the query parameters
+     *
+     * @return the elements of all pages
+     * @throws GitLabApiException
+     *         if a page cannot be read
+     */
+    List<JsonNode> getAll(final String path) throws GitLabApiException {
+        return getWhile(path, _ -> true);
+    }
+
+    /**
+     * Reads the elements of a paginated list resource as long as they match the specified condition. Reading stops
+     * at the first element that does not match, so the remaining pages of a sorted list are not requested.
+     *
+     * @param path
+     *         the path of the resource relative to the API URL, including the query parameters
+     * @param condition
+     *         the condition of the elements to read
+     *
+     * @return the elements up to the first element that does not match
+     * @throws GitLabApiException
+     *         if a page cannot be read
+     */
+    List<JsonNode> getWhile(final String path, final Predicate<JsonNode> condition) throws GitLabApiException {
+        var elements = new ArrayList<JsonNode>();
+        var separator = path.contains("?") ? "&" : "?";
+        var page = "1";
+        while (!page.isEmpty()) {
+            var response = get(path + separator + "per_page=" + PER_PAGE + "&page=" + page);
+            for (JsonNode element : parse(response.body())) {
+                if (!condition.test(element)) {
+                    return elements;
+                }
+                elements.add(element);
+            }
+            page = response.nextPage();
+        }
+        return elements;
+    }
+
+    /**
+     * Reads a single resource.
+     *
+     * @param path
+     *         the path of the resource relative to the API URL, including the query parameters
+     *
+     * @return the resource
+     * @throws GitLabApiException
+     *         if the resource cannot be read
+     */
+    JsonNode getOne(final String path) throws GitLabApiException {
+        return parse(get(path).body());
+    }
+
+    private JsonNode parse(final String body) throws GitLabApiException {
+        try {
+            return MAPPER.readTree(body);
+        }
+        catch (IOException exception) {
+            throw new GitLabApiException(exception);
+        }
+    }
+
+    private Response get(final String path) throws GitLabApiException {
+        var url = apiUrl + path;
+        Optional<Response> cached = cache == null ? Optional.empty() : cache.get(url);
+
+        var request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .header("PRIVATE-TOKEN", token)
+                .header("Accept", "application/json");
+        cached.ifPresent(response -> addValidators(request, response));
+
+        try {
+            var response = client.send(request.GET().build(), BodyHandlers.ofString());
+            if (response.statusCode() == NOT_MODIFIED && cached.isPresent()) {
+                notModified.incrementAndGet();
+                return cached.get();
+            }
+            if (response.statusCode() / 100 != 2) {
+                throw new GitLabApiException("GET %s failed: %s".formatted(path, response.body()),
+                        response.statusCode());
+            }
+            downloaded.incrementAndGet();
+            var fresh = new Response(url, response.body(), header(response, "ETag"),
+                    header(response, "Last-Modified"), header(response, "X-Next-Page"));
+            if (cache != null) {
+                cache.put(fresh);
+            }
+            return fresh;
+        }
+        catch (IOException exception) {
+            throw new GitLabApiException(exception);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new GitLabApiException(exception);
+        }
+    }
+
+    private void addValidators(final HttpRequest.Builder request, final Response response) {
+        if (!response.etag().isEmpty()) {
+            request.header("If-None-Match", response.etag());
+        }
+        if (!response.lastModified().isEmpty()) {
+            request.header("If-Modified-Since", response.lastModified());
+        }
+    }
+
+    private String header(final HttpResponse<?> response, final String name) {
+        return response.headers().firstValue(name).orElse("");
+    }
+
+    int getDownloaded() {
+        return downloaded.get();
+    }
+
+    int getNotModified() {
+        return notModified.get();
+    }
+}
@@ -0,0 +1,535 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.gitlab4j.api.GitLabApiException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A long-running service that grades the submissions of many pipelines. Instead of running the action in each
+ * pipeline, the CI job uploads a ZIP bundle with its reports (or references the job that contains the reports as
+ * artifacts), and the service grades the submission with the same runner as the action.
+ *
+ * <p>
+ * Each request is extracted into a workspace of its own and queued. A bounded pool of workers grades the queued
+ * requests concurrently; when the queue is full, new requests are rejected. The report parsers of the grading model
+ * read the configuration from the environment and the reports from the working directory. Since both are global to a
+ * process, each request is graded by a runner process that is started in the workspace of the request. The service
+ * passes a shared {@link RunConfiguration#DELTA_CACHE delta cache} to all runners so that the reports of previous
+ * pipelines are downloaded only once. By default, the runners are started with the JVM and classpath of the
+ * service. Since every request starts a process of its own, no JVM is shared between the requests: each submission
+ * pays the startup and warmup of a new JVM. The native executable of the action starts faster, it is only available
+ * in the native Docker image and needs to be selected explicitly.
+ * </p>
+ *
+ * <p>
+ * The service rejects new requests before reading their bundle if the queue is full. Bundles are limited to
+ * {@link #MAX_BUNDLE_SIZE} bytes and the extracted files to the {@link ZipExtractor limits of the extractor}.
+ * </p>
+ *
+ * <p>
+ * Clients need to authenticate with the token of the service. The settings file in the bundle of a submission may
+ * only contain the grading configuration and the {@link RunConfiguration#DISPLAY_OPTIONS display options}, so a
+ * submission cannot change the paths the runner writes to.
+ * </p>
+ *
+ * <p>
+ * Endpoints:
+ * </p>
+ * <ul>
+ *     <li>{@code POST /grade?CI_PROJECT_ID=...&CI_COMMIT_SHA=...}: grades the ZIP bundle in the body. The query
+ *     parameters are the pipeline variables of the submission. With {@code wait=true} the response is sent when the
+ *     grading has been finished, otherwise the response contains the ID of the queued job.</li>
+ *     <li>{@code GET /jobs/<id>}: returns the status of a job.</li>
+ *     <li>{@code GET /jobs/<id>/log}: returns the console output of a job.</li>
+ * </ul>
+ *
+ * @author Ullrich Hafner
+ */
+public class GradingService implements AutoCloseable {
+    static final String SERVICE_TOKEN = "GRADING_SERVICE_TOKEN";
+    static final String ARTIFACTS_JOB_ID = "ARTIFACTS_JOB_ID";
+    /** The maximum size of an uploaded report bundle in bytes. */
+    static final long MAX_BUNDLE_SIZE = 512L * 1024 * 1024;
+
+    private static final Set<String> REQUEST_PARAMETERS = Set.of(RunConfiguration.PROJECT_ID,
+            RunConfiguration.PROJECT_URL, RunConfiguration.PROJECT_PATH, RunConfiguration.COMMIT_SHA,
+            RunConfiguration.MERGE_REQUEST_IID, RunConfiguration.DEFAULT_BRANCH, RunConfiguration.JOB_URL,
+            ARTIFACTS_JOB_ID);
+    private static final Set<String> BUNDLE_SETTINGS = Stream.concat(
+            Stream.of(RunConfiguration.GRADING_CONFIGURATION), RunConfiguration.DISPLAY_OPTIONS.stream())
+            .collect(Collectors.toUnmodifiableSet());
+    private static final int MAX_JOBS = 1000; // the number of jobs to keep the status and log for
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final int OK = 200;
+    private static final int ACCEPTED = 202;
+    private static final int BAD_REQUEST = 400;
+    private static final int UNAUTHORIZED = 401;
+    private static final int NOT_FOUND = 404;
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final int PAYLOAD_TOO_LARGE = 413;
+    private static final int UNPROCESSABLE = 422;
+    private static final int UNAVAILABLE = 503;
+
+    /** The status of a grading job. */
+    enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    /**
+     * The settings of the service.
+     *
+     * @param port
+     *         the port of the HTTP endpoint, or 0 to use a random port
+     * @param workers
+     *         the number of submissions that are graded concurrently
+     * @param queueSize
+     *         the number of submissions that can wait for a worker
+     * @param runner
+     *         the command that starts the runner
+     * @param workspace
+     *         the directory for the workspaces of the jobs and the delta cache
+     * @param token
+     *         the token that clients need to provide
+     */
+    record Settings(int port, int workers, int queueSize, List<String> runner, Path workspace, String token) {
+    }
+
+    private final Settings settings;
+    private final RunnerProcess runner;
+    private final Map<String, String> environment;
+    @CheckForNull
+    private final GitLabClient gitLab;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final Map<String, GradingJob> jobs = Collections.synchronizedMap(
+            new LinkedHashMap<String, GradingJob>() {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, GradingJob> eldest) {
+                    if (size() > MAX_JOBS && eldest.getValue().isFinished()) {
+                        eldest.getValue().deleteLog();
+                        return true;
+                    }
+                    return false;
+                }
+            });
+
+    /**
+     * Starts the service. Usage: {@code GradingService [--port 8080] [--workers n] [--queue 100] [--workspace dir]
+     * [--runner command]}.
+     *
+     * <p>
+     * The service reads the URL of GitLab ({@code CI_SERVER_URL}), the access token ({@code GITLAB_TOKEN}), and the
+     * token of its clients ({@code GRADING_SERVICE_TOKEN}) from the environment. All other environment variables are
+     * passed to the runners as well, so the options of the action can be set for all submissions. The runners are
+     * started with the JVM and classpath of the service, {@code --runner} starts them with another command, e.g., the
+     * native executable {@code /app/autograding-gitlab-action} of the native Docker image.
+     * </p>
+     *
+     * @param args
+     *         the command line options
+     *
+     * @throws IOException
+     *         if the service cannot be started
+     */
+    @SuppressWarnings({"PMD.SystemPrintln", "SystemOut"})
+    static void main(final String... args) throws IOException {
+        var options = parseOptions(args);
+        var serviceToken = System.getenv(SERVICE_TOKEN);
+        if (StringUtils.isBlank(serviceToken)) {
+            throw new IllegalArgumentException("No " + SERVICE_TOKEN + " defined");
+        }
+        var workspace = Path.of(options.getOrDefault("--workspace",
+                System.getProperty("java.io.tmpdir") + "/autograding-service"));
+        var runner = options.containsKey("--runner")
+                ? List.of(options.get("--runner").split(" "))
+                : RunnerProcess.createJavaRunner().getCommand();
+        var settings = new Settings(
+                Integer.parseInt(options.getOrDefault("--port", "8080")),
+                Integer.parseInt(options.getOrDefault("--workers",
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                Integer.parseInt(options.getOrDefault("--queue", "100")),
+                runner, workspace, serviceToken);
+
+        var url = System.getenv(RunConfiguration.SERVER_URL);
+        var token = System.getenv(RunConfiguration.TOKEN);
+        GitLabClient gitLab = StringUtils.isAnyBlank(url, token)
+                ? null
+                : new GitLabApiClient(url, token, new FilteredLog("GitLab Errors"));
+
+        var service = new GradingService(settings,
+                Map.of(RunConfiguration.DELTA_CACHE, workspace.resolve("delta-cache").toString()), gitLab);
+        Runtime.getRuntime().addShutdownHook(new Thread(service::close));
+        System.out.printf("Grading service listening on port %d with %d workers (runner: %s)%n",
+                service.getPort(), settings.workers(), String.join(" ", runner));
+    }
+
+    private static Map<String, String> parseOptions(final String... args) {
+        var options = new HashMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Creates and starts a new service.
+     *
+     * @param settings
+     *         the settings of the service
+     * @param environment
+     *         additional environment variables for all runners
+     * @param gitLab
+     *         the client to download the artifacts of referenced jobs, or {@code null} if the service has no access to
+     *         GitLab
+     *
+     * @throws IOException
+     *         if the workspace cannot be created or the HTTP endpoint cannot be started
+     * @throws IllegalArgumentException
+     *         if the settings contain no token or the runner is not executable
+     */
+    GradingService(final Settings settings, final Map<String, String> environment,
+            @CheckForNull final GitLabClient gitLab) throws IOException {
+        if (StringUtils.isBlank(settings.token())) {
+            throw new IllegalArgumentException("The grading service requires a token for its clients");
+        }
+        this.settings = settings;
+        this.runner = new RunnerProcess(settings.runner());
+        if (!runner.isExecutable()) {
+            throw new IllegalArgumentException("The runner is not executable: " + String.join(" ", settings.runner()));
+        }
+        this.environment = environment;
+        this.gitLab = gitLab;
+
+        Files.createDirectories(settings.workspace());
+        workers = new ThreadPoolExecutor(settings.workers(), settings.workers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, settings.queueSize())));
+
+        server = HttpServer.create(new InetSocketAddress(settings.port()), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/grade", exchange -> handle(exchange, this::grade));
+        server.createContext("/jobs/", exchange -> handle(exchange, this::report));
+        server.start();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(final HttpExchange exchange, final Handler handler) throws IOException {
+        try {
+            if (!isAuthorized(exchange)) {
+                respond(exchange, UNAUTHORIZED, "Missing or invalid token");
+            }
+            else {
+                handler.handle(exchange);
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private boolean isAuthorized(final HttpExchange exchange) {
+        return ("Bearer " + settings.token()).equals(exchange.getRequestHeaders().getFirst("Authorization"));
+    }
+
+    private void grade(final HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, METHOD_NOT_ALLOWED, "Use POST to submit a report bundle");
+
+            return;
+        }
+        var parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        if (StringUtils.isAnyBlank(parameters.get(RunConfiguration.PROJECT_ID),
+                parameters.get(RunConfiguration.COMMIT_SHA))) {
+            respond(exchange, BAD_REQUEST, "The parameters %s and %s are required".formatted(
+                    RunConfiguration.PROJECT_ID, RunConfiguration.COMMIT_SHA));
+
+            return;
+        }
+
+        if (workers.getQueue().remainingCapacity() == 0) {
+            respond(exchange, UNAVAILABLE, "The queue is full, try again later");
+
+            return;
+        }
+        var length = NumberUtils.toLong(exchange.getRequestHeaders().getFirst("Content-Length"));
+        if (length > MAX_BUNDLE_SIZE) {
+            respond(exchange, PAYLOAD_TOO_LARGE, "The report bundle exceeds %d bytes".formatted(MAX_BUNDLE_SIZE));
+
+            return;
+        }
+
+        var job = new GradingJob(UUID.randomUUID().toString(), parameters);
+        Files.createDirectories(job.workspace);
+        try (var body = exchange.getRequestBody()) {
+            ZipExtractor.extract(body, job.workspace);
+        }
+        catch (IOException exception) {
+            job.deleteWorkspace();
+            respond(exchange, BAD_REQUEST, "Invalid report bundle: " + exception.getMessage());
+
+            return;
+        }
+
+        jobs.put(job.id, job);
+        try { // the queue might have been filled in the meantime
+            workers.execute(() -> run(job));
+        }
+        catch (RejectedExecutionException _) {
+            jobs.remove(job.id);
+            job.deleteWorkspace();
+            respond(exchange, UNAVAILABLE, "The queue is full, try again later");
+
+            return;
+        }
+
+        exchange.getResponseHeaders().add("X-Grading-Job", job.id);
+        if (Boolean.parseBoolean(parameters.get("wait"))) {
+            job.finished.join();
+            respond(exchange, job.status == Status.SUCCEEDED ? OK : UNPROCESSABLE, job.readLog());
+        }
+        else {
+            respond(exchange, ACCEPTED, job.toJson());
+        }
+    }
+
+    private void report(final HttpExchange exchange) throws IOException {
+        var path = StringUtils.removeStart(exchange.getRequestURI().getPath(), "/jobs/");
+        var job = jobs.get(StringUtils.removeEnd(path, "/log"));
+        if (job == null) {
+            respond(exchange, NOT_FOUND, "No such job: " + path);
+        }
+        else if (path.endsWith("/log")) {
+            respond(exchange, OK, job.readLog());
+        }
+        else {
+            respond(exchange, OK, job.toJson());
+        }
+    }
+
+    private Map<String, String> parseQuery(@CheckForNull final String query) {
+        var parameters = new HashMap<String, String>();
+        for (String parameter : StringUtils.split(StringUtils.defaultString(query), '&')) {
+            parameters.put(URLDecoder.decode(StringUtils.substringBefore(parameter, "="), StandardCharsets.UTF_8),
+                    URLDecoder.decode(StringUtils.substringAfter(parameter, "="), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (var output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private void run(final GradingJob job) {
+        job.status = Status.RUNNING;
+        var exitCode = RunnerProcess.CANCELED;
+        try {
+            if (job.parameters.containsKey(ARTIFACTS_JOB_ID)) {
+                downloadArtifacts(job);
+            }
+            exitCode = runner.run(job.workspace, createEnvironment(job), job.log);
+        }
+        catch (IOException | GitLabApiException | IllegalArgumentException exception) {
+            job.appendLog("Grading failed: " + exception);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            job.appendLog("Grading has been canceled");
+        }
+        finally {
+            job.deleteWorkspace();
+            job.finish(exitCode);
+        }
+    }
+
+    private void downloadArtifacts(final GradingJob job) throws IOException, GitLabApiException {
+        if (gitLab == null) {
+            throw new IOException("No connection to GitLab to download the artifacts of job "
+                    + job.parameters.get(ARTIFACTS_JOB_ID));
+        }
+        var projectId = Long.parseLong(job.parameters.get(RunConfiguration.PROJECT_ID));
+        var jobId = Long.parseLong(job.parameters.get(ARTIFACTS_JOB_ID));
+        var archive = Path.of(job.workspace + ".zip"); // a local file allows resuming an interrupted download
+        try {
+            gitLab.downloadArtifacts(projectId, jobId, archive);
+            try (var artifacts = Files.newInputStream(archive)) {
+                ZipExtractor.extract(artifacts, job.workspace);
+            }
+        }
+        finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    private Map<String, String> createEnvironment(final GradingJob job) throws IOException {
+        var variables = new HashMap<>(System.getenv());
+        variables.remove(SERVICE_TOKEN);
+        variables.keySet().removeAll(REQUEST_PARAMETERS);
+        job.parameters.entrySet().stream()
+                .filter(parameter -> REQUEST_PARAMETERS.contains(parameter.getKey()))
+                .forEach(parameter -> variables.put(parameter.getKey(), parameter.getValue()));
+        variables.remove(ARTIFACTS_JOB_ID);
+        variables.putAll(environment);
+        variables.put(RunConfiguration.PROJECT_DIR, job.workspace.toString());
+        readSettings(job).forEach(variables::putIfAbsent); // the variables of the service take precedence
+        return variables;
+    }
+
+    // Only the grading configuration and the display options are accepted, other options would write to host paths
+    private Map<String, String> readSettings(final GradingJob job) throws IOException {
+        var file = job.workspace.resolve(RunConfiguration.SETTINGS_FILE);
+        if (!Files.isRegularFile(file)) {
+            return Map.of();
+        }
+        var settings = new HashMap<String, String>();
+        var values = RunConfiguration.parseSettings(Files.readString(file, StandardCharsets.UTF_8));
+        for (Map.Entry<String, String> setting : values.entrySet()) {
+            if (BUNDLE_SETTINGS.contains(setting.getKey())) {
+                settings.put(setting.getKey(), setting.getValue());
+            }
+            else {
+                job.appendLog("Ignoring setting %s of the report bundle".formatted(setting.getKey()));
+            }
+        }
+        return settings;
+    }
+
+    @Override
+    @SuppressWarnings({"PMD.SystemPrintln", "SystemOut"})
+    public void close() {
+        server.stop(0);
+        workers.shutdownNow();
+        try {
+            if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.err.println("Grading jobs are still running after shutdown");
+            }
+        }
+        catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+        if (gitLab != null) {
+            gitLab.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * A submission that is graded by the service.
+     */
+    private final class GradingJob {
+        private final String id;
+        private final Map<String, String> parameters;
+        private final Path workspace;
+        private final Path log;
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private volatile Status status = Status.QUEUED;
+        private volatile int exitCode = -1;
+
+        GradingJob(final String id, final Map<String, String> parameters) {
+            this.id = id;
+            this.parameters = parameters;
+            this.workspace = settings.workspace().resolve(id);
+            this.log = settings.workspace().resolve(id + ".log");
+        }
+
+        boolean isFinished() {
+            return finished.isDone();
+        }
+
+        void finish(final int code) {
+            exitCode = code;
+            status = code == 0 ? Status.SUCCEEDED : Status.FAILED;
+            finished.complete(null);
+        }
+
+        String toJson() {
+            var json = MAPPER.createObjectNode()
+                    .put("id", id)
+                    .put("status", status.name());
+            if (isFinished()) {
+                json.put("exit_code", exitCode);
+            }
+            return json.toString();
+        }
+
+        String readLog() {
+            try {
+                return Files.isRegularFile(log) ? Files.readString(log, StandardCharsets.UTF_8) : StringUtils.EMPTY;
+            }
+            catch (IOException exception) {
+                return "Can't read log: " + exception.getMessage();
+            }
+        }
+
+        void appendLog(final String message) {
+            try {
+                Files.writeString(log, message + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            catch (IOException _) {
+                // ignore, the status of the job is still available
+            }
+        }
+
+        void deleteLog() {
+            try {
+                Files.deleteIfExists(log);
+            }
+            catch (IOException _) {
+                // ignore, the log will be overwritten by the next service on this workspace
+            }
+        }
+
+        void deleteWorkspace() {
+            try (Stream<Path> files = Files.walk(workspace)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            catch (IOException _) {
+                // ignore, the workspace is in a temporary folder
+            }
+        }
+    }
+}
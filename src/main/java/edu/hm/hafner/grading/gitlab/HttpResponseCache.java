@@ -0,0 +1,223 @@
+package edu.hm.hafner.grading.gitlab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A size-bounded cache of HTTP responses on the local disk. For each URL the cache stores the body of the response
+ * and the validators ({@code ETag} and {@code Last-Modified}) that are required to issue conditional requests. Each
+ * response is stored in a separate file; when the cache exceeds its maximum size, the least recently used responses
+ * are evicted.
+ *
+ * @author Ullrich Hafner
+ */
+class HttpResponseCache {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String SUFFIX = ".json";
+
+    private final Path directory;
+    private final long maxSize;
+    private long size;
+
+    /**
+     * A cached response.
+     *
+     * @param url
+     *         the requested URL
+     * @param body
+     *         the body of the response
+     * @param etag
+     *         the value of the {@code ETag} header, or an empty string
+     * @param lastModified
+     *         the value of the {@code Last-Modified} header, or an empty string
+     * @param nextPage
+     *         the value of the {@code X-Next-Page} header, or an empty string
+     */
+    record Response(String url, String body, String etag, String lastModified, String nextPage) {
+        boolean hasValidator() {
+            return !etag.isEmpty() || !lastModified.isEmpty();
+        }
+    }
+
+    /**
+     * Creates a new cache in the specified directory. Responses of previous runs in this directory are reused.
+     *
+     * @param directory
+     *         the cache directory, will be created if it does not exist
+     * @param maxSize
+     *         the maximum size of all cached responses in bytes
+     *
+     * @throws IOException
+     *         if the cache directory cannot be read or created
+     */
+    HttpResponseCache(final Path directory, final long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+
+        Files.createDirectories(directory);
+        size = getEntries().stream().mapToLong(HttpResponseCache::sizeOf).sum();
+    }
+
+    /**
+     * Returns the cached response for the specified URL.
+     *
+     * @param url
+     *         the URL
+     *
+     * @return the cached response, or an empty optional if the URL is not cached
+     */
+    synchronized Optional<Response> get(final String url) {
+        var file = getFile(url);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try {
+            var json = MAPPER.readTree(file.toFile());
+            if (!url.equals(json.path("url").asText())) {
+                return Optional.empty(); // hash collision
+            }
+            markAsUsed(file);
+            return Optional.of(new Response(url, json.path("body").asText(), text(json, "etag"),
+                    text(json, "last_modified"), text(json, "next_page")));
+        }
+        catch (IOException exception) {
+            return Optional.empty(); // treat broken entries as missing, they will be overwritten
+        }
+    }
+
+    // uses the same clock for all entries, the file system might use a coarser clock
+    private void markAsUsed(final Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+    }
+
+    private String text(final JsonNode json, final String field) {
+        return json.path(field).asText("");
+    }
+
+    /**
+     * Stores the specified response. Responses without validators are not stored, since they cannot be
+     * revalidated.
+     *
+     * @param response
+     *         the response to store
+     *
+     * @throws IOException
+     *         if the response cannot be written
+     */
+    synchronized void put(final Response response) throws IOException {
+        if (!response.hasValidator()) {
+            return;
+        }
+
+        var file = getFile(response.url());
+        var json = MAPPER.createObjectNode()
+                .put("url", response.url())
+                .put("etag", response.etag())
+                .put("last_modified", response.lastModified())
+                .put("next_page", response.nextPage())
+                .put("body", response.body());
+        var temp = Files.createTempFile(directory, "response", ".tmp");
+        Files.writeString(temp, MAPPER.writeValueAsString(json), StandardCharsets.UTF_8);
+
+        size -= Files.isRegularFile(file) ? sizeOf(file) : 0;
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        markAsUsed(file);
+        size += sizeOf(file);
+
+        evict();
+    }
+
+    /**
+     * Removes all cached responses.
+     *
+     * @throws IOException
+     *         if a response cannot be deleted
+     */
+    synchronized void invalidate() throws IOException {
+        for (Path file : getEntries()) {
+            Files.deleteIfExists(file);
+        }
+        size = 0;
+    }
+
+    /**
+     * Returns the size of all cached responses in bytes.
+     *
+     * @return the size of the cache
+     */
+    synchronized long getSize() {
+        return size;
+    }
+
+    private void evict() throws IOException {
+        if (size <= maxSize) {
+            return;
+        }
+        var entries = getEntries();
+        entries.sort(Comparator.comparing(HttpResponseCache::lastUsed));
+        for (Path file : entries) {
+            if (size <= maxSize) {
+                return;
+            }
+            var fileSize = sizeOf(file);
+            Files.deleteIfExists(file);
+            size -= fileSize;
+        }
+    }
+
+    private List<Path> getEntries() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private Path getFile(final String url) {
+        return directory.resolve(hash(url) + SUFFIX);
+    }
+
+    private static String hash(final String url) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        }
+        catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 is not available", exception);
+        }
+    }
+
+    private static long sizeOf(final Path file) {
+        try {
+            return Files.size(file);
+        }
+        catch (IOException exception) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastUsed(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        }
+        catch (IOException exception) {
+            return FileTime.fromMillis(0); // evict unreadable entries first
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.models.Note;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Determines the lines of a merge request that should get line comments. A full review comments on all lines of the
+ * merge request. An incremental review comments only on the lines that have been changed since the commit that has
+ * been graded by the previous run: this commit is recorded in a hidden marker of the summary note.
+ *
+ * @author Ullrich Hafner
+ */
+class IncrementalReview {
+    private static final Pattern GRADED_COMMIT = Pattern.compile("<!-- autograding-commit: ([0-9a-f]{7,64}) -->");
+    private static final IncrementalReview ALL = new IncrementalReview(Map.of(), false);
+
+    private final Map<String, Set<Integer>> changedLines;
+    private final boolean incremental;
+
+    /**
+     * Returns a full review that comments on all lines.
+     *
+     * @return the full review
+     */
+    static IncrementalReview all() {
+        return ALL;
+    }
+
+    /**
+     * Returns an incremental review that comments only on the specified lines.
+     *
+     * @param changedLines
+     *         the lines that have been changed since the previous run, mapped by the relative path of the file
+     *
+     * @return the incremental review
+     */
+    static IncrementalReview of(final Map<String, Set<Integer>> changedLines) {
+        return new IncrementalReview(changedLines, true);
+    }
+
+    /**
+     * Creates the hidden marker for the summary note that records the graded commit.
+     *
+     * @param sha
+     *         the SHA of the graded commit
+     *
+     * @return the marker
+     */
+    static String createMarker(final String sha) {
+        return "\n\n<!-- autograding-commit: %s -->".formatted(sha);
+    }
+
+    /**
+     * Reads the commit that has been graded by the previous run from the summary notes of the previous run.
+     *
+     * @param notes
+     *         the notes of the previous run
+     *
+     * @return the SHA of the graded commit, or an empty optional if no previous run recorded its commit
+     */
+    static Optional<String> readGradedCommit(final List<Note> notes) {
+        return notes.stream()
+                .filter(note -> !GitLabCommentBuilder.isLineComment(note.getBody()))
+                .map(note -> GRADED_COMMIT.matcher(note.getBody()))
+                .filter(Matcher::find)
+                .map(matcher -> matcher.group(1))
+                .findFirst();
+    }
+
+    private IncrementalReview(final Map<String, Set<Integer>> changedLines, final boolean incremental) {
+        this.changedLines = changedLines;
+        this.incremental = incremental;
+    }
+
+    boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Returns whether an annotation of the specified lines should be published. Annotations without a line (e.g., for
+     * a whole file) are published if the file has been changed.
+     *
+     * @param relativePath
+     *         the relative path of the file
+     * @param lineStart
+     *         the first line of the annotation
+     * @param lineEnd
+     *         the last line of the annotation
+     *
+     * @return {@code true} if the annotation should be published, {@code false} otherwise
+     */
+    boolean includes(final String relativePath, final int lineStart, final int lineEnd) {
+        if (!incremental) {
+            return true;
+        }
+        var lines = changedLines.getOrDefault(relativePath, Set.of());
+        if (lineStart <= 0) {
+            return !lines.isEmpty();
+        }
+        for (int line = lineStart; line <= Math.max(lineStart, lineEnd); line++) {
+            if (lines.contains(line)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
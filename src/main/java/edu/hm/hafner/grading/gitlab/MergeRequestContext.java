@@ -0,0 +1,142 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.DiffRef;
+import org.gitlab4j.api.models.MergeRequest;
+import org.gitlab4j.api.models.MergeRequestVersion;
+import org.gitlab4j.api.models.Note;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The entities of a merge request that are required before the results can be published: the merge request, its
+ * latest diff version, and the notes of previous runs of the action.
+ *
+ * @param mergeRequest
+ *         the merge request
+ * @param versions
+ *         the latest diff version of the merge request, or an empty list if the merge request has no diff yet
+ * @param autogradingNotes
+ *         the notes and discussion notes of previous runs, the newest note first
+ * @author Ullrich Hafner
+ */
+record MergeRequestContext(MergeRequest mergeRequest, List<MergeRequestVersion> versions,
+                           List<Note> autogradingNotes) {
+    private static final String QUERY = """
+            query($project: ID!, $iid: String!, $after: String) {
+              project(fullPath: $project) {
+                mergeRequest(iid: $iid) {
+                  iid
+                  title
+                  webUrl
+                  sourceBranch
+                  targetBranch
+                  diffHeadSha
+                  diffRefs { baseSha headSha startSha }
+                  notes(first: 100, after: $after) {
+                    pageInfo { hasNextPage endCursor }
+                    nodes { id body }
+                  }
+                }
+              }
+            }
+            """;
+
+    /**
+     * Loads the context of a merge request with GraphQL. The merge request and its diff refs are fetched with the
+     * first page of notes, additional pages of notes require additional queries.
+     *
+     * @param gitLab
+     *         the GraphQL reader
+     * @param projectPath
+     *         the full path of the project
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     *
+     * @return the context of the merge request
+     * @throws GitLabApiException
+     *         if the query fails or the merge request does not exist
+     */
+    static MergeRequestContext load(final GitLabGraphQlReader gitLab, final String projectPath,
+            final long projectId, final long mergeRequestIid) throws GitLabApiException {
+        var variables = gitLab.createVariables()
+                .put("project", projectPath)
+                .put("iid", String.valueOf(mergeRequestIid));
+
+        var json = queryMergeRequest(gitLab, variables, projectPath, mergeRequestIid);
+        var mergeRequest = toMergeRequest(json, projectId);
+        var versions = new ArrayList<MergeRequestVersion>();
+        if (json.path("diffRefs").hasNonNull("headSha")) {
+            versions.add(toVersion(json.path("diffRefs")));
+        }
+
+        var notes = new ArrayList<Note>();
+        var page = json.path("notes");
+        addAutogradingNotes(page, notes);
+        while (page.path("pageInfo").path("hasNextPage").asBoolean()) {
+            variables.put("after", page.path("pageInfo").path("endCursor").asText());
+            page = queryMergeRequest(gitLab, variables, projectPath, mergeRequestIid).path("notes");
+            addAutogradingNotes(page, notes);
+        }
+        Collections.reverse(notes); // GraphQL returns the oldest note first, the REST API the newest note
+        return new MergeRequestContext(mergeRequest, versions, notes);
+    }
+
+    private static JsonNode queryMergeRequest(final GitLabGraphQlReader gitLab, final ObjectNode variables,
+            final String projectPath, final long mergeRequestIid) throws GitLabApiException {
+        var json = gitLab.query(QUERY, variables).path("project").path("mergeRequest");
+        if (json.isMissingNode() || json.isNull()) {
+            throw new GitLabApiException("Merge request !%d not found in %s".formatted(
+                    mergeRequestIid, projectPath), 404);
+        }
+        return json;
+    }
+
+    private static void addAutogradingNotes(final JsonNode page, final List<Note> notes) {
+        for (JsonNode noteJson : page.path("nodes")) {
+            var body = noteJson.path("body").asText();
+            if (body.startsWith(GitLabAutoGradingRunner.AUTOGRADING_MARKER)) {
+                var note = new Note();
+                note.setId(GitLabGraphQlReader.toId(noteJson.path("id").asText()));
+                note.setBody(body);
+                notes.add(note);
+            }
+        }
+    }
+
+    private static MergeRequest toMergeRequest(final JsonNode json, final long projectId) {
+        var mergeRequest = new MergeRequest();
+        mergeRequest.setProjectId(projectId);
+        mergeRequest.setIid(json.path("iid").asLong());
+        mergeRequest.setTitle(json.path("title").asText());
+        mergeRequest.setWebUrl(json.path("webUrl").asText());
+        mergeRequest.setSourceBranch(json.path("sourceBranch").asText());
+        mergeRequest.setTargetBranch(json.path("targetBranch").asText());
+        mergeRequest.setSha(json.path("diffHeadSha").asText());
+
+        var diffRefs = json.path("diffRefs");
+        if (diffRefs.isObject()) {
+            var diffRef = new DiffRef();
+            diffRef.setBaseSha(diffRefs.path("baseSha").asText());
+            diffRef.setHeadSha(diffRefs.path("headSha").asText());
+            diffRef.setStartSha(diffRefs.path("startSha").asText());
+            mergeRequest.setDiffRefs(diffRef);
+        }
+        return mergeRequest;
+    }
+
+    private static MergeRequestVersion toVersion(final JsonNode diffRefs) {
+        var version = new MergeRequestVersion();
+        version.setBaseCommitSha(diffRefs.path("baseSha").asText());
+        version.setHeadCommitSha(diffRefs.path("headSha").asText());
+        version.setStartCommitSha(diffRefs.path("startSha").asText());
+        return version;
+    }
+}
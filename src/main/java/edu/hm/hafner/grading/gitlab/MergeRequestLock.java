@@ -0,0 +1,181 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Note;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Coordinates concurrent runs of the action for the same merge request, so that their cleanup and publishing phases
+ * never interleave. Each run creates a lock note in the merge request. Since GitLab assigns increasing IDs to notes,
+ * the run with the oldest lock note holds the lock: all other runs wait until the older lock notes have been deleted.
+ * While waiting, a run stops if it has been superseded by a newer commit. Lock notes of runs that have been killed
+ * are deleted by the next run after the timeout. The lock notes do not start with the autograding marker, so they are
+ * never deleted by the cleanup of another run. Since notes notify the participants of the merge request, pipelines
+ * that already serialize their grading jobs (e.g., with a {@code resource_group}) should not use lock notes.
+ *
+ * @author Ullrich Hafner
+ */
+class MergeRequestLock implements AutoCloseable {
+    static final String LOCK_MARKER = "<!-- -[autograding-gitlab-action-lock]- -->";
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(10);
+    private static final Duration POLL_INTERVAL = Duration.ofSeconds(5);
+    private static final MergeRequestLock NONE = new MergeRequestLock(null, 0, 0, null, new FilteredLog("Errors"));
+
+    @CheckForNull
+    private final GitLabClient client;
+    private final long projectId;
+    private final long mergeRequestIid;
+    @CheckForNull
+    private final Note note;
+    private final FilteredLog log;
+
+    /**
+     * Returns a lock that does not coordinate anything.
+     *
+     * @return the lock
+     */
+    static MergeRequestLock none() {
+        return NONE;
+    }
+
+    /**
+     * Acquires the lock for the specified merge request. Waits until all older runs have released their locks.
+     *
+     * @param client
+     *         the GitLab client
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     * @param sha
+     *         the SHA of the graded commit
+     * @param superseded
+     *         the check for newer commits, waiting stops if the run has been superseded
+     * @param log
+     *         the logger
+     *
+     * @return the acquired lock, or a lock that does not coordinate anything if the created lock note cannot be found
+     * @throws GitLabApiException
+     *         if the lock note cannot be created or the lock notes cannot be fetched
+     */
+    static MergeRequestLock acquire(final GitLabClient client, final long projectId, final long mergeRequestIid,
+            final String sha, final SupersededRunCheck superseded, final FilteredLog log) throws GitLabApiException {
+        return acquire(client, projectId, mergeRequestIid, sha, superseded, TIMEOUT, POLL_INTERVAL, log);
+    }
+
+    @VisibleForTesting
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    static MergeRequestLock acquire(final GitLabClient client, final long projectId, final long mergeRequestIid,
+            final String sha, final SupersededRunCheck superseded, final Duration timeout,
+            final Duration pollInterval, final FilteredLog log) throws GitLabApiException {
+        var body = "%s%n%n:hourglass_flowing_sand: Grading commit %s...%n%n<!-- autograding-lock: %s -->"
+                .formatted(LOCK_MARKER, sha, UUID.randomUUID());
+        client.createMergeRequestNote(projectId, mergeRequestIid, body);
+
+        var start = System.nanoTime();
+        while (true) {
+            var locks = client.getMergeRequestNotes(projectId, mergeRequestIid, LOCK_MARKER);
+            var own = locks.stream().filter(lock -> body.equals(lock.getBody())).findFirst();
+            if (own.isEmpty()) {
+                log.logError("Can't find lock note of merge request !%d - publishing without coordination",
+                        mergeRequestIid);
+
+                return NONE;
+            }
+            var lock = new MergeRequestLock(client, projectId, mergeRequestIid, own.get(), log);
+            var holder = findHolder(client, projectId, mergeRequestIid, locks, own.get(), timeout, log);
+            if (holder.isEmpty() || holder.get().getId().equals(own.get().getId())) {
+                log.logInfo("Acquired lock of merge request !%d", mergeRequestIid);
+
+                return lock;
+            }
+            if (superseded.isSuperseded()) {
+                return lock; // the caller stops publishing and releases the lock
+            }
+            if (System.nanoTime() - start > timeout.toNanos()) {
+                log.logError("Lock of merge request !%d is still held by note %d after %d seconds - proceeding",
+                        mergeRequestIid, holder.get().getId(), timeout.toSeconds());
+
+                return lock;
+            }
+            log.logInfo("Waiting for the previous run of merge request !%d (lock note %d)",
+                    mergeRequestIid, holder.get().getId());
+            pause(pollInterval);
+        }
+    }
+
+    // The oldest lock note that is not stale holds the lock, stale lock notes of killed runs are deleted
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private static Optional<Note> findHolder(final GitLabClient client, final long projectId,
+            final long mergeRequestIid, final List<Note> locks, final Note own, final Duration timeout,
+            final FilteredLog log) {
+        var stale = Instant.now().minus(timeout);
+        for (Note lock : locks) {
+            if (lock.getCreatedAt() == null || lock.getCreatedAt().toInstant().isAfter(stale)
+                    || lock.getId().equals(own.getId())) {
+                return Optional.of(lock);
+            }
+            deleteStaleLock(client, projectId, mergeRequestIid, lock, log);
+        }
+        return Optional.empty();
+    }
+
+    private static void deleteStaleLock(final GitLabClient client, final long projectId, final long mergeRequestIid,
+            final Note lock, final FilteredLog log) {
+        try {
+            client.deleteMergeRequestNote(projectId, mergeRequestIid, lock.getId());
+            log.logInfo("Deleted stale lock note %d of merge request !%d", lock.getId(), mergeRequestIid);
+        }
+        catch (GitLabApiException exception) {
+            log.logException(exception, "Can't delete stale lock note %d of merge request !%d", lock.getId(),
+                    mergeRequestIid);
+        }
+    }
+
+    private static void pause(final Duration pollInterval) throws GitLabApiException {
+        try {
+            Thread.sleep(pollInterval);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new GitLabApiException(exception);
+        }
+    }
+
+    private MergeRequestLock(@CheckForNull final GitLabClient client, final long projectId,
+            final long mergeRequestIid, @CheckForNull final Note note, final FilteredLog log) {
+        this.client = client;
+        this.projectId = projectId;
+        this.mergeRequestIid = mergeRequestIid;
+        this.note = note;
+        this.log = log;
+    }
+
+    /**
+     * Releases the lock by deleting the lock note.
+     */
+    @Override
+    public void close() {
+        if (client == null || note == null) {
+            return;
+        }
+        try {
+            client.deleteMergeRequestNote(projectId, mergeRequestIid, note.getId());
+            log.logInfo("Released lock of merge request !%d", mergeRequestIid);
+        }
+        catch (GitLabApiException exception) {
+            log.logException(exception, "Can't delete lock note %d of merge request !%d", note.getId(),
+                    mergeRequestIid);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Grades several modules of a repository in one job and publishes one combined summary note. Usage:
+ * {@code MultiModuleGrader [--runner command] name=directory...}. The connection to GitLab and the merge request are
+ * configured with the same environment variables as the action.
+ *
+ * <p>
+ * Each module has a sub-root directory with the reports of the module and a settings file {@code .autograding.yml}
+ * that contains the grading configuration ({@code CONFIG}) of the module. Since the autograding model reads the
+ * grading configuration from the environment and the reports from the working directory, each module is graded by a
+ * {@link RunnerProcess runner process} in its sub-root. The runners keep the project directory of the repository
+ * ({@code CI_PROJECT_DIR}), so that the paths of the line comments match the diff of the merge request. All modules
+ * are graded concurrently in a dry run, so that the runners do not publish anything. Afterward, the summary notes of
+ * the modules are combined into one note with a section for each module, and all requests are published by a single
+ * {@link TranscriptReplayer}. With {@code DRY_RUN}, the combined requests are written to the transcript file
+ * ({@code TRANSCRIPT}) instead.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+public class MultiModuleGrader {
+    /**
+     * A module of the repository.
+     *
+     * @param name
+     *         the name of the module, used as title of its section in the summary note
+     * @param directory
+     *         the sub-root of the module that contains its reports and settings file
+     */
+    record Module(String name, Path directory) {
+        /**
+         * Parses a module definition of the form {@code name=directory}.
+         *
+         * @param definition
+         *         the definition
+         *
+         * @return the module
+         */
+        static Module parse(final String definition) {
+            var name = StringUtils.substringBefore(definition, "=").strip();
+            var directory = StringUtils.substringAfter(definition, "=").strip();
+            if (name.isEmpty() || directory.isEmpty()) {
+                throw new IllegalArgumentException("Module must be defined as name=directory: " + definition);
+            }
+            return new Module(name, Path.of(directory));
+        }
+    }
+
+    /**
+     * The result of the runner of a module.
+     *
+     * @param module
+     *         the graded module
+     * @param exitCode
+     *         the exit code of the runner
+     * @param entries
+     *         the entries of the transcript of the runner
+     */
+    record ModuleResult(Module module, int exitCode, List<JsonNode> entries) {
+    }
+
+    private final RunnerProcess runner;
+    private final Map<String, String> environment;
+    private final int maxNoteSize;
+    private final Path workspace;
+
+    /**
+     * Grades the specified modules and publishes the combined results.
+     *
+     * @param args
+     *         the command line options, followed by the definitions of the modules
+     *
+     * @throws IOException
+     *         if the modules cannot be graded
+     */
+    @SuppressWarnings({"PMD.SystemPrintln", "SystemOut"})
+    static void main(final String... args) throws IOException {
+        var definitions = new ArrayList<String>();
+        String command = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--runner".equals(args[i]) && i + 1 < args.length) {
+                command = args[++i];
+            }
+            else {
+                definitions.add(args[i]);
+            }
+        }
+        if (definitions.isEmpty()) {
+            throw new IllegalArgumentException("Usage: MultiModuleGrader [--runner command] name=directory...");
+        }
+
+        var log = new FilteredLog("Errors while grading the modules:");
+        var configuration = RunConfiguration.load(log);
+        var runner = command == null
+                ? RunnerProcess.createJavaRunner()
+                : new RunnerProcess(List.of(command.split(" ")));
+        var modules = definitions.stream().map(Module::parse).toList();
+
+        var grader = new MultiModuleGrader(runner, System.getenv(), configuration.getMaxNoteSize(),
+                Files.createTempDirectory("autograding-modules"));
+        var results = grader.grade(modules);
+        for (ModuleResult result : results) {
+            System.out.printf("→ Module %s: exit code %d%n", result.module().name(), result.exitCode());
+        }
+
+        var entries = combine(results);
+        int failures = 0;
+        if (configuration.isDryRun()) {
+            writeTranscript(entries, configuration.getTranscript());
+            System.out.printf("→ Dry run: recorded %d GitLab requests in %s%n", entries.size(),
+                    configuration.getTranscript());
+        }
+        else if (configuration.hasGitLabConnection()) {
+            try (var client = new GitLabApiClient(configuration.getGitLabUrl(), configuration.getToken(), log)) {
+                var replayer = new TranscriptReplayer(client, configuration.getReplayConcurrency(),
+                        configuration.getReplayBatchSize(), !configuration.isSkipCommitComments(),
+                        Duration.ofSeconds(1), log);
+                failures = replayer.replay(entries);
+            }
+        }
+        else {
+            log.logError("No CI_SERVER_URL or GITLAB_TOKEN defined - skipping");
+        }
+
+        log.getInfoMessages().forEach(System.out::println);
+        log.getErrorMessages().forEach(System.out::println);
+        if (failures > 0) {
+            throw new IllegalStateException("%d requests could not be published".formatted(failures));
+        }
+        if (results.stream().anyMatch(result -> result.exitCode() != 0)) {
+            throw new IllegalStateException("Grading of at least one module failed");
+        }
+    }
+
+    /**
+     * Creates a new grader for several modules.
+     *
+     * @param runner
+     *         the launcher of the runner processes
+     * @param environment
+     *         the environment of the current process, the runners inherit all variables
+     * @param maxNoteSize
+     *         the maximum size of the combined summary note, each module gets an equal share
+     * @param workspace
+     *         the directory for the transcripts and logs of the runners
+     */
+    MultiModuleGrader(final RunnerProcess runner, final Map<String, String> environment, final int maxNoteSize,
+            final Path workspace) {
+        this.runner = runner;
+        this.environment = Map.copyOf(environment);
+        this.maxNoteSize = maxNoteSize;
+        this.workspace = workspace;
+    }
+
+    /**
+     * Grades the specified modules concurrently. The output of the runners is printed after all runners have been
+     * finished, one module after the other.
+     *
+     * @param modules
+     *         the modules to grade
+     *
+     * @return the results of the modules, in the order of the modules
+     * @throws IOException
+     *         if the modules cannot be graded
+     */
+    List<ModuleResult> grade(final List<Module> modules) throws IOException {
+        try (var executor = Executors.newFixedThreadPool(Math.max(1, modules.size()))) {
+            var tasks = modules.stream()
+                    .map(module -> (Callable<ModuleResult>) () -> grade(module, modules.size()))
+                    .toList();
+            var results = new ArrayList<ModuleResult>();
+            for (Future<ModuleResult> result : executor.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+            for (ModuleResult result : results) {
+                printLog(result.module());
+            }
+            return results;
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Grading of the modules has been interrupted", exception);
+        }
+        catch (ExecutionException exception) {
+            throw new IOException("Grading of the modules failed", exception);
+        }
+    }
+
+    private ModuleResult grade(final Module module, final int total) throws IOException, InterruptedException {
+        var transcript = workspace.resolve(module.name() + ".jsonl");
+        var exitCode = runner.run(module.directory(), createEnvironment(module, transcript, total),
+                getLog(module));
+        var log = new FilteredLog("Errors");
+        var entries = Files.exists(transcript)
+                ? TranscriptReplayer.readTranscripts(List.of(transcript), log)
+                : List.<JsonNode>of();
+        return new ModuleResult(module, exitCode, entries);
+    }
+
+    private Map<String, String> createEnvironment(final Module module, final Path transcript, final int total)
+            throws IOException {
+        var variables = new HashMap<>(environment);
+        var settings = readSettings(module.directory());
+        variables.putAll(settings); // the configuration of the module takes precedence
+        variables.remove(RunConfiguration.SETTINGS_FILE_VARIABLE);
+        variables.put(RunConfiguration.DISPLAY_NAME,
+                settings.getOrDefault(RunConfiguration.DISPLAY_NAME, module.name()));
+        variables.put(RunConfiguration.MAX_NOTE_SIZE, String.valueOf(Math.max(1, maxNoteSize / total)));
+        variables.put(RunConfiguration.DRY_RUN, "true");
+        variables.put(RunConfiguration.TRANSCRIPT, transcript.toString());
+        return variables;
+    }
+
+    private Map<String, String> readSettings(final Path directory) throws IOException {
+        var file = directory.resolve(RunConfiguration.SETTINGS_FILE);
+        if (Files.isRegularFile(file)) {
+            return RunConfiguration.parseSettings(Files.readString(file, StandardCharsets.UTF_8));
+        }
+        return Map.of();
+    }
+
+    private Path getLog(final Module module) {
+        return workspace.resolve(module.name() + ".log");
+    }
+
+    @SuppressWarnings({"PMD.SystemPrintln", "SystemOut"})
+    private void printLog(final Module module) throws IOException {
+        var log = getLog(module);
+        System.out.printf("----------------------------- Module %s -----------------------------%n", module.name());
+        if (Files.exists(log)) {
+            System.out.print(Files.readString(log, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Combines the transcripts of the modules. The summary notes of the modules are combined into one note that
+     * contains a section for each module. All other requests (e.g., the line comments) are kept as they are.
+     *
+     * @param results
+     *         the results of the modules
+     *
+     * @return the combined transcript entries
+     */
+    static List<JsonNode> combine(final List<ModuleResult> results) {
+        var entries = new ArrayList<JsonNode>();
+        var sections = new ArrayList<String>();
+        ObjectNode summary = null;
+        for (ModuleResult result : results) {
+            JsonNode note = null;
+            for (JsonNode entry : result.entries()) {
+                if (isSummary(entry)) {
+                    note = entry;
+                }
+                else {
+                    entries.add(entry);
+                }
+            }
+            if (note == null) {
+                sections.add("## :x: %s%n%nThe module could not be graded (exit code %d)."
+                        .formatted(result.module().name(), result.exitCode()));
+            }
+            else {
+                sections.add(StringUtils.removeStart(note.path(TranscriptClient.BODY).asText(),
+                        GitLabAutoGradingRunner.AUTOGRADING_MARKER).strip());
+                if (summary == null || isUpdate(note) && !isUpdate(summary)) {
+                    summary = note.deepCopy();
+                }
+            }
+        }
+        if (summary != null) {
+            summary.put(TranscriptClient.BODY,
+                    GitLabAutoGradingRunner.AUTOGRADING_MARKER + "\n\n" + String.join("\n\n", sections));
+            entries.add(summary);
+        }
+        return entries;
+    }
+
+    // Summary notes of merge requests or summary comments of commits (without a path)
+    private static boolean isSummary(final JsonNode entry) {
+        return switch (entry.path(TranscriptClient.OPERATION).asText()) {
+            case TranscriptClient.NOTE, TranscriptClient.UPDATE_NOTE -> true;
+            case TranscriptClient.COMMIT_COMMENT -> !entry.has(TranscriptClient.PATH);
+            default -> false;
+        };
+    }
+
+    // Runners in update mode update the existing summary note, so the combined note must update it as well
+    private static boolean isUpdate(@CheckForNull final JsonNode entry) {
+        return entry != null
+                && TranscriptClient.UPDATE_NOTE.equals(entry.path(TranscriptClient.OPERATION).asText());
+    }
+
+    private static void writeTranscript(final List<JsonNode> entries, final Path transcript) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(transcript, StandardCharsets.UTF_8)) {
+            for (JsonNode entry : entries) {
+                writer.append(entry.toString()).append('\n');
+            }
+        }
+    }
+}
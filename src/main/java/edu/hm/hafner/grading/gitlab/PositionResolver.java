@@ -0,0 +1,124 @@
+package edu.hm.hafner.grading.gitlab;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Resolves the position of a line of a file in the diff of a merge request. GitLab accepts a discussion on a diff line
+ * only if the position exactly matches the diff: an added line requires the new line number only, an unchanged
+ * context line requires the old and the new line number, and a renamed file requires the old path. Lines outside the
+ * hunks of the diff and lines of deleted files cannot be commented at all. Resolving the position locally avoids
+ * requests that GitLab would reject anyway.
+ *
+ * @author Ullrich Hafner
+ */
+class PositionResolver {
+    private static final PositionResolver UNKNOWN = new PositionResolver(Map.of(), true);
+
+    /**
+     * Returns a resolver for an unknown diff. This resolver assumes that every line is an added line.
+     *
+     * @return a resolver that accepts every line
+     */
+    static PositionResolver unknown() {
+        return UNKNOWN;
+    }
+
+    private final Map<String, FileDiff> files;
+    private final boolean acceptUnknownFiles;
+
+    /**
+     * Creates a new resolver for the specified files.
+     *
+     * @param files
+     *         the diffs of the files, mapped by the new path of each file
+     */
+    PositionResolver(final Map<String, FileDiff> files) {
+        this(files, false);
+    }
+
+    private PositionResolver(final Map<String, FileDiff> files, final boolean acceptUnknownFiles) {
+        this.files = Map.copyOf(files);
+        this.acceptUnknownFiles = acceptUnknownFiles;
+    }
+
+    /**
+     * Resolves the position of the specified line in the diff.
+     *
+     * @param path
+     *         the path of the file (in the new version)
+     * @param line
+     *         the line in the new version of the file
+     *
+     * @return the position, or an empty optional if GitLab will not accept a comment on this line
+     */
+    Optional<LinePosition> resolve(final String path, final int line) {
+        var file = files.get(path);
+        if (file == null) {
+            return acceptUnknownFiles ? Optional.of(new LinePosition(null, path, null, line)) : Optional.empty();
+        }
+        if (file.deleted()) {
+            return Optional.empty();
+        }
+        if (!file.complete()) {
+            return Optional.of(new LinePosition(file.oldPath(), path, null, line)); // GitLab did not send the diff
+        }
+        if (file.addedLines().contains(line)) {
+            return Optional.of(new LinePosition(file.oldPath(), path, null, line));
+        }
+        var oldLine = file.contextLines().get(line);
+        if (oldLine != null) {
+            return Optional.of(new LinePosition(file.oldPath(), path, oldLine, line));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the added lines of all files of the diff.
+     *
+     * @return the added lines, mapped by the new path of each file
+     */
+    Map<String, Set<Integer>> getModifiedLines() {
+        var modifiedLines = new HashMap<String, Set<Integer>>();
+        files.forEach((path, file) -> modifiedLines.put(path, new HashSet<>(file.addedLines())));
+        return modifiedLines;
+    }
+
+    /**
+     * The diff of a single file.
+     *
+     * @param oldPath
+     *         the path of the file before the change
+     * @param deleted
+     *         determines whether the file has been deleted
+     * @param complete
+     *         determines whether the diff text of the file is available
+     * @param addedLines
+     *         the added lines (line numbers of the new version)
+     * @param contextLines
+     *         the unchanged lines that are part of the diff, maps the new line number to the old line number
+     */
+    record FileDiff(String oldPath, boolean deleted, boolean complete, Set<Integer> addedLines,
+                    Map<Integer, Integer> contextLines) {
+    }
+
+    /**
+     * The position of a line in the diff.
+     *
+     * @param oldPath
+     *         the path of the file before the change, or {@code null} if unknown
+     * @param newPath
+     *         the path of the file after the change
+     * @param oldLine
+     *         the line number in the old version, {@code null} for added lines
+     * @param newLine
+     *         the line number in the new version
+     */
+    record LinePosition(@CheckForNull String oldPath, String newPath, @CheckForNull Integer oldLine, int newLine) {
+    }
+}
@@ -0,0 +1,216 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.apache.commons.lang3.StringUtils;
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Project;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.hm.hafner.util.VisibleForTesting;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A local index of the projects of a group. Each project is stored as a single JSON line with the few fields the
+ * crawler needs, so the projects of a group do not need to be listed again in each run. The index is synchronized
+ * incrementally: only the projects with an activity since the latest activity in the index are requested, sorted by
+ * their activity, so reading stops at the first project that is already known. Since an incremental sync never sees
+ * projects that have been deleted, transferred, or renamed, all projects of the group are listed again once a day and
+ * the index is replaced with this listing.
+ *
+ * @author Ullrich Hafner
+ */
+class ProjectIndex {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Duration FULL_SYNC_INTERVAL = Duration.ofDays(1);
+
+    /**
+     * A project of the group.
+     *
+     * @param id
+     *         the ID of the project
+     * @param name
+     *         the name of the project
+     * @param student
+     *         the name of the student, parsed from the project name
+     * @param webUrl
+     *         the URL of the project
+     * @param lastActivity
+     *         the time of the latest activity in the project
+     */
+    record Entry(long id, String name, String student, String webUrl, Instant lastActivity) {
+        /**
+         * Converts the entry to a GitLab project with ID, name, and URL.
+         *
+         * @return the project
+         */
+        Project toProject() {
+            var project = new Project();
+            project.setId(id);
+            project.setName(name);
+            project.setWebUrl(webUrl);
+            return project;
+        }
+    }
+
+    private final Path file;
+    private final Path fullSyncFile;
+    private final Clock clock;
+
+    ProjectIndex(final Path file) {
+        this(file, Clock.systemUTC());
+    }
+
+    @VisibleForTesting
+    ProjectIndex(final Path file, final Clock clock) {
+        this.file = file;
+        this.fullSyncFile = file.resolveSibling(file.getFileName() + ".full-sync");
+        this.clock = clock;
+    }
+
+    /**
+     * Parses the name of the student from the name of a project, e.g., {@code assignment1-hafner_at_hm.edu}.
+     *
+     * @param projectName
+     *         the name of the project
+     *
+     * @return the name of the student, or an empty string if the name does not contain a student
+     */
+    static String parseStudentName(final String projectName) {
+        return StringUtils.defaultString(StringUtils.substringBetween(projectName, "-", "_at"));
+    }
+
+    /**
+     * Reads the projects of the index.
+     *
+     * @return the projects, or an empty list if there is no index yet
+     * @throws IOException
+     *         if the index cannot be read
+     */
+    List<Entry> read() throws IOException {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        var entries = new ArrayList<Entry>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                var json = MAPPER.readTree(line);
+                entries.add(new Entry(json.path("id").asLong(), json.path("name").asText(),
+                        json.path("student").asText(), json.path("web_url").asText(),
+                        Instant.ofEpochMilli(json.path("last_activity").asLong())));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Synchronizes the index with the projects of the specified group. Only the projects with an activity since the
+     * latest activity in the index are read from GitLab, new projects are added and changed projects are replaced. If
+     * the last full sync is older than a day, all projects are read and projects that are no longer part of the group
+     * are removed.
+     *
+     * @param gitLab
+     *         the GitLab reader
+     * @param groupPath
+     *         the path of the group
+     *
+     * @return the projects of the index, sorted by name
+     * @throws GitLabApiException
+     *         if the projects cannot be read from GitLab
+     * @throws IOException
+     *         if the index cannot be read or written
+     */
+    List<Entry> sync(final GitLabRestReader gitLab, final String groupPath) throws GitLabApiException, IOException {
+        var now = clock.instant();
+        var fullSync = isFullSyncDue(now);
+        var entries = new LinkedHashMap<Long, Entry>();
+        if (!fullSync) {
+            read().forEach(entry -> entries.put(entry.id(), entry));
+        }
+
+        var watermark = entries.values().stream()
+                .map(Entry::lastActivity)
+                .max(Comparator.naturalOrder());
+        var path = "/groups/%s/projects?simple=true&order_by=last_activity_at&sort=desc".formatted(encode(groupPath));
+        if (watermark.isPresent()) {
+            path += "&last_activity_after=" + encode(watermark.get().toString());
+        }
+        var since = watermark.orElse(Instant.EPOCH);
+        var changed = gitLab.getWhile(path, json -> !parseActivity(json).isBefore(since));
+        for (JsonNode json : changed) {
+            var name = json.path("name").asText();
+            entries.put(json.path("id").asLong(), new Entry(json.path("id").asLong(), name, parseStudentName(name),
+                    json.path("web_url").asText(), parseActivity(json)));
+        }
+        if (fullSync || !changed.isEmpty()) {
+            write(entries.values());
+        }
+        if (fullSync) {
+            Files.writeString(fullSyncFile, now.toString(), StandardCharsets.UTF_8);
+        }
+
+        var projects = new ArrayList<>(entries.values());
+        projects.sort(Comparator.comparing(Entry::name));
+        return projects;
+    }
+
+    private boolean isFullSyncDue(final Instant now) throws IOException {
+        if (!Files.isRegularFile(file) || !Files.isRegularFile(fullSyncFile)) {
+            return true;
+        }
+        try {
+            return Instant.parse(Files.readString(fullSyncFile, StandardCharsets.UTF_8).strip())
+                    .plus(FULL_SYNC_INTERVAL).isBefore(now);
+        }
+        catch (DateTimeParseException exception) {
+            return true;
+        }
+    }
+
+    private Instant parseActivity(final JsonNode json) {
+        try {
+            return OffsetDateTime.parse(json.path("last_activity_at").asText()).toInstant();
+        }
+        catch (DateTimeParseException exception) {
+            return Instant.EPOCH;
+        }
+    }
+
+    // Replaces the index atomically, so an interrupted run never leaves an incomplete index behind
+    private void write(final Iterable<Entry> entries) throws IOException {
+        var lines = new ArrayList<String>();
+        for (Entry entry : entries) {
+            lines.add(MAPPER.writeValueAsString(MAPPER.createObjectNode()
+                    .put("id", entry.id())
+                    .put("name", entry.name())
+                    .put("student", entry.student())
+                    .put("web_url", entry.webUrl())
+                    .put("last_activity", entry.lastActivity().toEpochMilli())));
+        }
+        var directory = Objects.requireNonNull(file.toAbsolutePath().getParent());
+        Files.createDirectories(directory);
+        var temp = Files.createTempFile(directory, "projects", ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private String encode(final String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
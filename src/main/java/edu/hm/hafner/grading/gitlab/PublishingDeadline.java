@@ -0,0 +1,119 @@
+package edu.hm.hafner.grading.gitlab;
+
+import edu.hm.hafner.util.VisibleForTesting;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * The time budget for publishing the results in GitLab. The summary note is always published, but line comments are
+ * only published while there is time left. The last part of the budget is reserved to record the number of deferred
+ * line comments in the summary note, so that the action stops before the runner kills the job. Publishing stops
+ * immediately if the run has been superseded by a newer commit (see {@link SupersededRunCheck}).
+ *
+ * @author Ullrich Hafner
+ */
+class PublishingDeadline {
+    private static final int RESERVE_PERCENTAGE = 10;
+
+    private final Duration budget;
+    private final LongSupplier clock;
+    private final long end;
+    private int deferred;
+    private SupersededRunCheck superseded = SupersededRunCheck.never();
+
+    /**
+     * Returns a deadline that never expires.
+     *
+     * @return the unlimited deadline
+     */
+    static PublishingDeadline unlimited() {
+        return new PublishingDeadline(Duration.ZERO, System::nanoTime);
+    }
+
+    /**
+     * Starts the time budget for publishing now.
+     *
+     * @param budget
+     *         the time budget
+     *
+     * @return the started deadline
+     */
+    static PublishingDeadline start(final Duration budget) {
+        return new PublishingDeadline(budget, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    PublishingDeadline(final Duration budget, final LongSupplier clock) {
+        this.budget = budget;
+        this.clock = clock;
+
+        var usable = budget.toNanos() - budget.toNanos() / 100 * RESERVE_PERCENTAGE;
+        end = clock.getAsLong() + usable;
+    }
+
+    /**
+     * Returns whether publishing is limited by a time budget.
+     *
+     * @return {@code true} if there is a time budget, {@code false} if the deadline never expires
+     */
+    boolean isLimited() {
+        return budget.isPositive();
+    }
+
+    /**
+     * Stops publishing as soon as the specified check detects that the run has been superseded.
+     *
+     * @param check
+     *         the check for newer commits
+     */
+    void stopIfSuperseded(final SupersededRunCheck check) {
+        superseded = check;
+    }
+
+    /**
+     * Returns whether the run has been superseded by a newer commit.
+     *
+     * @return {@code true} if the run has been superseded, {@code false} otherwise
+     */
+    boolean isSuperseded() {
+        return superseded.isSuperseded();
+    }
+
+    /**
+     * Returns whether there is time left to publish another line comment.
+     *
+     * @return {@code true} if there is time left, {@code false} if the usable part of the budget has been exhausted
+     *         or if the run has been superseded
+     */
+    boolean hasTimeLeft() {
+        return (!isLimited() || clock.getAsLong() - end < 0) && !isSuperseded();
+    }
+
+    /**
+     * Records line comments that have not been published since the budget has been exhausted.
+     *
+     * @param count
+     *         the number of deferred line comments
+     */
+    void defer(final int count) {
+        deferred += count;
+    }
+
+    int getDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Creates a notice for the summary note that shows the number of deferred line comments.
+     *
+     * @return the notice in Markdown, or an empty string if no line comments have been deferred
+     */
+    String createNotice() {
+        if (deferred == 0) {
+            return "";
+        }
+        return ("\n\n:hourglass: %d line comments have been deferred since the publishing time budget of %d seconds "
+                + "has been exhausted.").formatted(deferred, budget.toSeconds());
+    }
+}
@@ -1,21 +1,27 @@
 package edu.hm.hafner.grading.gitlab;
 
-import org.apache.commons.lang3.StringUtils;
-import org.gitlab4j.api.GitLabApi;
 import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Author;
 import org.gitlab4j.api.models.MergeRequest;
 import org.gitlab4j.api.models.Note;
 import org.gitlab4j.api.models.Pipeline;
-import org.gitlab4j.api.models.PipelineFilter;
 import org.gitlab4j.api.models.PipelineStatus;
 import org.gitlab4j.api.models.Project;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.errorprone.annotations.FormatMethod;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
 import java.io.IOException;
 import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -41,11 +47,17 @@ public class ResultCrawler {
     private static final String DEFAULT_MR_LABEL = "solution"; // the label to filter merge requests, for example, solution
 
     private static final Set<String> SKIP_PROJECTS_FROM = Set.of("hafner"); // students to skip, for example, "hafner"
+
+    private static final Path CACHE_DIRECTORY = Path.of(System.getProperty("user.home"), ".cache",
+            "autograding-result-crawler"); // the cache for the GitLab responses of previous runs
+    private static final long CACHE_SIZE = 256L * 1024 * 1024; // the maximum size of the response cache in bytes
+    private static final int GRAPHQL_PAGE_SIZE = 50; // the number of projects per GraphQL query
+    private static final int GRAPHQL_NOTES = 20; // the number of notes per merge request that are read at once
     // ------- No need to change anything below this line -------
 
     private static final Pattern GITLAB_TOKEN_PATTERN = Pattern.compile("glpat-[A-Za-z0-9_\\-]+");
 
-    private static final Pattern CATEGORIES_AND_SCORES
+    static final Pattern CATEGORIES_AND_SCORES
             = Pattern.compile("##.*?(?<category>[\\p{L}\\s:]+)- (?<value>\\d+) of (?<total>\\d+)");
 
     private static final String EMPTY = "-"; // Placeholder for empty values in the CSV output
@@ -56,8 +68,69 @@ public class ResultCrawler {
     private static final String MR_NUMBER = "MR #";
     private static final String MR_NAME = "MR Name";
 
+    // Command line options
+    private static final String INVALIDATE_CACHE = "--invalidate-cache";
+    private static final String NO_CACHE = "--no-cache";
+    private static final String GRAPHQL = "--graphql";
+
+    // Reads a page of projects with the newest labeled merge request, its head pipeline and latest notes
+    private static final String SUBMISSIONS_QUERY = """
+            query($group: ID!, $label: String!, $first: Int!, $notes: Int!, $after: String) {
+              group(fullPath: $group) {
+                projects(first: $first, after: $after) {
+                  pageInfo { hasNextPage endCursor }
+                  nodes {
+                    id
+                    name
+                    fullPath
+                    webUrl
+                    mergeRequests(labels: [$label], sort: CREATED_DESC, first: 1) {
+                      nodes {
+                        iid
+                        title
+                        webUrl
+                        diffHeadSha
+                        headPipeline { status }
+                        notes(last: $notes) {
+                          pageInfo { hasPreviousPage startCursor }
+                          nodes { id body author { name } }
+                        }
+                      }
+                    }
+                  }
+                }
+              }
+            }
+            """;
+
+    // Reads the previous page of notes of a merge request, if the grading note is not part of the latest notes
+    private static final String NOTES_QUERY = """
+            query($project: ID!, $iid: String!, $notes: Int!, $before: String) {
+              project(fullPath: $project) {
+                mergeRequest(iid: $iid) {
+                  notes(last: $notes, before: $before) {
+                    pageInfo { hasPreviousPage startCursor }
+                    nodes { id body author { name } }
+                  }
+                }
+              }
+            }
+            """;
+
     /**
-     * Starts the crawler. Usage: {@code ResultCrawler [assignment-name [merge-request-label]]}.
+     * Starts the crawler. Usage:
+     * {@code ResultCrawler [--graphql] [--invalidate-cache | --no-cache] [assignment-name [merge-request-label]]}.
+     *
+     * <p>
+     * All GitLab responses are cached on disk and revalidated with conditional requests in subsequent runs. The option
+     * {@code --invalidate-cache} removes all cached responses before crawling, the option {@code --no-cache} disables
+     * the cache. The projects of the group are kept in a local index that is synchronized incrementally, so only the
+     * projects with a recent activity are listed again. Once a day, all projects are listed to remove deleted or moved
+     * projects from the index; {@code --invalidate-cache} rebuilds this index as well. The
+     * option {@code --graphql} uses the GraphQL API instead: each query fetches a page of projects with
+     * their labeled merge requests, pipeline status, and latest notes. Older notes are requested page by page
+     * only if the latest notes do not contain the grading note.
+     * </p>
      *
      * @param args
      *         the command line arguments, where the first argument is the assignment name (optional). The second
@@ -72,8 +145,10 @@ public class ResultCrawler {
     static void main(final String... args) throws GitLabApiException, IOException {
         var crawler = new ResultCrawler();
 
-        var assignment = args.length == 1 ? args[0] : DEFAULT_ASSIGNMENT;
-        var label = args.length == 2 ? args[1] : DEFAULT_MR_LABEL;
+        var options = Arrays.stream(args).filter(arg -> arg.startsWith("--")).collect(Collectors.toSet());
+        var positional = Arrays.stream(args).filter(arg -> !arg.startsWith("--")).toList();
+        var assignment = positional.isEmpty() ? DEFAULT_ASSIGNMENT : positional.get(0);
+        var label = positional.size() > 1 ? positional.get(1) : DEFAULT_MR_LABEL;
 
         System.out.println("----------------------------------------------------");
         System.out.println("Crawling GitLab autograding merge request results");
@@ -81,105 +156,135 @@ public class ResultCrawler {
         System.out.println("Group Path: " + DEFAULT_GROUP_PATH);
         System.out.println("Assignment Group Name: " + assignment);
         System.out.println("Merge Request Label: " + label);
+        System.out.println("API: " + (options.contains(GRAPHQL) ? "GraphQL" : "REST"));
+        System.out.println("Response Cache: " + (options.contains(NO_CACHE) ? "disabled" : CACHE_DIRECTORY));
         System.out.println("----------------------------------------------------");
 
-        crawler.createResultsFor(DEFAULT_GROUP_PATH + "/" + assignment, label);
+        var cache = options.contains(NO_CACHE) ? null : new HttpResponseCache(CACHE_DIRECTORY, CACHE_SIZE);
+        if (options.contains(INVALIDATE_CACHE)) {
+            if (cache != null) {
+                cache.invalidate();
+            }
+            Files.deleteIfExists(getProjectIndex(DEFAULT_GROUP_PATH + "/" + assignment));
+        }
+        crawler.createResultsFor(DEFAULT_GROUP_PATH + "/" + assignment, label, cache, options.contains(GRAPHQL));
     }
 
-    private void createResultsFor(final String repositoryPath, final String label)
+    private void createResultsFor(final String repositoryPath, final String label,
+            @CheckForNull final HttpResponseCache cache, final boolean useGraphQl)
             throws GitLabApiException, IOException {
         Map<String, Map<String, String>> rows = new LinkedHashMap<>();
 
         var token = readGitLabTokenFromGlabsConfiguration();
-        try (var gitLabApi = new GitLabApi(GITLAB_HOST_URL, token)) {
-            var projects = readProjects(repositoryPath, gitLabApi);
-
+        if (useGraphQl) {
+            var gitLab = new GitLabGraphQlReader(GITLAB_HOST_URL, token);
+            var submissions = readSubmissions(repositoryPath, label, gitLab);
             int projectIndex = 0;
-            for (Project project : projects) {
+            for (Submission submission : submissions) {
                 projectIndex++;
-
-                var studentName = StringUtils.substringBetween(project.getName(), "-", "_at");
-                if (SKIP_PROJECTS_FROM.contains(studentName)) {
-                    continue;
+                if (!isSkipped(submission.project())) {
+                    print("→ [%d/%d] Student: %s%n", projectIndex, submissions.size(),
+                            getStudentName(submission.project()));
+                    rows.put(getStudentName(submission.project()), createRow(submission, label));
+                }
+            }
+            print("→ GitLab requests: %d GraphQL queries%n", gitLab.getRequests());
+        }
+        else {
+            var gitLab = new GitLabRestReader(GITLAB_HOST_URL, token, cache);
+            var projects = readProjects(repositoryPath, gitLab);
+            int projectIndex = 0;
+            for (ProjectIndex.Entry project : projects) {
+                projectIndex++;
+                if (!SKIP_PROJECTS_FROM.contains(project.student())) {
+                    print("→ [%d/%d] Student: %s%n", projectIndex, projects.size(), project.student());
+                    rows.put(project.student(), createRow(readSubmission(project.toProject(), label, gitLab), label));
                 }
+            }
+            print("→ GitLab requests: %d downloaded, %d not modified%n",
+                    gitLab.getDownloaded(), gitLab.getNotModified());
+        }
 
-                print("→ [%d/%d] Student: %s%n", projectIndex, projects.size(), studentName);
+        writeCsvFile(rows);
+    }
 
-                Map<String, String> scores = new LinkedHashMap<>();
-                rows.put(studentName, scores);
+    private String getStudentName(final Project project) {
+        return ProjectIndex.parseStudentName(project.getName());
+    }
 
-                scores.put("Student", studentName);
+    private boolean isSkipped(final Project project) {
+        return SKIP_PROJECTS_FROM.contains(getStudentName(project));
+    }
 
-                Optional<MergeRequest> mergeRequests = gitLabApi.getMergeRequestApi().getMergeRequests(project.getId())
-                        .stream().filter(m -> m.getLabels().contains(label)).findFirst();
-                if (mergeRequests.isEmpty()) {
-                    scores.put(URL, project.getWebUrl() + "/-/merge_requests");
-                    skip("no merge request contains label " + label, scores);
-                    continue;
-                }
+    private Map<String, String> createRow(final Submission submission, final String label) {
+        Map<String, String> scores = new LinkedHashMap<>();
 
-                var mr = mergeRequests.get();
+        scores.put("Student", getStudentName(submission.project()));
 
-                scores.put(MR_NUMBER, String.valueOf(mr.getIid()));
-                scores.put(MR_NAME, mr.getTitle());
-                scores.put(URL, mr.getWebUrl());
+        var mr = submission.mergeRequest();
+        if (mr == null) {
+            scores.put(URL, submission.project().getWebUrl() + "/-/merge_requests");
+            skip("no merge request contains label " + label, scores);
+            return scores;
+        }
 
-                Optional<Pipeline> possiblePipeline = gitLabApi.getPipelineApi()
-                        .getPipelines(project.getId(), new PipelineFilter().withSha(mr.getSha()))
-                        .stream().findFirst();
+        scores.put(MR_NUMBER, String.valueOf(mr.getIid()));
+        scores.put(MR_NAME, mr.getTitle());
+        scores.put(URL, mr.getWebUrl());
 
-                if (possiblePipeline.isEmpty()) {
-                    skip("no pipeline found", scores);
-                    scores.put(PIPELINE, "No pipeline found");
-                    continue;
-                }
+        var pipeline = submission.pipeline();
+        if (pipeline == null) {
+            skip("no pipeline found", scores);
+            scores.put(PIPELINE, "No pipeline found");
+            return scores;
+        }
 
-                if (possiblePipeline.get().getStatus() != PipelineStatus.SUCCESS) {
-                    skip("no successful pipeline found", scores);
-                    scores.put(PIPELINE, "No successful pipeline found");
-                    continue;
-                }
+        if (pipeline.getStatus() != PipelineStatus.SUCCESS) {
+            skip("no successful pipeline found", scores);
+            scores.put(PIPELINE, "No successful pipeline found");
+            return scores;
+        }
 
-                Optional<Note> notes = gitLabApi.getNotesApi().getMergeRequestNotes(project.getId(), mr.getIid())
-                        .stream()
-                        .filter(note -> "AUTOGRADING_BOT".equals(note.getAuthor().getName()))
-                        .filter(note -> note.getBody().startsWith("<!-- -[autograding-gitlab-action]- -->"))
-                        .filter(note -> note.getBody().contains("Autograding score"))
-                        .findFirst();
-
-                if (notes.isEmpty()) {
-                    skip("no Autograding comments found", scores);
-                    scores.put(PIPELINE, "No autograding comments found");
-                    continue;
-                }
-                scores.put(URL, mr.getWebUrl() + "#note_" + notes.get().getId());
+        var gradingNote = submission.gradingNote();
+        if (gradingNote == null) {
+            skip("no Autograding comments found", scores);
+            scores.put(PIPELINE, "No autograding comments found");
+            return scores;
+        }
+        scores.put(URL, mr.getWebUrl() + "#note_" + gradingNote.getId());
 
-                scores.put(PIPELINE, "Success");
+        scores.put(PIPELINE, "Success");
 
-                var gradingNote = notes.get();
-                scores.putAll(readGradingComments(gradingNote));
-            }
-        }
+        scores.putAll(readGradingComments(gradingNote));
+        return scores;
+    }
 
-        writeCsvFile(rows);
+    private boolean isGradingNote(final Note note) {
+        return "AUTOGRADING_BOT".equals(note.getAuthor().getName())
+                && note.getBody().startsWith("<!-- -[autograding-gitlab-action]- -->")
+                && note.getBody().contains("Autograding score");
     }
 
     private void skip(final String reason, final Map<String, String> scores) {
         print("   ! Skipping project: %s - %s%n", reason, scores.getOrDefault(URL, EMPTY));
     }
 
+    private Map<String, String> readGradingComments(final Note gradingNote) {
+        return readScores(gradingNote.getBody());
+    }
+
     /**
      * Extract the available categories and scores with pattern matching so it will work with different autograding
      * configurations.
      *
-     * @param gradingNote
-     *         the note containing the grading comments
+     * @param gradingComment
+     *         the body of the note containing the grading comments
      *
      * @return a map of category names to scores as percentages
      */
-    private Map<String, String> readGradingComments(final Note gradingNote) {
+    static Map<String, String> readScores(final String gradingComment) {
         var scores = new LinkedHashMap<String, String>();
-        var blockMatcher = CATEGORIES_AND_SCORES.matcher(gradingNote.getBody());
+        var blockMatcher = CATEGORIES_AND_SCORES.matcher(gradingComment);
         while (blockMatcher.find()) {
             var category = blockMatcher.group("category").trim().replaceAll("\\s+", " ");
             var score = blockMatcher.group("value");
@@ -191,15 +296,185 @@ public class ResultCrawler {
         return scores;
     }
 
-    private List<Project> readProjects(final String repositoryPath, final GitLabApi gitLabApi)
-            throws GitLabApiException {
-        print("→ Obtaining projects from %s ... this will take some time%n", repositoryPath);
-        List<Project> projects = gitLabApi.getGroupApi().getProjects(repositoryPath);
-        print("→ Found %d projects%n", projects.size());
-        projects.sort(Comparator.comparing(Project::getName));
+    private List<ProjectIndex.Entry> readProjects(final String repositoryPath, final GitLabRestReader gitLab)
+            throws GitLabApiException, IOException {
+        print("→ Obtaining projects from %s%n", repositoryPath);
+        var index = new ProjectIndex(getProjectIndex(repositoryPath));
+        var known = index.read().size();
+        var projects = index.sync(gitLab, repositoryPath);
+        print("→ Found %d projects (%d known from the index)%n", projects.size(), known);
         return projects;
     }
 
+    // The index is stored next to the response cache, the cache evicts only its own files
+    private static Path getProjectIndex(final String repositoryPath) {
+        return CACHE_DIRECTORY.resolve("projects-" + repositoryPath.replaceAll("[^A-Za-z0-9_.-]", "_") + ".jsonl");
+    }
+
+    private Submission readSubmission(final Project project, final String label, final GitLabRestReader gitLab)
+            throws GitLabApiException {
+        Optional<MergeRequest> mergeRequest = readMergeRequests(project, gitLab)
+                .stream().filter(m -> m.getLabels().contains(label)).findFirst();
+        if (mergeRequest.isEmpty()) {
+            return new Submission(project, null, null, null);
+        }
+
+        var mr = mergeRequest.get();
+        Optional<Pipeline> pipeline = readPipelines(project, mr, gitLab).stream().findFirst();
+        if (pipeline.isEmpty() || pipeline.get().getStatus() != PipelineStatus.SUCCESS) {
+            return new Submission(project, mr, pipeline.orElse(null), null);
+        }
+
+        Optional<Note> gradingNote = readNotes(project, mr, gitLab).stream()
+                .filter(this::isGradingNote)
+                .findFirst();
+        return new Submission(project, mr, pipeline.get(), gradingNote.orElse(null));
+    }
+
+    private List<MergeRequest> readMergeRequests(final Project project, final GitLabRestReader gitLab)
+            throws GitLabApiException {
+        var mergeRequests = new ArrayList<MergeRequest>();
+        for (JsonNode json : gitLab.getAll("/projects/%d/merge_requests".formatted(project.getId()))) {
+            var mergeRequest = new MergeRequest();
+            mergeRequest.setIid(json.path("iid").asLong());
+            mergeRequest.setTitle(json.path("title").asText());
+            mergeRequest.setWebUrl(json.path("web_url").asText());
+            mergeRequest.setSha(json.path("sha").asText());
+            var labels = new ArrayList<String>();
+            json.path("labels").forEach(labelName -> labels.add(labelName.asText()));
+            mergeRequest.setLabels(labels);
+            mergeRequests.add(mergeRequest);
+        }
+        return mergeRequests;
+    }
+
+    private List<Pipeline> readPipelines(final Project project, final MergeRequest mergeRequest,
+            final GitLabRestReader gitLab) throws GitLabApiException {
+        var pipelines = new ArrayList<Pipeline>();
+        for (JsonNode json : gitLab.getOne("/projects/%d/pipelines?sha=%s".formatted(project.getId(),
+                encode(mergeRequest.getSha())))) {
+            var pipeline = new Pipeline();
+            pipeline.setId(json.path("id").asLong());
+            pipeline.setStatus(PipelineStatus.forValue(json.path("status").asText()));
+            pipelines.add(pipeline);
+        }
+        return pipelines;
+    }
+
+    private List<Note> readNotes(final Project project, final MergeRequest mergeRequest,
+            final GitLabRestReader gitLab) throws GitLabApiException {
+        var notes = new ArrayList<Note>();
+        for (JsonNode json : gitLab.getAll("/projects/%d/merge_requests/%d/notes".formatted(project.getId(),
+                mergeRequest.getIid()))) {
+            var note = new Note();
+            note.setId(json.path("id").asLong());
+            note.setBody(json.path("body").asText());
+            var author = new Author();
+            author.setName(json.path("author").path("name").asText());
+            note.setAuthor(author);
+            notes.add(note);
+        }
+        return notes;
+    }
+
+    /**
+     * Reads the projects of the group with their labeled merge requests, the status of the head pipeline, and the
+     * latest notes using GraphQL. Each query fetches a whole page of projects.
+     *
+     * @param repositoryPath
+     *         the path of the group
+     * @param label
+     *         the label of the merge requests
+     * @param gitLab
+     *         the GraphQL reader
+     *
+     * @return the submissions of all projects, sorted by the project name
+     * @throws GitLabApiException
+     *         if a query fails
+     */
+    private List<Submission> readSubmissions(final String repositoryPath, final String label,
+            final GitLabGraphQlReader gitLab) throws GitLabApiException {
+        print("→ Obtaining projects from %s with GraphQL%n", repositoryPath);
+        var submissions = new ArrayList<Submission>();
+        var variables = gitLab.createVariables()
+                .put("group", repositoryPath)
+                .put("label", label)
+                .put("first", GRAPHQL_PAGE_SIZE)
+                .put("notes", GRAPHQL_NOTES);
+        var hasNextPage = true;
+        while (hasNextPage) {
+            var projects = gitLab.query(SUBMISSIONS_QUERY, variables).path("group").path("projects");
+            for (JsonNode json : projects.path("nodes")) {
+                submissions.add(toSubmission(json, gitLab));
+            }
+            var pageInfo = projects.path("pageInfo");
+            hasNextPage = pageInfo.path("hasNextPage").asBoolean();
+            variables.put("after", pageInfo.path("endCursor").asText());
+        }
+        print("→ Found %d projects%n", submissions.size());
+        submissions.sort(Comparator.comparing(submission -> submission.project().getName()));
+        return submissions;
+    }
+
+    private Submission toSubmission(final JsonNode json, final GitLabGraphQlReader gitLab)
+            throws GitLabApiException {
+        var project = new Project();
+        project.setId(GitLabGraphQlReader.toId(json.path("id").asText()));
+        project.setName(json.path("name").asText());
+        project.setWebUrl(json.path("webUrl").asText());
+
+        var mergeRequests = json.path("mergeRequests").path("nodes");
+        if (mergeRequests.isEmpty()) {
+            return new Submission(project, null, null, null);
+        }
+
+        var mrJson = mergeRequests.get(0);
+        var mr = new MergeRequest();
+        mr.setIid(mrJson.path("iid").asLong());
+        mr.setTitle(mrJson.path("title").asText());
+        mr.setWebUrl(mrJson.path("webUrl").asText());
+        mr.setSha(mrJson.path("diffHeadSha").asText());
+
+        var pipelineJson = mrJson.path("headPipeline");
+        if (pipelineJson.isMissingNode() || pipelineJson.isNull()) {
+            return new Submission(project, mr, null, null);
+        }
+        var pipeline = new Pipeline();
+        pipeline.setStatus(PipelineStatus.forValue(pipelineJson.path("status").asText().toLowerCase(Locale.ENGLISH)));
+
+        var notesJson = mrJson.path("notes");
+        var gradingNote = findGradingNote(notesJson);
+        var variables = gitLab.createVariables()
+                .put("project", json.path("fullPath").asText())
+                .put("iid", String.valueOf(mr.getIid()))
+                .put("notes", GRAPHQL_NOTES);
+        while (gradingNote.isEmpty() && notesJson.path("pageInfo").path("hasPreviousPage").asBoolean()) {
+            variables.put("before", notesJson.path("pageInfo").path("startCursor").asText());
+            notesJson = gitLab.query(NOTES_QUERY, variables).path("project").path("mergeRequest").path("notes");
+            gradingNote = findGradingNote(notesJson);
+        }
+        return new Submission(project, mr, pipeline, gradingNote.orElse(null));
+    }
+
+    private Optional<Note> findGradingNote(final JsonNode notesJson) {
+        var notes = new ArrayList<Note>();
+        for (JsonNode noteJson : notesJson.path("nodes")) {
+            var note = new Note();
+            note.setId(GitLabGraphQlReader.toId(noteJson.path("id").asText()));
+            note.setBody(noteJson.path("body").asText());
+            var author = new Author();
+            author.setName(noteJson.path("author").path("name").asText());
+            note.setAuthor(author);
+            notes.add(note);
+        }
+        Collections.reverse(notes); // GraphQL returns the oldest note first
+        return notes.stream().filter(this::isGradingNote).findFirst();
+    }
+
+    private String encode(final String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
     private void writeCsvFile(final Map<String, Map<String, String>> rows) throws IOException {
         try (Writer writer = Files.newBufferedWriter(Path.of("autograding-results.csv"))) {
             var maxEntry = rows.entrySet().stream()
@@ -239,4 +514,11 @@ public class ResultCrawler {
     private void print(final String format, final Object... args) {
         System.out.printf(format, args);
     }
+
+    /**
+     * The merge request of a student project with its pipeline and grading note. Missing elements are {@code null}.
+     */
+    private record Submission(Project project, @CheckForNull MergeRequest mergeRequest,
+                              @CheckForNull Pipeline pipeline, @CheckForNull Note gradingNote) {
+    }
 }
@@ -0,0 +1,557 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.apache.commons.lang3.StringUtils;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.hm.hafner.util.VisibleForTesting;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Immutable configuration of a single run of the action. The configuration is read and validated once at startup from
+ * the environment variables of the GitLab pipeline. Additionally, the values can be defined in a YAML file
+ * {@code .autograding.yml} in the project directory (or in the file that is specified by the environment variable
+ * {@code AUTOGRADING_SETTINGS}). Environment variables take precedence over the values of the file.
+ *
+ * @author Ullrich Hafner
+ */
+@SuppressWarnings({"PMD.DataClass", "PMD.TooManyFields", "PMD.GodClass"})
+final class RunConfiguration {
+    static final String SETTINGS_FILE = ".autograding.yml";
+    static final String SETTINGS_FILE_VARIABLE = "AUTOGRADING_SETTINGS";
+
+    static final String SERVER_URL = "CI_SERVER_URL";
+    static final String TOKEN = "GITLAB_TOKEN";
+    static final String PROJECT_ID = "CI_PROJECT_ID";
+    static final String PROJECT_URL = "CI_PROJECT_URL";
+    static final String PROJECT_PATH = "CI_PROJECT_PATH";
+    static final String PROJECT_DIR = "CI_PROJECT_DIR";
+    static final String COMMIT_SHA = "CI_COMMIT_SHA";
+    static final String PIPELINE_ID = "CI_PIPELINE_ID";
+    static final String COMMIT_REF_NAME = "CI_COMMIT_REF_NAME";
+    static final String MERGE_REQUEST_IID = "CI_MERGE_REQUEST_IID";
+    static final String SOURCE_BRANCH_SHA = "CI_MERGE_REQUEST_SOURCE_BRANCH_SHA";
+    static final String DEFAULT_BRANCH = "CI_DEFAULT_BRANCH";
+    static final String JOB_URL = "CI_JOB_URL";
+    static final String GRADING_CONFIGURATION = "CONFIG";
+    static final String DELTA_CACHE = "DELTA_CACHE";
+    static final String DRY_RUN = "DRY_RUN";
+    static final String TRANSCRIPT = "TRANSCRIPT";
+    static final String MAX_NOTE_SIZE = "MAX_NOTE_SIZE";
+
+    static final String DISPLAY_NAME = "DISPLAY_NAME";
+    static final String MAX_WARNING_COMMENTS = "MAX_WARNING_COMMENTS";
+    static final String MAX_COVERAGE_COMMENTS = "MAX_COVERAGE_COMMENTS";
+    static final String SKIP_LINE_COMMENTS = "SKIP_LINE_COMMENTS";
+    static final String SKIP_COMMIT_COMMENTS = "SKIP_COMMIT_COMMENTS";
+    static final String AGGREGATE_COMMIT_COMMENTS = "AGGREGATE_COMMIT_COMMENTS";
+    static final String SKIP_WARNING_DESCRIPTION = "SKIP_WARNING_DESCRIPTION";
+    static final String SKIP_DETAILS = "SKIP_DETAILS";
+    static final String SHOW_HEADERS = "SHOW_HEADERS";
+
+    /** The options that only change the presentation of the results. */
+    static final Set<String> DISPLAY_OPTIONS = Set.of(DISPLAY_NAME, MAX_WARNING_COMMENTS, MAX_COVERAGE_COMMENTS,
+            SKIP_LINE_COMMENTS, SKIP_COMMIT_COMMENTS, AGGREGATE_COMMIT_COMMENTS, SKIP_WARNING_DESCRIPTION,
+            SKIP_DETAILS, SHOW_HEADERS);
+
+    private static final String DEFAULT_TITLE = "Autograding score";
+    private static final int DEFAULT_MAX_NOTE_SIZE = 100_000;
+    private static final String DEFAULT_DETAILS_ARTIFACT = "autograding-details.md";
+    private static final String DEFAULT_TRANSCRIPT = "autograding-transcript.jsonl";
+    private static final int DEFAULT_REPLAY_CONCURRENCY = 4;
+    private static final int DEFAULT_REPLAY_BATCH_SIZE = 100;
+
+    private final Map<String, String> values;
+
+    private final String gitLabUrl;
+    private final String token;
+    private final String projectId;
+    private final String projectUrl;
+    private final String projectPath;
+    private final String projectDirectory;
+    private final String commitSha;
+    private final String pipelineId;
+    private final String commitRefName;
+    private final String mergeRequestIid;
+    private final String sourceBranchSha;
+    private final String defaultBranch;
+    private final String jobUrl;
+
+    private final String displayName;
+    private final int maxWarningComments;
+    private final int maxCoverageComments;
+    private final boolean skipLineComments;
+    private final boolean skipCommitComments;
+    private final boolean aggregateCommitComments;
+    private final boolean skipWarningDescription;
+    private final boolean skipDetails;
+    private final boolean showHeaders;
+    private final boolean logComments;
+    private final int maxNoteSize;
+    private final String detailsArtifact;
+    private final boolean dryRun;
+    private final String transcript;
+    private final int replayConcurrency;
+    private final int replayBatchSize;
+    private final boolean graphQlContext;
+    private final String deltaCache;
+    private final String scoreHistory;
+    private final boolean updateNote;
+    private final boolean incrementalReview;
+    private final boolean coordinateRuns;
+    private final boolean skipLockNotes;
+    private final int publishTimeBudget;
+
+    /**
+     * Loads the configuration from the environment variables and the optional settings file.
+     *
+     * @param log
+     *         the logger
+     *
+     * @return the configuration
+     */
+    static RunConfiguration load(final FilteredLog log) {
+        var fileValues = readSettingsFile(System.getenv(), log);
+        return new RunConfiguration(key -> StringUtils.defaultIfBlank(System.getenv(key), fileValues.get(key)), log);
+    }
+
+    /**
+     * Creates a new configuration that reads all values from the given source.
+     *
+     * @param source
+     *         the source of the configuration values, maps a key to its value (or {@code null} if not set)
+     * @param log
+     *         the logger
+     */
+    RunConfiguration(final Function<String, String> source, final FilteredLog log) {
+        var env = new Environment(log, source);
+
+        gitLabUrl = env.getString(SERVER_URL);
+        token = env.getSecret(TOKEN);
+        projectId = env.getString(PROJECT_ID);
+        projectUrl = env.getString(PROJECT_URL);
+        projectPath = env.getString(PROJECT_PATH);
+        projectDirectory = env.getString(PROJECT_DIR);
+        commitSha = env.getString(COMMIT_SHA);
+        pipelineId = env.getString(PIPELINE_ID);
+        commitRefName = env.getString(COMMIT_REF_NAME);
+        mergeRequestIid = env.getString(MERGE_REQUEST_IID);
+        sourceBranchSha = env.getString(SOURCE_BRANCH_SHA);
+        defaultBranch = env.getString(DEFAULT_BRANCH);
+        jobUrl = env.getString(JOB_URL);
+
+        displayName = StringUtils.defaultIfBlank(env.getString(DISPLAY_NAME), DEFAULT_TITLE);
+        maxWarningComments = env.getInteger(MAX_WARNING_COMMENTS);
+        maxCoverageComments = env.getInteger(MAX_COVERAGE_COMMENTS);
+        skipLineComments = env.getBoolean(SKIP_LINE_COMMENTS);
+        skipCommitComments = env.getBoolean(SKIP_COMMIT_COMMENTS);
+        aggregateCommitComments = env.getBoolean(AGGREGATE_COMMIT_COMMENTS);
+        skipWarningDescription = env.getBoolean(SKIP_WARNING_DESCRIPTION);
+        skipDetails = env.getBoolean(SKIP_DETAILS);
+        showHeaders = env.getBoolean(SHOW_HEADERS);
+        logComments = env.getBoolean("LOG_COMMENTS");
+        maxNoteSize = defaultIfUnset(env.getInteger(MAX_NOTE_SIZE), DEFAULT_MAX_NOTE_SIZE);
+        detailsArtifact = StringUtils.defaultIfBlank(env.getString("DETAILS_ARTIFACT"), DEFAULT_DETAILS_ARTIFACT);
+        dryRun = env.getBoolean(DRY_RUN);
+        transcript = StringUtils.defaultIfBlank(env.getString(TRANSCRIPT), DEFAULT_TRANSCRIPT);
+        replayConcurrency = defaultIfUnset(env.getInteger("REPLAY_CONCURRENCY"), DEFAULT_REPLAY_CONCURRENCY);
+        replayBatchSize = defaultIfUnset(env.getInteger("REPLAY_BATCH_SIZE"), DEFAULT_REPLAY_BATCH_SIZE);
+        graphQlContext = env.getBoolean("GRAPHQL_CONTEXT");
+        deltaCache = env.getString(DELTA_CACHE);
+        scoreHistory = env.getString("SCORE_HISTORY");
+        updateNote = env.getBoolean("UPDATE_NOTE");
+        incrementalReview = env.getBoolean("INCREMENTAL_REVIEW");
+        coordinateRuns = env.getBoolean("COORDINATE_RUNS");
+        skipLockNotes = env.getBoolean("SKIP_LOCK_NOTES");
+        publishTimeBudget = env.getInteger("PUBLISH_TIME_BUDGET");
+
+        values = Map.of(PROJECT_URL, projectUrl, COMMIT_SHA, commitSha);
+
+        validate(log);
+    }
+
+    private static int defaultIfUnset(final int value, final int defaultValue) {
+        return value == Integer.MAX_VALUE ? defaultValue : value;
+    }
+
+    private void validate(final FilteredLog log) {
+        if (StringUtils.isNotBlank(projectId) && !StringUtils.isNumeric(projectId)) {
+            log.logError(">>>> Error: %s is not a valid project ID: %s", PROJECT_ID, projectId);
+        }
+        if (StringUtils.isNotBlank(mergeRequestIid) && !StringUtils.isNumeric(mergeRequestIid)) {
+            log.logError(">>>> Error: %s is not a valid merge request ID: %s", MERGE_REQUEST_IID, mergeRequestIid);
+        }
+        if (maxWarningComments < 0) {
+            log.logError(">>>> Error: %s must not be negative: %d", MAX_WARNING_COMMENTS, maxWarningComments);
+        }
+        if (maxCoverageComments < 0) {
+            log.logError(">>>> Error: %s must not be negative: %d", MAX_COVERAGE_COMMENTS, maxCoverageComments);
+        }
+        if (maxNoteSize <= 0) {
+            log.logError(">>>> Error: %s must be positive: %d", MAX_NOTE_SIZE, maxNoteSize);
+        }
+        if (replayConcurrency <= 0) {
+            log.logError(">>>> Error: REPLAY_CONCURRENCY must be positive: %d", replayConcurrency);
+        }
+        if (replayBatchSize <= 0) {
+            log.logError(">>>> Error: REPLAY_BATCH_SIZE must be positive: %d", replayBatchSize);
+        }
+        if (publishTimeBudget <= 0) {
+            log.logError(">>>> Error: PUBLISH_TIME_BUDGET must be positive: %d", publishTimeBudget);
+        }
+    }
+
+    private static Map<String, String> readSettingsFile(final Map<String, String> environment, final FilteredLog log) {
+        var fileName = environment.get(SETTINGS_FILE_VARIABLE);
+        Path file;
+        if (StringUtils.isBlank(fileName)) {
+            file = Path.of(StringUtils.defaultString(environment.get(PROJECT_DIR))).resolve(SETTINGS_FILE);
+            if (!Files.isRegularFile(file)) {
+                return Map.of();
+            }
+        }
+        else {
+            file = Path.of(fileName);
+        }
+
+        try {
+            var settings = parseSettings(Files.readString(file, StandardCharsets.UTF_8));
+            log.logInfo("Reading %d settings from %s", settings.size(), file);
+            return settings;
+        }
+        catch (IOException exception) {
+            log.logException(exception, "Can't read settings file %s", file);
+
+            return Map.of();
+        }
+    }
+
+    /**
+     * Parses the settings of a simple YAML file. Supported are single line scalars (optionally quoted) and block
+     * scalars ({@code |} or {@code >}) with a top-level key. Keys are converted to the names of the environment variables,
+     * e.g., {@code max-warning-comments} is mapped to {@code MAX_WARNING_COMMENTS}.
+     *
+     * @param content
+     *         the content of the YAML file
+     *
+     * @return the settings
+     */
+    @VisibleForTesting
+    @SuppressWarnings("PMD.CognitiveComplexity")
+    static Map<String, String> parseSettings(final String content) {
+        var settings = new HashMap<String, String>();
+        List<String> lines = content.lines().toList();
+        for (int i = 0; i < lines.size(); i++) {
+            var line = lines.get(i);
+            if (StringUtils.isBlank(line) || line.stripLeading().startsWith("#")
+                    || Character.isWhitespace(line.charAt(0)) || !line.contains(":")) {
+                continue;
+            }
+            var key = StringUtils.substringBefore(line, ":").trim()
+                    .replace('-', '_').toUpperCase(Locale.ENGLISH);
+            var value = StringUtils.substringAfter(line, ":").trim();
+            if (value.startsWith("|") || value.startsWith(">")) {
+                var separator = value.startsWith("|") ? '\n' : ' ';
+                var block = new StringBuilder();
+                while (i + 1 < lines.size()
+                        && (lines.get(i + 1).isBlank() || Character.isWhitespace(lines.get(i + 1).charAt(0)))) {
+                    i++;
+                    block.append(lines.get(i).strip()).append(separator);
+                }
+                settings.put(key, block.toString().strip());
+            }
+            else {
+                settings.put(key, unquote(stripComment(value)));
+            }
+        }
+        return settings;
+    }
+
+    private static String stripComment(final String value) {
+        if (value.startsWith("\"") || value.startsWith("'")) {
+            return value;
+        }
+        return StringUtils.substringBefore(value, " #").trim();
+    }
+
+    private static String unquote(final String value) {
+        if (value.length() >= 2 && (value.startsWith("\"") && value.endsWith("\"")
+                || value.startsWith("'") && value.endsWith("'"))) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of a pipeline variable that is used in the comments (project URL or commit SHA). This method
+     * does not access the environment.
+     *
+     * @param key
+     *         the name of the variable
+     *
+     * @return the value or an empty string
+     */
+    String getValue(final String key) {
+        return values.getOrDefault(key, StringUtils.EMPTY);
+    }
+
+    boolean hasGitLabConnection() {
+        return StringUtils.isNoneBlank(gitLabUrl, token);
+    }
+
+    String getGitLabUrl() {
+        return gitLabUrl;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    String getProjectId() {
+        return projectId;
+    }
+
+    boolean hasValidProjectId() {
+        return StringUtils.isNotBlank(projectId) && StringUtils.isNumeric(projectId);
+    }
+
+    String getProjectUrl() {
+        return projectUrl;
+    }
+
+    String getProjectPath() {
+        return projectPath;
+    }
+
+    String getWorkingDirectory() {
+        return projectDirectory + "/";
+    }
+
+    String getCommitSha() {
+        return commitSha;
+    }
+
+    /**
+     * Returns the SHA of the commit on the source branch of the merge request. In merged results pipelines, the commit
+     * {@code CI_COMMIT_SHA} is the merge commit, so the head of the source branch is provided in
+     * {@code CI_MERGE_REQUEST_SOURCE_BRANCH_SHA}.
+     *
+     * @return the SHA of the source branch commit, or the SHA of the pipeline commit if no source branch SHA is set
+     */
+    String getSourceBranchSha() {
+        return StringUtils.defaultIfBlank(sourceBranchSha, commitSha);
+    }
+
+    String getPipelineId() {
+        return pipelineId;
+    }
+
+    boolean hasMergeRequest() {
+        return StringUtils.isNotBlank(mergeRequestIid) && StringUtils.isNumeric(mergeRequestIid);
+    }
+
+    long getMergeRequestIid() {
+        return Long.parseLong(mergeRequestIid);
+    }
+
+    /**
+     * Returns the reference of this run in the {@link ScoreHistory}: the merge request (e.g., {@code !42}) or the
+     * branch of the pipeline.
+     *
+     * @return the reference of the run
+     */
+    String getHistoryRef() {
+        return hasMergeRequest() ? "!" + mergeRequestIid : commitRefName;
+    }
+
+    String getDefaultBranch() {
+        return defaultBranch;
+    }
+
+    String getDisplayName() {
+        return displayName;
+    }
+
+    int getMaxWarningComments() {
+        return maxWarningComments;
+    }
+
+    int getMaxCoverageComments() {
+        return maxCoverageComments;
+    }
+
+    boolean isSkipLineComments() {
+        return skipLineComments;
+    }
+
+    boolean isSkipCommitComments() {
+        return skipCommitComments;
+    }
+
+    boolean isAggregateCommitComments() {
+        return aggregateCommitComments;
+    }
+
+    boolean isSkipWarningDescription() {
+        return skipWarningDescription;
+    }
+
+    boolean isSkipDetails() {
+        return skipDetails;
+    }
+
+    boolean isShowHeaders() {
+        return showHeaders;
+    }
+
+    boolean isLogComments() {
+        return logComments;
+    }
+
+    int getMaxNoteSize() {
+        return maxNoteSize;
+    }
+
+    /**
+     * Returns the file that will contain the complete report if the summary note exceeds its size limit.
+     *
+     * @return the path of the artifact, relative to the working directory of the job
+     */
+    Path getDetailsArtifact() {
+        return Path.of(detailsArtifact);
+    }
+
+    /**
+     * Returns the URL of the details artifact in GitLab.
+     *
+     * @return the URL of the artifact, or an empty string if the job URL is unknown
+     */
+    String getDetailsArtifactUrl() {
+        if (StringUtils.isBlank(jobUrl)) {
+            return StringUtils.EMPTY;
+        }
+        return jobUrl + "/artifacts/file/" + detailsArtifact;
+    }
+
+    /**
+     * Returns whether this run is a dry run. A dry run renders all comments but does not send any write requests to
+     * GitLab. Instead, all write requests are recorded in the {@link #getTranscript() transcript}.
+     *
+     * @return {@code true} if this run is a dry run
+     */
+    boolean isDryRun() {
+        return dryRun;
+    }
+
+    Path getTranscript() {
+        return Path.of(transcript);
+    }
+
+    int getReplayConcurrency() {
+        return Math.max(1, replayConcurrency);
+    }
+
+    int getReplayBatchSize() {
+        return Math.max(1, replayBatchSize);
+    }
+
+    /**
+     * Returns whether the merge request context (merge request, diff refs, and the notes of previous runs) should be
+     * loaded with a single GraphQL query instead of several REST requests.
+     *
+     * @return {@code true} if the context should be loaded with GraphQL
+     */
+    boolean isGraphQlContext() {
+        return graphQlContext && StringUtils.isNotBlank(projectPath);
+    }
+
+    /**
+     * Returns whether the reports of previous pipelines should be stored in a cache that is shared by several runs.
+     *
+     * @return {@code true} if a delta cache has been configured
+     */
+    boolean hasDeltaCache() {
+        return StringUtils.isNotBlank(deltaCache);
+    }
+
+    Path getDeltaCache() {
+        return Path.of(deltaCache);
+    }
+
+    /**
+     * Returns whether the metric values of each run should be recorded in a {@link ScoreHistory} to show their trend
+     * in the summary note.
+     *
+     * @return {@code true} if a score history has been configured
+     */
+    boolean hasScoreHistory() {
+        return StringUtils.isNotBlank(scoreHistory);
+    }
+
+    Path getScoreHistory() {
+        return Path.of(scoreHistory);
+    }
+
+    /**
+     * Returns whether the summary note of a previous run should be updated in place rather than being deleted and
+     * created again.
+     *
+     * @return {@code true} if the summary note should be updated
+     */
+    boolean isUpdateNote() {
+        return updateNote;
+    }
+
+    /**
+     * Returns whether line comments in a merge request should be created only for the lines that have been changed
+     * since the commit that has been graded by the previous run.
+     *
+     * @return {@code true} if the review is incremental
+     */
+    boolean isIncrementalReview() {
+        return incrementalReview;
+    }
+
+    /**
+     * Returns whether concurrent runs for the same merge request should be coordinated: runs that have been superseded
+     * by a newer commit stop publishing, and the other runs publish one after the other.
+     *
+     * @return {@code true} if the runs should be coordinated
+     */
+    boolean isCoordinateRuns() {
+        return coordinateRuns;
+    }
+
+    /**
+     * Returns whether coordinated runs should publish without lock notes, since the pipeline already serializes the
+     * grading jobs of a merge request (e.g., with a {@code resource_group}).
+     *
+     * @return {@code true} if no lock notes should be created
+     */
+    boolean isSkipLockNotes() {
+        return skipLockNotes;
+    }
+
+    /**
+     * Returns whether the publishing of the results in GitLab is limited by a time budget.
+     *
+     * @return {@code true} if a time budget has been configured
+     */
+    boolean hasPublishTimeBudget() {
+        return publishTimeBudget > 0 && publishTimeBudget != Integer.MAX_VALUE;
+    }
+
+    Duration getPublishTimeBudget() {
+        return Duration.ofSeconds(publishTimeBudget);
+    }
+}
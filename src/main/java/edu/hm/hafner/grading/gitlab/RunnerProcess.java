@@ -0,0 +1,117 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Starts the {@link GitLabAutoGradingRunner} in a process of its own. The autograding model reads the grading
+ * configuration from the environment and the reports from the working directory. Since both are global to a process,
+ * tools that grade several submissions start a runner process in the workspace of each submission.
+ *
+ * @author Ullrich Hafner
+ */
+class RunnerProcess {
+    /** The exit code of a runner that has been canceled. */
+    static final int CANCELED = -1;
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(10);
+
+    private final List<String> command;
+
+    /**
+     * Creates a launcher for the runner that uses the JVM and classpath of the current process. Each run starts a new
+     * JVM, so each run pays the startup and warmup of the JVM. The native executable of the action avoids these costs
+     * if it is available.
+     *
+     * @return the launcher
+     */
+    static RunnerProcess createJavaRunner() {
+        var java = ProcessHandle.current().info().command().orElse("java");
+        return new RunnerProcess(List.of(java, "-cp", System.getProperty("java.class.path"),
+                GitLabAutoGradingRunner.class.getName()));
+    }
+
+    /**
+     * Creates a launcher for the runner that is started with the specified command, e.g., the native image of the
+     * action.
+     *
+     * @param command
+     *         the command and its arguments
+     */
+    RunnerProcess(final List<String> command) {
+        this.command = List.copyOf(command);
+    }
+
+    List<String> getCommand() {
+        return command;
+    }
+
+    /**
+     * Returns whether the executable of the command exists and can be executed. An executable without a path is
+     * searched in the directories of the {@code PATH}.
+     *
+     * @return {@code true} if the runner can be started, {@code false} otherwise
+     */
+    boolean isExecutable() {
+        if (command.isEmpty()) {
+            return false;
+        }
+        var executable = Path.of(command.getFirst());
+        if (executable.getNameCount() > 1 || executable.isAbsolute()) {
+            return Files.isExecutable(executable);
+        }
+        return Stream.of(StringUtils.split(StringUtils.defaultString(System.getenv("PATH")), File.pathSeparatorChar))
+                .map(directory -> Path.of(directory, command.getFirst()))
+                .anyMatch(Files::isExecutable);
+    }
+
+    /**
+     * Runs the runner in the specified workspace and waits until it has been finished.
+     *
+     * @param workspace
+     *         the working directory of the runner
+     * @param environment
+     *         the complete environment of the runner, the environment of the current process is not inherited
+     * @param log
+     *         the file that receives the console output of the runner
+     *
+     * @return the exit code of the runner, or {@link #CANCELED} if the runner has been canceled after the timeout
+     * @throws IOException
+     *         if the process cannot be started
+     * @throws InterruptedException
+     *         if the current thread has been interrupted while waiting for the runner
+     */
+    int run(final Path workspace, final Map<String, String> environment, final Path log)
+            throws IOException, InterruptedException {
+        var builder = new ProcessBuilder(command)
+                .directory(workspace.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log.toFile()));
+        builder.environment().clear();
+        builder.environment().putAll(environment);
+
+        var process = builder.start();
+        try {
+            if (process.waitFor(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                return process.exitValue();
+            }
+            Files.writeString(log, "Grading has been canceled after %d minutes%n".formatted(TIMEOUT.toMinutes()),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            return CANCELED;
+        }
+        finally {
+            process.destroyForcibly();
+        }
+    }
+}
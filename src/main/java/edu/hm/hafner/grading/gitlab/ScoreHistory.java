@@ -0,0 +1,289 @@
+package edu.hm.hafner.grading.gitlab;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.hm.hafner.util.VisibleForTesting;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * An append-only store of the metric values of previous runs (e.g., the score of each category, the coverage, and the
+ * number of warnings). Each run is stored as a single JSON line that is keyed by the branch or merge request, the
+ * commit, and the pipeline. The store is kept in the CI cache of the project (or in an artifact), so the trend of the
+ * values can be shown without scanning the notes or pipelines of previous runs. If the file exceeds its maximum size,
+ * the oldest runs are removed.
+ *
+ * <p>
+ * The latest {@link #TREND_LENGTH} runs of each branch or merge request are additionally stored in a small file of
+ * their own next to the history. Reading the latest runs therefore takes constant time, even if the runs of a branch
+ * are no longer at the end of the history (or have been removed from the history).
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+class ScoreHistory {
+    /** The number of runs that are shown in the trend. */
+    static final int TREND_LENGTH = 10;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int TAIL_SIZE = 64 * 1024;
+    private static final Pattern COVERAGE = Pattern.compile(
+            "-> (?<metric>[\\p{L} ]+ Coverage) Total: (?<value>\\d+(?:\\.\\d+)?)%");
+    private static final long DEFAULT_MAX_SIZE = 1024 * 1024;
+    private static final char[] BARS = {'▁', '▂', '▃', '▄', '▅', '▆', '▇', '█'};
+
+    /**
+     * The metric values of a single run.
+     *
+     * @param ref
+     *         the branch or merge request of the run, e.g., {@code main} or {@code !42}
+     * @param sha
+     *         the SHA of the commit
+     * @param pipeline
+     *         the ID of the pipeline
+     * @param values
+     *         the values of the metrics, in the order of the report
+     */
+    record Entry(String ref, String sha, String pipeline, Map<String, Integer> values) {
+    }
+
+    private final Path file;
+    private final long maxSize;
+
+    ScoreHistory(final Path file) {
+        this(file, DEFAULT_MAX_SIZE);
+    }
+
+    @VisibleForTesting
+    ScoreHistory(final Path file, final long maxSize) {
+        this.file = file;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Extracts the achieved score of each category from the Markdown summary of a grading report.
+     *
+     * @param summary
+     *         the Markdown summary
+     *
+     * @return the scores of all categories, in the order of the summary
+     */
+    static Map<String, Integer> extractScores(final String summary) {
+        var scores = new LinkedHashMap<String, Integer>();
+        var matcher = ResultCrawler.CATEGORIES_AND_SCORES.matcher(summary);
+        while (matcher.find()) {
+            scores.put(matcher.group("category").trim().replaceAll("\\s+", " "),
+                    Integer.parseInt(matcher.group("value")));
+        }
+        return scores;
+    }
+
+    /**
+     * Extracts the total coverage of each coverage metric from the log messages of the grading model, e.g.,
+     * {@code -> Line Coverage Total: 10.93% [Whole Project]}. The percentages are rounded to integers.
+     *
+     * @param messages
+     *         the log messages of the grading
+     *
+     * @return the coverage of all metrics, in the order of the log
+     */
+    static Map<String, Integer> extractCoverage(final List<String> messages) {
+        var coverage = new LinkedHashMap<String, Integer>();
+        for (String message : messages) {
+            var matcher = COVERAGE.matcher(message);
+            if (matcher.find()) {
+                coverage.putIfAbsent(matcher.group("metric").trim(),
+                        (int) Math.round(Double.parseDouble(matcher.group("value"))));
+            }
+        }
+        return coverage;
+    }
+
+    /**
+     * Returns the latest runs of the specified branch or merge request. Lines that cannot be parsed (e.g., the last
+     * line of a run that has been canceled while writing) are skipped. At most {@link #TREND_LENGTH} runs are
+     * available for each branch or merge request.
+     *
+     * @param ref
+     *         the branch or merge request of the runs
+     * @param count
+     *         the maximum number of runs
+     *
+     * @return the latest runs, the oldest run first
+     * @throws IOException
+     *         if the history cannot be read
+     */
+    List<Entry> readLatest(final String ref, final int count) throws IOException {
+        var latest = getLatestFile(ref);
+        if (Files.isRegularFile(latest)) {
+            return parseLatest(Files.readAllLines(latest, StandardCharsets.UTF_8), ref, count);
+        }
+        if (!Files.isRegularFile(file)) {
+            return List.of();
+        }
+        return parseLatest(readTail(TAIL_SIZE), ref, count); // history of a previous version
+    }
+
+    private List<Entry> parseLatest(final List<String> lines, final String ref, final int count) {
+        var entries = new ArrayList<Entry>();
+        for (int i = lines.size() - 1; i >= 0 && entries.size() < count; i--) {
+            parse(lines.get(i)).filter(entry -> entry.ref().equals(ref)).ifPresent(entries::addFirst);
+        }
+        return entries;
+    }
+
+    private Path getLatestFile(final String ref) {
+        return Path.of(file + ".refs").resolve(URLEncoder.encode(ref, StandardCharsets.UTF_8) + ".jsonl");
+    }
+
+    // Reads the complete lines in the last bytes of the file
+    private List<String> readTail(final int bytes) throws IOException {
+        try (var input = new RandomAccessFile(file.toFile(), "r")) {
+            var start = Math.max(0, input.length() - bytes);
+            var buffer = new byte[(int) (input.length() - start)];
+            input.seek(start);
+            input.readFully(buffer);
+
+            var lines = new ArrayList<>(Arrays.asList(new String(buffer, StandardCharsets.UTF_8).split("\n")));
+            if (start > 0 && !lines.isEmpty()) {
+                lines.removeFirst(); // the first line might be incomplete
+            }
+            lines.removeIf(String::isBlank);
+            return lines;
+        }
+    }
+
+    private Optional<Entry> parse(final String line) {
+        try {
+            var json = MAPPER.readTree(line);
+            var values = new LinkedHashMap<String, Integer>();
+            for (Map.Entry<String, JsonNode> value : json.path("values").properties()) {
+                values.put(value.getKey(), value.getValue().asInt());
+            }
+            return Optional.of(new Entry(json.path("ref").asText(), json.path("sha").asText(),
+                    json.path("pipeline").asText(), values));
+        }
+        catch (JsonProcessingException _) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Appends the values of a run to the history.
+     *
+     * @param entry
+     *         the values of the run
+     *
+     * @throws IOException
+     *         if the history cannot be written
+     */
+    void append(final Entry entry) throws IOException {
+        var json = MAPPER.createObjectNode()
+                .put("ref", entry.ref())
+                .put("sha", entry.sha())
+                .put("pipeline", entry.pipeline());
+        var values = json.putObject("values");
+        entry.values().forEach(values::put);
+
+        var line = MAPPER.writeValueAsString(json);
+        Files.createDirectories(Objects.requireNonNull(file.toAbsolutePath().getParent()));
+        Files.writeString(file, line + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (Files.size(file) > maxSize) {
+            replace(file, readTail((int) Math.min(maxSize / 2, Integer.MAX_VALUE)));
+        }
+        appendLatest(entry.ref(), line);
+    }
+
+    // Keeps the latest runs of the ref, the file is small, so it is rewritten completely
+    private void appendLatest(final String ref, final String line) throws IOException {
+        var latest = getLatestFile(ref);
+        var lines = new ArrayList<String>();
+        if (Files.isRegularFile(latest)) {
+            lines.addAll(Files.readAllLines(latest, StandardCharsets.UTF_8));
+        }
+        lines.add(line);
+        Files.createDirectories(Objects.requireNonNull(latest.toAbsolutePath().getParent()));
+        replace(latest, lines.subList(Math.max(0, lines.size() - TREND_LENGTH), lines.size()));
+    }
+
+    private void replace(final Path target, final List<String> lines) throws IOException {
+        var temp = Files.createTempFile(Objects.requireNonNull(target.toAbsolutePath().getParent()), "history", ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Renders the trend of the metric values as a Markdown table. The current run is compared with the latest run of
+     * another commit; the sparkline shows the values of the latest runs.
+     *
+     * @param current
+     *         the values of the current run
+     * @param previous
+     *         the values of the previous runs, the oldest run first
+     *
+     * @return the Markdown table, or an empty string if there are no previous runs of other commits
+     */
+    static String renderTrend(final Entry current, final List<Entry> previous) {
+        var others = previous.stream().filter(entry -> !entry.sha().equals(current.sha())).toList();
+        if (others.isEmpty()) {
+            return "";
+        }
+        var baseline = others.getLast();
+
+        var runs = new ArrayList<>(others);
+        runs.add(current);
+        var shown = runs.subList(Math.max(0, runs.size() - TREND_LENGTH), runs.size());
+
+        var metrics = new LinkedHashSet<>(current.values().keySet());
+        var trend = new StringBuilder(1024);
+        trend.append("\n\n### :chart_with_upwards_trend: Trend\n\n")
+                .append("| Metric | Previous | Current | Last %d runs |\n".formatted(shown.size()))
+                .append("|:-------|---------:|--------:|:-------------|\n");
+        for (String metric : metrics) {
+            int value = current.values().get(metric);
+            var before = baseline.values().get(metric);
+            trend.append("| %s | %s | %d%s | %s |\n".formatted(metric,
+                    before == null ? "-" : before.toString(), value,
+                    before == null || before == value ? "" : " (%+d)".formatted(value - before),
+                    sparkline(shown.stream().map(entry -> entry.values().get(metric)).toList())));
+        }
+        return trend.toString();
+    }
+
+    private static String sparkline(final List<Integer> values) {
+        var min = values.stream().filter(Objects::nonNull).mapToInt(Integer::intValue).min().orElse(0);
+        var max = values.stream().filter(Objects::nonNull).mapToInt(Integer::intValue).max().orElse(0);
+        var line = new StringBuilder();
+        for (Integer value : values) {
+            if (value == null) {
+                line.append(' ');
+            }
+            else if (max == min) {
+                line.append(BARS[BARS.length / 2]);
+            }
+            else {
+                line.append(BARS[(value - min) * (BARS.length - 1) / (max - min)]);
+            }
+        }
+        return line.toString();
+    }
+}
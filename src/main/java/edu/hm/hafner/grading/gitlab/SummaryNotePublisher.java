@@ -0,0 +1,202 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.apache.commons.lang3.StringUtils;
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Note;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Publishes the summary note of a merge request together with the line comments and removes the notes of previous
+ * runs. The summary note of a previous run can be updated in place, so that its ID (and the link to it) remains
+ * stable and an unchanged summary requires no request at all. GitLab returns the notes of a merge request with the
+ * newest note first, so the newest summary note of previous runs is kept and all other summary notes are deleted. If
+ * publishing is limited by a time budget, then the summary note is published before the notes of previous runs are
+ * deleted, so the merge request shows a summary at all times.
+ *
+ * @author Ullrich Hafner
+ */
+class SummaryNotePublisher {
+    private final GitLabClient client;
+    private final long projectId;
+    private final long mergeRequestId;
+    private final PublishingDeadline deadline;
+    private final FilteredLog log;
+
+    /**
+     * Creates a new publisher for the summary note of a merge request.
+     *
+     * @param client
+     *         the client to access GitLab
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestId
+     *         the IID of the merge request
+     * @param deadline
+     *         the deadline for publishing the results
+     * @param log
+     *         the logger
+     */
+    SummaryNotePublisher(final GitLabClient client, final long projectId, final long mergeRequestId,
+            final PublishingDeadline deadline, final FilteredLog log) {
+        this.client = client;
+        this.projectId = projectId;
+        this.mergeRequestId = mergeRequestId;
+        this.deadline = deadline;
+        this.log = log;
+    }
+
+    /**
+     * Publishes the line comments and the summary note. If publishing is limited by a time budget, then the summary
+     * note is published first, so that it is available even if the line comments take too long: the notes of previous
+     * runs are deleted afterward (as long as there is time left) and the number of deferred line comments is added to
+     * the summary note at the end. Otherwise, the notes of previous runs are deleted first and the summary note is
+     * published after the line comments.
+     *
+     * @param keepSummaryNote
+     *         determines whether the summary note of a previous run should be updated in place
+     * @param keepLineComments
+     *         determines whether the line comments of previous runs should be kept (incremental review)
+     * @param comment
+     *         renders the summary note with the specified notice
+     * @param lineComments
+     *         publishes the line comments
+     *
+     * @throws GitLabApiException
+     *         if the notes cannot be read or published
+     */
+    void publish(final boolean keepSummaryNote, final boolean keepLineComments,
+            final Function<String, String> comment, final LineComments lineComments) throws GitLabApiException {
+        if (deadline.isLimited()) {
+            publishSummaryFirst(keepSummaryNote, keepLineComments, comment, lineComments);
+        }
+        else {
+            publishSummaryLast(keepSummaryNote, keepLineComments, comment, lineComments);
+        }
+    }
+
+    private void publishSummaryLast(final boolean keepSummaryNote, final boolean keepLineComments,
+            final Function<String, String> comment, final LineComments lineComments) throws GitLabApiException {
+        Optional<Note> summaryNote = Optional.empty();
+        if (keepSummaryNote || keepLineComments) {
+            var oldNotes = client.getAutogradingNotes(projectId, mergeRequestId);
+            summaryNote = keepSummaryNote ? findSummaryNote(oldNotes) : Optional.empty();
+            deleteOldNotes(oldNotes, summaryNote, keepLineComments);
+        }
+        else {
+            client.deleteAutogradingNotes(projectId, mergeRequestId);
+        }
+
+        lineComments.publish();
+
+        if (deadline.isSuperseded()) {
+            logSuperseded();
+        }
+        else {
+            publishSummaryNote(summaryNote, comment.apply(StringUtils.EMPTY));
+        }
+    }
+
+    // Only the notes that existed before the summary note has been published are deleted
+    private void publishSummaryFirst(final boolean keepSummaryNote, final boolean keepLineComments,
+            final Function<String, String> comment, final LineComments lineComments) throws GitLabApiException {
+        var oldNotes = client.getAutogradingNotes(projectId, mergeRequestId);
+        var summaryNote = keepSummaryNote ? findSummaryNote(oldNotes) : Optional.<Note>empty();
+        publishSummaryNote(summaryNote, comment.apply(StringUtils.EMPTY));
+        deleteOldNotes(oldNotes, summaryNote, keepLineComments);
+
+        lineComments.publish();
+
+        if (deadline.isSuperseded()) {
+            logSuperseded();
+        }
+        else if (deadline.getDeferred() > 0) {
+            var oldIds = oldNotes.stream().map(Note::getId).collect(Collectors.toSet());
+            var publishedNote = summaryNote.isPresent() ? summaryNote
+                    : findSummaryNote(client.getAutogradingNotes(projectId, mergeRequestId).stream()
+                            .filter(note -> !oldIds.contains(note.getId()))
+                            .toList());
+            if (publishedNote.isPresent()) {
+                publishSummaryNote(publishedNote, comment.apply(deadline.createNotice()));
+            }
+            else {
+                log.logError("Can't find summary note to record %d deferred line comments", deadline.getDeferred());
+            }
+        }
+    }
+
+    private void logSuperseded() {
+        log.logInfo("Skipped %d line comments and the summary note of a superseded commit", deadline.getDeferred());
+    }
+
+    @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+    private void publishSummaryNote(final Optional<Note> summaryNote, final String comment)
+            throws GitLabApiException {
+        if (summaryNote.isEmpty()) {
+            log.logInfo("Creating merge request note");
+            client.createMergeRequestNote(projectId, mergeRequestId, comment);
+        }
+        else if (summaryNote.get().getBody().strip().equals(comment.strip())) {
+            log.logInfo("Merge request note %d is up to date - skipping update", summaryNote.get().getId());
+        }
+        else {
+            log.logInfo("Updating merge request note %d", summaryNote.get().getId());
+            client.updateMergeRequestNote(projectId, mergeRequestId, summaryNote.get().getId(), comment);
+        }
+    }
+
+    // GitLab returns the newest note first
+    private Optional<Note> findSummaryNote(final List<Note> notes) {
+        return notes.stream()
+                .filter(note -> !GitLabCommentBuilder.isLineComment(note.getBody()))
+                .findFirst();
+    }
+
+    /**
+     * Deletes the notes of previous runs, except the kept summary note and (if the review is incremental) the line
+     * comments. Deleting stops when the time budget is exhausted, the remaining notes are deleted by the next run.
+     */
+    @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+    private void deleteOldNotes(final List<Note> notes, final Optional<Note> summaryNote,
+            final boolean keepLineComments) {
+        var stale = notes.stream()
+                .filter(note -> GitLabCommentBuilder.isLineComment(note.getBody())
+                        ? !keepLineComments
+                        : summaryNote.map(Note::getId).filter(note.getId()::equals).isEmpty())
+                .toList();
+        for (int i = 0; i < stale.size(); i++) {
+            if (!deadline.hasTimeLeft()) {
+                log.logInfo("Skipping deletion of %d notes of previous runs - no time left", stale.size() - i);
+
+                return;
+            }
+            var note = stale.get(i);
+            try {
+                client.deleteMergeRequestNote(projectId, mergeRequestId, note.getId());
+            }
+            catch (GitLabApiException exception) {
+                log.logException(exception, "Can't delete note %d of merge request !%d",
+                        note.getId(), mergeRequestId);
+            }
+        }
+    }
+
+    /**
+     * Publishes the line comments of a run.
+     */
+    @FunctionalInterface
+    interface LineComments {
+        /**
+         * Publishes the line comments.
+         *
+         * @throws GitLabApiException
+         *         if the line comments cannot be published
+         */
+        void publish() throws GitLabApiException;
+    }
+}
@@ -0,0 +1,215 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.apache.commons.lang3.StringUtils;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.hm.hafner.util.VisibleForTesting;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Renders the summary note of the action within a fixed size budget. If the complete note does not fit into the
+ * budget, the renderer reduces the size step by step:
+ * <ol>
+ *     <li>the error log is moved into a collapsible {@code <details>} block,</li>
+ *     <li>stack traces are truncated progressively,</li>
+ *     <li>the details are replaced by the summary, and the complete report is written to a job artifact that is
+ *     linked in the note,</li>
+ *     <li>the summary is cut at the size limit.</li>
+ * </ol>
+ * The results of the quality gates (and everything else that is appended to them) are never removed, since a failed
+ * quality gate must always be visible in the note.
+ *
+ * @author Ullrich Hafner
+ */
+class SummaryNoteRenderer {
+    private static final Pattern STACK_TRACE_FRAME = Pattern.compile("^\\s*at [\\w$.<>/]+\\(.*\\)\\s*$");
+    private static final int[] STACK_TRACE_LIMITS = {20, 10, 5, 1};
+    private static final String TRUNCATED = "\n\n:scissors: _The note has been truncated._";
+
+    private final int budget;
+    private final Path artifact;
+    private final String artifactUrl;
+    private final FilteredLog log;
+
+    /**
+     * Creates a new renderer.
+     *
+     * @param budget
+     *         the maximum size of the note in bytes (UTF-8)
+     * @param artifact
+     *         the file to write the complete report to if the note exceeds the budget
+     * @param artifactUrl
+     *         the URL of the artifact in GitLab, or an empty string if the URL is unknown
+     * @param log
+     *         the logger
+     */
+    SummaryNoteRenderer(final int budget, final Path artifact, final String artifactUrl, final FilteredLog log) {
+        this.budget = budget;
+        this.artifact = artifact;
+        this.artifactUrl = artifactUrl;
+        this.log = log;
+    }
+
+    /**
+     * Renders the note.
+     *
+     * @param details
+     *         the detailed grading report
+     * @param summary
+     *         provides the short grading report, used if the details do not fit into the budget
+     * @param errors
+     *         the error log
+     * @param qualityGates
+     *         the results of the quality gates
+     * @param footer
+     *         the footer of the note
+     *
+     * @return the note
+     */
+    String render(final String details, final Supplier<String> summary, final String errors,
+            final String qualityGates, final String footer) {
+        var note = compose(details, errors, qualityGates, footer);
+        if (fits(note)) {
+            return note;
+        }
+
+        var collapsedErrors = collapse("Error log", errors);
+        note = compose(details, collapsedErrors, qualityGates, footer);
+        for (int limit : STACK_TRACE_LIMITS) {
+            if (fits(note)) {
+                log.logInfo("Reduced summary note to %d bytes", size(note));
+                return note;
+            }
+            note = compose(truncateStackTraces(details, limit), truncateStackTraces(collapsedErrors, limit),
+                    qualityGates, footer);
+        }
+        if (fits(note)) {
+            log.logInfo("Reduced summary note to %d bytes", size(note));
+            return note;
+        }
+
+        var reference = externalize(details + errors);
+        note = compose(summary.get() + reference, truncateStackTraces(collapsedErrors, 1), qualityGates, footer);
+        if (fits(note)) {
+            log.logInfo("Reduced summary note to %d bytes, complete report in %s", size(note), artifact);
+            return note;
+        }
+
+        log.logError("Summary note exceeds the size limit of %d bytes, cutting the summary", budget);
+        return cut(GitLabAutoGradingRunner.AUTOGRADING_MARKER + "\n\n" + summary.get() + reference,
+                qualityGates + footer);
+    }
+
+    private String compose(final String details, final String errors, final String qualityGates,
+            final String footer) {
+        return GitLabAutoGradingRunner.AUTOGRADING_MARKER + "\n\n" + details + errors + qualityGates + footer;
+    }
+
+    private boolean fits(final String note) {
+        return size(note) <= budget;
+    }
+
+    private int size(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @VisibleForTesting
+    static String collapse(final String title, final String content) {
+        if (StringUtils.isBlank(content)) {
+            return content;
+        }
+        return "\n\n<details>\n<summary>%s</summary>\n\n%s\n\n</details>\n\n".formatted(title, content.strip());
+    }
+
+    /**
+     * Truncates all stack traces in the given text so that at most {@code maxFrames} frames of each stack trace are
+     * shown.
+     *
+     * @param text
+     *         the text with stack traces
+     * @param maxFrames
+     *         the maximum number of frames of each stack trace
+     *
+     * @return the text with truncated stack traces
+     */
+    @VisibleForTesting
+    static String truncateStackTraces(final String text, final int maxFrames) {
+        List<String> lines = new ArrayList<>();
+        int frames = 0;
+        int skipped = 0;
+        for (String line : text.split("\n", -1)) {
+            if (STACK_TRACE_FRAME.matcher(line).matches()) {
+                frames++;
+                if (frames > maxFrames) {
+                    skipped++;
+                    continue;
+                }
+            }
+            else {
+                addSkipped(lines, skipped);
+                frames = 0;
+                skipped = 0;
+            }
+            lines.add(line);
+        }
+        addSkipped(lines, skipped);
+        return String.join("\n", lines);
+    }
+
+    private static void addSkipped(final List<String> lines, final int skipped) {
+        if (skipped > 0) {
+            lines.add("\t... %d more".formatted(skipped));
+        }
+    }
+
+    private String externalize(final String content) {
+        try {
+            Files.createDirectories(Objects.requireNonNull(artifact.toAbsolutePath().getParent()));
+            Files.writeString(artifact, content, StandardCharsets.UTF_8);
+            if (StringUtils.isBlank(artifactUrl)) {
+                return "\n\n:page_facing_up: The complete report is too large for this note, "
+                        + "see the job artifact `%s`.".formatted(artifact.getFileName());
+            }
+            return "\n\n:page_facing_up: The complete report is too large for this note, see [%s](%s)."
+                    .formatted(artifact.getFileName(), artifactUrl);
+        }
+        catch (IOException exception) {
+            log.logException(exception, "Can't write complete report to %s", artifact);
+
+            return StringUtils.EMPTY;
+        }
+    }
+
+    // Cuts the note so that the tail (quality gates and footer) still fits into the budget
+    private String cut(final String note, final String tail) {
+        var available = budget - size(tail) - size(TRUNCATED);
+        if (available < size(GitLabAutoGradingRunner.AUTOGRADING_MARKER)) { // even the tail is too large
+            return truncate(GitLabAutoGradingRunner.AUTOGRADING_MARKER + tail, budget);
+        }
+        if (size(note) <= available) {
+            return note + tail;
+        }
+        return truncate(note, available) + TRUNCATED + tail;
+    }
+
+    private static String truncate(final String text, final int maxBytes) {
+        var bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= maxBytes) {
+            return text;
+        }
+        var end = maxBytes;
+        while (end > 0 && (bytes[end] & 0xC0) == 0x80) { // do not split a multibyte character
+            end--;
+        }
+        return new String(bytes, 0, end, StandardCharsets.UTF_8);
+    }
+}
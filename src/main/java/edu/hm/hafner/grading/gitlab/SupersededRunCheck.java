@@ -0,0 +1,110 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Detects whether the run has been superseded by a newer commit of the merge request. The results of a superseded run
+ * are stale as soon as they are published, so publishing stops if the head commit of the merge request has moved past
+ * the graded commit. The head commit is fetched at most once per interval, so that checking before each comment is
+ * cheap.
+ *
+ * @author Ullrich Hafner
+ */
+class SupersededRunCheck {
+    private static final Duration INTERVAL = Duration.ofSeconds(10);
+    private static final SupersededRunCheck NEVER = new SupersededRunCheck(null, 0, 0, "", INTERVAL,
+            System::nanoTime, new FilteredLog("Errors"));
+
+    @CheckForNull
+    private final GitLabClient client;
+    private final long projectId;
+    private final long mergeRequestIid;
+    private final String sha;
+    private final long interval;
+    private final LongSupplier clock;
+    private final FilteredLog log;
+
+    private long lastCheck;
+    private boolean checked;
+    private boolean superseded;
+
+    /**
+     * Returns a check that never detects a newer commit.
+     *
+     * @return the check
+     */
+    static SupersededRunCheck never() {
+        return NEVER;
+    }
+
+    /**
+     * Creates a check for the specified merge request.
+     *
+     * @param client
+     *         the GitLab client
+     * @param projectId
+     *         the ID of the project
+     * @param mergeRequestIid
+     *         the internal ID of the merge request
+     * @param sha
+     *         the SHA of the graded commit on the source branch, i.e., {@code CI_MERGE_REQUEST_SOURCE_BRANCH_SHA} in
+     *         merged results pipelines, since the head commit of the merge request is never the merge commit
+     * @param log
+     *         the logger
+     */
+    SupersededRunCheck(final GitLabClient client, final long projectId, final long mergeRequestIid,
+            final String sha, final FilteredLog log) {
+        this(client, projectId, mergeRequestIid, sha, INTERVAL, System::nanoTime, log);
+    }
+
+    @VisibleForTesting
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    SupersededRunCheck(@CheckForNull final GitLabClient client, final long projectId, final long mergeRequestIid,
+            final String sha, final Duration interval, final LongSupplier clock, final FilteredLog log) {
+        this.client = client;
+        this.projectId = projectId;
+        this.mergeRequestIid = mergeRequestIid;
+        this.sha = sha;
+        this.interval = interval.toNanos();
+        this.clock = clock;
+        this.log = log;
+    }
+
+    /**
+     * Returns whether the head commit of the merge request has moved past the graded commit. The first invocation
+     * always fetches the head commit, subsequent invocations use the result of the last check until the interval has
+     * passed. Once a run has been superseded, it stays superseded.
+     *
+     * @return {@code true} if the run has been superseded, {@code false} otherwise
+     */
+    synchronized boolean isSuperseded() {
+        if (client == null || superseded) {
+            return superseded;
+        }
+        var now = clock.getAsLong();
+        if (checked && now - lastCheck < interval) {
+            return false;
+        }
+        checked = true;
+        lastCheck = now;
+        try {
+            var head = client.getHeadCommit(projectId, mergeRequestIid);
+            if (head != null && !head.isBlank() && !head.equals(sha)) {
+                log.logInfo("Merge request !%d has a newer commit %s - the results of commit %s are stale",
+                        mergeRequestIid, head, sha);
+                superseded = true;
+            }
+        }
+        catch (GitLabApiException exception) {
+            log.logException(exception, "Can't fetch the head commit of merge request !%d", mergeRequestIid);
+        }
+        return superseded;
+    }
+}
@@ -0,0 +1,295 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Diff;
+import org.gitlab4j.api.models.Job;
+import org.gitlab4j.api.models.MergeRequest;
+import org.gitlab4j.api.models.MergeRequestVersion;
+import org.gitlab4j.api.models.Note;
+import org.gitlab4j.api.models.Pipeline;
+import org.gitlab4j.api.models.Position;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link GitLabClient} for dry runs: rather than sending write requests to GitLab, all write requests are recorded
+ * in a transcript file, one JSON object per line. Read requests are delegated to an optional GitLab client, so that
+ * comments can be positioned in the merge request diff if GitLab is reachable. Without GitLab, there are no diff
+ * versions, and all line comments are recorded as commit comments. The recorded transcript can be published later
+ * using the {@link TranscriptReplayer}. The reading client is owned by the caller and will not be closed by this
+ * client.
+ *
+ * @author Ullrich Hafner
+ */
+class TranscriptClient implements GitLabClient {
+    static final String OPERATION = "op";
+    static final String DELETE_NOTES = "delete-notes";
+    static final String DELETE_NOTE = "delete-note";
+    static final String NOTE = "note";
+    static final String UPDATE_NOTE = "update-note";
+    static final String DISCUSSION = "discussion";
+    static final String COMMIT_COMMENT = "commit-comment";
+
+    static final String PROJECT = "project";
+    static final String MERGE_REQUEST = "mr";
+    static final String SHA = "sha";
+    static final String BODY = "body";
+    static final String PATH = "path";
+    static final String LINE = "line";
+    static final String POSITION = "position";
+    static final String NOTE_ID = "note_id";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path transcript;
+    private final BufferedWriter writer;
+    @CheckForNull
+    private final GitLabClient reader;
+    private final FilteredLog log;
+    private final long start = System.nanoTime();
+    private int requests;
+
+    /**
+     * Creates a new client that records all write requests in the specified transcript file. An existing file will
+     * be overwritten.
+     *
+     * @param transcript
+     *         the transcript file
+     * @param reader
+     *         the client to delegate read requests to, or {@code null} if GitLab is not reachable
+     * @param log
+     *         the logger
+     *
+     * @throws IOException
+     *         if the transcript file cannot be created
+     */
+    TranscriptClient(final Path transcript, @CheckForNull final GitLabClient reader, final FilteredLog log)
+            throws IOException {
+        var parent = transcript.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.transcript = transcript;
+        this.writer = Files.newBufferedWriter(transcript, StandardCharsets.UTF_8);
+        this.reader = reader;
+        this.log = log;
+    }
+
+    @Override
+    public List<MergeRequestVersion> getDiffVersions(final long projectId, final long mergeRequestIid)
+            throws GitLabApiException {
+        if (reader == null) {
+            return List.of();
+        }
+        return reader.getDiffVersions(projectId, mergeRequestIid);
+    }
+
+    @Override
+    public MergeRequest getMergeRequest(final long projectId, final long mergeRequestIid)
+            throws GitLabApiException {
+        if (reader == null) {
+            var mergeRequest = new MergeRequest();
+            mergeRequest.setProjectId(projectId);
+            mergeRequest.setIid(mergeRequestIid);
+            return mergeRequest;
+        }
+        return reader.getMergeRequest(projectId, mergeRequestIid);
+    }
+
+    @Override
+    public List<Diff> getDiffs(final long projectId, final long mergeRequestIid) throws GitLabApiException {
+        if (reader == null) {
+            return List.of();
+        }
+        return reader.getDiffs(projectId, mergeRequestIid);
+    }
+
+    @Override
+    public List<Pipeline> getPipelines(final long projectId, final String ref) throws GitLabApiException {
+        if (reader == null) {
+            return List.of();
+        }
+        return reader.getPipelines(projectId, ref);
+    }
+
+    @Override
+    public List<Job> getJobs(final long projectId, final long pipelineId) throws GitLabApiException {
+        if (reader == null) {
+            return List.of();
+        }
+        return reader.getJobs(projectId, pipelineId);
+    }
+
+    @Override
+    public InputStream downloadArtifacts(final long projectId, final long jobId) throws GitLabApiException {
+        if (reader == null) {
+            throw new GitLabApiException("No connection to GitLab in dry run");
+        }
+        return reader.downloadArtifacts(projectId, jobId);
+    }
+
+    @Override
+    public void downloadArtifacts(final long projectId, final long jobId, final Path file)
+            throws GitLabApiException {
+        if (reader == null) {
+            throw new GitLabApiException("No connection to GitLab in dry run");
+        }
+        reader.downloadArtifacts(projectId, jobId, file);
+    }
+
+    @Override
+    public List<Diff> compareCommits(final long projectId, final String from, final String to)
+            throws GitLabApiException {
+        if (reader == null) {
+            throw new GitLabApiException("No connection to GitLab in dry run");
+        }
+        return reader.compareCommits(projectId, from, to);
+    }
+
+    @Override
+    public String getHeadCommit(final long projectId, final long mergeRequestIid) throws GitLabApiException {
+        if (reader == null) {
+            throw new GitLabApiException("No connection to GitLab in dry run");
+        }
+        return reader.getHeadCommit(projectId, mergeRequestIid);
+    }
+
+    @Override
+    public List<Note> getMergeRequestNotes(final long projectId, final long mergeRequestIid, final String marker)
+            throws GitLabApiException {
+        if (reader == null) {
+            return List.of();
+        }
+        return reader.getMergeRequestNotes(projectId, mergeRequestIid, marker);
+    }
+
+    @Override
+    public List<Note> getAutogradingNotes(final long projectId, final long mergeRequestIid)
+            throws GitLabApiException {
+        if (reader == null) {
+            return List.of();
+        }
+        return reader.getAutogradingNotes(projectId, mergeRequestIid);
+    }
+
+    @Override
+    public void deleteMergeRequestNote(final long projectId, final long mergeRequestIid, final long noteId)
+            throws GitLabApiException {
+        record(createEntry(DELETE_NOTE, projectId).put(MERGE_REQUEST, mergeRequestIid).put(NOTE_ID, noteId));
+    }
+
+    @Override
+    public void deleteAutogradingNotes(final long projectId, final long mergeRequestIid)
+            throws GitLabApiException {
+        record(createEntry(DELETE_NOTES, projectId).put(MERGE_REQUEST, mergeRequestIid));
+    }
+
+    @Override
+    public void createMergeRequestNote(final long projectId, final long mergeRequestIid, final String body)
+            throws GitLabApiException {
+        record(createEntry(NOTE, projectId).put(MERGE_REQUEST, mergeRequestIid).put(BODY, body));
+    }
+
+    @Override
+    public void updateMergeRequestNote(final long projectId, final long mergeRequestIid, final long noteId,
+            final String body) throws GitLabApiException {
+        record(createEntry(UPDATE_NOTE, projectId).put(MERGE_REQUEST, mergeRequestIid).put(NOTE_ID, noteId)
+                .put(BODY, body));
+    }
+
+    @Override
+    public void createMergeRequestDiscussion(final long projectId, final long mergeRequestIid, final String body,
+            @CheckForNull final Position position) throws GitLabApiException {
+        var entry = createEntry(DISCUSSION, projectId).put(MERGE_REQUEST, mergeRequestIid).put(BODY, body);
+        if (position != null) {
+            entry.set(POSITION, toJson(position));
+        }
+        record(entry);
+    }
+
+    @Override
+    public void createCommitComment(final long projectId, final String sha, final String body, final String path,
+            final int line) throws GitLabApiException {
+        record(createEntry(COMMIT_COMMENT, projectId).put(SHA, sha).put(BODY, body).put(PATH, path).put(LINE, line));
+    }
+
+    @Override
+    public void createCommitComment(final long projectId, final String sha, final String body)
+            throws GitLabApiException {
+        record(createEntry(COMMIT_COMMENT, projectId).put(SHA, sha).put(BODY, body));
+    }
+
+    private ObjectNode createEntry(final String operation, final long projectId) {
+        return MAPPER.createObjectNode().put(OPERATION, operation).put(PROJECT, projectId);
+    }
+
+    private void record(final ObjectNode entry) throws GitLabApiException {
+        try {
+            writer.write(MAPPER.writeValueAsString(entry));
+            writer.newLine();
+            requests++;
+        }
+        catch (IOException exception) {
+            throw new GitLabApiException(exception);
+        }
+    }
+
+    static ObjectNode toJson(final Position position) {
+        var json = MAPPER.createObjectNode()
+                .put("base_sha", position.getBaseSha())
+                .put("head_sha", position.getHeadSha())
+                .put("start_sha", position.getStartSha());
+        if (position.getNewPath() != null) {
+            json.put("new_path", position.getNewPath()).put("new_line", position.getNewLine());
+        }
+        if (position.getOldPath() != null) {
+            json.put("old_path", position.getOldPath()).put("old_line", position.getOldLine());
+        }
+        return json;
+    }
+
+    static Position toPosition(final JsonNode json) {
+        var position = new Position()
+                .withBaseSha(json.path("base_sha").asText())
+                .withHeadSha(json.path("head_sha").asText())
+                .withStartSha(json.path("start_sha").asText())
+                .withPositionType(Position.PositionType.TEXT);
+        if (json.hasNonNull("new_path")) {
+            position.withNewPath(json.get("new_path").asText()).withNewLine(json.path("new_line").asInt());
+        }
+        if (json.hasNonNull("old_path")) {
+            position.withOldPath(json.get("old_path").asText()).withOldLine(json.path("old_line").asInt());
+        }
+        return position;
+    }
+
+    static JsonNode parse(final String line) throws IOException {
+        return MAPPER.readTree(line);
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        }
+        catch (IOException exception) {
+            log.logException(exception, "Can't write transcript %s", transcript);
+        }
+        log.logInfo("Dry run: recorded %d GitLab requests in %s (rendering took %d ms)", requests, transcript,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
@@ -0,0 +1,296 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the transcripts of dry runs (see {@link TranscriptClient}) to GitLab. Usage:
+ * {@code TranscriptReplayer [transcript...]}. If no transcript is specified, then the transcript that is configured
+ * with {@code TRANSCRIPT} is used. The connection to GitLab is configured with the same environment variables as the
+ * action ({@code CI_SERVER_URL} and {@code GITLAB_TOKEN}).
+ *
+ * <p>
+ * The requests of all transcripts are sent in three phases: first, all old autograding notes are deleted, then all
+ * line comments are created, and finally all summary notes are created or updated. Within each phase, the requests
+ * are sent concurrently ({@code REPLAY_CONCURRENCY}) in batches ({@code REPLAY_BATCH_SIZE}). Requests that are
+ * rejected by the rate limit or by a server error are retried.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+public class TranscriptReplayer {
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVER_ERROR = 500;
+
+    private final GitLabClient client;
+    private final int concurrency;
+    private final int batchSize;
+    private final boolean commitFallback;
+    private final Duration retryDelay;
+    private final FilteredLog log;
+
+    private final AtomicInteger published = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * Publishes the specified transcripts to GitLab.
+     *
+     * @param args
+     *         the transcript files
+     */
+    @SuppressWarnings({"PMD.SystemPrintln", "SystemOut"})
+    static void main(final String... args) {
+        var log = new FilteredLog("Errors while replaying the transcripts:");
+        var configuration = RunConfiguration.load(log);
+        if (!configuration.hasGitLabConnection()) {
+            throw new IllegalArgumentException("No CI_SERVER_URL or GITLAB_TOKEN defined");
+        }
+
+        var transcripts = args.length == 0
+                ? List.of(configuration.getTranscript())
+                : Arrays.stream(args).map(Path::of).toList();
+        int failures;
+        try (var client = new GitLabApiClient(configuration.getGitLabUrl(), configuration.getToken(), log)) {
+            var replayer = new TranscriptReplayer(client, configuration.getReplayConcurrency(),
+                    configuration.getReplayBatchSize(), !configuration.isSkipCommitComments(),
+                    Duration.ofSeconds(1), log);
+            failures = replayer.replay(readTranscripts(transcripts, log));
+        }
+
+        log.getInfoMessages().forEach(System.out::println);
+        log.getErrorMessages().forEach(System.out::println);
+        if (failures > 0) {
+            throw new IllegalStateException("%d requests could not be published".formatted(failures));
+        }
+    }
+
+    TranscriptReplayer(final GitLabClient client, final int concurrency, final int batchSize,
+            final boolean commitFallback, final Duration retryDelay, final FilteredLog log) {
+        this.client = client;
+        this.concurrency = concurrency;
+        this.batchSize = batchSize;
+        this.commitFallback = commitFallback;
+        this.retryDelay = retryDelay;
+        this.log = log;
+    }
+
+    /**
+     * Reads the entries of the specified transcripts.
+     *
+     * @param transcripts
+     *         the transcript files
+     * @param log
+     *         the logger
+     *
+     * @return the entries of all transcripts in the order of the files
+     */
+    static List<JsonNode> readTranscripts(final List<Path> transcripts, final FilteredLog log) {
+        var entries = new ArrayList<JsonNode>();
+        for (Path transcript : transcripts) {
+            try (var lines = Files.lines(transcript, StandardCharsets.UTF_8)) {
+                for (String line : lines.filter(line -> !line.isBlank()).toList()) {
+                    entries.add(TranscriptClient.parse(line));
+                }
+                log.logInfo("Reading transcript %s", transcript);
+            }
+            catch (IOException exception) {
+                log.logException(exception, "Can't read transcript %s", transcript);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Publishes the specified transcript entries.
+     *
+     * @param entries
+     *         the entries to publish
+     *
+     * @return the number of requests that could not be published
+     */
+    int replay(final List<JsonNode> entries) {
+        var start = System.nanoTime();
+
+        var cleanups = new LinkedHashMap<String, JsonNode>(); // remove duplicate cleanups of the same merge request
+        var comments = new ArrayList<JsonNode>();
+        var notes = new ArrayList<JsonNode>();
+        for (JsonNode entry : entries) {
+            switch (entry.path(TranscriptClient.OPERATION).asText()) {
+                case TranscriptClient.DELETE_NOTES -> cleanups.putIfAbsent(
+                        entry.path(TranscriptClient.PROJECT).asLong() + "!"
+                                + entry.path(TranscriptClient.MERGE_REQUEST).asLong(), entry);
+                case TranscriptClient.DELETE_NOTE -> cleanups.putIfAbsent(
+                        entry.path(TranscriptClient.PROJECT).asLong() + "!"
+                                + entry.path(TranscriptClient.MERGE_REQUEST).asLong() + "#"
+                                + entry.path(TranscriptClient.NOTE_ID).asLong(), entry);
+                case TranscriptClient.DISCUSSION -> comments.add(entry);
+                case TranscriptClient.COMMIT_COMMENT -> {
+                    if (entry.has(TranscriptClient.PATH)) {
+                        comments.add(entry);
+                    }
+                    else {
+                        notes.add(entry);
+                    }
+                }
+                case TranscriptClient.NOTE, TranscriptClient.UPDATE_NOTE -> notes.add(entry);
+                default -> {
+                    log.logError("Skipping unknown transcript entry: %s", entry);
+                    failed.incrementAndGet();
+                }
+            }
+        }
+
+        try (var executor = Executors.newFixedThreadPool(concurrency, Thread.ofVirtual().factory())) {
+            run("Deleting old notes", List.copyOf(cleanups.values()), executor);
+            run("Creating line comments", comments, executor);
+            run("Creating summary notes", notes, executor);
+        }
+
+        log.logInfo("Published %d requests (%d failed) in %d ms", published.get(), failed.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return failed.get();
+    }
+
+    private void run(final String phase, final List<JsonNode> entries,
+            final ExecutorService executor) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        log.logInfo("%s: %d requests", phase, entries.size());
+        for (int from = 0; from < entries.size(); from += batchSize) {
+            var batch = entries.subList(from, Math.min(from + batchSize, entries.size()));
+            var tasks = batch.stream().map(this::createTask).toList();
+            try {
+                for (Future<Boolean> result : executor.invokeAll(tasks)) {
+                    if (Boolean.TRUE.equals(result.get())) {
+                        published.incrementAndGet();
+                    }
+                    else {
+                        failed.incrementAndGet();
+                    }
+                }
+            }
+            catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Replay has been interrupted", exception);
+            }
+            catch (ExecutionException exception) {
+                throw new IllegalStateException("Replay failed", exception);
+            }
+        }
+    }
+
+    private Callable<Boolean> createTask(final JsonNode entry) {
+        return () -> {
+            try {
+                send(entry);
+                return true;
+            }
+            catch (GitLabApiException exception) {
+                return fallback(entry, exception);
+            }
+        };
+    }
+
+    private boolean fallback(final JsonNode entry, final GitLabApiException exception) {
+        if (commitFallback && TranscriptClient.DISCUSSION.equals(entry.path(TranscriptClient.OPERATION).asText())
+                && entry.has(TranscriptClient.POSITION)) {
+            var position = TranscriptClient.toPosition(entry.get(TranscriptClient.POSITION));
+            try {
+                withRetry(() -> client.createCommitComment(entry.path(TranscriptClient.PROJECT).asLong(),
+                        position.getStartSha(), entry.path(TranscriptClient.BODY).asText(),
+                        position.getNewPath(), position.getNewLine()));
+                return true;
+            }
+            catch (GitLabApiException _) {
+                // report the original exception below
+            }
+        }
+        log.logException(exception, "Can't publish transcript entry %s",
+                entry.path(TranscriptClient.OPERATION).asText());
+        return false;
+    }
+
+    private void send(final JsonNode entry) throws GitLabApiException {
+        var project = entry.path(TranscriptClient.PROJECT).asLong();
+        var mergeRequest = entry.path(TranscriptClient.MERGE_REQUEST).asLong();
+        var body = entry.path(TranscriptClient.BODY).asText();
+        switch (entry.path(TranscriptClient.OPERATION).asText()) {
+            case TranscriptClient.DELETE_NOTES -> withRetry(() -> client.deleteAutogradingNotes(project, mergeRequest));
+            case TranscriptClient.DELETE_NOTE -> withRetry(() -> client.deleteMergeRequestNote(project, mergeRequest,
+                    entry.path(TranscriptClient.NOTE_ID).asLong()));
+            case TranscriptClient.NOTE -> withRetry(() -> client.createMergeRequestNote(project, mergeRequest, body));
+            case TranscriptClient.UPDATE_NOTE -> withRetry(() -> client.updateMergeRequestNote(project, mergeRequest,
+                    entry.path(TranscriptClient.NOTE_ID).asLong(), body));
+            case TranscriptClient.DISCUSSION -> withRetry(() -> client.createMergeRequestDiscussion(project,
+                    mergeRequest, body, entry.has(TranscriptClient.POSITION)
+                            ? TranscriptClient.toPosition(entry.get(TranscriptClient.POSITION)) : null));
+            default -> {
+                var sha = entry.path(TranscriptClient.SHA).asText();
+                if (entry.has(TranscriptClient.PATH)) {
+                    withRetry(() -> client.createCommitComment(project, sha, body,
+                            entry.path(TranscriptClient.PATH).asText(), entry.path(TranscriptClient.LINE).asInt()));
+                }
+                else {
+                    withRetry(() -> client.createCommitComment(project, sha, body));
+                }
+            }
+        }
+    }
+
+    private void withRetry(final Request request) throws GitLabApiException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                request.send();
+
+                return;
+            }
+            catch (GitLabApiException exception) {
+                if (attempt >= MAX_ATTEMPTS || !isTransient(exception)) {
+                    throw exception;
+                }
+                pause(attempt);
+            }
+        }
+    }
+
+    private boolean isTransient(final GitLabApiException exception) {
+        return exception.getHttpStatus() == TOO_MANY_REQUESTS || exception.getHttpStatus() >= SERVER_ERROR;
+    }
+
+    private void pause(final int attempt) throws GitLabApiException {
+        try {
+            Thread.sleep(retryDelay.multipliedBy(attempt));
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new GitLabApiException(exception);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        void send() throws GitLabApiException;
+    }
+}
@@ -0,0 +1,127 @@
+package edu.hm.hafner.grading.gitlab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts the entries of a ZIP archive into a directory. Entries that would be written outside the target directory
+ * (zip slip) are rejected, as well as archives that exceed the limits for the number of entries or the extracted
+ * size.
+ *
+ * @author Ullrich Hafner
+ */
+final class ZipExtractor {
+    /** The maximum number of entries of an archive. */
+    static final int MAX_ENTRIES = 100_000;
+    /** The maximum number of bytes of all extracted files of an archive. */
+    static final long MAX_SIZE = 4L * 1024 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Verifies that the specified file is a complete ZIP archive: the central directory at the end of the archive must
+     * be readable and each entry must have a valid local header. The checksums of the entries are verified later on
+     * while the entries are extracted.
+     *
+     * @param archive
+     *         the file of the ZIP archive
+     *
+     * @throws java.util.zip.ZipException
+     *         if the archive is truncated or corrupted
+     * @throws IOException
+     *         if the file cannot be read
+     */
+    static void verify(final Path archive) throws IOException {
+        try (var zip = new ZipFile(archive.toFile())) {
+            var entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                var entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    try (var _ = zip.getInputStream(entry)) {
+                        // opening the entry validates its local header
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Extracts all files of the archive. The archive may contain at most {@link #MAX_ENTRIES} entries with a total
+     * size of {@link #MAX_SIZE} bytes.
+     *
+     * @param archive
+     *         the stream of the ZIP archive
+     * @param target
+     *         the directory to extract the files into
+     *
+     * @throws IOException
+     *         if the archive cannot be read, a file cannot be written, an entry refers to a file outside the target
+     *         directory, or the archive exceeds the limits
+     */
+    static void extract(final InputStream archive, final Path target) throws IOException {
+        extract(archive, target, MAX_ENTRIES, MAX_SIZE);
+    }
+
+    /**
+     * Extracts all files of the archive. The limits are checked while the files are extracted, so a manipulated
+     * archive (e.g., a ZIP bomb) cannot fill the disk.
+     *
+     * @param archive
+     *         the stream of the ZIP archive
+     * @param target
+     *         the directory to extract the files into
+     * @param maxEntries
+     *         the maximum number of entries in the archive
+     * @param maxSize
+     *         the maximum number of bytes of all extracted files
+     *
+     * @throws IOException
+     *         if the archive cannot be read, a file cannot be written, an entry refers to a file outside the target
+     *         directory, or the archive exceeds the limits
+     */
+    static void extract(final InputStream archive, final Path target, final int maxEntries, final long maxSize)
+            throws IOException {
+        var entries = 0;
+        var size = 0L;
+        var buffer = new byte[BUFFER_SIZE];
+        try (var zis = new ZipInputStream(archive)) {
+            for (ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
+                entries++;
+                if (entries > maxEntries) {
+                    throw new IOException("The archive contains more than %d entries".formatted(maxEntries));
+                }
+                var outPath = target.resolve(entry.getName()).normalize();
+                if (!outPath.startsWith(target)) {
+                    throw new IOException("Invalid ZIP entry (zip slip): " + entry.getName());
+                }
+
+                if (entry.isDirectory()) {
+                    Files.createDirectories(outPath);
+                }
+                else {
+                    Files.createDirectories(Objects.requireNonNull(outPath.getParent()));
+                    try (var output = Files.newOutputStream(outPath)) {
+                        for (int read = zis.read(buffer); read != -1; read = zis.read(buffer)) {
+                            size += read;
+                            if (size > maxSize) {
+                                throw new IOException("The extracted files exceed %d bytes".formatted(maxSize));
+                            }
+                            output.write(buffer, 0, read);
+                        }
+                    }
+                }
+                zis.closeEntry();
+            }
+        }
+    }
+
+    private ZipExtractor() {
+        // prevents instantiation
+    }
+}
@@ -0,0 +1,50 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+# Compares the startup time and the memory footprint of the JVM image (Jib) with the native image.
+# Both images grade the bundled sample reports with the training configuration of the AOT cache.
+# The script reports the median of the wall clock time and of the peak RSS of the grading process.
+# Usage: src/main/native/startup-benchmark.sh [jvm-image] [native-image] [runs]
+
+JVM_IMAGE=${1:-uhafner/autograding-gitlab-action:5.4.0-SNAPSHOT}
+NATIVE_IMAGE=${2:-uhafner/autograding-gitlab-action:5.4.0-SNAPSHOT-native}
+RUNS=${3:-10}
+
+ROOT=$(cd "$(dirname "$0")/../../.." && pwd)
+
+run() {
+  local image=$1
+  local command=$2
+  docker run --rm \
+    -v "${ROOT}/src/test/resources:/training/target:ro" \
+    -v "${ROOT}/src/main/aot:/training/aot:ro" \
+    -w /training \
+    --entrypoint sh "${image}" -c \
+    "export CONFIG=\"\$(cat /training/aot/training-config.json)\"; \
+     /usr/bin/time -f 'MEASURE %e %M' ${command} > /dev/null 2>/tmp/stderr; \
+     grep '^MEASURE' /tmp/stderr" 2>/dev/null || true
+}
+
+median() {
+  sort -n | awk '{ values[NR] = $1 } END { if (NR == 0) { print "n/a" } else { print values[int((NR + 1) / 2)] } }'
+}
+
+benchmark() {
+  local name=$1
+  local image=$2
+  local command=$3
+  local times="" memory=""
+  for _ in $(seq "${RUNS}"); do
+    local output
+    output=$(run "${image}" "${command}")
+    times+="$(echo "${output}" | awk '/^MEASURE/ { printf "%d", $2 * 1000 }')"$'\n'
+    memory+="$(echo "${output}" | awk '/^MEASURE/ { printf "%d", $3 / 1024 }')"$'\n'
+  done
+  printf "%-8s total: %6s ms   peak RSS: %5s MB   image: %s\n" "${name}" \
+    "$(echo -n "${times}" | grep -v '^$' | median)" "$(echo -n "${memory}" | grep -v '^$' | median)" \
+    "$(docker image inspect -f '{{.Size}}' "${image}" | awk '{ printf "%d MB", $1 / 1024 / 1024 }')"
+}
+
+echo "Startup benchmark JVM vs. native image (median of ${RUNS} runs)"
+benchmark JVM "${JVM_IMAGE}" "java -cp @/app/jib-classpath-file edu.hm.hafner.grading.gitlab.GitLabAutoGradingRunner"
+benchmark native "${NATIVE_IMAGE}" "/app/autograding-gitlab-action"
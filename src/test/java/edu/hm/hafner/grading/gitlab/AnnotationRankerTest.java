@@ -0,0 +1,100 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.junit.jupiter.api.Test;
+
+import edu.hm.hafner.analysis.Severity;
+import edu.hm.hafner.grading.CommentBuilder.CommentType;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+
+class AnnotationRankerTest {
+    private static final String CHANGED = "src/main/java/Changed.java";
+    private static final String UNTOUCHED = "src/main/java/Untouched.java";
+    private static final Map<String, Set<Integer>> MODIFIED_LINES = Map.of(CHANGED, Set.of(10, 11, 50));
+
+    @Test
+    void shouldSelectNothingIfLimitIsZero() {
+        var ranker = new AnnotationRanker(0, MODIFIED_LINES);
+
+        ranker.add(createWarning(CHANGED, 10), Severity.ERROR);
+
+        assertThat(ranker.getSelection()).isEmpty();
+    }
+
+    @Test
+    void shouldPreferErrorOnChangedLineOverStyleWarningsInUntouchedFiles() {
+        var ranker = new AnnotationRanker(2, MODIFIED_LINES);
+
+        var first = createWarning(UNTOUCHED, 1);
+        var second = createWarning(UNTOUCHED, 2);
+        var third = createWarning(UNTOUCHED, 3);
+        var error = createWarning(CHANGED, 11);
+        ranker.add(first, Severity.WARNING_LOW);
+        ranker.add(second, Severity.WARNING_LOW);
+        ranker.add(third, Severity.WARNING_LOW);
+        ranker.add(error, Severity.ERROR);
+
+        assertThat(ranker.getSelection()).containsExactly(error, first);
+    }
+
+    @Test
+    void shouldRankByProximityToChangedLines() {
+        var ranker = new AnnotationRanker(3, MODIFIED_LINES);
+
+        var far = createWarning(CHANGED, 30);
+        var untouched = createWarning(UNTOUCHED, 10);
+        var near = createWarning(CHANGED, 13);
+        var changed = createWarning(CHANGED, 50);
+        ranker.add(untouched, Severity.WARNING_NORMAL);
+        ranker.add(far, Severity.WARNING_NORMAL);
+        ranker.add(near, Severity.WARNING_NORMAL);
+        ranker.add(changed, Severity.WARNING_NORMAL);
+
+        assertThat(ranker.getSelection()).containsExactly(changed, near, far);
+    }
+
+    @Test
+    void shouldDetectChangedLineInsideRange() {
+        var ranker = new AnnotationRanker(1, MODIFIED_LINES);
+
+        var range = new Annotation(CommentType.WARNING, CHANGED, 40, 60, "Message", "Title", 0, 0, "", "");
+
+        assertThat(ranker.score(range, Severity.WARNING_LOW))
+                .isEqualTo(ranker.score(createWarning(CHANGED, 50), Severity.WARNING_LOW));
+    }
+
+    @Test
+    void shouldRankMissedLinesBeforePartialCoverage() {
+        var ranker = new AnnotationRanker(1, MODIFIED_LINES);
+
+        var partial = new Annotation(CommentType.PARTIAL_COVERAGE, CHANGED, 10, 10, "", "", 0, 0, "", "");
+        var missed = new Annotation(CommentType.NO_COVERAGE, CHANGED, 11, 11, "", "", 0, 0, "", "");
+        ranker.add(partial, Severity.WARNING_NORMAL);
+        ranker.add(missed, Severity.WARNING_NORMAL);
+
+        assertThat(ranker.getSelection()).containsExactly(missed);
+    }
+
+    @Test
+    void shouldKeepReportOrderForEqualScores() {
+        var ranker = new AnnotationRanker(3, MODIFIED_LINES);
+
+        var first = createWarning(UNTOUCHED, 1);
+        var second = createWarning(UNTOUCHED, 2);
+        var third = createWarning(UNTOUCHED, 3);
+        var fourth = createWarning(UNTOUCHED, 4);
+        ranker.add(first, Severity.WARNING_HIGH);
+        ranker.add(second, Severity.WARNING_HIGH);
+        ranker.add(third, Severity.WARNING_HIGH);
+        ranker.add(fourth, Severity.WARNING_HIGH);
+
+        assertThat(ranker.getSelection()).containsExactly(first, second, third);
+    }
+
+    private Annotation createWarning(final String file, final int line) {
+        return new Annotation(CommentType.WARNING, file, line, line, "Message", "Title", 0, 0, "", "");
+    }
+}
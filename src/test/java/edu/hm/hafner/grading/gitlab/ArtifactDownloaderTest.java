@@ -0,0 +1,116 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ArtifactDownloaderTest {
+    private static final String ARTIFACTS = "/api/v4/projects/1/jobs/2/artifacts";
+
+    @TempDir
+    private Path folder;
+
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> validators = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger interruptions = new AtomicInteger();
+    private byte[] archive = new byte[0];
+
+    @Test
+    void shouldResumeInterruptedDownload() throws IOException, GitLabApiException {
+        archive = createArchive();
+        interruptions.set(2);
+
+        var file = download();
+
+        assertThat(Files.readAllBytes(file)).isEqualTo(archive);
+        assertThat(ranges).hasSize(3).first().isEqualTo("-");
+        assertThat(ranges.get(1)).isEqualTo("bytes=%d-".formatted(archive.length / 2));
+        var resumed = archive.length / 2;
+        assertThat(ranges.get(2)).isEqualTo("bytes=%d-".formatted(resumed + (archive.length - resumed) / 2));
+        assertThat(validators).containsExactly("-", "\"archive\"", "\"archive\"");
+    }
+
+    @Test
+    void shouldDownloadArchiveAtOnce() throws IOException, GitLabApiException {
+        archive = createArchive();
+
+        var file = download();
+
+        assertThat(Files.readAllBytes(file)).isEqualTo(archive);
+        assertThat(ranges).containsExactly("-");
+    }
+
+    @Test
+    void shouldRejectCorruptedArchive() throws IOException {
+        archive = "no zip archive".getBytes(StandardCharsets.UTF_8);
+
+        assertThatExceptionOfType(GitLabApiException.class).isThrownBy(this::download);
+        assertThat(ranges).hasSize(5).containsOnly("-");
+    }
+
+    private Path download() throws IOException, GitLabApiException {
+        try (var server = new GitLabStubServer().withHandler(ARTIFACTS, this::respond)) {
+            var file = folder.resolve("artifacts.zip");
+            new ArtifactDownloader(server.getUrl(), "token", Duration.ZERO, new FilteredLog("Errors"))
+                    .download(1, 2, file);
+            return file;
+        }
+    }
+
+    // Sends the requested range of the archive, interrupted transfers send only half of the range
+    private void respond(final HttpExchange exchange) throws IOException {
+        var range = exchange.getRequestHeaders().getFirst("Range");
+        ranges.add(range == null ? "-" : range);
+        var validator = exchange.getRequestHeaders().getFirst("If-Range");
+        validators.add(validator == null ? "-" : validator);
+
+        var start = range == null ? 0 : Integer.parseInt(range.replaceAll("\\D", ""));
+        var content = Arrays.copyOfRange(archive, start, archive.length);
+        if (start > 0) {
+            exchange.getResponseHeaders().add("Content-Range",
+                    "bytes %d-%d/%d".formatted(start, archive.length - 1, archive.length));
+        }
+        exchange.getResponseHeaders().add("ETag", "\"archive\"");
+        exchange.sendResponseHeaders(start > 0 ? 206 : 200, content.length);
+        var output = exchange.getResponseBody();
+        if (interruptions.getAndDecrement() > 0) {
+            output.write(content, 0, content.length / 2);
+            output.flush();
+        }
+        else {
+            output.write(content);
+        }
+        exchange.close();
+    }
+
+    private byte[] createArchive() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < 20; i++) {
+                zip.putNextEntry(new ZipEntry("target/report-%d.xml".formatted(i)));
+                zip.write(("<report>%d</report>".formatted(i)).repeat(100 + i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
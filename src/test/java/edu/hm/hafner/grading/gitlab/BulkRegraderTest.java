@@ -0,0 +1,140 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.hm.hafner.grading.gitlab.BulkRegrader.Settings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BulkRegraderTest {
+    private static final String CONFIG = "{\"tests\": []}";
+
+    @TempDir
+    private Path workspace;
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void shouldRecordScoresOfAllOpenMergeRequests() throws IOException, GitLabApiException {
+        try (var server = startServer()) {
+            var client = mock(GitLabClient.class);
+            when(client.downloadArtifacts(1, 11)).thenAnswer(_ -> createArtifacts("80"));
+            when(client.downloadArtifacts(2, 21)).thenAnswer(_ -> createArtifacts("60"));
+            doCallRealMethod().when(client).downloadArtifacts(anyLong(), anyLong(), any(Path.class));
+
+            var runner = new RunnerProcess(List.of("sh", "-c", """
+                    test "$DRY_RUN" = true || exit 1
+                    test "$CONFIG" = '%s' || exit 2
+                    printf '{"op":"note","project":%%s,"body":"## Tests - %%s of 100"}\\n' \
+                        "$CI_PROJECT_ID" "$(cat target/score.txt)" > "$TRANSCRIPT"
+                    """.formatted(CONFIG)));
+            var regrader = new BulkRegrader(createReader(server), client, runner,
+                    new Settings(CONFIG, "maven", 2, true, workspace));
+
+            var results = regrader.regrade("course/assignment", "solution");
+
+            assertThat(results).containsExactly(
+                    Map.of("Merge Request", "course/assignment/alice!1", "Status", "Success", "Tests", "80%",
+                            "URL", "https://gitlab/alice/-/merge_requests/1"),
+                    Map.of("Merge Request", "course/assignment/bob!3", "Status", "Success", "Tests", "60%",
+                            "URL", "https://gitlab/bob/-/merge_requests/3"),
+                    Map.of("Merge Request", "course/assignment/carol!2", "Status", "No job 'maven' found",
+                            "URL", "https://gitlab/carol/-/merge_requests/2"));
+            assertThat(requests).contains(
+                    "/api/v4/groups/course%2Fassignment/merge_requests?state=opened&labels=solution&per_page=100&page=1");
+            verify(client, never()).createMergeRequestNote(anyLong(), anyLong(), anyString());
+        }
+    }
+
+    @Test
+    void shouldReportFailedRunners() throws IOException, GitLabApiException {
+        try (var server = startServer()) {
+            var client = mock(GitLabClient.class);
+            when(client.downloadArtifacts(anyLong(), anyLong())).thenAnswer(_ -> createArtifacts("0"));
+            doCallRealMethod().when(client).downloadArtifacts(anyLong(), anyLong(), any(Path.class));
+
+            var regrader = new BulkRegrader(createReader(server), client,
+                    new RunnerProcess(List.of("sh", "-c", "exit 3")),
+                    new Settings(CONFIG, "maven", 1, false, workspace));
+
+            assertThat(regrader.regrade("course/assignment", null))
+                    .extracting(result -> result.get("Status"))
+                    .containsExactly("Failed (exit code 3)", "Failed (exit code 3)", "No job 'maven' found");
+        }
+    }
+
+    private GitLabRestReader createReader(final GitLabStubServer server) {
+        return new GitLabRestReader(server.getUrl(), "token", null);
+    }
+
+    private ByteArrayInputStream createArtifacts(final String score) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("target/score.txt"));
+            zip.write(score.getBytes(StandardCharsets.UTF_8));
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    private GitLabStubServer startServer() throws IOException {
+        return new GitLabStubServer()
+                .withHandler("/api/v4/groups", this::respond)
+                .withHandler("/api/v4/projects", this::respond);
+    }
+
+    private void respond(final HttpExchange exchange) throws IOException {
+        var uri = exchange.getRequestURI().toString();
+        requests.add(uri);
+
+        var path = exchange.getRequestURI().getPath();
+        var project = path.split("/")[4];
+        String body;
+        if (path.endsWith("/merge_requests")) {
+            body = """
+                    [
+                      {"project_id": 2, "iid": 3, "sha": "b", "web_url": "https://gitlab/bob/-/merge_requests/3",
+                       "references": {"full": "course/assignment/bob!3"}},
+                      {"project_id": 1, "iid": 1, "sha": "a", "web_url": "https://gitlab/alice/-/merge_requests/1",
+                       "references": {"full": "course/assignment/alice!1"}},
+                      {"project_id": 3, "iid": 2, "sha": "c", "web_url": "https://gitlab/carol/-/merge_requests/2",
+                       "references": {"full": "course/assignment/carol!2"}}
+                    ]
+                    """;
+        }
+        else if (path.matches("/api/v4/projects/\\d+/pipelines")) {
+            body = "[{\"id\": %s0}]".formatted(project);
+        }
+        else if (path.matches("/api/v4/projects/[12]/pipelines/\\d+/jobs")) {
+            body = "[{\"id\": %s0, \"name\": \"test\"}, {\"id\": %s1, \"name\": \"maven\"}]"
+                    .formatted(project, project);
+        }
+        else if (path.matches("/api/v4/projects/\\d+/pipelines/\\d+/jobs")) {
+            body = "[{\"id\": 30, \"name\": \"test\"}]";
+        }
+        else {
+            body = """
+                    {"path_with_namespace": "course/assignment/%s", "web_url": "https://gitlab/%s",
+                     "default_branch": "main"}
+                    """.formatted(project, project);
+        }
+
+        GitLabStubServer.respond(exchange, 200, body);
+    }
+}
@@ -3,6 +3,8 @@ package edu.hm.hafner.grading.gitlab;
 import org.gitlab4j.api.models.Diff;
 import org.junit.jupiter.api.Test;
 
+import edu.hm.hafner.grading.gitlab.PositionResolver.LinePosition;
+
 import java.util.List;
 import java.util.Set;
 
@@ -78,4 +80,56 @@ class DiffParserTest {
                 .containsEntry("FileName1.java", Set.of(2))
                 .containsEntry("FileName2.java", Set.of(1));
     }
+
+    @Test
+    void shouldResolvePositionsOfAddedAndContextLines() {
+        var diff = new Diff();
+        diff.setOldPath("Old.java");
+        diff.setNewPath("New.java");
+        diff.setDiff("""
+                @@ -1,4 +1,4 @@
+                 line1
+                -line2
+                +modifiedLine2
+                +addedLine
+                 line4
+                \\ No newline at end of file
+                @@ -20,2 +21,2 @@
+                 line20
+                -line21
+                """);
+
+        var positions = new DiffParser().getPositions(List.of(diff));
+
+        assertThat(positions.resolve("New.java", 1)).contains(new LinePosition("Old.java", "New.java", 1, 1));
+        assertThat(positions.resolve("New.java", 2)).contains(new LinePosition("Old.java", "New.java", null, 2));
+        assertThat(positions.resolve("New.java", 3)).contains(new LinePosition("Old.java", "New.java", null, 3));
+        assertThat(positions.resolve("New.java", 4)).contains(new LinePosition("Old.java", "New.java", 3, 4));
+        assertThat(positions.resolve("New.java", 5)).isEmpty();
+        assertThat(positions.resolve("New.java", 21)).contains(new LinePosition("Old.java", "New.java", 20, 21));
+        assertThat(positions.resolve("New.java", 22)).isEmpty();
+        assertThat(positions.resolve("Other.java", 1)).isEmpty();
+    }
+
+    @Test
+    void shouldNotResolvePositionsInDeletedFiles() {
+        var deleted = new Diff();
+        deleted.setOldPath("Deleted.java");
+        deleted.setNewPath("Deleted.java");
+        deleted.setDeletedFile(true);
+        deleted.setDiff("""
+                @@ -1,1 +0,0 @@
+                -line1
+                """);
+        var tooLarge = new Diff();
+        tooLarge.setNewPath("Large.java");
+        tooLarge.setDiff("");
+
+        var positions = new DiffParser().getPositions(List.of(deleted, tooLarge));
+
+        assertThat(positions.resolve("Deleted.java", 1)).isEmpty();
+        assertThat(positions.resolve("Large.java", 100)).contains(new LinePosition("Large.java", "Large.java", null, 100));
+        assertThat(PositionResolver.unknown().resolve("Any.java", 5))
+                .contains(new LinePosition(null, "Any.java", null, 5));
+    }
 }
@@ -0,0 +1,132 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.MergeRequest;
+import org.gitlab4j.api.models.MergeRequestVersion;
+import org.gitlab4j.api.models.Note;
+import org.junit.jupiter.api.Test;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class EntityCacheTest {
+    @Test
+    void shouldFetchEntityOnlyOnce() throws GitLabApiException {
+        var cache = new EntityCache();
+        var requests = new AtomicInteger();
+
+        assertThat(cache.get("key", () -> "value" + requests.incrementAndGet())).isEqualTo("value1");
+        assertThat(cache.get("key", () -> "value" + requests.incrementAndGet())).isEqualTo("value1");
+        assertThat(cache.get("other", () -> "value" + requests.incrementAndGet())).isEqualTo("value2");
+
+        assertThat(requests).hasValue(2);
+        assertThat(cache.getHits()).isOne();
+        assertThat(cache.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldCoalesceConcurrentRequests() throws Exception {
+        var cache = new EntityCache();
+        var requests = new AtomicInteger();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var first = executor.submit(() -> cache.get("key", () -> {
+                started.countDown();
+                await(release);
+                return "value" + requests.incrementAndGet();
+            }));
+            started.await();
+
+            List<Future<String>> waiting = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                waiting.add(executor.submit(() -> cache.get("key", () -> "value" + requests.incrementAndGet())));
+            }
+            while (cache.getHits() < 10) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            assertThat(first.get()).isEqualTo("value1");
+            for (Future<String> result : waiting) {
+                assertThat(result.get()).isEqualTo("value1");
+            }
+        }
+        assertThat(requests).hasValue(1);
+    }
+
+    @Test
+    void shouldNotCacheFailures() throws GitLabApiException {
+        var cache = new EntityCache();
+
+        assertThatExceptionOfType(GitLabApiException.class).isThrownBy(() -> cache.get("key", () -> {
+            throw new GitLabApiException("Not found", 404);
+        }));
+        assertThat(cache.get("key", () -> "value")).isEqualTo("value");
+    }
+
+    @Test
+    void shouldCacheReadRequestsOfClient() throws GitLabApiException {
+        var delegate = mock(GitLabClient.class);
+        var versions = List.of(new MergeRequestVersion());
+        when(delegate.getDiffVersions(1, 2)).thenReturn(versions);
+        var log = new FilteredLog("Errors");
+
+        try (var client = new CachingGitLabClient(delegate, log)) {
+            assertThat(client.getDiffVersions(1, 2)).isSameAs(versions);
+            assertThat(client.getDiffVersions(1, 2)).isSameAs(versions);
+            client.createMergeRequestNote(1, 2, "Note");
+            client.createMergeRequestNote(1, 2, "Note");
+
+            assertThat(client.getHits()).isOne();
+        }
+
+        verify(delegate).getDiffVersions(1, 2);
+        verify(delegate, times(2)).createMergeRequestNote(1, 2, "Note");
+        verify(delegate).close();
+        assertThat(log.getInfoMessages()).contains("GitLab entity cache: 1 entities fetched, 1 cache hits");
+    }
+
+    @Test
+    void shouldServePrimedContextAndInvalidateDeletedNotes() throws GitLabApiException {
+        var delegate = mock(GitLabClient.class);
+        var note = new Note();
+        note.setId(5L);
+        var context = new MergeRequestContext(new MergeRequest(), List.of(new MergeRequestVersion()), List.of(note));
+
+        try (var client = new CachingGitLabClient(delegate, new FilteredLog("Errors"))) {
+            client.prime(1, 2, context);
+
+            assertThat(client.getMergeRequest(1, 2)).isSameAs(context.mergeRequest());
+            assertThat(client.getDiffVersions(1, 2)).isSameAs(context.versions());
+
+            client.deleteAutogradingNotes(1, 2);
+            client.getAutogradingNotes(1, 2);
+        }
+
+        verify(delegate, never()).getMergeRequest(1, 2);
+        verify(delegate, never()).getDiffVersions(1, 2);
+        verify(delegate).deleteMergeRequestNote(1, 2, 5);
+        verify(delegate).getAutogradingNotes(1, 2);
+    }
+
+    private void await(final CountDownLatch latch) throws GitLabApiException {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new GitLabApiException(exception);
+        }
+    }
+}
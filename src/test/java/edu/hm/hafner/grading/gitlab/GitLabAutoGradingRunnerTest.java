@@ -0,0 +1,69 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+class GitLabAutoGradingRunnerTest {
+    private static final long JOB_ID = 42;
+
+    @TempDir
+    private Path cache;
+
+    @Test
+    void shouldReuseCachedDeltaReports() throws IOException {
+        try (var server = new GitLabStubServer().withArtifacts(JOB_ID, createArchive())) {
+            var firstLog = new FilteredLog("Errors");
+            var first = createRunner(server, firstLog).fetchDeltaReportsFromPreviousPipeline(firstLog);
+
+            var cached = cache.resolve("1").resolve(String.valueOf(JOB_ID));
+            assertThat(first).contains(cached);
+            assertThat(cached.resolve("target/checkstyle-result.xml")).hasContent("<checkstyle/>");
+            assertThat(firstLog.getInfoMessages()).contains(
+                    ">>> Stored delta reports of job %d in %s".formatted(JOB_ID, cache));
+
+            var secondLog = new FilteredLog("Errors");
+            var second = createRunner(server, secondLog).fetchDeltaReportsFromPreviousPipeline(secondLog);
+
+            assertThat(second).contains(cached);
+            assertThat(secondLog.getInfoMessages()).contains(">>> Using cached delta reports of job " + JOB_ID);
+            assertThat(server.getRequestCounts()).containsEntry("GET artifacts", 1);
+            assertThat(firstLog.getErrorMessages()).isEmpty();
+            assertThat(secondLog.getErrorMessages()).isEmpty();
+        }
+        try (var files = Files.list(cache)) {
+            assertThat(files).map(Path::getFileName).map(Path::toString).containsExactly("1");
+        }
+    }
+
+    private GitLabAutoGradingRunner createRunner(final GitLabStubServer server, final FilteredLog log) {
+        var environment = Map.of(
+                RunConfiguration.SERVER_URL, server.getUrl(),
+                RunConfiguration.TOKEN, "token",
+                RunConfiguration.PROJECT_ID, String.valueOf(GitLabStubServer.PROJECT_ID),
+                RunConfiguration.DEFAULT_BRANCH, "main",
+                RunConfiguration.DELTA_CACHE, cache.toString());
+        return new GitLabAutoGradingRunner(new RunConfiguration(environment::get, log));
+    }
+
+    private byte[] createArchive() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("target/checkstyle-result.xml"));
+            zip.write("<checkstyle/>".getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,120 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import edu.hm.hafner.grading.CommentBuilder.CommentType;
+import edu.hm.hafner.util.FilteredLog;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class GitLabCommitCommentBuilderTest {
+    private static final String URL = "https://gitlab.lrz.de/dev/java2-assignment1";
+    private static final String SHA = "58c1e8a980dc0beb7d92d2266eb3e58852720a76";
+    private static final String FILE = "src/main/java/File.java";
+    private static final String OTHER_FILE = "src/main/java/Other.java";
+
+    @Test
+    void shouldCreateOneCommentPerAnnotation() throws GitLabApiException {
+        var client = mock(GitLabClient.class);
+        var builder = createBuilder(client, "false");
+
+        createAnnotations(builder);
+
+        verify(client, times(3)).createCommitComment(eq(1L), eq(SHA), anyString(), anyString(), anyInt());
+    }
+
+    @Test
+    void shouldAggregateAnnotationsPerFile() throws GitLabApiException {
+        var client = mock(GitLabClient.class);
+        var builder = createBuilder(client, "true");
+
+        createAnnotations(builder);
+        verifyNoInteractions(client);
+
+        builder.publishPendingComments();
+
+        var digest = ArgumentCaptor.forClass(String.class);
+        verify(client).createCommitComment(eq(1L), eq(SHA), digest.capture(), eq(FILE), eq(5));
+        verify(client).createCommitComment(eq(1L), eq(SHA), anyString(), eq(OTHER_FILE), eq(1));
+        verifyNoMoreInteractions(client);
+
+        assertThat(digest.getValue()).startsWith(GitLabAutoGradingRunner.AUTOGRADING_MARKER)
+                .contains("#### :clipboard: &nbsp; 2 findings in [File.java](" + URL + "/blob/" + SHA + "/" + FILE + ")",
+                        "| :footprints: | [L5](" + URL + "/blob/" + SHA + "/" + FILE + "#L5) | Not covered: Line 5 |",
+                        "| :warning: | [L10-L12](" + URL + "/blob/" + SHA + "/" + FILE
+                                + "#L10-L12) | CheckStyle: Use \\| instead of & |");
+        assertThat(digest.getValue().indexOf("[L5]")).isLessThan(digest.getValue().indexOf("[L10-L12]"));
+    }
+
+    @Test
+    void shouldDeferDigestsIfTimeBudgetIsExhausted() {
+        var client = mock(GitLabClient.class);
+        var time = new AtomicLong();
+        var deadline = new PublishingDeadline(Duration.ofSeconds(10), time::get);
+        var builder = createBuilder(client, "true", deadline);
+
+        createAnnotations(builder);
+        time.set(Duration.ofSeconds(9).toNanos());
+        builder.publishPendingComments();
+
+        verifyNoInteractions(client);
+        assertThat(deadline.getDeferred()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldLimitSizeOfDigest() {
+        var annotations = List.of(
+                createAnnotation(1), createAnnotation(2), createAnnotation(3), createAnnotation(4));
+
+        var complete = GitLabCommitCommentBuilder.createDigest(FILE, annotations, 100_000, this::getEnv);
+        assertThat(complete).contains("Message 4").doesNotContain("more findings");
+
+        var limited = GitLabCommitCommentBuilder.createDigest(FILE, annotations, complete.length() - 10,
+                this::getEnv);
+        assertThat(limited).contains("Message 1", "Message 2", "Message 3", "_... and 1 more finding_")
+                .doesNotContain("Message 4");
+        assertThat(limited.length()).isLessThanOrEqualTo(complete.length() - 10);
+    }
+
+    private Annotation createAnnotation(final int line) {
+        return new Annotation(CommentType.WARNING, FILE, line, line, "Message " + line, "Title",
+                0, 0, "", "");
+    }
+
+    private void createAnnotations(final GitLabCommitCommentBuilder builder) {
+        builder.createComment(CommentType.WARNING, FILE, 10, 12, "Use | instead of &", "CheckStyle",
+                0, 0, "", "Details");
+        builder.createComment(CommentType.NO_COVERAGE, FILE, 5, 5, "Line 5", "Not covered",
+                0, 0, "", "");
+        builder.createComment(CommentType.WARNING, OTHER_FILE, 0, 0, "File level", "PMD",
+                0, 0, "", "");
+    }
+
+    private GitLabCommitCommentBuilder createBuilder(final GitLabClient client, final String aggregate) {
+        return createBuilder(client, aggregate, PublishingDeadline.unlimited());
+    }
+
+    private GitLabCommitCommentBuilder createBuilder(final GitLabClient client, final String aggregate,
+            final PublishingDeadline deadline) {
+        var log = new FilteredLog("GitLab");
+        var configuration = new RunConfiguration(Map.of(
+                "CI_PROJECT_DIR", "/work",
+                "CI_PROJECT_URL", URL,
+                "CI_COMMIT_SHA", SHA,
+                "AGGREGATE_COMMIT_COMMENTS", aggregate)::get, log);
+        return new GitLabCommitCommentBuilder(client, Map.of(), 1L, SHA, configuration,
+                IncrementalReview.all(), deadline, log);
+    }
+
+    private String getEnv(final String name) {
+        return "CI_PROJECT_URL".equals(name) ? URL : SHA;
+    }
+}
@@ -1,16 +1,18 @@
 package edu.hm.hafner.grading.gitlab;
 
-import org.gitlab4j.api.CommitsApi;
-import org.gitlab4j.api.DiscussionsApi;
 import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Diff;
 import org.gitlab4j.api.models.MergeRequest;
 import org.gitlab4j.api.models.MergeRequestVersion;
+import org.gitlab4j.api.models.Position;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
 import edu.hm.hafner.util.FilteredLog;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static edu.hm.hafner.grading.gitlab.GitLabDiffCommentBuilder.*;
 import static org.assertj.core.api.Assertions.*;
@@ -66,6 +68,15 @@ class GitLabDiffCommentBuilderTest {
                         URL + "/blob/" + SHA + "/" + FILE + "#L10");
     }
 
+    @Test
+    void shouldDistinguishLineCommentsFromSummaryNotes() {
+        assertThat(isLineComment(createMarkdownMessage(CommentType.WARNING, FILE, 10, 20, 5, 8,
+                "Title", "Message", "Details", this::getEnv))).isTrue();
+        assertThat(isLineComment(GitLabAutoGradingRunner.AUTOGRADING_MARKER
+                + "\n\n# :mortar_board: &nbsp; Autograding score - 80 of 100")).isFalse();
+        assertThat(isLineComment("#### :warning: &nbsp; User note")).isFalse();
+    }
+
     private String getEnv(final String environment) {
         if (PROJECT_URL.equals(environment)) {
             return URL;
@@ -76,19 +87,22 @@ class GitLabDiffCommentBuilderTest {
         throw new IllegalArgumentException("Unknown environment: " + environment);
     }
 
+    private RunConfiguration createConfiguration() {
+        return new RunConfiguration(Map.of("CI_PROJECT_DIR", "/work")::get, new FilteredLog("GitLab"));
+    }
+
     @Test
     void shouldCreateComment() throws GitLabApiException {
-        var discussions = mock(DiscussionsApi.class);
-        var commits = mock(CommitsApi.class);
-        var builder = new GitLabDiffCommentBuilder(commits, Map.of(), discussions, mock(MergeRequest.class),
-                mock(MergeRequestVersion.class), "/work", new FilteredLog("GitLab"));
+        var client = mock(GitLabClient.class);
+        var builder = new GitLabDiffCommentBuilder(client, Map.of(), mock(MergeRequest.class),
+                mock(MergeRequestVersion.class), PositionResolver.unknown(), createConfiguration(),
+                IncrementalReview.all(), PublishingDeadline.unlimited(), new FilteredLog("GitLab"));
 
         builder.createComment(CommentType.WARNING, FILE_NAME, 10, 100,
                 "Message", "Title", 1, 10, "Details", "Details-Markdown");
 
         var details = ArgumentCaptor.forClass(String.class);
-        verify(discussions).createMergeRequestDiscussion(anyLong(), anyLong(), details.capture(), isNull(), isNull(),
-                any());
+        verify(client).createMergeRequestDiscussion(anyLong(), anyLong(), details.capture(), any());
 
         assertThat(details.getValue()).contains(
                 "#### :warning: &nbsp; Title",
@@ -99,22 +113,94 @@ class GitLabDiffCommentBuilderTest {
 
     @Test
     void shouldCreateAnnotation() throws GitLabApiException {
-        var discussions = mock(DiscussionsApi.class);
-        var commits = mock(CommitsApi.class);
-        var gitlab = new GitLabDiffCommentBuilder(commits, Map.of(), discussions, mock(MergeRequest.class), mock(
-                        MergeRequestVersion.class), "/work", new FilteredLog("GitLab"));
+        var client = mock(GitLabClient.class);
+        var gitlab = new GitLabDiffCommentBuilder(client, Map.of(), mock(MergeRequest.class), mock(
+                        MergeRequestVersion.class), PositionResolver.unknown(), createConfiguration(),
+                IncrementalReview.all(), PublishingDeadline.unlimited(), new FilteredLog("GitLab"));
 
         gitlab.createComment(CommentType.WARNING, "src/main/java/File.java",
                 10, 100, "Message", "CheckStyle: HiddenField", 1, 10,
                 "", "<p>Since Checkstyle 3.0</p><p>");
 
         var details = ArgumentCaptor.forClass(String.class);
-        verify(discussions).createMergeRequestDiscussion(anyLong(), anyLong(), details.capture(), isNull(), isNull(),
-                any());
+        verify(client).createMergeRequestDiscussion(anyLong(), anyLong(), details.capture(), any());
 
         assertThat(details.getValue()).contains(
                 "#### :warning: &nbsp; CheckStyle: HiddenField",
                         "[File.java(L10-L100:C1-C10)](/blob//src/main/java/File.java#L10-L100): Message",
                         "<p>Since Checkstyle 3.0</p><p>");
     }
+
+    @Test
+    void shouldUseResolvedPositionOfContextLine() throws GitLabApiException {
+        var client = mock(GitLabClient.class);
+        var builder = createBuilder(client);
+
+        builder.createComment(CommentType.WARNING, "New.java", 2, 3,
+                "Message", "Title", 0, 0, "", "");
+
+        var position = ArgumentCaptor.forClass(Position.class);
+        verify(client).createMergeRequestDiscussion(anyLong(), anyLong(), anyString(), position.capture());
+        verifyNoMoreInteractions(client);
+        assertThat(position.getValue().getOldPath()).isEqualTo("Old.java");
+        assertThat(position.getValue().getNewPath()).isEqualTo("New.java");
+        assertThat(position.getValue().getOldLine()).isEqualTo(2);
+        assertThat(position.getValue().getNewLine()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldCommentOnCommitIfPositionCannotBeResolved() throws GitLabApiException {
+        var client = mock(GitLabClient.class);
+        var builder = createBuilder(client);
+
+        builder.createComment(CommentType.NO_COVERAGE, "New.java", 20, 20,
+                "Message", "Title", 0, 0, "", "");
+
+        verify(client).createCommitComment(anyLong(), eq("start"), anyString(), eq("New.java"), eq(20));
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    void shouldCommentOnlyLinesChangedSincePreviousRun() throws GitLabApiException {
+        var client = mock(GitLabClient.class);
+        var builder = createBuilder(client, IncrementalReview.of(Map.of("New.java", Set.of(3))));
+
+        builder.createComment(CommentType.WARNING, "New.java", 3, 3, "Changed", "Title", 0, 0, "", "");
+        builder.createComment(CommentType.WARNING, "New.java", 20, 20, "Unchanged", "Title", 0, 0, "", "");
+        builder.createComment(CommentType.WARNING, "Old.java", 1, 1, "Other file", "Title", 0, 0, "", "");
+
+        var details = ArgumentCaptor.forClass(String.class);
+        verify(client).createMergeRequestDiscussion(eq(1L), eq(2L), details.capture(), any());
+        verifyNoMoreInteractions(client);
+        assertThat(details.getValue()).contains("Changed");
+    }
+
+    private GitLabDiffCommentBuilder createBuilder(final GitLabClient client) {
+        return createBuilder(client, IncrementalReview.all());
+    }
+
+    private GitLabDiffCommentBuilder createBuilder(final GitLabClient client, final IncrementalReview review) {
+        var diff = new Diff();
+        diff.setOldPath("Old.java");
+        diff.setNewPath("New.java");
+        diff.setRenamedFile(true);
+        diff.setDiff("""
+                @@ -1,3 +1,4 @@
+                 line1
+                 line2
+                +line3
+                 line4
+                """);
+        var version = new MergeRequestVersion();
+        version.setBaseCommitSha("base");
+        version.setHeadCommitSha("head");
+        version.setStartCommitSha("start");
+        var mergeRequest = new MergeRequest();
+        mergeRequest.setProjectId(1L);
+        mergeRequest.setIid(2L);
+        var changed = Map.of("New.java", Set.of(3, 20));
+        return new GitLabDiffCommentBuilder(client, changed, mergeRequest, version,
+                new DiffParser().getPositions(List.of(diff)), createConfiguration(), review,
+                PublishingDeadline.unlimited(), new FilteredLog("GitLab"));
+    }
 }
@@ -0,0 +1,71 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+
+class GitLabGraphQlReaderTest {
+    private final AtomicReference<String> request = new AtomicReference<>();
+    private final AtomicReference<String> authorization = new AtomicReference<>();
+
+    @Test
+    void shouldSendQueryWithVariables() throws IOException, GitLabApiException {
+        try (var server = startServer("""
+                {"data": {"group": {"name": "assignment1"}}}
+                """)) {
+            var reader = createReader(server);
+
+            var data = reader.query("query($group: ID!) { group(fullPath: $group) { name } }",
+                    reader.createVariables().put("group", "courses/assignment1"));
+
+            assertThat(data.path("group").path("name").asText()).isEqualTo("assignment1");
+            assertThat(request.get())
+                    .contains("\"query\":\"query($group: ID!) { group(fullPath: $group) { name } }\"")
+                    .contains("\"variables\":{\"group\":\"courses/assignment1\"}");
+            assertThat(authorization.get()).isEqualTo("Bearer token");
+            assertThat(reader.getRequests()).isOne();
+        }
+    }
+
+    @Test
+    void shouldReportErrors() throws IOException {
+        try (var server = startServer("""
+                {"errors": [{"message": "Field 'unknown' doesn't exist on type 'Group'"}]}
+                """)) {
+            var reader = createReader(server);
+
+            assertThatExceptionOfType(GitLabApiException.class)
+                    .isThrownBy(() -> reader.query("{ group { unknown } }", reader.createVariables()))
+                    .withMessageContaining("Field 'unknown' doesn't exist on type 'Group'");
+        }
+    }
+
+    @Test
+    void shouldExtractNumericIds() {
+        assertThat(GitLabGraphQlReader.toId("gid://gitlab/Note/42")).isEqualTo(42);
+        assertThat(GitLabGraphQlReader.toId("gid://gitlab/Project/")).isZero();
+        assertThat(GitLabGraphQlReader.toId("")).isZero();
+    }
+
+    private GitLabGraphQlReader createReader(final GitLabStubServer server) {
+        return new GitLabGraphQlReader(server.getUrl() + "/", "token");
+    }
+
+    private GitLabStubServer startServer(final String response) throws IOException {
+        return new GitLabStubServer().withHandler("/api/graphql", exchange -> respond(exchange, response));
+    }
+
+    private void respond(final HttpExchange exchange, final String response) throws IOException {
+        request.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        authorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+
+        GitLabStubServer.respond(exchange, 200, response);
+    }
+}
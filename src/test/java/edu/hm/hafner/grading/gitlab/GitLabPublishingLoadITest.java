@@ -0,0 +1,143 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApi;
+import org.gitlab4j.api.GitLabApiException;
+import org.junit.jupiter.api.Test;
+
+import edu.hm.hafner.grading.CommentBuilder.CommentType;
+import edu.hm.hafner.util.FilteredLog;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Load scenario for the publishing path of the action: deletes thousands of old notes and publishes thousands of
+ * annotations against an in-process {@link GitLabStubServer}. The scenario reports latency percentiles and request
+ * counts on the console. The size of the scenario and the behavior of the stub can be configured with the system
+ * properties {@code load.annotations}, {@code load.notes}, {@code load.latency} (in milliseconds),
+ * {@code load.errorRate}, and {@code load.rateLimit}.
+ *
+ * @author Ullrich Hafner
+ */
+class GitLabPublishingLoadITest {
+    private static final int ANNOTATIONS = Integer.getInteger("load.annotations", 2000);
+    private static final int OLD_NOTES = Integer.getInteger("load.notes", 1000);
+    private static final long LATENCY = Long.getLong("load.latency", 0);
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("load.errorRate", "0.05"));
+    private static final int RATE_LIMIT = Integer.getInteger("load.rateLimit", Integer.MAX_VALUE);
+
+    private static final int FILES = 100;
+    private static final String WORKING_DIRECTORY = "/work";
+
+    @Test
+    void shouldDeleteOldNotesAndPublishAnnotations() throws IOException, GitLabApiException {
+        try (var server = new GitLabStubServer()
+                .withLatency(Duration.ofMillis(LATENCY))
+                .withErrorRate(ERROR_RATE)
+                .withRateLimit(RATE_LIMIT)
+                .withNotes(OLD_NOTES)
+                .withDiscussionNotes(OLD_NOTES);
+                var client = new GitLabApiClient(new GitLabApi(server.getUrl(), "token"), new FilteredLog("Client"))) {
+            var log = new FilteredLog("Load test");
+
+            var cleanupStart = System.nanoTime();
+            client.deleteAutogradingNotes(GitLabStubServer.PROJECT_ID, GitLabStubServer.MERGE_REQUEST_IID);
+            var cleanupDuration = System.nanoTime() - cleanupStart;
+
+            var mergeRequest = client.getMergeRequest(GitLabStubServer.PROJECT_ID, GitLabStubServer.MERGE_REQUEST_IID);
+            var version = client.getDiffVersions(GitLabStubServer.PROJECT_ID, GitLabStubServer.MERGE_REQUEST_IID)
+                    .getFirst();
+            var builder = new GitLabDiffCommentBuilder(client, createModifiedLines(), mergeRequest, version,
+                    PositionResolver.unknown(),
+                    new RunConfiguration(Map.of("CI_PROJECT_DIR", WORKING_DIRECTORY)::get, log),
+                    IncrementalReview.all(), PublishingDeadline.unlimited(), log);
+
+            var latencies = new ArrayList<Long>(ANNOTATIONS);
+            var published = 0;
+            var publishStart = System.nanoTime();
+            for (int i = 0; i < ANNOTATIONS; i++) {
+                var start = System.nanoTime();
+                if (builder.createComment(CommentType.WARNING, getFileName(i), getLine(i), getLine(i),
+                        "Message " + i, "CheckStyle: Rule" + i % 10, 1, 10, "", "Details " + i)) {
+                    published++;
+                }
+                latencies.add(System.nanoTime() - start);
+            }
+            var publishDuration = System.nanoTime() - publishStart;
+
+            report(server, latencies, cleanupDuration, publishDuration, published);
+
+            assertThat(server.getNotes().values())
+                    .filteredOn(body -> body.startsWith("User note")).hasSize(OLD_NOTES / 2);
+            assertThat(server.getNotes().size() - OLD_NOTES / 2)
+                    .as("Only notes with a failed delete request remain")
+                    .isLessThanOrEqualTo(server.getInjectedErrors());
+            assertThat(server.getRequestCounts()).containsEntry("POST discussions", ANNOTATIONS);
+            assertThat(published)
+                    .as("An annotation is lost only if the discussion and the commit fallback both fail")
+                    .isGreaterThanOrEqualTo(ANNOTATIONS - server.getInjectedErrors() - server.getRejectedByRateLimit());
+        }
+    }
+
+    private Map<String, Set<Integer>> createModifiedLines() {
+        var modified = new HashMap<String, Set<Integer>>();
+        for (int file = 0; file < FILES; file += 2) {
+            modified.put(getFileName(file), IntStream.rangeClosed(1, 50).boxed().collect(Collectors.toSet()));
+        }
+        return modified;
+    }
+
+    private String getFileName(final int index) {
+        return "src/main/java/edu/hm/hafner/File%d.java".formatted(index % FILES);
+    }
+
+    private int getLine(final int index) {
+        return 1 + index % 100;
+    }
+
+    @SuppressWarnings({"PMD.SystemPrintln", "SystemOut"})
+    private void report(final GitLabStubServer server, final List<Long> latencies,
+            final long cleanupDuration, final long publishDuration, final int published) {
+        System.out.println("----------------------------------------------------");
+        System.out.printf(Locale.ENGLISH, "Publishing load scenario: %d annotations, %d old notes, %d old discussions%n",
+                ANNOTATIONS, OLD_NOTES, OLD_NOTES);
+        System.out.printf(Locale.ENGLISH, "Stub: latency %d ms, error rate %.2f, rate limit %s%n",
+                LATENCY, ERROR_RATE, RATE_LIMIT == Integer.MAX_VALUE ? "none" : RATE_LIMIT + "/s");
+        System.out.printf(Locale.ENGLISH, "Cleanup: %d ms%n", TimeUnit.NANOSECONDS.toMillis(cleanupDuration));
+        System.out.printf(Locale.ENGLISH, "Publishing: %d ms, %d of %d annotations published (%.1f/s)%n",
+                TimeUnit.NANOSECONDS.toMillis(publishDuration), published, ANNOTATIONS,
+                ANNOTATIONS * 1e9 / Math.max(1, publishDuration));
+        System.out.println("Annotation latency: " + formatPercentiles(latencies));
+        System.out.printf(Locale.ENGLISH, "Requests: %d total, %d injected errors, %d rate limited%n",
+                server.getTotalRequests(), server.getInjectedErrors(), server.getRejectedByRateLimit());
+        var durations = server.getDurations();
+        server.getRequestCounts().forEach((endpoint, count) -> System.out.printf(Locale.ENGLISH,
+                "  %-25s %6d  %s%n", endpoint, count, formatPercentiles(durations.getOrDefault(endpoint, List.of()))));
+        System.out.println("----------------------------------------------------");
+    }
+
+    private String formatPercentiles(final List<Long> values) {
+        var sorted = values.stream().sorted().toList();
+        return "p50=%.2f ms, p90=%.2f ms, p99=%.2f ms, max=%.2f ms".formatted(
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), percentile(sorted, 1));
+    }
+
+    private double percentile(final List<Long> sorted, final double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        var index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.clamp(index, 0, sorted.size() - 1)) / 1e6;
+    }
+}
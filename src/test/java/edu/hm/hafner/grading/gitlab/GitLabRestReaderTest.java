@@ -0,0 +1,83 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+class GitLabRestReaderTest {
+    private static final String ETAG = "W/\"1234\"";
+
+    @TempDir
+    private Path directory;
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void shouldRevalidateCachedResponses() throws IOException, GitLabApiException {
+        try (var server = startServer()) {
+            var url = server.getUrl();
+            var cache = new HttpResponseCache(directory, 1_000_000);
+
+            var first = new GitLabRestReader(url, "token", cache);
+            assertThat(first.getAll("/projects").stream().map(JsonNode::asInt)).containsExactly(1, 2, 3);
+            assertThat(first.getDownloaded()).isEqualTo(2);
+            assertThat(first.getNotModified()).isZero();
+
+            var second = new GitLabRestReader(url, "token", cache);
+            assertThat(second.getAll("/projects").stream().map(JsonNode::asInt)).containsExactly(1, 2, 3);
+            assertThat(second.getDownloaded()).isZero();
+            assertThat(second.getNotModified()).isEqualTo(2);
+
+            assertThat(requests).containsExactly(
+                    "/api/v4/projects?per_page=100&page=1 -",
+                    "/api/v4/projects?per_page=100&page=2 -",
+                    "/api/v4/projects?per_page=100&page=1 " + ETAG,
+                    "/api/v4/projects?per_page=100&page=2 " + ETAG);
+        }
+    }
+
+    @Test
+    void shouldReportErrors() throws IOException {
+        try (var server = startServer()) {
+            var reader = new GitLabRestReader(server.getUrl(), "token", null);
+
+            assertThatExceptionOfType(GitLabApiException.class)
+                    .isThrownBy(() -> reader.getOne("/unknown"))
+                    .satisfies(exception -> assertThat(exception.getHttpStatus()).isEqualTo(404));
+        }
+    }
+
+    private GitLabStubServer startServer() throws IOException {
+        return new GitLabStubServer().withHandler("/api/v4/projects", this::handle);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        var validator = exchange.getRequestHeaders().getFirst("If-None-Match");
+        requests.add(exchange.getRequestURI() + " " + (validator == null ? "-" : validator));
+
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        if (ETAG.equals(validator)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        if (exchange.getRequestURI().getQuery().endsWith("page=1")) {
+            exchange.getResponseHeaders().add("X-Next-Page", "2");
+            GitLabStubServer.respond(exchange, 200, "[1, 2]");
+        }
+        else {
+            GitLabStubServer.respond(exchange, 200, "[3]");
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-process stub of the GitLab REST endpoints that are used by the autograding action. The stub keeps merge request
+ * notes, discussions, and commit comments in memory and lists the notes like GitLab with the newest note first. It can
+ * simulate a slow or unreliable GitLab instance by using a
+ * configurable latency, error rate, and rate limit. Tests of other endpoints (e.g., the GraphQL API or the group
+ * listings of the crawler) can serve them with custom handlers.
+ *
+ * @author Ullrich Hafner
+ */
+@SuppressWarnings({"PMD.GodClass", "PMD.TooManyMethods"})
+class GitLabStubServer implements AutoCloseable {
+    static final long PROJECT_ID = 1;
+    static final long MERGE_REQUEST_IID = 1;
+    static final String HEAD_SHA = "58c1e8a980dc0beb7d92d2266eb3e58852720a76";
+    static final String BASE_SHA = "13f5ce2bd2e8ab1e3b8c9e4a3b0c1d2e3f405162";
+    static final String START_SHA = "9a8b7c6d5e4f30211a2b3c4d5e6f708192a3b4c5";
+    static final long PIPELINE_ID = 1;
+
+    private static final String API = "/api/v4";
+    private static final String MERGE_REQUEST = API + "/projects/(\\d+)/merge_requests/(\\d+)";
+    private static final Pattern PROJECT = Pattern.compile(API + "/projects/(\\d+)");
+    private static final Pattern MERGE_REQUEST_DETAILS = Pattern.compile(MERGE_REQUEST);
+    private static final Pattern NOTES = Pattern.compile(MERGE_REQUEST + "/notes");
+    private static final Pattern NOTE = Pattern.compile(MERGE_REQUEST + "/notes/(\\d+)");
+    private static final Pattern DISCUSSIONS = Pattern.compile(MERGE_REQUEST + "/discussions");
+    private static final Pattern VERSIONS = Pattern.compile(MERGE_REQUEST + "/versions");
+    private static final Pattern DIFFS = Pattern.compile(MERGE_REQUEST + "/diffs");
+    private static final Pattern COMMIT_COMMENTS = Pattern.compile(
+            API + "/projects/(\\d+)/repository/commits/(\\w+)/comments");
+    private static final Pattern PIPELINES = Pattern.compile(API + "/projects/(\\d+)/pipelines");
+    private static final Pattern JOBS = Pattern.compile(API + "/projects/(\\d+)/pipelines/(\\d+)/jobs");
+    private static final Pattern ARTIFACTS = Pattern.compile(API + "/projects/(\\d+)/jobs/(\\d+)/artifacts");
+
+    private static final int DEFAULT_PER_PAGE = 96;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final ConcurrentSkipListMap<Long, String> notes = new ConcurrentSkipListMap<>();
+    private final Map<Long, String> discussionNotes = new ConcurrentSkipListMap<>();
+    private final List<String> commitComments = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Long, byte[]> artifacts = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final Map<String, List<Long>> durations = new ConcurrentHashMap<>();
+    private final AtomicInteger injectedErrors = new AtomicInteger();
+    private final AtomicInteger rejectedByRateLimit = new AtomicInteger();
+
+    private Duration latency = Duration.ZERO;
+    private double errorRate;
+    private int requestsPerSecond = Integer.MAX_VALUE;
+    private final AtomicLong currentWindow = new AtomicLong();
+    private final AtomicInteger requestsInWindow = new AtomicInteger();
+
+    /**
+     * Creates a new stub server on a random free port of the loopback interface.
+     *
+     * @throws IOException
+     *         if the server cannot be started
+     */
+    GitLabStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext(API, this::handle);
+        server.start();
+    }
+
+    /**
+     * Delays every response by the specified latency.
+     *
+     * @param delay
+     *         the latency of each request
+     *
+     * @return this
+     */
+    GitLabStubServer withLatency(final Duration delay) {
+        this.latency = delay;
+        return this;
+    }
+
+    /**
+     * Lets the specified fraction of all write requests (POST, PUT, DELETE) fail with an internal server error.
+     *
+     * @param rate
+     *         the error rate in the interval [0, 1]
+     *
+     * @return this
+     */
+    GitLabStubServer withErrorRate(final double rate) {
+        this.errorRate = rate;
+        return this;
+    }
+
+    /**
+     * Rejects all requests that exceed the given number of requests per second with status 429.
+     *
+     * @param limit
+     *         the maximum number of requests per second
+     *
+     * @return this
+     */
+    GitLabStubServer withRateLimit(final int limit) {
+        this.requestsPerSecond = limit;
+        return this;
+    }
+
+    /**
+     * Adds the specified number of merge request summary notes. Every second note is created with the autograding
+     * marker, all other notes are regular user notes.
+     *
+     * @param count
+     *         the number of notes to create
+     *
+     * @return this
+     */
+    GitLabStubServer withNotes(final int count) {
+        for (int i = 0; i < count; i++) {
+            notes.put(nextId.getAndIncrement(), createBody(i));
+        }
+        return this;
+    }
+
+    /**
+     * Adds a merge request note with the specified body.
+     *
+     * @param body
+     *         the body of the note
+     *
+     * @return this
+     */
+    GitLabStubServer withNote(final String body) {
+        notes.put(nextId.getAndIncrement(), body);
+        return this;
+    }
+
+    /**
+     * Adds the specified number of merge request discussion notes. Every second note is created with the autograding
+     * marker, all other notes are regular user notes.
+     *
+     * @param count
+     *         the number of discussion notes to create
+     *
+     * @return this
+     */
+    GitLabStubServer withDiscussionNotes(final int count) {
+        for (int i = 0; i < count; i++) {
+            discussionNotes.put(nextId.getAndIncrement(), createBody(i));
+        }
+        return this;
+    }
+
+    /**
+     * Adds a successful pipeline with a {@code maven} job that provides the specified artifacts archive.
+     *
+     * @param jobId
+     *         the ID of the job
+     * @param archive
+     *         the content of the artifacts archive
+     *
+     * @return this
+     */
+    GitLabStubServer withArtifacts(final long jobId, final byte[] archive) {
+        artifacts.put(jobId, archive.clone());
+        return this;
+    }
+
+    /**
+     * Serves all requests below the specified path with a custom handler instead of the stubbed endpoints. The
+     * handler can send its response with {@link #respond(HttpExchange, int, String)}.
+     *
+     * @param path
+     *         the path of the requests, e.g., {@code /api/graphql}
+     * @param handler
+     *         the handler of the requests
+     *
+     * @return this
+     */
+    GitLabStubServer withHandler(final String path, final HttpHandler handler) {
+        server.createContext(path, handler);
+        return this;
+    }
+
+    /**
+     * Sends a response with the specified status and body and closes the exchange.
+     *
+     * @param exchange
+     *         the exchange to respond to
+     * @param status
+     *         the HTTP status
+     * @param body
+     *         the body of the response
+     *
+     * @throws IOException
+     *         if the response cannot be sent
+     */
+    static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (var output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private String createBody(final int index) {
+        return index % 2 == 0 ? GitLabAutoGradingRunner.AUTOGRADING_MARKER + "\n\nOld note " + index
+                : "User note " + index;
+    }
+
+    String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    Map<Long, String> getNotes() {
+        return Map.copyOf(notes);
+    }
+
+    Map<Long, String> getDiscussionNotes() {
+        return Map.copyOf(discussionNotes);
+    }
+
+    List<String> getCommitComments() {
+        synchronized (commitComments) {
+            return List.copyOf(commitComments);
+        }
+    }
+
+    /**
+     * Returns the number of received requests for each endpoint, e.g., {@code POST discussions}.
+     *
+     * @return the number of requests by endpoint
+     */
+    Map<String, Integer> getRequestCounts() {
+        return requestCounts.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get(), (a, b) -> a, TreeMap::new));
+    }
+
+    int getTotalRequests() {
+        return requestCounts.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    /**
+     * Returns the server side processing durations (in nanoseconds) for each endpoint, e.g., {@code POST discussions}.
+     *
+     * @return the durations by endpoint
+     */
+    Map<String, List<Long>> getDurations() {
+        return durations.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> copy(e.getValue()), (a, b) -> a, TreeMap::new));
+    }
+
+    private List<Long> copy(final List<Long> values) {
+        synchronized (values) {
+            return List.copyOf(values);
+        }
+    }
+
+    int getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    int getRejectedByRateLimit() {
+        return rejectedByRateLimit.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        var start = System.nanoTime();
+        var path = exchange.getRequestURI().getPath();
+        var method = exchange.getRequestMethod();
+        var endpoint = method + " " + getEndpointName(path);
+        requestCounts.computeIfAbsent(endpoint, _ -> new AtomicInteger()).incrementAndGet();
+        try (exchange) {
+            delay();
+            if (isRateLimitExceeded()) {
+                rejectedByRateLimit.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                send(exchange, TOO_MANY_REQUESTS, "{\"message\":\"429 Too Many Requests\"}");
+            }
+            else if (!"GET".equals(method) && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrors.incrementAndGet();
+                send(exchange, 500, "{\"message\":\"500 Internal Server Error\"}");
+            }
+            else {
+                route(exchange, method, path);
+            }
+        }
+        finally {
+            var values = durations.computeIfAbsent(endpoint, _ -> Collections.synchronizedList(new ArrayList<>()));
+            values.add(System.nanoTime() - start);
+        }
+    }
+
+    private String getEndpointName(final String path) {
+        var segments = StringUtils.removeStart(path, API + "/").split("/", 0);
+        for (int i = segments.length - 1; i >= 0; i--) {
+            if (!StringUtils.isNumeric(segments[i])) {
+                return segments[i];
+            }
+        }
+        return path;
+    }
+
+    private void delay() {
+        if (!latency.isZero()) {
+            try {
+                Thread.sleep(latency);
+            }
+            catch (InterruptedException _) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean isRateLimitExceeded() {
+        if (requestsPerSecond == Integer.MAX_VALUE) {
+            return false;
+        }
+        var window = System.currentTimeMillis() / 1000;
+        if (currentWindow.getAndSet(window) != window) {
+            requestsInWindow.set(0);
+        }
+        return requestsInWindow.incrementAndGet() > requestsPerSecond;
+    }
+
+    @SuppressWarnings({"PMD.CognitiveComplexity", "PMD.CyclomaticComplexity", "PMD.NPathComplexity"})
+    private void route(final HttpExchange exchange, final String method, final String path) throws IOException {
+        var note = NOTE.matcher(path);
+        var artifact = ARTIFACTS.matcher(path);
+        if (note.matches() && "DELETE".equals(method)) {
+            var id = Long.parseLong(note.group(3));
+            if (notes.remove(id) != null || discussionNotes.remove(id) != null) {
+                send(exchange, 204, StringUtils.EMPTY);
+            }
+            else {
+                send(exchange, 404, "{\"message\":\"404 Not found\"}");
+            }
+        }
+        else if (note.matches() && "PUT".equals(method)) {
+            var id = Long.parseLong(note.group(3));
+            var body = readForm(exchange).getOrDefault("body", StringUtils.EMPTY);
+            if (notes.replace(id, body) != null) {
+                send(exchange, 200, toNote(id, body));
+            }
+            else {
+                send(exchange, 404, "{\"message\":\"404 Not found\"}");
+            }
+        }
+        else if (NOTES.matcher(path).matches()) {
+            if ("POST".equals(method)) {
+                var body = readForm(exchange).getOrDefault("body", StringUtils.EMPTY);
+                var id = nextId.getAndIncrement();
+                notes.put(id, body);
+                send(exchange, 201, toNote(id, body));
+            }
+            else {
+                var ascending = "asc".equals(parseParameters(exchange.getRequestURI().getRawQuery()).get("sort"));
+                var sorted = ascending ? notes : notes.descendingMap();
+                sendPage(exchange, sorted.entrySet().stream().map(e -> toNote(e.getKey(), e.getValue())).toList());
+            }
+        }
+        else if (DISCUSSIONS.matcher(path).matches()) {
+            if ("POST".equals(method)) {
+                var body = readForm(exchange).getOrDefault("body", StringUtils.EMPTY);
+                var id = nextId.getAndIncrement();
+                discussionNotes.put(id, body);
+                send(exchange, 201, toDiscussion(id, body));
+            }
+            else {
+                sendPage(exchange, discussionNotes.entrySet().stream()
+                        .map(e -> toDiscussion(e.getKey(), e.getValue())).toList());
+            }
+        }
+        else if (VERSIONS.matcher(path).matches()) {
+            send(exchange, 200, """
+                    [{"id":1,"head_commit_sha":"%s","base_commit_sha":"%s","start_commit_sha":"%s",\
+                    "merge_request_id":1,"state":"collected","real_size":"1"}]"""
+                    .formatted(HEAD_SHA, BASE_SHA, START_SHA));
+        }
+        else if (DIFFS.matcher(path).matches()) {
+            sendPage(exchange, List.of());
+        }
+        else if (COMMIT_COMMENTS.matcher(path).matches() && "POST".equals(method)) {
+            var body = readForm(exchange).getOrDefault("note", StringUtils.EMPTY);
+            commitComments.add(body);
+            send(exchange, 201, "{\"note\":%s}".formatted(quote(body)));
+        }
+        else if (PIPELINES.matcher(path).matches()) {
+            sendPage(exchange, artifacts.isEmpty() ? List.of() : List.of("""
+                    {"id":%d,"status":"success","ref":"main","sha":"%s"}""".formatted(PIPELINE_ID, BASE_SHA)));
+        }
+        else if (JOBS.matcher(path).matches()) {
+            sendPage(exchange, artifacts.keySet().stream()
+                    .map("{\"id\":%d,\"name\":\"maven\",\"status\":\"success\"}"::formatted).toList());
+        }
+        else if (artifact.matches()) {
+            var archive = artifacts.get(Long.parseLong(artifact.group(2)));
+            if (archive == null) {
+                send(exchange, 404, "{\"message\":\"404 Not found\"}");
+            }
+            else {
+                exchange.getResponseHeaders().add("ETag", "\"artifacts\"");
+                exchange.sendResponseHeaders(200, archive.length);
+                exchange.getResponseBody().write(archive);
+            }
+        }
+        else if (MERGE_REQUEST_DETAILS.matcher(path).matches()) {
+            send(exchange, 200, """
+                    {"id":1,"iid":%d,"project_id":%d,"sha":"%s","title":"Stub merge request",\
+                    "state":"opened","labels":[]}""".formatted(MERGE_REQUEST_IID, PROJECT_ID, HEAD_SHA));
+        }
+        else if (PROJECT.matcher(path).matches()) {
+            send(exchange, 200, """
+                    {"id":%d,"name":"stub","path_with_namespace":"stub/stub","web_url":"%s/stub/stub"}"""
+                    .formatted(PROJECT_ID, getUrl()));
+        }
+        else {
+            send(exchange, 404, "{\"message\":\"404 Not found\"}");
+        }
+    }
+
+    private String toNote(final long id, final String body) {
+        return """
+                {"id":%d,"body":%s,"author":{"id":1,"name":"AUTOGRADING_BOT","username":"bot"},\
+                "noteable_iid":%d,"system":false}""".formatted(id, quote(body), MERGE_REQUEST_IID);
+    }
+
+    private String toDiscussion(final long id, final String body) {
+        return "{\"id\":\"%040d\",\"individual_note\":false,\"notes\":[%s]}".formatted(id, toNote(id, body));
+    }
+
+    private void sendPage(final HttpExchange exchange, final List<String> elements) throws IOException {
+        var parameters = parseParameters(exchange.getRequestURI().getRawQuery());
+        var perPage = Integer.parseInt(parameters.getOrDefault("per_page", String.valueOf(DEFAULT_PER_PAGE)));
+        var page = Integer.parseInt(parameters.getOrDefault("page", "1"));
+        var totalPages = Math.max(1, (elements.size() + perPage - 1) / perPage);
+
+        var headers = exchange.getResponseHeaders();
+        headers.add("X-Page", String.valueOf(page));
+        headers.add("X-Per-Page", String.valueOf(perPage));
+        headers.add("X-Total", String.valueOf(elements.size()));
+        headers.add("X-Total-Pages", String.valueOf(totalPages));
+        headers.add("X-Next-Page", page < totalPages ? String.valueOf(page + 1) : StringUtils.EMPTY);
+        headers.add("X-Prev-Page", page > 1 ? String.valueOf(page - 1) : StringUtils.EMPTY);
+
+        var from = Math.min(elements.size(), (page - 1) * perPage);
+        var to = Math.min(elements.size(), from + perPage);
+        send(exchange, 200, "[" + String.join(",", elements.subList(from, to)) + "]");
+    }
+
+    private void send(final HttpExchange exchange, final int status, final String json) throws IOException {
+        var bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (bytes.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+        }
+        else {
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+
+    private Map<String, String> readForm(final HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            return parseParameters(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private Map<String, String> parseParameters(final String query) {
+        if (StringUtils.isBlank(query)) {
+            return Map.of();
+        }
+        var parameters = new ConcurrentHashMap<String, String>();
+        for (String pair : query.split("&", 0)) {
+            var key = URLDecoder.decode(StringUtils.substringBefore(pair, "="), StandardCharsets.UTF_8);
+            var value = URLDecoder.decode(StringUtils.substringAfter(pair, "="), StandardCharsets.UTF_8);
+            parameters.put(key, value);
+        }
+        return parameters;
+    }
+
+    static String quote(final String value) {
+        var escaped = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        escaped.append("\\u%04x".formatted((int) c));
+                    }
+                    else {
+                        escaped.append(c);
+                    }
+                }
+            }
+        }
+        return escaped.append('"').toString();
+    }
+}
@@ -0,0 +1,193 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.hm.hafner.grading.gitlab.GradingService.Settings;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+class GradingServiceTest {
+    private static final String QUERY = "?CI_PROJECT_ID=42&CI_COMMIT_SHA=abc";
+    private static final String TOKEN = "secret";
+
+    @TempDir
+    private Path workspace;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void shouldGradeUploadedBundleInWorkspaceOfRequest() throws IOException, InterruptedException {
+        try (var service = createService("""
+                echo "project=$CI_PROJECT_ID sha=$CI_COMMIT_SHA cache=$DELTA_CACHE config=$CONFIG"
+                cat target/result.txt
+                """)) {
+            var response = post(service, QUERY + "&wait=true", createBundle());
+
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(response.body())
+                    .contains("project=42 sha=abc cache=/cache config={\"tests\": []}")
+                    .contains("Tests passed");
+
+            var id = response.headers().firstValue("X-Grading-Job").orElseThrow();
+            assertThat(get(service, "/jobs/" + id).body())
+                    .isEqualTo("{\"id\":\"%s\",\"status\":\"SUCCEEDED\",\"exit_code\":0}".formatted(id));
+            assertThat(get(service, "/jobs/" + id + "/log").body()).isEqualTo(response.body());
+            assertThat(workspace.resolve(id)).doesNotExist();
+        }
+    }
+
+    @Test
+    void shouldReportFailedGrading() throws IOException, InterruptedException {
+        try (var service = createService("echo 'Quality gate failed'; exit 1")) {
+            var response = post(service, QUERY + "&wait=true", createBundle());
+
+            assertThat(response.statusCode()).isEqualTo(422);
+            assertThat(response.body()).contains("Quality gate failed");
+
+            var id = response.headers().firstValue("X-Grading-Job").orElseThrow();
+            assertThat(get(service, "/jobs/" + id).body()).contains("\"status\":\"FAILED\"", "\"exit_code\":1");
+        }
+    }
+
+    @Test
+    void shouldRejectRequestsIfQueueIsFull() throws IOException, InterruptedException {
+        try (var service = createService("sleep 5")) {
+            assertThat(post(service, QUERY, createBundle()).statusCode()).isEqualTo(202);
+            assertThat(post(service, QUERY, createBundle()).statusCode()).isEqualTo(202);
+            assertThat(post(service, QUERY, createBundle()).statusCode()).isEqualTo(503);
+        }
+    }
+
+    @Test
+    void shouldRejectRequestsIfQueueIsFullBeforeReadingBundle() throws IOException, InterruptedException {
+        try (var service = createService("sleep 5")) {
+            assertThat(post(service, QUERY, createBundle()).statusCode()).isEqualTo(202);
+            assertThat(post(service, QUERY, createBundle()).statusCode()).isEqualTo(202);
+
+            var response = post(service, QUERY, "no zip archive".getBytes(StandardCharsets.UTF_8));
+            assertThat(response.statusCode()).isEqualTo(503);
+            assertThat(response.body()).contains("The queue is full");
+        }
+    }
+
+    @Test
+    void shouldRejectTooLargeBundles() throws IOException {
+        try (var service = createService("exit 0");
+                var socket = new Socket("localhost", service.getPort())) {
+            var request = """
+                    POST /grade%s HTTP/1.1\r
+                    Host: localhost\r
+                    Authorization: Bearer %s\r
+                    Content-Length: %d\r
+                    \r
+                    """.formatted(QUERY, TOKEN, GradingService.MAX_BUNDLE_SIZE + 1);
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.UTF_8));
+            socket.getOutputStream().flush();
+
+            var reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertThat(reader.readLine()).startsWith("HTTP/1.1 413");
+        }
+    }
+
+    @Test
+    void shouldRejectRunnerThatIsNotExecutable() {
+        var settings = new Settings(0, 1, 1, List.of("/app/autograding-gitlab-action"), workspace, TOKEN);
+
+        assertThatIllegalArgumentException().isThrownBy(() -> new GradingService(settings, Map.of(), null))
+                .withMessageContaining("/app/autograding-gitlab-action");
+    }
+
+    @Test
+    void shouldRejectInvalidRequests() throws IOException, InterruptedException {
+        try (var service = createService("exit 0")) {
+            var request = HttpRequest.newBuilder(URI.create(getUrl(service) + "/grade" + QUERY))
+                    .POST(BodyPublishers.ofByteArray(createBundle()))
+                    .build();
+            assertThat(client.send(request, BodyHandlers.ofString()).statusCode()).isEqualTo(401);
+
+            var response = post(service, "?CI_PROJECT_ID=42", createBundle());
+            assertThat(response.statusCode()).isEqualTo(400);
+            assertThat(response.body()).contains("CI_COMMIT_SHA");
+        }
+    }
+
+    @Test
+    void shouldIgnoreSettingsOfBundleThatWriteFiles() throws IOException, InterruptedException {
+        try (var service = createService("echo \"name=$DISPLAY_NAME history=$SCORE_HISTORY\"")) {
+            var response = post(service, QUERY + "&wait=true", createBundle("""
+                    display-name: Assignment 1
+                    score-history: /etc/passwd
+                    """));
+
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(response.body())
+                    .contains("Ignoring setting SCORE_HISTORY of the report bundle")
+                    .contains("name=Assignment 1 history=\n");
+        }
+    }
+
+    @Test
+    void shouldRequireToken() {
+        var settings = new Settings(0, 1, 1, List.of("true"), workspace, "");
+
+        assertThatIllegalArgumentException().isThrownBy(() -> new GradingService(settings, Map.of(), null));
+    }
+
+    private GradingService createService(final String script) throws IOException {
+        var settings = new Settings(0, 1, 1, List.of("sh", "-c", script), workspace, TOKEN);
+        return new GradingService(settings, Map.of(RunConfiguration.DELTA_CACHE, "/cache"), null);
+    }
+
+    private HttpResponse<String> post(final GradingService service, final String query, final byte[] bundle)
+            throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(URI.create(getUrl(service) + "/grade" + query))
+                .header("Authorization", "Bearer " + TOKEN)
+                .POST(BodyPublishers.ofByteArray(bundle))
+                .build();
+        return client.send(request, BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(final GradingService service, final String path)
+            throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(getUrl(service) + path)).build(),
+                BodyHandlers.ofString());
+    }
+
+    private String getUrl(final GradingService service) {
+        return "http://localhost:" + service.getPort();
+    }
+
+    private byte[] createBundle() throws IOException {
+        return createBundle("config: '{\"tests\": []}'");
+    }
+
+    private byte[] createBundle(final String settings) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("target/result.txt"));
+            zip.write("Tests passed".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry(RunConfiguration.SETTINGS_FILE));
+            zip.write(settings.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
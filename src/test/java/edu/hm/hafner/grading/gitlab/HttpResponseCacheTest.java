@@ -0,0 +1,70 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.hm.hafner.grading.gitlab.HttpResponseCache.Response;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.*;
+
+class HttpResponseCacheTest {
+    private static final String URL = "https://gitlab.com/api/v4/projects/1";
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void shouldStoreResponsesAcrossRuns() throws IOException {
+        var response = new Response(URL, "[1, 2]", "W/\"etag\"", "", "2");
+
+        new HttpResponseCache(directory, 10_000).put(response);
+
+        var cache = new HttpResponseCache(directory, 10_000);
+        assertThat(cache.get(URL)).contains(response);
+        assertThat(cache.get(URL + "/other")).isEmpty();
+        assertThat(cache.getSize()).isPositive();
+    }
+
+    @Test
+    void shouldSkipResponsesWithoutValidators() throws IOException {
+        var cache = new HttpResponseCache(directory, 10_000);
+
+        cache.put(new Response(URL, "body", "", "", ""));
+
+        assertThat(cache.get(URL)).isEmpty();
+        assertThat(cache.getSize()).isZero();
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedResponses() throws IOException {
+        var body = "x".repeat(100);
+        var probe = new HttpResponseCache(directory.resolve("probe"), 10_000);
+        probe.put(new Response(URL + "/1", body, "1", "", ""));
+        var maxSize = probe.getSize() * 5 / 2;
+
+        var cache = new HttpResponseCache(directory.resolve("cache"), maxSize);
+        cache.put(new Response(URL + "/1", body, "1", "", ""));
+        cache.put(new Response(URL + "/2", body, "2", "", ""));
+        assertThat(cache.get(URL + "/1")).isPresent();
+        cache.put(new Response(URL + "/3", body, "3", "", ""));
+
+        assertThat(cache.getSize()).isLessThanOrEqualTo(maxSize);
+        assertThat(cache.get(URL + "/1")).isPresent();
+        assertThat(cache.get(URL + "/2")).isEmpty();
+        assertThat(cache.get(URL + "/3")).isPresent();
+    }
+
+    @Test
+    void shouldInvalidateAllResponses() throws IOException {
+        var cache = new HttpResponseCache(directory, 10_000);
+        cache.put(new Response(URL, "body", "", "Wed, 21 Oct 2026 07:28:00 GMT", ""));
+
+        cache.invalidate();
+
+        assertThat(cache.get(URL)).isEmpty();
+        assertThat(cache.getSize()).isZero();
+    }
+}
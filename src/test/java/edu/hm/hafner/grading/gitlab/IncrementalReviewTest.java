@@ -0,0 +1,53 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.models.Note;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+
+class IncrementalReviewTest {
+    private static final String SHA = "58c1e8a980dc0beb7d92d2266eb3e58852720a76";
+
+    @Test
+    void shouldReadGradedCommitOfSummaryNote() {
+        var summary = createNote(GitLabAutoGradingRunner.AUTOGRADING_MARKER + "\n\n# Score" + "\n\nCreated by action"
+                + IncrementalReview.createMarker(SHA));
+        var lineComment = createNote(GitLabAutoGradingRunner.AUTOGRADING_MARKER
+                + "\n\n#### :warning: &nbsp; Title" + IncrementalReview.createMarker("abcdef0"));
+
+        assertThat(IncrementalReview.readGradedCommit(List.of(lineComment, summary))).contains(SHA);
+        assertThat(IncrementalReview.readGradedCommit(List.of(lineComment))).isEmpty();
+        assertThat(IncrementalReview.readGradedCommit(List.of())).isEmpty();
+    }
+
+    @Test
+    void shouldIncludeOnlyChangedLines() {
+        var review = IncrementalReview.of(Map.of("File.java", Set.of(10, 11)));
+
+        assertThat(review.isIncremental()).isTrue();
+        assertThat(review.includes("File.java", 10, 10)).isTrue();
+        assertThat(review.includes("File.java", 5, 10)).isTrue();
+        assertThat(review.includes("File.java", 12, 0)).isFalse();
+        assertThat(review.includes("File.java", 0, 0)).isTrue();
+        assertThat(review.includes("Other.java", 10, 10)).isFalse();
+        assertThat(review.includes("Other.java", 0, 0)).isFalse();
+    }
+
+    @Test
+    void shouldIncludeAllLinesInFullReview() {
+        var review = IncrementalReview.all();
+
+        assertThat(review.isIncremental()).isFalse();
+        assertThat(review.includes("Other.java", 10, 10)).isTrue();
+    }
+
+    private Note createNote(final String body) {
+        var note = new Note();
+        note.setBody(body);
+        return note;
+    }
+}
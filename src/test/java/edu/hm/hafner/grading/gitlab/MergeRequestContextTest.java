@@ -0,0 +1,108 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Note;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.*;
+
+class MergeRequestContextTest {
+    private static final String FIRST_PAGE = """
+            {"data": {"project": {"mergeRequest": {
+              "iid": "7", "title": "Solution", "webUrl": "https://gitlab.com/group/project/-/merge_requests/7",
+              "sourceBranch": "feature", "targetBranch": "main", "diffHeadSha": "head",
+              "diffRefs": {"baseSha": "base", "headSha": "head", "startSha": "start"},
+              "notes": {
+                "pageInfo": {"hasNextPage": true, "endCursor": "cursor"},
+                "nodes": [
+                  {"id": "gid://gitlab/Note/1", "body": "%s\\n# Score"},
+                  {"id": "gid://gitlab/Note/2", "body": "Looks good"}
+                ]
+              }
+            }}}}
+            """.formatted(GitLabAutoGradingRunner.AUTOGRADING_MARKER);
+    private static final String SECOND_PAGE = """
+            {"data": {"project": {"mergeRequest": {
+              "iid": "7",
+              "notes": {
+                "pageInfo": {"hasNextPage": false, "endCursor": null},
+                "nodes": [
+                  {"id": "gid://gitlab/Note/3", "body": "%s\\nWarning"}
+                ]
+              }
+            }}}}
+            """.formatted(GitLabAutoGradingRunner.AUTOGRADING_MARKER);
+
+    @Test
+    void shouldLoadMergeRequestWithAllPagesOfNotes() throws IOException, GitLabApiException {
+        try (var server = startServer(FIRST_PAGE, SECOND_PAGE)) {
+            var reader = createReader(server);
+
+            var context = MergeRequestContext.load(reader, "group/project", 42, 7);
+
+            assertThat(context.mergeRequest().getProjectId()).isEqualTo(42);
+            assertThat(context.mergeRequest().getIid()).isEqualTo(7);
+            assertThat(context.mergeRequest().getSourceBranch()).isEqualTo("feature");
+            assertThat(context.mergeRequest().getSha()).isEqualTo("head");
+            assertThat(context.mergeRequest().getDiffRefs().getBaseSha()).isEqualTo("base");
+            assertThat(context.versions()).singleElement().satisfies(version -> {
+                assertThat(version.getBaseCommitSha()).isEqualTo("base");
+                assertThat(version.getHeadCommitSha()).isEqualTo("head");
+                assertThat(version.getStartCommitSha()).isEqualTo("start");
+            });
+            assertThat(context.autogradingNotes()).extracting(Note::getId).containsExactly(3L, 1L);
+            assertThat(reader.getRequests()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void shouldReturnNoVersionsForMergeRequestWithoutDiff() throws IOException, GitLabApiException {
+        try (var server = startServer("""
+                {"data": {"project": {"mergeRequest": {
+                  "iid": "7", "diffRefs": null,
+                  "notes": {"pageInfo": {"hasNextPage": false}, "nodes": []}
+                }}}}
+                """)) {
+            var context = MergeRequestContext.load(createReader(server), "group/project", 42, 7);
+
+            assertThat(context.versions()).isEmpty();
+            assertThat(context.autogradingNotes()).isEmpty();
+        }
+    }
+
+    @Test
+    void shouldReportMissingMergeRequest() throws IOException {
+        try (var server = startServer("""
+                {"data": {"project": {"mergeRequest": null}}}
+                """)) {
+            var reader = createReader(server);
+
+            assertThatExceptionOfType(GitLabApiException.class)
+                    .isThrownBy(() -> MergeRequestContext.load(reader, "group/project", 42, 7))
+                    .withMessageContaining("Merge request !7 not found in group/project");
+        }
+    }
+
+    private GitLabGraphQlReader createReader(final GitLabStubServer server) {
+        return new GitLabGraphQlReader(server.getUrl(), "token");
+    }
+
+    private GitLabStubServer startServer(final String firstPage) throws IOException {
+        return startServer(firstPage, firstPage);
+    }
+
+    private GitLabStubServer startServer(final String firstPage, final String nextPage) throws IOException {
+        return new GitLabStubServer().withHandler("/api/graphql", exchange -> respond(exchange, firstPage, nextPage));
+    }
+
+    private void respond(final HttpExchange exchange, final String firstPage, final String nextPage)
+            throws IOException {
+        var request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        GitLabStubServer.respond(exchange, 200, request.contains("\"after\":\"cursor\"") ? nextPage : firstPage);
+    }
+}
@@ -0,0 +1,119 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Note;
+import org.junit.jupiter.api.Test;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MergeRequestLockTest {
+    private static final long PROJECT = 1L;
+    private static final long MERGE_REQUEST = 2L;
+    private static final long OLDER_RUN = 5L;
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+
+    private final List<Note> locks = new CopyOnWriteArrayList<>();
+    private final AtomicLong ids = new AtomicLong(10);
+    private final AtomicInteger polls = new AtomicInteger();
+    private final FilteredLog log = new FilteredLog("Errors");
+
+    @Test
+    void shouldAcquireAndReleaseFreeLock() throws GitLabApiException {
+        var client = createClient(Integer.MAX_VALUE);
+
+        try (var _ = acquire(client)) {
+            assertThat(locks).hasSize(1).first().satisfies(
+                    lock -> assertThat(lock.getBody()).startsWith(MergeRequestLock.LOCK_MARKER).contains("abc"));
+        }
+
+        assertThat(locks).isEmpty();
+        assertThat(polls).hasValue(1);
+        assertThat(log.getInfoMessages()).contains("Acquired lock of merge request !2",
+                "Released lock of merge request !2");
+    }
+
+    @Test
+    void shouldWaitUntilOlderRunReleasedLock() throws GitLabApiException {
+        locks.add(createLock(OLDER_RUN, Instant.now()));
+        var client = createClient(3);
+
+        try (var _ = acquire(client)) {
+            assertThat(locks).hasSize(1).first().satisfies(lock -> assertThat(lock.getId()).isGreaterThan(OLDER_RUN));
+        }
+
+        assertThat(polls).hasValue(3);
+        assertThat(log.getInfoMessages()).contains("Waiting for the previous run of merge request !2 (lock note 5)");
+    }
+
+    @Test
+    void shouldDeleteStaleLockOfKilledRun() throws GitLabApiException {
+        locks.add(createLock(OLDER_RUN, Instant.now().minus(Duration.ofHours(1))));
+        var client = createClient(Integer.MAX_VALUE);
+
+        try (var _ = acquire(client)) {
+            assertThat(polls).hasValue(1);
+            assertThat(locks).extracting(Note::getId).doesNotContain(OLDER_RUN);
+        }
+
+        assertThat(locks).isEmpty();
+        assertThat(log.getInfoMessages()).contains("Deleted stale lock note 5 of merge request !2");
+    }
+
+    @Test
+    void shouldStopWaitingIfSuperseded() throws GitLabApiException {
+        locks.add(createLock(OLDER_RUN, Instant.now()));
+        var client = createClient(Integer.MAX_VALUE);
+        when(client.getHeadCommit(PROJECT, MERGE_REQUEST)).thenReturn("def");
+
+        try (var _ = acquire(client)) {
+            assertThat(polls).hasValue(1);
+        }
+
+        assertThat(locks).extracting(Note::getId).containsExactly(OLDER_RUN);
+    }
+
+    private MergeRequestLock acquire(final GitLabClient client) throws GitLabApiException {
+        return MergeRequestLock.acquire(client, PROJECT, MERGE_REQUEST, "abc",
+                new SupersededRunCheck(client, PROJECT, MERGE_REQUEST, "abc", log), TIMEOUT, Duration.ZERO, log);
+    }
+
+    // The lock of the older run is released before the specified poll
+    private GitLabClient createClient(final int releasePoll) throws GitLabApiException {
+        var client = mock(GitLabClient.class);
+        doAnswer(invocation -> locks.add(createLock(ids.incrementAndGet(), Instant.now(), invocation.getArgument(2))))
+                .when(client).createMergeRequestNote(eq(PROJECT), eq(MERGE_REQUEST), anyString());
+        doAnswer(invocation -> locks.removeIf(lock -> lock.getId().equals(invocation.getArgument(2))))
+                .when(client).deleteMergeRequestNote(eq(PROJECT), eq(MERGE_REQUEST), anyLong());
+        when(client.getMergeRequestNotes(PROJECT, MERGE_REQUEST, MergeRequestLock.LOCK_MARKER)).thenAnswer(_ -> {
+            if (polls.incrementAndGet() >= releasePoll) {
+                locks.removeIf(lock -> lock.getId() == OLDER_RUN);
+            }
+            return List.copyOf(locks);
+        });
+        when(client.getHeadCommit(PROJECT, MERGE_REQUEST)).thenReturn("abc");
+        return client;
+    }
+
+    private Note createLock(final long id, final Instant createdAt) {
+        return createLock(id, createdAt, MergeRequestLock.LOCK_MARKER + " older run");
+    }
+
+    private Note createLock(final long id, final Instant createdAt, final String body) {
+        var note = new Note();
+        note.setId(id);
+        note.setBody(body);
+        note.setCreatedAt(Date.from(createdAt));
+        return note;
+    }
+}
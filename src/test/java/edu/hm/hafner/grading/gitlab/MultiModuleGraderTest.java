@@ -0,0 +1,89 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import edu.hm.hafner.grading.gitlab.MultiModuleGrader.Module;
+import edu.hm.hafner.grading.gitlab.MultiModuleGrader.ModuleResult;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class MultiModuleGraderTest {
+    private static final String MARKER = GitLabAutoGradingRunner.AUTOGRADING_MARKER;
+
+    @TempDir
+    private Path workspace;
+
+    @Test
+    void shouldGradeModulesInTheirSubRoots() throws IOException {
+        var frontend = createModule("frontend", "CONFIG: frontend-config\nDISPLAY_NAME: Frontend\n");
+        var backend = createModule("backend", "");
+        var broken = createModule("broken", "");
+        Files.createFile(broken.directory().resolve("broken"));
+
+        var runner = new RunnerProcess(List.of("sh", "-c", """
+                test -f broken && exit 3
+                test "$DRY_RUN" = true || exit 1
+                test "$MAX_NOTE_SIZE" = 100 || exit 2
+                printf '{"op":"discussion","project":1,"mr":2,"body":"%%s"}\\n' "$(basename "$PWD")" > "$TRANSCRIPT"
+                printf '{"op":"note","project":1,"mr":2,"body":"%s## %%s (%%s)"}\\n' \
+                    "$DISPLAY_NAME" "$CONFIG" >> "$TRANSCRIPT"
+                """.formatted(MARKER)));
+        var grader = new MultiModuleGrader(runner, Map.of("CONFIG", "common-config", "DISPLAY_NAME", "Project",
+                "PATH", System.getenv("PATH")), 300, Files.createDirectory(workspace.resolve("runs")));
+
+        var results = grader.grade(List.of(frontend, backend, broken));
+
+        assertThat(results).extracting(ModuleResult::exitCode).containsExactly(0, 0, 3);
+        assertThat(MultiModuleGrader.combine(results)).extracting(JsonNode::toString).containsExactly(
+                "{\"op\":\"discussion\",\"project\":1,\"mr\":2,\"body\":\"frontend\"}",
+                "{\"op\":\"discussion\",\"project\":1,\"mr\":2,\"body\":\"backend\"}",
+                "{\"op\":\"note\",\"project\":1,\"mr\":2,\"body\":\"" + MARKER
+                        + "\\n\\n## Frontend (frontend-config)"
+                        + "\\n\\n## backend (common-config)"
+                        + "\\n\\n## :x: broken\\n\\nThe module could not be graded (exit code 3).\"}");
+    }
+
+    @Test
+    void shouldUpdateExistingSummaryNote() throws IOException {
+        var results = List.of(
+                new ModuleResult(Module.parse("a=a"), 0, List.of(
+                        TranscriptClient.parse("{\"op\":\"delete-notes\",\"project\":1,\"mr\":2}"),
+                        TranscriptClient.parse("{\"op\":\"note\",\"project\":1,\"mr\":2,\"body\":\"" + MARKER
+                                + "A\"}"))),
+                new ModuleResult(Module.parse("b=b"), 0, List.of(
+                        TranscriptClient.parse("{\"op\":\"update-note\",\"project\":1,\"mr\":2,\"note_id\":7,"
+                                + "\"body\":\"" + MARKER + "B\"}"))));
+
+        var entries = MultiModuleGrader.combine(results);
+
+        assertThat(entries).hasSize(2);
+        assertThat(entries.get(0).path(TranscriptClient.OPERATION).asText()).isEqualTo(TranscriptClient.DELETE_NOTES);
+        assertThat(entries.get(1).path(TranscriptClient.OPERATION).asText()).isEqualTo(TranscriptClient.UPDATE_NOTE);
+        assertThat(entries.get(1).path(TranscriptClient.NOTE_ID).asLong()).isEqualTo(7);
+        assertThat(entries.get(1).path(TranscriptClient.BODY).asText()).isEqualTo(MARKER + "\n\nA\n\nB");
+    }
+
+    @Test
+    void shouldRejectInvalidModuleDefinition() {
+        assertThat(Module.parse(" api = services/api ")).isEqualTo(new Module("api", Path.of("services/api")));
+        assertThatIllegalArgumentException().isThrownBy(() -> Module.parse("api"));
+        assertThatIllegalArgumentException().isThrownBy(() -> Module.parse("=services/api"));
+    }
+
+    private Module createModule(final String name, final String settings) throws IOException {
+        var directory = Files.createDirectory(workspace.resolve(name));
+        if (!settings.isEmpty()) {
+            Files.writeString(directory.resolve(RunConfiguration.SETTINGS_FILE), settings);
+        }
+        return new Module(name, directory);
+    }
+}
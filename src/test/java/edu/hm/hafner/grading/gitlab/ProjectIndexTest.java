@@ -0,0 +1,134 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.hm.hafner.grading.gitlab.ProjectIndex.Entry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ProjectIndexTest {
+    private static final String PROJECTS = "/api/v4/groups/dev%2Fassignment1/projects"
+            + "?simple=true&order_by=last_activity_at&sort=desc";
+    private static final Instant NOW = Instant.parse("2026-10-06T10:00:00Z");
+    private static final Clock CLOCK = Clock.fixed(NOW, ZoneOffset.UTC);
+
+    @TempDir
+    private Path directory;
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private volatile String response = "[]";
+
+    @Test
+    void shouldSyncOnlyProjectsWithNewActivity() throws IOException, GitLabApiException {
+        try (var server = new GitLabStubServer().withHandler("/api/v4/groups", this::handle)) {
+            var gitLab = new GitLabRestReader(server.getUrl(), "token", null);
+            var index = new ProjectIndex(directory.resolve("projects.jsonl"), CLOCK);
+
+            response = """
+                    [
+                      {"id": 2, "name": "assignment1-bob_at_hm.edu", "web_url": "url/2",
+                       "last_activity_at": "2026-10-02T10:00:00.000Z"},
+                      {"id": 1, "name": "assignment1-alice_at_hm.edu", "web_url": "url/1",
+                       "last_activity_at": "2026-10-01T10:00:00.000+02:00"}
+                    ]
+                    """;
+            assertThat(index.sync(gitLab, "dev/assignment1")).containsExactly(
+                    new Entry(1, "assignment1-alice_at_hm.edu", "alice", "url/1",
+                            Instant.parse("2026-10-01T08:00:00Z")),
+                    new Entry(2, "assignment1-bob_at_hm.edu", "bob", "url/2",
+                            Instant.parse("2026-10-02T10:00:00Z")));
+
+            response = """
+                    [
+                      {"id": 3, "name": "assignment1-carol_at_hm.edu", "web_url": "url/3",
+                       "last_activity_at": "2026-10-05T10:00:00.000Z"},
+                      {"id": 1, "name": "assignment1-alice_at_hm.edu", "web_url": "url/1",
+                       "last_activity_at": "2026-10-04T10:00:00.000Z"},
+                      {"id": 2, "name": "assignment1-bob_at_hm.edu", "web_url": "url/2",
+                       "last_activity_at": "2026-10-02T10:00:00.000Z"},
+                      {"id": 4, "name": "assignment1-dave_at_hm.edu", "web_url": "url/4",
+                       "last_activity_at": "2026-09-01T10:00:00.000Z"}
+                    ]
+                    """;
+            assertThat(index.sync(gitLab, "dev/assignment1")).containsExactly(
+                    new Entry(1, "assignment1-alice_at_hm.edu", "alice", "url/1",
+                            Instant.parse("2026-10-04T10:00:00Z")),
+                    new Entry(2, "assignment1-bob_at_hm.edu", "bob", "url/2",
+                            Instant.parse("2026-10-02T10:00:00Z")),
+                    new Entry(3, "assignment1-carol_at_hm.edu", "carol", "url/3",
+                            Instant.parse("2026-10-05T10:00:00Z")));
+            assertThat(index.read()).hasSize(3);
+
+            assertThat(requests).containsExactly(
+                    PROJECTS + "&per_page=100&page=1",
+                    PROJECTS + "&last_activity_after=2026-10-02T10%3A00%3A00Z&per_page=100&page=1");
+        }
+    }
+
+    @Test
+    void shouldRemoveDeletedProjectsWithDailyFullSync() throws IOException, GitLabApiException {
+        try (var server = new GitLabStubServer().withHandler("/api/v4/groups", this::handle)) {
+            var gitLab = new GitLabRestReader(server.getUrl(), "token", null);
+            var file = directory.resolve("projects.jsonl");
+
+            response = """
+                    [
+                      {"id": 2, "name": "assignment1-bob_at_hm.edu", "web_url": "url/2",
+                       "last_activity_at": "2026-10-02T10:00:00.000Z"},
+                      {"id": 1, "name": "assignment1-alice_at_hm.edu", "web_url": "url/1",
+                       "last_activity_at": "2026-10-01T10:00:00.000Z"}
+                    ]
+                    """;
+            assertThat(new ProjectIndex(file, CLOCK).sync(gitLab, "dev/assignment1")).hasSize(2);
+
+            response = """
+                    [
+                      {"id": 1, "name": "assignment1-alice_at_hm.edu", "web_url": "url/1",
+                       "last_activity_at": "2026-10-01T10:00:00.000Z"}
+                    ]
+                    """;
+            assertThat(new ProjectIndex(file, Clock.fixed(NOW.plus(Duration.ofHours(2)), ZoneOffset.UTC))
+                    .sync(gitLab, "dev/assignment1")).extracting(Entry::id).containsExactly(1L, 2L);
+
+            var nextDay = new ProjectIndex(file, Clock.fixed(NOW.plus(Duration.ofDays(2)), ZoneOffset.UTC));
+            assertThat(nextDay.sync(gitLab, "dev/assignment1")).extracting(Entry::id).containsExactly(1L);
+            assertThat(nextDay.read()).extracting(Entry::id).containsExactly(1L);
+
+            assertThat(requests).containsExactly(
+                    PROJECTS + "&per_page=100&page=1",
+                    PROJECTS + "&last_activity_after=2026-10-02T10%3A00%3A00Z&per_page=100&page=1",
+                    PROJECTS + "&per_page=100&page=1");
+        }
+    }
+
+    @Test
+    void shouldParseStudentName() {
+        assertThat(ProjectIndex.parseStudentName("assignment1-hafner_at_hm.edu")).isEqualTo("hafner");
+        assertThat(ProjectIndex.parseStudentName("template")).isEmpty();
+    }
+
+    @Test
+    void shouldReadEmptyIndex() throws IOException {
+        assertThat(new ProjectIndex(directory.resolve("missing.jsonl")).read()).isEmpty();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.add(exchange.getRequestURI().getRawPath() + "?" + exchange.getRequestURI().getRawQuery());
+
+        GitLabStubServer.respond(exchange, 200, response);
+    }
+}
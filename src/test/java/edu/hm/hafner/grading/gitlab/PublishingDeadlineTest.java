@@ -0,0 +1,47 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+class PublishingDeadlineTest {
+    @Test
+    void shouldNeverExpireWithoutBudget() {
+        var deadline = PublishingDeadline.unlimited();
+
+        assertThat(deadline.isLimited()).isFalse();
+        assertThat(deadline.hasTimeLeft()).isTrue();
+        assertThat(deadline.createNotice()).isEmpty();
+    }
+
+    @Test
+    void shouldReserveTimeForSummaryNote() {
+        var time = new AtomicLong(Long.MAX_VALUE - 1000); // the clock may overflow
+        var deadline = new PublishingDeadline(Duration.ofSeconds(100), time::get);
+
+        assertThat(deadline.isLimited()).isTrue();
+        assertThat(deadline.hasTimeLeft()).isTrue();
+
+        time.addAndGet(Duration.ofSeconds(89).toNanos());
+        assertThat(deadline.hasTimeLeft()).isTrue();
+
+        time.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertThat(deadline.hasTimeLeft()).isFalse();
+    }
+
+    @Test
+    void shouldCreateNoticeForDeferredComments() {
+        var deadline = new PublishingDeadline(Duration.ofSeconds(60), () -> 0);
+        assertThat(deadline.createNotice()).isEmpty();
+
+        deadline.defer(3);
+        deadline.defer(2);
+
+        assertThat(deadline.getDeferred()).isEqualTo(5);
+        assertThat(deadline.createNotice()).contains(
+                ":hourglass: 5 line comments have been deferred", "budget of 60 seconds");
+    }
+}
@@ -0,0 +1,103 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.junit.jupiter.api.Test;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class RunConfigurationTest {
+    @Test
+    void shouldUseDefaultsIfNothingIsSet() {
+        var log = new FilteredLog("Errors");
+        var configuration = new RunConfiguration(Map.<String, String>of()::get, log);
+
+        assertThat(configuration.hasGitLabConnection()).isFalse();
+        assertThat(configuration.hasMergeRequest()).isFalse();
+        assertThat(configuration.hasValidProjectId()).isFalse();
+        assertThat(configuration.getDisplayName()).isEqualTo("Autograding score");
+        assertThat(configuration.getMaxWarningComments()).isEqualTo(Integer.MAX_VALUE);
+        assertThat(configuration.getMaxCoverageComments()).isEqualTo(Integer.MAX_VALUE);
+        assertThat(configuration.isSkipCommitComments()).isFalse();
+        assertThat(configuration.getValue("CI_PROJECT_URL")).isEmpty();
+        assertThat(log.getErrorMessages()).isEmpty();
+    }
+
+    @Test
+    void shouldReadAllValuesOnlyOnce() {
+        var log = new FilteredLog("Errors");
+        var configuration = new RunConfiguration(Map.of(
+                "CI_SERVER_URL", "https://gitlab.lrz.de",
+                "GITLAB_TOKEN", "glpat-secret",
+                "CI_PROJECT_ID", "42",
+                "CI_MERGE_REQUEST_IID", "7",
+                "CI_PROJECT_URL", "https://gitlab.lrz.de/dev/project",
+                "CI_COMMIT_SHA", "abc",
+                "MAX_WARNING_COMMENTS", "10",
+                "SKIP_COMMIT_COMMENTS", "true",
+                "SKIP_DETAILS", "false")::get, log);
+
+        assertThat(configuration.hasGitLabConnection()).isTrue();
+        assertThat(configuration.hasValidProjectId()).isTrue();
+        assertThat(configuration.getMergeRequestIid()).isEqualTo(7L);
+        assertThat(configuration.getMaxWarningComments()).isEqualTo(10);
+        assertThat(configuration.isSkipCommitComments()).isTrue();
+        assertThat(configuration.isSkipDetails()).isFalse();
+        assertThat(configuration.getValue("CI_PROJECT_URL")).isEqualTo("https://gitlab.lrz.de/dev/project");
+        assertThat(configuration.getValue("CI_COMMIT_SHA")).isEqualTo("abc");
+        assertThat(configuration.getSourceBranchSha()).isEqualTo("abc");
+        assertThat(log.getInfoMessages()).contains(">>>> GITLAB_TOKEN: ****")
+                .noneSatisfy(message -> assertThat(message).contains("glpat-secret"));
+    }
+
+    @Test
+    void shouldUseSourceBranchCommitOfMergedResultsPipeline() {
+        var configuration = new RunConfiguration(Map.of(
+                "CI_COMMIT_SHA", "merge",
+                "CI_MERGE_REQUEST_SOURCE_BRANCH_SHA", "head")::get, new FilteredLog("Errors"));
+
+        assertThat(configuration.getCommitSha()).isEqualTo("merge");
+        assertThat(configuration.getSourceBranchSha()).isEqualTo("head");
+    }
+
+    @Test
+    void shouldReportInvalidValues() {
+        var log = new FilteredLog("Errors");
+        var configuration = new RunConfiguration(Map.of(
+                "CI_PROJECT_ID", "project",
+                "CI_MERGE_REQUEST_IID", "!7",
+                "MAX_COVERAGE_COMMENTS", "-1",
+                "MAX_WARNING_COMMENTS", "ten")::get, log);
+
+        assertThat(configuration.hasValidProjectId()).isFalse();
+        assertThat(configuration.hasMergeRequest()).isFalse();
+        assertThat(configuration.getMaxWarningComments()).isEqualTo(Integer.MAX_VALUE);
+        assertThat(log.getErrorMessages()).hasSize(4);
+    }
+
+    @Test
+    void shouldParseSettingsFile() {
+        var settings = RunConfiguration.parseSettings("""
+                # Settings of the autograding action
+                max-warning-comments: 10
+                MAX_COVERAGE_COMMENTS: 5 # only a few
+                DISPLAY_NAME: "Assignment #1"
+                skip_commit_comments: 'true'
+                CONFIG: |
+                  {
+                    "tests": {}
+                  }
+                SKIP_DETAILS: true
+                """);
+
+        assertThat(settings).containsOnly(
+                entry("MAX_WARNING_COMMENTS", "10"),
+                entry("MAX_COVERAGE_COMMENTS", "5"),
+                entry("DISPLAY_NAME", "Assignment #1"),
+                entry("SKIP_COMMIT_COMMENTS", "true"),
+                entry("CONFIG", "{\n\"tests\": {}\n}"),
+                entry("SKIP_DETAILS", "true"));
+    }
+}
@@ -0,0 +1,146 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.hm.hafner.grading.gitlab.ScoreHistory.Entry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ScoreHistoryTest {
+    private static final String MAIN = "main";
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void shouldExtractScoresOfSummary() {
+        var summary = """
+                # :mortar_board: Autograding score
+
+                ### :vertical_traffic_light: &nbsp; Tests - 80 of 100
+                ### :footprints: &nbsp; Code Coverage Score - 45 of 50
+                ### :warning: &nbsp; Style - 10 of 20
+                """;
+
+        assertThat(ScoreHistory.extractScores(summary)).containsExactly(
+                Map.entry("Tests", 80), Map.entry("Code Coverage Score", 45), Map.entry("Style", 10));
+    }
+
+    @Test
+    void shouldExtractCoverageOfLog() {
+        var messages = List.of(
+                "Processing 2 coverage configuration(s)",
+                "-> Line Coverage Total: 10.93% [Whole Project]",
+                "-> Branch Coverage Total: 9.52% [Whole Project]",
+                "=> JaCoCo Score: 20 of 100 [Whole Project]",
+                "-> Mutation Coverage Total: 7.86% [Whole Project]",
+                "-> CheckStyle (checkstyle): 1 warning (normal: 1)");
+
+        assertThat(ScoreHistory.extractCoverage(messages)).containsExactly(
+                Map.entry("Line Coverage", 11), Map.entry("Branch Coverage", 10), Map.entry("Mutation Coverage", 8));
+    }
+
+    @Test
+    void shouldReadLatestEntries() throws IOException {
+        var history = new ScoreHistory(directory.resolve("cache/history.jsonl"));
+        assertThat(history.readLatest(MAIN, 2)).isEmpty();
+
+        for (int run = 1; run <= 5; run++) {
+            history.append(new Entry(MAIN, "sha" + run, String.valueOf(run), Map.of("Tests", run * 10)));
+        }
+
+        assertThat(history.readLatest(MAIN, 2)).containsExactly(
+                new Entry(MAIN, "sha4", "4", Map.of("Tests", 40)),
+                new Entry(MAIN, "sha5", "5", Map.of("Tests", 50)));
+    }
+
+    @Test
+    void shouldReadOnlyEntriesOfSameRef() throws IOException {
+        var history = new ScoreHistory(directory.resolve("history.jsonl"));
+
+        history.append(new Entry(MAIN, "sha1", "1", Map.of("Tests", 10)));
+        history.append(new Entry("!42", "sha2", "2", Map.of("Tests", 20)));
+        history.append(new Entry(MAIN, "sha3", "3", Map.of("Tests", 30)));
+        history.append(new Entry("!42", "sha4", "4", Map.of("Tests", 40)));
+
+        assertThat(history.readLatest(MAIN, 5)).extracting(Entry::sha).containsExactly("sha1", "sha3");
+        assertThat(history.readLatest("!42", 1)).extracting(Entry::sha).containsExactly("sha4");
+        assertThat(history.readLatest("!7", 5)).isEmpty();
+    }
+
+    @Test
+    void shouldSkipCorruptedLines() throws IOException {
+        var file = directory.resolve("history.jsonl");
+        var history = new ScoreHistory(file);
+
+        history.append(new Entry(MAIN, "sha1", "1", Map.of("Tests", 10)));
+        Files.writeString(file, "{\"ref\": \"main\", \"sha\": \n", StandardOpenOption.APPEND);
+        history.append(new Entry(MAIN, "sha2", "2", Map.of("Tests", 20)));
+
+        assertThat(history.readLatest(MAIN, 5)).containsExactly(
+                new Entry(MAIN, "sha1", "1", Map.of("Tests", 10)),
+                new Entry(MAIN, "sha2", "2", Map.of("Tests", 20)));
+    }
+
+    @Test
+    void shouldRemoveOldestEntriesIfHistoryIsTooLarge() throws IOException {
+        var file = directory.resolve("history.jsonl");
+        var history = new ScoreHistory(file, 1000);
+
+        for (int run = 1; run <= 100; run++) {
+            history.append(new Entry(MAIN, "sha" + run, String.valueOf(run), Map.of("Tests", run)));
+        }
+
+        assertThat(Files.size(file)).isLessThanOrEqualTo(1000);
+        assertThat(history.readLatest(MAIN, 1)).containsExactly(new Entry(MAIN, "sha100", "100", Map.of("Tests", 100)));
+        assertThat(Files.readAllLines(file)).allSatisfy(line -> assertThat(line).startsWith("{").endsWith("}"));
+    }
+
+    @Test
+    void shouldReadLatestEntriesOfRefWithoutRecentRuns() throws IOException {
+        var file = directory.resolve("history.jsonl");
+        var history = new ScoreHistory(file, 1000);
+
+        history.append(new Entry("!7", "sha0", "0", Map.of("Tests", 70)));
+        for (int run = 1; run <= 100; run++) {
+            history.append(new Entry(MAIN, "sha" + run, String.valueOf(run), Map.of("Tests", run)));
+        }
+
+        assertThat(Files.readString(file)).doesNotContain("!7");
+        assertThat(history.readLatest("!7", 5)).containsExactly(new Entry("!7", "sha0", "0", Map.of("Tests", 70)));
+        assertThat(history.readLatest(MAIN, ScoreHistory.TREND_LENGTH + 5)).hasSize(ScoreHistory.TREND_LENGTH)
+                .last().isEqualTo(new Entry(MAIN, "sha100", "100", Map.of("Tests", 100)));
+    }
+
+    @Test
+    void shouldRenderTrendComparedToPreviousCommit() {
+        var previous = List.of(
+                new Entry(MAIN, "a", "1", Map.of("Tests", 50, "Warnings", 20)),
+                new Entry(MAIN, "b", "2", Map.of("Tests", 70, "Warnings", 10)),
+                new Entry(MAIN, "c", "3", Map.of("Tests", 60, "Warnings", 10)),
+                new Entry(MAIN, "d", "4", Map.of("Tests", 80)));
+        var current = new Entry(MAIN, "d", "5", Map.of("Tests", 90, "Warnings", 10));
+
+        assertThat(ScoreHistory.renderTrend(current, previous))
+                .contains("| Metric | Previous | Current | Last 4 runs |")
+                .contains("| Tests | 60 | 90 (+30) | ▁▄▂█ |")
+                .contains("| Warnings | 10 | 10 | █▁▁▁ |");
+    }
+
+    @Test
+    void shouldNotRenderTrendWithoutPreviousCommit() {
+        var current = new Entry(MAIN, "a", "2", Map.of("Tests", 90));
+
+        assertThat(ScoreHistory.renderTrend(current, List.of())).isEmpty();
+        assertThat(ScoreHistory.renderTrend(current, List.of(new Entry(MAIN, "a", "1", Map.of("Tests", 80)))))
+                .isEmpty();
+    }
+}
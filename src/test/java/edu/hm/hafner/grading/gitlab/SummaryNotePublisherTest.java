@@ -0,0 +1,151 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.junit.jupiter.api.Test;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+
+class SummaryNotePublisherTest {
+    private static final String MARKER = GitLabAutoGradingRunner.AUTOGRADING_MARKER;
+    private static final String SUMMARY = MARKER + "\n\n# Autograding score - 80 of 100";
+    private static final String NEW_SUMMARY = MARKER + "\n\n# Autograding score - 90 of 100";
+    private static final String LINE_COMMENT = MARKER + "\n\n#### :warning: CheckStyle: Warning";
+
+    private final FilteredLog log = new FilteredLog("Errors");
+
+    @Test
+    void shouldUpdateSummaryNoteInPlace() throws IOException, GitLabApiException {
+        try (var server = new GitLabStubServer().withNote(SUMMARY)) {
+            publish(server, true, false);
+
+            assertThat(server.getNotes()).containsExactly(Map.entry(1L, NEW_SUMMARY));
+            assertThat(server.getRequestCounts())
+                    .containsEntry("PUT notes", 1)
+                    .doesNotContainKeys("POST notes", "DELETE notes");
+            assertThat(log.getInfoMessages()).contains("Updating merge request note 1");
+        }
+    }
+
+    @Test
+    void shouldNotWriteAnythingIfSummaryIsUnchanged() throws IOException, GitLabApiException {
+        try (var server = new GitLabStubServer().withNote(LINE_COMMENT).withNote(NEW_SUMMARY)) {
+            publish(server, true, true);
+
+            assertThat(server.getNotes()).containsOnly(Map.entry(1L, LINE_COMMENT), Map.entry(2L, NEW_SUMMARY));
+            assertThat(server.getRequestCounts().keySet()).allSatisfy(
+                    endpoint -> assertThat(endpoint).startsWith("GET "));
+            assertThat(log.getInfoMessages()).contains("Merge request note 2 is up to date - skipping update");
+        }
+    }
+
+    @Test
+    void shouldKeepNewestSummaryNoteAndDeleteDuplicates() throws IOException, GitLabApiException {
+        try (var server = new GitLabStubServer()
+                .withNote(SUMMARY).withNote(SUMMARY).withNote("User note").withNote(SUMMARY)) {
+            publish(server, true, false);
+
+            assertThat(server.getNotes()).containsOnly(Map.entry(3L, "User note"), Map.entry(4L, NEW_SUMMARY));
+            assertThat(server.getRequestCounts())
+                    .containsEntry("DELETE notes", 2)
+                    .containsEntry("PUT notes", 1)
+                    .doesNotContainKey("POST notes");
+        }
+    }
+
+    @Test
+    void shouldReplaceAllNotesIfSummaryNoteIsNotUpdated() throws IOException, GitLabApiException {
+        try (var server = new GitLabStubServer().withNote(SUMMARY).withNote(LINE_COMMENT)) {
+            publish(server, false, false);
+
+            assertThat(server.getNotes()).containsExactly(Map.entry(3L, NEW_SUMMARY));
+        }
+    }
+
+    @Test
+    void shouldUpdateSummaryNoteFirstAndRecordDeferredCommentsIfBudgetIsLimited()
+            throws IOException, GitLabApiException {
+        try (var server = new GitLabStubServer().withNote(SUMMARY).withNote(LINE_COMMENT).withNote(SUMMARY)) {
+            var time = new AtomicLong();
+            var deadline = new PublishingDeadline(Duration.ofSeconds(60), time::get);
+            var notesBeforeLineComments = new AtomicReference<Map<Long, String>>();
+
+            publish(server, deadline, true, () -> {
+                notesBeforeLineComments.set(server.getNotes());
+                time.addAndGet(Duration.ofSeconds(60).toNanos());
+                deadline.defer(3);
+            });
+
+            assertThat(notesBeforeLineComments.get()).containsExactly(Map.entry(3L, NEW_SUMMARY));
+            assertThat(server.getNotes()).containsExactly(Map.entry(3L, NEW_SUMMARY + deadline.createNotice()));
+            assertThat(server.getRequestCounts())
+                    .containsEntry("PUT notes", 2)
+                    .containsEntry("DELETE notes", 2)
+                    .doesNotContainKey("POST notes");
+        }
+    }
+
+    @Test
+    void shouldNotDeleteNewSummaryNoteIfBudgetIsLimited() throws IOException, GitLabApiException {
+        try (var server = new GitLabStubServer().withNote(SUMMARY).withNote(LINE_COMMENT)) {
+            var time = new AtomicLong();
+            var deadline = new PublishingDeadline(Duration.ofSeconds(60), time::get);
+            var notesBeforeLineComments = new AtomicReference<Map<Long, String>>();
+
+            publish(server, deadline, false, () -> {
+                notesBeforeLineComments.set(server.getNotes());
+                time.addAndGet(Duration.ofSeconds(60).toNanos());
+                deadline.defer(2);
+            });
+
+            assertThat(notesBeforeLineComments.get()).containsExactly(Map.entry(3L, NEW_SUMMARY));
+            assertThat(server.getNotes()).containsExactly(Map.entry(3L, NEW_SUMMARY + deadline.createNotice()));
+            assertThat(server.getRequestCounts()).containsEntry("POST notes", 1).containsEntry("PUT notes", 1);
+        }
+    }
+
+    @Test
+    void shouldPublishSummaryNoteEvenIfNoTimeIsLeftToDeleteOldNotes() throws IOException, GitLabApiException {
+        try (var server = new GitLabStubServer().withNote(SUMMARY).withNote(LINE_COMMENT)) {
+            var time = new AtomicLong();
+            var deadline = new PublishingDeadline(Duration.ofSeconds(60), time::get);
+            time.addAndGet(Duration.ofSeconds(60).toNanos());
+
+            publish(server, deadline, false, () -> { });
+
+            assertThat(server.getNotes()).containsOnly(
+                    Map.entry(1L, SUMMARY), Map.entry(2L, LINE_COMMENT), Map.entry(3L, NEW_SUMMARY));
+            assertThat(server.getRequestCounts()).doesNotContainKey("DELETE notes");
+            assertThat(log.getInfoMessages()).contains(
+                    "Skipping deletion of 2 notes of previous runs - no time left");
+        }
+    }
+
+    private void publish(final GitLabStubServer server, final PublishingDeadline deadline,
+            final boolean keepSummaryNote, final SummaryNotePublisher.LineComments lineComments)
+            throws GitLabApiException {
+        try (var client = new GitLabApiClient(server.getUrl(), "token", log)) {
+            new SummaryNotePublisher(client, GitLabStubServer.PROJECT_ID, GitLabStubServer.MERGE_REQUEST_IID,
+                    deadline, log)
+                    .publish(keepSummaryNote, false, notice -> NEW_SUMMARY + notice, lineComments);
+        }
+        assertThat(log.getErrorMessages()).isEmpty();
+    }
+
+    private void publish(final GitLabStubServer server, final boolean keepSummaryNote,
+            final boolean keepLineComments) throws GitLabApiException {
+        try (var client = new GitLabApiClient(server.getUrl(), "token", log)) {
+            new SummaryNotePublisher(client, GitLabStubServer.PROJECT_ID, GitLabStubServer.MERGE_REQUEST_IID,
+                    PublishingDeadline.unlimited(), log)
+                    .publish(keepSummaryNote, keepLineComments, _ -> NEW_SUMMARY, () -> { });
+        }
+        assertThat(log.getErrorMessages()).isEmpty();
+    }
+}
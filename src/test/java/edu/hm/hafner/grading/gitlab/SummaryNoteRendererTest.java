@@ -0,0 +1,107 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.*;
+
+class SummaryNoteRendererTest {
+    private static final String URL = "https://gitlab.lrz.de/dev/project/-/jobs/1/artifacts/file/details.md";
+    private static final String FOOTER = "\n\n<hr />\n\nCreated by Autograding";
+    private static final String DETAILS = """
+            ## :mortar_board: Autograding score - 50 of 100
+
+            ### Failures
+            java.lang.AssertionError: expected
+                at org.junit.Assert.fail(Assert.java:89)
+                at org.junit.Assert.assertTrue(Assert.java:42)
+                at edu.hm.hafner.Test.shouldWork(Test.java:10)
+                at java.base/jdk.internal.reflect.DirectMethodHandleAccessor.invoke(DirectMethodHandleAccessor.java:103)
+            """;
+    private static final String SUMMARY = "## :mortar_board: Autograding score - 50 of 100";
+
+    @TempDir
+    private Path folder;
+
+    @Test
+    void shouldRenderCompleteNoteIfWithinBudget() {
+        var note = createRenderer(100_000).render(DETAILS, () -> SUMMARY, "Errors", "Gates", FOOTER);
+
+        assertThat(note).isEqualTo(GitLabAutoGradingRunner.AUTOGRADING_MARKER + "\n\n" + DETAILS
+                + "Errors" + "Gates" + FOOTER);
+        assertThat(folder.resolve("details.md")).doesNotExist();
+    }
+
+    @Test
+    void shouldTruncateStackTraces() {
+        assertThat(SummaryNoteRenderer.truncateStackTraces(DETAILS, 2))
+                .contains("at org.junit.Assert.fail(Assert.java:89)",
+                        "at org.junit.Assert.assertTrue(Assert.java:42)",
+                        "\t... 2 more")
+                .doesNotContain("Test.java:10");
+        assertThat(SummaryNoteRenderer.truncateStackTraces(DETAILS, 10)).isEqualTo(DETAILS);
+    }
+
+    @Test
+    void shouldCollapseSection() {
+        assertThat(SummaryNoteRenderer.collapse("Error log", "  ")).isEqualTo("  ");
+        assertThat(SummaryNoteRenderer.collapse("Error log", "Error"))
+                .isEqualTo("\n\n<details>\n<summary>Error log</summary>\n\nError\n\n</details>\n\n");
+    }
+
+    @Test
+    void shouldReduceStackTracesToFitIntoBudget() {
+        var full = createRenderer(100_000).render(DETAILS, () -> SUMMARY, "", "", FOOTER);
+        var budget = size(full) - 50;
+
+        var note = createRenderer(budget).render(DETAILS, () -> SUMMARY, "", "", FOOTER);
+
+        assertThat(size(note)).isLessThanOrEqualTo(budget);
+        assertThat(note).contains("at org.junit.Assert.fail", "more", FOOTER);
+        assertThat(folder.resolve("details.md")).doesNotExist();
+    }
+
+    @Test
+    void shouldExternalizeDetailsIfStillTooLarge() throws IOException {
+        var details = DETAILS + "| Table |\n".repeat(1000);
+        var budget = 600;
+
+        var note = createRenderer(budget).render(details, () -> SUMMARY, "Error", "Gates", FOOTER);
+
+        assertThat(size(note)).isLessThanOrEqualTo(budget);
+        assertThat(note).contains(SUMMARY, "[details.md](" + URL + ")", "<summary>Error log</summary>", "Gates",
+                FOOTER).doesNotContain("| Table |");
+        assertThat(Files.readString(folder.resolve("details.md"))).isEqualTo(details + "Error");
+    }
+
+    @Test
+    void shouldCutNoteIfSummaryIsTooLarge() {
+        var summary = "ä".repeat(1000);
+        var budget = 500;
+
+        var log = new FilteredLog("Errors");
+        var note = new SummaryNoteRenderer(budget, folder.resolve("details.md"), URL, log)
+                .render(summary, () -> summary, "", "\n\n:x: Quality gate failed", FOOTER);
+
+        assertThat(size(note)).isLessThanOrEqualTo(budget);
+        assertThat(note).startsWith(GitLabAutoGradingRunner.AUTOGRADING_MARKER)
+                .contains("The note has been truncated")
+                .endsWith("\n\n:x: Quality gate failed" + FOOTER);
+        assertThat(log.getErrorMessages()).isNotEmpty();
+    }
+
+    private SummaryNoteRenderer createRenderer(final int budget) {
+        return new SummaryNoteRenderer(budget, folder.resolve("details.md"), URL, new FilteredLog("Errors"));
+    }
+
+    private int size(final String note) {
+        return note.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,69 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.junit.jupiter.api.Test;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SupersededRunCheckTest {
+    private static final long PROJECT = 1L;
+    private static final long MERGE_REQUEST = 2L;
+    private static final Duration INTERVAL = Duration.ofSeconds(10);
+
+    @Test
+    void shouldFetchHeadCommitOncePerInterval() throws GitLabApiException {
+        var client = mock(GitLabClient.class);
+        when(client.getHeadCommit(PROJECT, MERGE_REQUEST)).thenReturn("abc", "abc", "def");
+        var time = new AtomicLong();
+        var log = new FilteredLog("Errors");
+        var check = new SupersededRunCheck(client, PROJECT, MERGE_REQUEST, "abc", INTERVAL, time::get, log);
+
+        assertThat(check.isSuperseded()).isFalse();
+        time.addAndGet(Duration.ofSeconds(9).toNanos());
+        assertThat(check.isSuperseded()).isFalse();
+        verify(client, times(1)).getHeadCommit(PROJECT, MERGE_REQUEST);
+
+        time.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertThat(check.isSuperseded()).isFalse();
+
+        time.addAndGet(INTERVAL.toNanos());
+        assertThat(check.isSuperseded()).isTrue();
+        assertThat(check.isSuperseded()).isTrue();
+        verify(client, times(3)).getHeadCommit(PROJECT, MERGE_REQUEST);
+        assertThat(log.getInfoMessages()).contains(
+                "Merge request !2 has a newer commit def - the results of commit abc are stale");
+    }
+
+    @Test
+    void shouldContinueIfHeadCommitCannotBeFetched() throws GitLabApiException {
+        var client = mock(GitLabClient.class);
+        when(client.getHeadCommit(PROJECT, MERGE_REQUEST)).thenThrow(new GitLabApiException("Unavailable", 503));
+        var log = new FilteredLog("Errors");
+        var check = new SupersededRunCheck(client, PROJECT, MERGE_REQUEST, "abc", INTERVAL, () -> 0, log);
+
+        assertThat(check.isSuperseded()).isFalse();
+        assertThat(log.getErrorMessages()).anySatisfy(
+                message -> assertThat(message).contains("Can't fetch the head commit of merge request !2"));
+    }
+
+    @Test
+    void shouldStopPublishingIfSuperseded() throws GitLabApiException {
+        var client = mock(GitLabClient.class);
+        when(client.getHeadCommit(PROJECT, MERGE_REQUEST)).thenReturn("def");
+        var deadline = PublishingDeadline.unlimited();
+        assertThat(deadline.hasTimeLeft()).isTrue();
+        assertThat(SupersededRunCheck.never().isSuperseded()).isFalse();
+
+        deadline.stopIfSuperseded(new SupersededRunCheck(client, PROJECT, MERGE_REQUEST, "abc",
+                new FilteredLog("Errors")));
+
+        assertThat(deadline.hasTimeLeft()).isFalse();
+        assertThat(deadline.isSuperseded()).isTrue();
+    }
+}
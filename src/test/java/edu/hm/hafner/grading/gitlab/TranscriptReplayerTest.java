@@ -0,0 +1,151 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Position;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TranscriptReplayerTest {
+    private static final long PROJECT = 1;
+    private static final long MERGE_REQUEST = 2;
+    private static final String SHA = "58c1e8a980dc0beb7d92d2266eb3e58852720a76";
+    private static final String PATH = "src/main/java/File.java";
+
+    @TempDir
+    private Path folder;
+
+    @Test
+    void shouldRecordRequestsWithoutGitLab() throws IOException, GitLabApiException {
+        var transcript = folder.resolve("transcript.jsonl");
+        var log = new FilteredLog("Errors");
+
+        try (var client = new TranscriptClient(transcript, null, log)) {
+            assertThat(client.getDiffVersions(PROJECT, MERGE_REQUEST)).isEmpty();
+            assertThat(client.getMergeRequest(PROJECT, MERGE_REQUEST).getIid()).isEqualTo(MERGE_REQUEST);
+
+            client.deleteAutogradingNotes(PROJECT, MERGE_REQUEST);
+            client.createCommitComment(PROJECT, SHA, "Comment", PATH, 10);
+            client.createMergeRequestNote(PROJECT, MERGE_REQUEST, "Summary");
+        }
+
+        assertThat(Files.readAllLines(transcript)).containsExactly(
+                "{\"op\":\"delete-notes\",\"project\":1,\"mr\":2}",
+                "{\"op\":\"commit-comment\",\"project\":1,\"sha\":\"%s\",\"body\":\"Comment\",\"path\":\"%s\",\"line\":10}"
+                        .formatted(SHA, PATH),
+                "{\"op\":\"note\",\"project\":1,\"mr\":2,\"body\":\"Summary\"}");
+        assertThat(log.getInfoMessages()).anySatisfy(message -> assertThat(message).contains("recorded 3"));
+    }
+
+    @Test
+    void shouldReplayInPhases() throws IOException, GitLabApiException {
+        var transcript = record();
+        var client = mock(GitLabClient.class);
+        var log = new FilteredLog("Errors");
+
+        var failures = createReplayer(client, log).replay(
+                TranscriptReplayer.readTranscripts(List.of(transcript, transcript), log));
+
+        assertThat(failures).isZero();
+        var order = inOrder(client);
+        order.verify(client).deleteAutogradingNotes(PROJECT, MERGE_REQUEST);
+        var position = ArgumentCaptor.forClass(Position.class);
+        order.verify(client, times(2)).createMergeRequestDiscussion(eq(PROJECT), eq(MERGE_REQUEST),
+                eq("Warning"), position.capture());
+        order.verify(client, times(2)).createMergeRequestNote(PROJECT, MERGE_REQUEST, "Summary");
+        verify(client, times(2)).createMergeRequestDiscussion(PROJECT, MERGE_REQUEST, "Unplaced", null);
+        verifyNoMoreInteractions(client);
+
+        assertThat(position.getValue()).satisfies(value -> {
+            assertThat(value.getBaseSha()).isEqualTo("base");
+            assertThat(value.getHeadSha()).isEqualTo("head");
+            assertThat(value.getStartSha()).isEqualTo("start");
+            assertThat(value.getNewPath()).isEqualTo(PATH);
+            assertThat(value.getNewLine()).isEqualTo(10);
+            assertThat(value.getOldPath()).isNull();
+        });
+    }
+
+    @Test
+    void shouldFallbackToCommitComment() throws IOException, GitLabApiException {
+        var transcript = record();
+        var client = mock(GitLabClient.class);
+        doThrow(new GitLabApiException("Bad position", 400))
+                .when(client).createMergeRequestDiscussion(anyLong(), anyLong(), anyString(), notNull());
+        var log = new FilteredLog("Errors");
+
+        var failures = createReplayer(client, log).replay(TranscriptReplayer.readTranscripts(List.of(transcript), log));
+
+        assertThat(failures).isZero();
+        verify(client).createMergeRequestDiscussion(anyLong(), anyLong(), anyString(), notNull());
+        verify(client).createCommitComment(PROJECT, "start", "Warning", PATH, 10);
+    }
+
+    @Test
+    void shouldReplayUpdatedNote() throws IOException, GitLabApiException {
+        var transcript = folder.resolve("transcript.jsonl");
+        try (var recorder = new TranscriptClient(transcript, null, new FilteredLog("Errors"))) {
+            recorder.updateMergeRequestNote(PROJECT, MERGE_REQUEST, 42, "Summary");
+            recorder.deleteMergeRequestNote(PROJECT, MERGE_REQUEST, 43);
+        }
+        assertThat(Files.readAllLines(transcript)).first().isEqualTo(
+                "{\"op\":\"update-note\",\"project\":1,\"mr\":2,\"note_id\":42,\"body\":\"Summary\"}");
+
+        var client = mock(GitLabClient.class);
+        var log = new FilteredLog("Errors");
+
+        var failures = createReplayer(client, log).replay(TranscriptReplayer.readTranscripts(List.of(transcript), log));
+
+        assertThat(failures).isZero();
+        var order = inOrder(client);
+        order.verify(client).deleteMergeRequestNote(PROJECT, MERGE_REQUEST, 43);
+        order.verify(client).updateMergeRequestNote(PROJECT, MERGE_REQUEST, 42, "Summary");
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    void shouldRetryRateLimitedRequests() throws IOException, GitLabApiException {
+        var transcript = record();
+        var client = mock(GitLabClient.class);
+        doThrow(new GitLabApiException("Too many requests", 429)).doNothing()
+                .when(client).createMergeRequestNote(anyLong(), anyLong(), anyString());
+        doThrow(new GitLabApiException("Forbidden", 403))
+                .when(client).deleteAutogradingNotes(anyLong(), anyLong());
+        var log = new FilteredLog("Errors");
+
+        var failures = createReplayer(client, log).replay(TranscriptReplayer.readTranscripts(List.of(transcript), log));
+
+        assertThat(failures).isOne();
+        verify(client).deleteAutogradingNotes(PROJECT, MERGE_REQUEST);
+        verify(client, times(2)).createMergeRequestNote(PROJECT, MERGE_REQUEST, "Summary");
+        assertThat(log.getErrorMessages()).anySatisfy(message -> assertThat(message).contains("delete-notes"));
+    }
+
+    private TranscriptReplayer createReplayer(final GitLabClient client, final FilteredLog log) {
+        return new TranscriptReplayer(client, 4, 1, true, Duration.ZERO, log);
+    }
+
+    private Path record() throws IOException, GitLabApiException {
+        var transcript = folder.resolve("transcript.jsonl");
+        try (var client = new TranscriptClient(transcript, null, new FilteredLog("Errors"))) {
+            client.deleteAutogradingNotes(PROJECT, MERGE_REQUEST);
+            client.createMergeRequestDiscussion(PROJECT, MERGE_REQUEST, "Warning", new Position()
+                    .withBaseSha("base").withHeadSha("head").withStartSha("start")
+                    .withNewPath(PATH).withNewLine(10).withPositionType(Position.PositionType.TEXT));
+            client.createMergeRequestDiscussion(PROJECT, MERGE_REQUEST, "Unplaced", null);
+            client.createMergeRequestNote(PROJECT, MERGE_REQUEST, "Summary");
+        }
+        return transcript;
+    }
+}
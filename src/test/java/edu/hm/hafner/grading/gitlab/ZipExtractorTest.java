@@ -0,0 +1,59 @@
+package edu.hm.hafner.grading.gitlab;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ZipExtractorTest {
+    @TempDir
+    private Path target;
+
+    @Test
+    void shouldExtractAllFiles() throws IOException {
+        ZipExtractor.extract(createArchive("target/a.xml", "target/b.xml"), target);
+
+        assertThat(target.resolve("target/a.xml")).hasContent("<report>target/a.xml</report>");
+        assertThat(target.resolve("target/b.xml")).hasContent("<report>target/b.xml</report>");
+    }
+
+    @Test
+    void shouldRejectEntriesOutsideOfTarget() {
+        assertThatIOException()
+                .isThrownBy(() -> ZipExtractor.extract(createArchive("../escaped.xml"), target))
+                .withMessageContaining("zip slip");
+    }
+
+    @Test
+    void shouldRejectTooManyEntries() {
+        assertThatIOException()
+                .isThrownBy(() -> ZipExtractor.extract(createArchive("a.xml", "b.xml", "c.xml"), target, 2, 1000))
+                .withMessage("The archive contains more than 2 entries");
+    }
+
+    @Test
+    void shouldRejectTooLargeFiles() {
+        assertThatIOException()
+                .isThrownBy(() -> ZipExtractor.extract(createArchive("a.xml", "b.xml"), target, 10, 30))
+                .withMessage("The extracted files exceed 30 bytes");
+    }
+
+    private ByteArrayInputStream createArchive(final String... files) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            for (String file : files) {
+                zip.putNextEntry(new ZipEntry(file));
+                zip.write("<report>%s</report>".formatted(file).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+}